@@ -0,0 +1,99 @@
+package org.leibnizcenter.cfg.benchmark;
+
+import org.leibnizcenter.cfg.earleyparser.chart.Chart;
+import org.leibnizcenter.cfg.earleyparser.chart.ChartWithInputPosition;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Token;
+import org.leibnizcenter.cfg.token.TokenWithCategories;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * One phase of the Earley loop, for the last token of a sentence: {@link Chart#predict}, {@link Chart#scan} or
+ * {@link Chart#complete}.
+ * </p>
+ * <p>
+ * A phase changes the chart, so every invocation gets a fresh chart that has read all tokens but the last one, and
+ * that has already gone through the phases before the one that is measured. Because setting up takes much longer
+ * than the phase itself, iterations are counted in invocations rather than time.
+ * </p>
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 200)
+@Measurement(iterations = 500)
+@Fork(1)
+public class ChartBenchmark {
+    @Benchmark
+    public Chart<String> predict(final BeforePredict state) {
+        state.chart.predict(state.index, state.token);
+        return state.chart;
+    }
+
+    @Benchmark
+    public Chart<String> scan(final BeforeScan state) {
+        state.chart.scan(state.index, state.token);
+        return state.chart;
+    }
+
+    @Benchmark
+    public Chart<String> complete(final BeforeComplete state) {
+        state.chart.complete(state.index, state.token);
+        return state.chart;
+    }
+
+    @State(Scope.Thread)
+    public static class BeforePredict {
+        @Param
+        public GrammarFamily family;
+
+        @Param({"10", "40"})
+        public int length;
+
+        Grammar<String> grammar;
+        List<Token<String>> sentence;
+        Chart<String> chart;
+        int index;
+        TokenWithCategories<String> token;
+
+        @Setup(Level.Trial)
+        public void setUpGrammar() {
+            grammar = family.builder().build();
+            sentence = family.sentence(length);
+        }
+
+        @Setup(Level.Invocation)
+        public void setUpChart() {
+            final ChartWithInputPosition<String> chartWithPosition = new ChartWithInputPosition<>(grammar, family.goal(), null);
+            for (final Token<String> t : sentence.subList(0, sentence.size() - 1)) chartWithPosition.next(t);
+            final Token<String> last = sentence.get(sentence.size() - 1);
+            chart = chartWithPosition.chart;
+            index = chartWithPosition.chartIndex;
+            token = new TokenWithCategories<>(last, grammar.getCategories(last));
+            runPhasesBefore();
+        }
+
+        void runPhasesBefore() {
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeScan extends BeforePredict {
+        @Override
+        void runPhasesBefore() {
+            chart.predict(index, token);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class BeforeComplete extends BeforePredict {
+        @Override
+        void runPhasesBefore() {
+            chart.predict(index, token);
+            chart.scan(index, token);
+        }
+    }
+}
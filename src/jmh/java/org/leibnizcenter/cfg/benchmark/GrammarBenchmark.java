@@ -0,0 +1,61 @@
+package org.leibnizcenter.cfg.benchmark;
+
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Token;
+import org.leibnizcenter.cfg.util.cache.Cache;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a grammar, which computes the left-corner and unit-star closures, and looking up the terminals of tokens
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GrammarBenchmark {
+    @Param
+    public GrammarFamily family;
+
+    @Param({"10", "100"})
+    public int length;
+
+    private Grammar.Builder<String> builder;
+    private Grammar<String> grammar;
+    private Grammar<String> uncachedGrammar;
+    private List<Token<String>> sentence;
+
+    @Setup
+    public void setUp() {
+        builder = family.builder();
+        grammar = family.builder().build();
+        uncachedGrammar = family.builder().withTokenCache(Cache.disabled()).build();
+        sentence = family.sentence(length);
+    }
+
+    @Benchmark
+    public Grammar<String> build() {
+        return builder.build();
+    }
+
+    /**
+     * Every token after the first few is found in the token cache
+     */
+    @Benchmark
+    public void getCategories(final Blackhole blackhole) {
+        for (final Token<String> token : sentence) blackhole.consume(grammar.getCategories(token));
+    }
+
+    /**
+     * Every token is matched against all terminals of the grammar
+     */
+    @Benchmark
+    public void getCategoriesWithoutCache(final Blackhole blackhole) {
+        for (final Token<String> token : sentence) blackhole.consume(uncachedGrammar.getCategories(token));
+    }
+}
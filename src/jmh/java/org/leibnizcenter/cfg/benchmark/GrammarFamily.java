@@ -0,0 +1,144 @@
+package org.leibnizcenter.cfg.benchmark;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Grammars that the benchmarks are run over, each with a way to make a grammatical sentence of some length. They
+ * range from a grammar with exactly one parse per sentence to one with exponentially many.
+ */
+@SuppressWarnings("WeakerAccess")
+public enum GrammarFamily {
+    /**
+     * S → a S | a: one parse, linear number of states
+     */
+    RIGHT_RECURSIVE {
+        @Override
+        Grammar.Builder<String> builder() {
+            return new Grammar.Builder<String>()
+                    .addRule(0.5, S, a, S)
+                    .addRule(0.5, S, a);
+        }
+
+        @Override
+        List<Token<String>> sentence(final int length) {
+            return repeat(length, "a");
+        }
+    },
+    /**
+     * S → S S | a: every binary tree over the sentence is a parse
+     */
+    AMBIGUOUS {
+        @Override
+        Grammar.Builder<String> builder() {
+            return new Grammar.Builder<String>()
+                    .addRule(0.1, S, S, S)
+                    .addRule(0.9, S, a);
+        }
+
+        @Override
+        List<Token<String>> sentence(final int length) {
+            return repeat(length, "a");
+        }
+    },
+    /**
+     * S → S S with chains of unit productions below it, as in the old <code>Perf</code> test
+     */
+    UNIT_CHAINS {
+        @Override
+        Grammar.Builder<String> builder() {
+            return new Grammar.Builder<String>()
+                    .addRule(1.0, S, A)
+                    .addRule(0.1, S, S, S)
+                    .addRule(1.0, A, B)
+                    .addRule(0.5, A, D)
+                    .addRule(0.5, B, C)
+                    .addRule(1.0, B, a)
+                    .addRule(0.5, C, a)
+                    .addRule(0.5, D, a);
+        }
+
+        @Override
+        List<Token<String>> sentence(final int length) {
+            return repeat(length, "a");
+        }
+    },
+    /**
+     * Small English grammar with prepositional phrase attachment ambiguity. Sentences are
+     * "john hit the man with the stick with the stick ...", so the length is rounded down to 4 plus a multiple of 3.
+     */
+    ENGLISH {
+        @Override
+        Grammar.Builder<String> builder() {
+            return new Grammar.Builder<String>()
+                    .addRule(1.0, S, NP, VP)
+                    .addRule(0.5, NP, Det, N)
+                    .addRule(0.2, NP, Det, N, PP)
+                    .addRule(0.3, NP, john)
+                    .addRule(0.6, VP, V, NP)
+                    .addRule(0.4, VP, V, NP, PP)
+                    .addRule(1.0, PP, P, NP)
+                    .addRule(1.0, Det, the)
+                    .addRule(0.5, N, man)
+                    .addRule(0.5, N, stick)
+                    .addRule(1.0, V, hit)
+                    .addRule(1.0, P, with);
+        }
+
+        @Override
+        List<Token<String>> sentence(final int length) {
+            final List<Token<String>> tokens = new ArrayList<>();
+            for (final String word : "john hit the man".split(" ")) tokens.add(new Token<>(word));
+            for (int i = 0; i < (length - 4) / 3; i++)
+                for (final String word : "with the stick".split(" ")) tokens.add(new Token<>(word));
+            return tokens;
+        }
+    };
+
+    static final NonTerminal S = Category.nonTerminal("S");
+    private static final NonTerminal A = Category.nonTerminal("A");
+    private static final NonTerminal B = Category.nonTerminal("B");
+    private static final NonTerminal C = Category.nonTerminal("C");
+    private static final NonTerminal D = Category.nonTerminal("D");
+    private static final NonTerminal NP = Category.nonTerminal("NP");
+    private static final NonTerminal VP = Category.nonTerminal("VP");
+    private static final NonTerminal PP = Category.nonTerminal("PP");
+    private static final NonTerminal Det = Category.nonTerminal("Det");
+    private static final NonTerminal N = Category.nonTerminal("N");
+    private static final NonTerminal V = Category.nonTerminal("V");
+    private static final NonTerminal P = Category.nonTerminal("P");
+    private static final Terminal<String> a = new ExactStringTerminal("a");
+    private static final Terminal<String> the = new ExactStringTerminal("the");
+    private static final Terminal<String> man = new ExactStringTerminal("man");
+    private static final Terminal<String> stick = new ExactStringTerminal("stick");
+    private static final Terminal<String> john = new ExactStringTerminal("john");
+    private static final Terminal<String> hit = new ExactStringTerminal("hit");
+    private static final Terminal<String> with = new ExactStringTerminal("with");
+
+    private static List<Token<String>> repeat(final int length, final String word) {
+        final List<Token<String>> tokens = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) tokens.add(new Token<>(word));
+        return tokens;
+    }
+
+    /**
+     * @return Builder with the rules of this grammar, which has not been built yet
+     */
+    abstract Grammar.Builder<String> builder();
+
+    /**
+     * @return Sentence of this grammar with at most given number of tokens
+     */
+    abstract List<Token<String>> sentence(final int length);
+
+    NonTerminal goal() {
+        return S;
+    }
+}
@@ -0,0 +1,69 @@
+package org.leibnizcenter.cfg.benchmark;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.earleyparser.CompactParseTree;
+import org.leibnizcenter.cfg.earleyparser.ParseTree;
+import org.leibnizcenter.cfg.earleyparser.ParseTreeWithScore;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.earleyparser.chart.Chart;
+import org.leibnizcenter.cfg.earleyparser.chart.ChartWithInputPosition;
+import org.leibnizcenter.cfg.token.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing whole sentences: recognition, parsing with the Viterbi parse, and extracting the Viterbi parse from a chart
+ * that is already filled
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+    @Param
+    public GrammarFamily family;
+
+    @Param({"10", "20", "40"})
+    public int length;
+
+    private Parser<String> parser;
+    private List<Token<String>> sentence;
+    private Chart<String> chart;
+    private org.leibnizcenter.cfg.earleyparser.chart.state.State viterbiState;
+
+    @Setup
+    public void setUp() {
+        parser = new Parser<>(family.builder().build());
+        sentence = family.sentence(length);
+
+        final ChartWithInputPosition<String> parsed = parser.parseAndCountTokens(family.goal(), sentence, null);
+        chart = parsed.chart;
+        viterbiState = chart.stateSets.completedStates
+                .getCompletedStates(parsed.chartIndex, Category.START)
+                .iterator().next();
+    }
+
+    @Benchmark
+    public double recognize() {
+        return parser.recognize(family.goal(), sentence);
+    }
+
+    @Benchmark
+    public ParseTreeWithScore viterbiParse() {
+        return parser.getViterbiParseWithScore(family.goal(), sentence);
+    }
+
+    @Benchmark
+    public ParseTree extractTree() {
+        return Parser.getViterbiParse(viterbiState, chart);
+    }
+
+    @Benchmark
+    public CompactParseTree<String> extractCompactTree() {
+        return Parser.getCompactViterbiParse(viterbiState, chart);
+    }
+}
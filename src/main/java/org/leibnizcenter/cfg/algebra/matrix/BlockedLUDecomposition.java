@@ -0,0 +1,265 @@
+package org.leibnizcenter.cfg.algebra.matrix;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * LU Decomposition of square matrices, for large dense matrices.
+ *
+ * Computes the same factorization as {@link LUDecomposition} (partial pivoting, so that A(piv,:) = L*U), but stores
+ * the matrix as one flat row-major array and works on panels of columns: after factorizing a panel, the trailing
+ * sub-matrix is updated in cache-sized tiles that are distributed over a {@link ForkJoinPool}. Solving (and so
+ * inverting) is parallelized over blocks of right hand side columns.
+ *
+ * Results agree with {@link LUDecomposition} up to floating point rounding.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BlockedLUDecomposition implements Decomposition {
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+    /**
+     * Column tile width of the trailing update
+     */
+    private static final int COLUMN_TILE = 512;
+    /**
+     * Below this amount of work, tasks are not split
+     */
+    private static final long SEQUENTIAL_THRESHOLD = 1 << 16;
+
+    /**
+     * Flat row-major storage of L (strictly below the diagonal, unit diagonal implied) and U
+     */
+    private final double[] LU;
+    private final int n;
+    private final int[] piv;
+    private final int blockSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * Decomposes using the common fork-join pool
+     *
+     * @param A Square matrix
+     */
+    public BlockedLUDecomposition(final Matrix A) {
+        this(A, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param A         Square matrix
+     * @param blockSize Number of columns per panel
+     * @param pool      Pool to run in parallel on
+     */
+    public BlockedLUDecomposition(final Matrix A, final int blockSize, final ForkJoinPool pool) {
+        if (A.getRowDimension() != A.getColumnDimension())
+            throw new IllegalArgumentException("Matrix must be square.");
+        if (blockSize < 1) throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        this.n = A.getRowDimension();
+        this.blockSize = blockSize;
+        this.pool = pool;
+        this.LU = new double[n * n];
+        final double[][] array = A.getArray();
+        for (int i = 0; i < n; i++) System.arraycopy(array[i], 0, LU, i * n, n);
+        this.piv = new int[n];
+        for (int i = 0; i < n; i++) piv[i] = i;
+
+        for (int k0 = 0; k0 < n; k0 += blockSize) {
+            final int k1 = Math.min(k0 + blockSize, n);
+            factorizePanel(k0, k1);
+            if (k1 < n) {
+                final int panelStart = k0;
+                run(k1, n, (c0, c1) -> solveUpperPanel(panelStart, k1, c0, c1), (long) (k1 - k0) * (k1 - k0));
+                run(k1, n, (r0, r1) -> updateTrailing(panelStart, k1, r0, r1), (long) (k1 - k0) * (n - k1));
+            }
+        }
+    }
+
+    /**
+     * Unblocked right-looking factorization of columns [k0, k1), swapping whole rows
+     */
+    private void factorizePanel(final int k0, final int k1) {
+        for (int j = k0; j < k1; j++) {
+            int p = j;
+            for (int i = j + 1; i < n; i++)
+                if (Math.abs(LU[i * n + j]) > Math.abs(LU[p * n + j])) p = i;
+            if (p != j) {
+                swapRows(p, j);
+                final int k = piv[p];
+                piv[p] = piv[j];
+                piv[j] = k;
+            }
+
+            final double pivot = LU[j * n + j];
+            if (pivot != 0.0)
+                for (int i = j + 1; i < n; i++) LU[i * n + j] /= pivot;
+            for (int i = j + 1; i < n; i++) {
+                final double l = LU[i * n + j];
+                if (l != 0.0) {
+                    final int rowI = i * n;
+                    final int rowJ = j * n;
+                    for (int c = j + 1; c < k1; c++) LU[rowI + c] -= l * LU[rowJ + c];
+                }
+            }
+        }
+    }
+
+    private void swapRows(final int a, final int b) {
+        final int rowA = a * n;
+        final int rowB = b * n;
+        for (int c = 0; c < n; c++) {
+            final double t = LU[rowA + c];
+            LU[rowA + c] = LU[rowB + c];
+            LU[rowB + c] = t;
+        }
+    }
+
+    /**
+     * U12 = L11^-1 A12 for columns [c0, c1)
+     */
+    private void solveUpperPanel(final int k0, final int k1, final int c0, final int c1) {
+        for (int j = k0; j < k1; j++) {
+            final int rowJ = j * n;
+            for (int i = j + 1; i < k1; i++) {
+                final double l = LU[i * n + j];
+                if (l != 0.0) {
+                    final int rowI = i * n;
+                    for (int c = c0; c < c1; c++) LU[rowI + c] -= l * LU[rowJ + c];
+                }
+            }
+        }
+    }
+
+    /**
+     * A22 -= L21 U12 for rows [r0, r1)
+     */
+    private void updateTrailing(final int k0, final int k1, final int r0, final int r1) {
+        for (int c0 = k1; c0 < n; c0 += COLUMN_TILE) {
+            final int c1 = Math.min(c0 + COLUMN_TILE, n);
+            for (int i = r0; i < r1; i++) {
+                final int rowI = i * n;
+                for (int k = k0; k < k1; k++) {
+                    final double l = LU[rowI + k];
+                    if (l != 0.0) {
+                        final int rowK = k * n;
+                        for (int c = c0; c < c1; c++) LU[rowI + c] -= l * LU[rowK + c];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs given action over [from, to), split into ranges of at least {@link #blockSize} when there is enough work
+     *
+     * @param workPerIndex Approximate number of operations per index
+     */
+    private void run(final int from, final int to, final RangeAction action, final long workPerIndex) {
+        if ((to - from) * workPerIndex < SEQUENTIAL_THRESHOLD || pool.getParallelism() < 2)
+            action.apply(from, to);
+        else
+            pool.invoke(new RangeTask(from, to, Math.max(blockSize, 1), action));
+    }
+
+    /**
+     * Is the matrix nonsingular?
+     *
+     * @return true if U, and hence A, is nonsingular.
+     */
+    public boolean isNonsingular() {
+        for (int j = 0; j < n; j++)
+            if (LU[j * n + j] == 0) return false;
+        return true;
+    }
+
+    /**
+     * Solve A*X = B
+     *
+     * @param B A Matrix with as many rows as A and any number of columns.
+     * @return X so that L*U*X = B(piv,:)
+     * @throws IllegalArgumentException Matrix row dimensions must agree.
+     * @throws RuntimeException         Matrix is singular.
+     */
+    @Override
+    public Matrix solve(final Matrix B) {
+        if (B.getRowDimension() != n) throw new IllegalArgumentException("Matrix row dimensions must agree.");
+        if (!this.isNonsingular()) throw new RuntimeException("Matrix is singular.");
+
+        final int nx = B.getColumnDimension();
+        final double[][] b = B.getArray();
+        final double[] X = new double[n * nx];
+        for (int i = 0; i < n; i++) System.arraycopy(b[piv[i]], 0, X, i * nx, nx);
+
+        run(0, nx, (c0, c1) -> solveColumns(X, nx, c0, c1), (long) n * n);
+
+        final Matrix result = new Matrix(n, nx);
+        final double[][] x = result.getArray();
+        for (int i = 0; i < n; i++) System.arraycopy(X, i * nx, x[i], 0, nx);
+        return result;
+    }
+
+    /**
+     * Forward and backward substitution for columns [c0, c1) of X, row by row so that L and U are read contiguously
+     */
+    private void solveColumns(final double[] X, final int nx, final int c0, final int c1) {
+        // Solve L*Y = B(piv,:)
+        for (int i = 1; i < n; i++) {
+            final int rowI = i * n;
+            final int xI = i * nx;
+            for (int k = 0; k < i; k++) {
+                final double l = LU[rowI + k];
+                if (l != 0.0) {
+                    final int xK = k * nx;
+                    for (int c = c0; c < c1; c++) X[xI + c] -= l * X[xK + c];
+                }
+            }
+        }
+        // Solve U*X = Y;
+        for (int i = n - 1; i >= 0; i--) {
+            final int rowI = i * n;
+            final int xI = i * nx;
+            for (int k = i + 1; k < n; k++) {
+                final double u = LU[rowI + k];
+                if (u != 0.0) {
+                    final int xK = k * nx;
+                    for (int c = c0; c < c1; c++) X[xI + c] -= u * X[xK + c];
+                }
+            }
+            final double diagonal = LU[rowI + i];
+            for (int c = c0; c < c1; c++) X[xI + c] /= diagonal;
+        }
+    }
+
+    /**
+     * @return The inverse of the decomposed matrix
+     */
+    public Matrix inverse() {
+        return solve(Matrix.identity(n, n));
+    }
+
+    @FunctionalInterface
+    private interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final RangeAction action;
+
+        RangeTask(final int from, final int to, final int grain, final RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) action.apply(from, to);
+            else {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(from, middle, grain, action), new RangeTask(middle, to, grain, action));
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.leibnizcenter.cfg.category.nonterminal;
+
+/**
+ * <p>
+ * Synthetic non-terminal that stands for a node in the prefix trie of the right hand sides of some non-terminal: it
+ * derives all remainders of the rules that share the prefix that leads up to it.
+ * </p>
+ * <p>
+ * These are introduced by {@link org.leibnizcenter.cfg.grammar.Grammar.Builder#withPrefixSharing()} and are removed
+ * again from parse trees that the parser returns.
+ * </p>
+ */
+public class SharedPrefix extends NonTerminal {
+    /**
+     * @param name Unique name, must not collide with any other non-terminal in the grammar
+     */
+    public SharedPrefix(final String name) {
+        super(name);
+    }
+}
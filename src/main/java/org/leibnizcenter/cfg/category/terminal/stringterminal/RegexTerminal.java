@@ -41,12 +41,12 @@ public class RegexTerminal implements StringTerminal {
 
         final RegexTerminal that = (RegexTerminal) o;
 
-        return pattern.equals(that.pattern);
+        return pattern.pattern().equals(that.pattern.pattern()) && pattern.flags() == that.pattern.flags();
     }
 
     @Override
     public int hashCode() {
-        return pattern.hashCode();
+        return 31 * pattern.pattern().hashCode() + pattern.flags();
     }
 
     @Override
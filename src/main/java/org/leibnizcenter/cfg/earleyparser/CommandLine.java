@@ -28,9 +28,11 @@ public class CommandLine {
             "\nA grammar file looks something like this:" + '\n' +
             "S -> NP VP" + '\n' +
             "NP -> i" + '\n' +
-            "VP -> eat" + '\n';
+            "VP -> eat" + '\n' +
+            "\nAdd -report to print statistics of the grammar and how long it took to build, with or without input words" + '\n';
     private static final String OPTION_GOAL = "goal";
     private static final String OPTION_SCAN_MODE = "scanmode";
+    private static final String OPTION_REPORT = "report";
     private static final String INPUT_FILE = "i";
 
     /**
@@ -38,6 +40,9 @@ public class CommandLine {
      */
     public static void main(final String[] args) {
         final HandleArguments arguments = new HandleArguments(args).invoke();
+        if (arguments.report) System.out.println(arguments.getGrammar().getReport());
+        if (arguments.getTokens().length <= 0) return;
+
         final ParseTreeWithScore parse = new Parser<>(arguments.getGrammar())
                 .getViterbiParseWithScore(
                         arguments.getGoal(),
@@ -56,6 +61,7 @@ public class CommandLine {
         private Grammar<String> grammar;
         private NonTerminal goal;
         private ScanMode scanMode;
+        private boolean report;
 
         HandleArguments(final String... args) {
             this.args = args;
@@ -86,7 +92,7 @@ public class CommandLine {
             final Map<String, String> options = parseOptions();
 
             setInputFile(options);
-            setGoal(options);
+            if (tokens.length > 0) setGoal(options);
             setParseMode(options);
 
             return this;
@@ -97,7 +103,11 @@ public class CommandLine {
             final Map<String, String> options = new HashMap<>();
             for (int i = 0; i < args.length; i++) {
                 final String word = args[i].trim();
-                if (word.charAt(0) == '-' && i < args.length - 1) {
+                if (word.equalsIgnoreCase("-" + OPTION_REPORT)) {
+                    // This is a flag without value
+                    report = true;
+                    lastOption = i;
+                } else if (word.charAt(0) == '-' && i < args.length - 1) {
                     // This is an option
                     final String option = word.substring(1).toLowerCase();
                     switch (option) {
@@ -114,7 +124,7 @@ public class CommandLine {
             }
 
             tokens = Arrays.copyOfRange(args, lastOption + 1, args.length);
-            if (tokens.length <= 0) throw new IllegalArgumentException("No tokens specified. \n" + USAGE);
+            if (tokens.length <= 0 && !report) throw new IllegalArgumentException("No tokens specified. \n" + USAGE);
             return options;
         }
 
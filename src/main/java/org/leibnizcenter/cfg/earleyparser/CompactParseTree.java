@@ -0,0 +1,364 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+import org.leibnizcenter.cfg.earleyparser.chart.state.ScannedToken;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Read-only parse tree that is stored in a handful of parallel arrays instead of one object per node. Nodes are
+ * identified by their index, which is their position in a pre-order walk of the tree, so the root is node
+ * {@link #ROOT} and the first child of a node directly follows it. For every node we store:
+ * </p>
+ * <ul>
+ * <li>the id of its category in the {@link #getCategories() category table} of this tree,</li>
+ * <li>the start and end of the span of input tokens it covers,</li>
+ * <li>its first child and its next sibling, or {@link #NONE},</li>
+ * <li>the scanned token for leaves, or null for other nodes.</li>
+ * </ul>
+ * <p>
+ * This takes a fixed number of bytes per node, so it is suitable for keeping many large trees around. Use
+ * {@link #toParseTree()} to get a {@link ParseTree} when one is needed.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CompactParseTree<T> {
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+
+    private final Category[] categories;
+    private final int[] categoryIds;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] firstChildren;
+    private final int[] nextSiblings;
+    private final Token<T>[] tokens;
+
+    private CompactParseTree(final Category[] categories,
+                             final int[] categoryIds,
+                             final int[] starts,
+                             final int[] ends,
+                             final int[] firstChildren,
+                             final int[] nextSiblings,
+                             final Token<T>[] tokens) {
+        this.categories = categories;
+        this.categoryIds = categoryIds;
+        this.starts = starts;
+        this.ends = ends;
+        this.firstChildren = firstChildren;
+        this.nextSiblings = nextSiblings;
+        this.tokens = tokens;
+    }
+
+    /**
+     * Encodes given tree. Leaves span one token each, and spans are counted from the leftmost leaf.
+     */
+    public static <T> CompactParseTree<T> of(final ParseTree tree) {
+        final Builder<T> builder = new Builder<>(false);
+        if (tree instanceof ParseTree.Leaf) {
+            return builder.build(builder.leaf(Builder.<T>tokenOf(((ParseTree.Leaf<?>) tree).token), tree.category, 1));
+        }
+        // Post-order walk with an explicit stack, children are added before their parent
+        final Deque<ParseTree> trees = new ArrayDeque<>();
+        final Deque<Iterator<ParseTree>> children = new ArrayDeque<>();
+        final Deque<List<Integer>> childNodes = new ArrayDeque<>();
+        final Deque<Integer> starts = new ArrayDeque<>();
+        int position = 0;
+        trees.push(tree);
+        children.push(tree.children == null ? Collections.emptyIterator() : tree.children.iterator());
+        childNodes.push(new ArrayList<>());
+        starts.push(position);
+        while (true) {
+            final Iterator<ParseTree> iterator = children.peek();
+            if (iterator.hasNext()) {
+                final ParseTree child = iterator.next();
+                if (child instanceof ParseTree.Leaf) {
+                    final Token<T> token = Builder.tokenOf(((ParseTree.Leaf<?>) child).token);
+                    childNodes.peek().add(builder.leaf(token, child.category, position + 1));
+                    position++;
+                } else {
+                    trees.push(child);
+                    children.push(child.children == null ? Collections.emptyIterator() : child.children.iterator());
+                    childNodes.push(new ArrayList<>());
+                    starts.push(position);
+                }
+            } else {
+                final ParseTree done = trees.pop();
+                children.pop();
+                final List<Integer> nodes = childNodes.pop();
+                Collections.reverse(nodes);
+                final int node = builder.node(done.category, starts.pop(), position, nodes);
+                if (trees.isEmpty()) return builder.build(node);
+                childNodes.peek().add(node);
+            }
+        }
+    }
+
+    /**
+     * @return Number of nodes in this tree
+     */
+    public int size() {
+        return categoryIds.length;
+    }
+
+    /**
+     * @return Categories that occur in this tree, indexed by {@link #getCategoryId(int) category id}
+     */
+    public List<Category> getCategories() {
+        return Collections.unmodifiableList(Arrays.asList(categories));
+    }
+
+    public int getCategoryId(final int node) {
+        return categoryIds[node];
+    }
+
+    public Category getCategory(final int node) {
+        return categories[categoryIds[node]];
+    }
+
+    /**
+     * @return Position of the first token covered by given node
+     */
+    public int getStart(final int node) {
+        return starts[node];
+    }
+
+    /**
+     * @return Position after the last token covered by given node
+     */
+    public int getEnd(final int node) {
+        return ends[node];
+    }
+
+    /**
+     * @return Leftmost child of given node, or {@link #NONE}
+     */
+    public int getFirstChild(final int node) {
+        return firstChildren[node];
+    }
+
+    /**
+     * @return Child of the parent of given node that follows it, or {@link #NONE}
+     */
+    public int getNextSibling(final int node) {
+        return nextSiblings[node];
+    }
+
+    public int getChildCount(final int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) count++;
+        return count;
+    }
+
+    /**
+     * @return Whether given node is a scanned token
+     */
+    public boolean isLeaf(final int node) {
+        return tokens[node] != null;
+    }
+
+    /**
+     * @return Scanned token for a leaf, null for other nodes
+     */
+    public Token<T> getToken(final int node) {
+        return tokens[node];
+    }
+
+    /**
+     * @return This tree as linked {@link ParseTree} objects
+     */
+    public ParseTree toParseTree() {
+        return toParseTree(ROOT);
+    }
+
+    /**
+     * @return The subtree rooted at given node as linked {@link ParseTree} objects
+     */
+    public ParseTree toParseTree(final int node) {
+        final int last = lastDescendant(node);
+        final ParseTree[] trees = new ParseTree[last - node + 1];
+        // Descendants follow their ancestors in pre-order, so every child is built before its parent
+        for (int i = last; i >= node; i--) {
+            if (tokens[i] != null) trees[i - node] = new ParseTree.Leaf<>(tokens[i], getCategory(i));
+            else {
+                final List<ParseTree> children = new ArrayList<>(getChildCount(i));
+                for (int child = firstChildren[i]; child != NONE; child = nextSiblings[child])
+                    children.add(trees[child - node]);
+                trees[i - node] = new ParseTree.NonLeaf(getCategory(i), children);
+            }
+        }
+        return trees[0];
+    }
+
+    /**
+     * @return Largest node index in the subtree of given node
+     */
+    private int lastDescendant(int node) {
+        while (true) {
+            int child = firstChildren[node];
+            if (child == NONE) return node;
+            while (nextSiblings[child] != NONE) child = nextSiblings[child];
+            node = child;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toParseTree().toString();
+    }
+
+    /**
+     * Appends nodes bottom-up, so in any order in which children are added before their parent. {@link #build(int)}
+     * puts them in pre-order.
+     */
+    static final class Builder<T> implements Parser.TreeBuilder<Integer> {
+        /**
+         * Whether to put the children of {@link SharedPrefix} nodes in their parent
+         */
+        private final boolean inlineSharedPrefixes;
+        private final Map<Category, Integer> categoryIds = new HashMap<>();
+        private final List<Category> categories = new ArrayList<>();
+        private int size = 0;
+        private int[] nodeCategories = new int[16];
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int[] firstChildren = new int[16];
+        private int[] nextSiblings = new int[16];
+        private Token<T>[] tokens = newTokenArray(16);
+
+        Builder(final boolean inlineSharedPrefixes) {
+            this.inlineSharedPrefixes = inlineSharedPrefixes;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Token<T>[] newTokenArray(final int size) {
+            return (Token<T>[]) new Token<?>[size];
+        }
+
+        /**
+         * Parse trees and scanned states do not carry the type of their tokens, so the caller vouches for it
+         */
+        @SuppressWarnings("unchecked")
+        static <T> Token<T> tokenOf(final Token<?> token) {
+            return (Token<T>) token;
+        }
+
+        @Override
+        public Integer leaf(final ScannedToken<?> scannedToken, final int position) {
+            return leaf(Builder.<T>tokenOf(scannedToken.scannedToken), scannedToken.scannedCategory, position);
+        }
+
+        int leaf(final Token<T> token, final Category category, final int position) {
+            final int node = add(category, position - 1, position);
+            tokens[node] = token;
+            return node;
+        }
+
+        @Override
+        public Integer node(final Rule rule, final int start, final int end, final List<Integer> reversedChildren) {
+            return node(rule.left, start, end, reversedChildren);
+        }
+
+        int node(final Category category, final int start, final int end, final List<Integer> reversedChildren) {
+            final int node = add(category, start, end);
+            int next = NONE;
+            for (final int child : reversedChildren)
+                if (inlineSharedPrefixes && categories.get(nodeCategories[child]) instanceof SharedPrefix) {
+                    final int first = firstChildren[child];
+                    if (first == NONE) continue;
+                    int last = first;
+                    while (nextSiblings[last] != NONE) last = nextSiblings[last];
+                    nextSiblings[last] = next;
+                    next = first;
+                } else {
+                    nextSiblings[child] = next;
+                    next = child;
+                }
+            firstChildren[node] = next;
+            return node;
+        }
+
+        private int add(final Category category, final int start, final int end) {
+            if (size == starts.length) {
+                final int capacity = size * 2;
+                nodeCategories = Arrays.copyOf(nodeCategories, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                firstChildren = Arrays.copyOf(firstChildren, capacity);
+                nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+                tokens = Arrays.copyOf(tokens, capacity);
+            }
+            Integer id = categoryIds.get(category);
+            if (id == null) {
+                id = categories.size();
+                categoryIds.put(category, id);
+                categories.add(category);
+            }
+            final int node = size++;
+            nodeCategories[node] = id;
+            starts[node] = start;
+            ends[node] = end;
+            firstChildren[node] = NONE;
+            nextSiblings[node] = NONE;
+            return node;
+        }
+
+        /**
+         * @param root Node to use as root. Nodes that are not reachable from it are left out.
+         */
+        CompactParseTree<T> build(final int root) {
+            // Number nodes in pre-order: visit a node, then its children, then its next sibling
+            final int[] newIndex = new int[size];
+            Arrays.fill(newIndex, NONE);
+            final int[] order = new int[size];
+            int count = 0;
+            int[] pendingSiblings = new int[16];
+            int pending = 0;
+            int node = root;
+            while (node != NONE) {
+                newIndex[node] = count;
+                order[count++] = node;
+                final int child = firstChildren[node];
+                final int sibling = node == root ? NONE : nextSiblings[node];
+                if (child != NONE) {
+                    if (sibling != NONE) {
+                        if (pending == pendingSiblings.length)
+                            pendingSiblings = Arrays.copyOf(pendingSiblings, pending * 2);
+                        pendingSiblings[pending++] = sibling;
+                    }
+                    node = child;
+                } else if (sibling != NONE) node = sibling;
+                else node = pending > 0 ? pendingSiblings[--pending] : NONE;
+            }
+
+            final int[] newCategories = new int[count];
+            final int[] newStarts = new int[count];
+            final int[] newEnds = new int[count];
+            final int[] newFirstChildren = new int[count];
+            final int[] newNextSiblings = new int[count];
+            final Token<T>[] newTokens = newTokenArray(count);
+            for (int i = 0; i < count; i++) {
+                final int old = order[i];
+                newCategories[i] = nodeCategories[old];
+                newStarts[i] = starts[old];
+                newEnds[i] = ends[old];
+                newFirstChildren[i] = firstChildren[old] == NONE ? NONE : newIndex[firstChildren[old]];
+                newNextSiblings[i] = old == root || nextSiblings[old] == NONE ? NONE : newIndex[nextSiblings[old]];
+                newTokens[i] = tokens[old];
+            }
+            return new CompactParseTree<>(
+                    categories.toArray(new Category[categories.size()]),
+                    newCategories,
+                    newStarts,
+                    newEnds,
+                    newFirstChildren,
+                    newNextSiblings,
+                    newTokens
+            );
+        }
+    }
+}
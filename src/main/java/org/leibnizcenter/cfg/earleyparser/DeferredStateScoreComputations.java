@@ -15,6 +15,7 @@ public class DeferredStateScoreComputations {
     public final Map<State, ExpressionWrapper> states;
     public final TObjectDoubleMap<State> statesDouble = new TObjectDoubleHashMap<>(50, 0.5F, Double.NaN);
     private final ExpressionSemiring semiring;
+    private int termCount = 0;
 
     public DeferredStateScoreComputations(final Grammar grammar) {
         this.states = new HashMap<>();
@@ -32,6 +33,13 @@ public class DeferredStateScoreComputations {
         }
     }
 
+    /**
+     * @return Number of terms added with {@link #plusProductOf(State, ExpressionSemiring, double, ExpressionWrapper, Resolvable)}
+     */
+    public int getTermCount() {
+        return termCount;
+    }
+
     public ExpressionWrapper getOrNull(final State state) {
         return this.states.getOrDefault(state, null);
     }
@@ -52,6 +60,7 @@ public class DeferredStateScoreComputations {
     public void plusProductOf(final State s, final ExpressionSemiring semiring, final double t1, final ExpressionWrapper t2, final Resolvable t3) {
         final ExpressionWrapper current = this.getOrCreate(s, this.semiring.zero());
         final Resolvable addValue = semiring.times(t1, t2, t3);
+        termCount++;
 
         if (current.hasExpression())
             current.setExpression(this.semiring.plus(addValue, current.getExpression()));
@@ -0,0 +1,271 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.leibnizcenter.cfg.algebra.matrix.LUDecomposition;
+import org.leibnizcenter.cfg.algebra.matrix.Matrix;
+import org.leibnizcenter.cfg.errors.IssueRequest;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Inside and outside probabilities of the nodes of a {@link ParseForest}, as natural logarithms indexed by node id
+ * so that long sentences don't underflow.
+ * </p>
+ * <p>
+ * Nodes are visited by strongly connected component, in an order in which every component comes after the components
+ * of its children (for inside) or its parents (for outside). Without cycles every component is a single node and one
+ * pass is exact. Cycles of unit productions make for larger components, which are solved exactly as a system of linear
+ * equations, like the unit star closure of the grammar.
+ * </p>
+ */
+final class ForestScores {
+    private ForestScores() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm over the nodes that are reachable from the root
+     *
+     * @return Strongly connected components, every component after all components that it has an edge into
+     */
+    static List<ParseForest.Node[]> bottomUpComponents(final ParseForest<?> forest) {
+        final int n = forest.getNodeCount();
+        final int[] index = new int[n];
+        Arrays.fill(index, -1);
+        final int[] lowLink = new int[n];
+        final boolean[] onStack = new boolean[n];
+        final List<ParseForest.Node> stack = new ArrayList<>();
+        final Deque<ParseForest.Node> callStack = new ArrayDeque<>();
+        final Deque<Iterator<ParseForest.Node>> children = new ArrayDeque<>();
+        final List<ParseForest.Node[]> components = new ArrayList<>();
+
+        int nextIndex = 0;
+        ParseForest.Node next = forest.root;
+        while (true) {
+            if (next != null) {
+                index[next.id] = lowLink[next.id] = nextIndex++;
+                stack.add(next);
+                onStack[next.id] = true;
+                callStack.push(next);
+                children.push(childrenOf(next));
+                next = null;
+            }
+            if (callStack.isEmpty()) return components;
+
+            final ParseForest.Node v = callStack.peek();
+            final Iterator<ParseForest.Node> iterator = children.peek();
+            if (iterator.hasNext()) {
+                final ParseForest.Node w = iterator.next();
+                if (index[w.id] < 0) next = w;
+                else if (onStack[w.id]) lowLink[v.id] = Math.min(lowLink[v.id], index[w.id]);
+            } else {
+                callStack.pop();
+                children.pop();
+                if (!callStack.isEmpty()) {
+                    final ParseForest.Node parent = callStack.peek();
+                    lowLink[parent.id] = Math.min(lowLink[parent.id], lowLink[v.id]);
+                }
+                if (lowLink[v.id] == index[v.id]) {
+                    int start = stack.size();
+                    do start--; while (stack.get(start) != v);
+                    final List<ParseForest.Node> members = stack.subList(start, stack.size());
+                    final ParseForest.Node[] component = members.toArray(new ParseForest.Node[members.size()]);
+                    for (final ParseForest.Node w : component) onStack[w.id] = false;
+                    members.clear();
+                    components.add(component);
+                }
+            }
+        }
+    }
+
+    private static Iterator<ParseForest.Node> childrenOf(final ParseForest.Node node) {
+        final List<ParseForest.Node> children = new ArrayList<>();
+        for (final ParseForest.PackedNode packed : node.getAlternatives()) children.addAll(packed.children());
+        return children.iterator();
+    }
+
+    /**
+     * @return Log of the summed probability of all derivations of every node, including the scan probabilities of
+     * its tokens
+     */
+    static double[] logInside(final ParseForest<?> forest, final List<ParseForest.Node[]> bottomUpComponents) {
+        final int n = forest.getNodeCount();
+        final double[] logInside = new double[n];
+        Arrays.fill(logInside, Double.NEGATIVE_INFINITY);
+        final int[] localIndex = new int[n];
+        Arrays.fill(localIndex, -1);
+
+        for (final ParseForest.Node[] component : bottomUpComponents) {
+            final int m = component.length;
+            for (int i = 0; i < m; i++) localIndex[component[i].id] = i;
+
+            // A: probability of going to a node in the component; b: derivations that leave the component
+            final double[][] A = new double[m][m];
+            final double[] logB = new double[m];
+            for (int i = 0; i < m; i++) {
+                final ParseForest.Node node = component[i];
+                if (node instanceof ParseForest.TokenNode) {
+                    logB[i] = Math.log(((ParseForest.TokenNode<?>) node).scanProbability);
+                    continue;
+                }
+                final List<ParseForest.PackedNode> alternatives = node.getAlternatives();
+                final double[] terms = new double[alternatives.size()];
+                int count = 0;
+                for (final ParseForest.PackedNode packed : alternatives) {
+                    final int j = localIndex[packed.right.id];
+                    if (j >= 0 || (packed.left != null && localIndex[packed.left.id] >= 0))
+                        A[i][j] += Math.exp(logRule(node, packed, localIndex));
+                    else terms[count++] = logInside(node, packed, logInside);
+                }
+                logB[i] = logSum(terms, count);
+            }
+
+            final double[] solution = logSolve(A, logB);
+            for (int i = 0; i < m; i++) {
+                logInside[component[i].id] = solution[i];
+                localIndex[component[i].id] = -1;
+            }
+        }
+        return logInside;
+    }
+
+    /**
+     * @return Log of the summed probability of all derivations of the sentence in which every node occurs, leaving
+     * out the derivation of the node itself
+     */
+    static double[] logOutside(final ParseForest<?> forest,
+                               final List<ParseForest.Node[]> bottomUpComponents,
+                               final double[] logInside) {
+        final int n = forest.getNodeCount();
+        // Incoming edges: for every child, the alternatives that it is a child of
+        final List<List<ParseForest.Node>> parentNodes = new ArrayList<>(n);
+        final List<List<ParseForest.PackedNode>> parentAlternatives = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            parentNodes.add(null);
+            parentAlternatives.add(null);
+        }
+        for (final ParseForest.Node[] component : bottomUpComponents)
+            for (final ParseForest.Node node : component)
+                for (final ParseForest.PackedNode packed : node.getAlternatives())
+                    for (final ParseForest.Node child : packed.children()) {
+                        if (parentNodes.get(child.id) == null) {
+                            parentNodes.set(child.id, new ArrayList<>(2));
+                            parentAlternatives.set(child.id, new ArrayList<>(2));
+                        }
+                        parentNodes.get(child.id).add(node);
+                        parentAlternatives.get(child.id).add(packed);
+                    }
+
+        final double[] logOutside = new double[n];
+        Arrays.fill(logOutside, Double.NEGATIVE_INFINITY);
+        final int[] localIndex = new int[n];
+        Arrays.fill(localIndex, -1);
+        final ParseForest.Node root = forest.root;
+        double[] terms = new double[1];
+        for (int c = bottomUpComponents.size() - 1; c >= 0; c--) {
+            final ParseForest.Node[] component = bottomUpComponents.get(c);
+            final int m = component.length;
+            for (int i = 0; i < m; i++) localIndex[component[i].id] = i;
+
+            // A: probability of coming from a parent in the component; b: derivations that come from outside of it
+            final double[][] A = new double[m][m];
+            final double[] logB = new double[m];
+            for (int i = 0; i < m; i++) {
+                final ParseForest.Node node = component[i];
+                final List<ParseForest.Node> parents = parentNodes.get(node.id);
+                final int count = parents == null ? 0 : parents.size();
+                if (count + 1 > terms.length) terms = new double[count + 1];
+                int outside = 0;
+                for (int j = 0; j < count; j++) {
+                    final ParseForest.Node parent = parents.get(j);
+                    final ParseForest.PackedNode packed = parentAlternatives.get(node.id).get(j);
+                    final int k = localIndex[parent.id];
+                    if (k >= 0) A[i][k] += Math.exp(logRule(parent, packed, localIndex));
+                    else {
+                        // Outside of the parent, times the rule and the sibling
+                        double value = logOutside[parent.id] + logRule(parent, packed);
+                        if (packed.left != null) value += packed.left == node ? logInside[packed.right.id] : logInside[packed.left.id];
+                        terms[outside++] = value;
+                    }
+                }
+                terms[outside++] = node == root ? 0.0 : Double.NEGATIVE_INFINITY;
+                logB[i] = logSum(terms, outside);
+            }
+
+            final double[] solution = logSolve(A, logB);
+            for (int i = 0; i < m; i++) {
+                logOutside[component[i].id] = solution[i];
+                localIndex[component[i].id] = -1;
+            }
+        }
+        return logOutside;
+    }
+
+    /**
+     * @return Log probability of the rule of given alternative if it is complete at given node, 0 otherwise
+     */
+    static double logRule(final ParseForest.Node node, final ParseForest.PackedNode packed) {
+        return node instanceof ParseForest.SymbolNode ? Math.log(packed.rule.probability) : 0.0;
+    }
+
+    /**
+     * Like {@link #logRule(ParseForest.Node, ParseForest.PackedNode)}, for an alternative that stays in the
+     * component of its node. Without empty rules, that can only be a unit production.
+     *
+     * @param localIndex Index in the component, by node id, or -1 for nodes outside of it
+     */
+    private static double logRule(final ParseForest.Node node, final ParseForest.PackedNode packed, final int[] localIndex) {
+        if (packed.left != null || localIndex[packed.right.id] < 0)
+            throw new IssueRequest("Expected a unit production in a cycle, got " + packed.rule + ". This is a bug.");
+        return logRule(node, packed);
+    }
+
+    /**
+     * @return Log inside probability of given alternative of given node
+     */
+    static double logInside(final ParseForest.Node node, final ParseForest.PackedNode packed, final double[] logInside) {
+        double value = logInside[packed.right.id] + logRule(node, packed);
+        if (packed.left != null) value += logInside[packed.left.id];
+        return value;
+    }
+
+    /**
+     * Solves <code>x = A x + b</code>, or <code>x = (I - A)^-1 b</code>, where the entries of <code>b</code> and the
+     * solution are logarithms. <code>b</code> is scaled so that its largest entry is 1, so that small probabilities
+     * don't underflow.
+     */
+    private static double[] logSolve(final double[][] A, final double[] logB) {
+        final int m = logB.length;
+        double max = Double.NEGATIVE_INFINITY;
+        for (final double value : logB) max = Math.max(max, value);
+        if (max == Double.NEGATIVE_INFINITY) return logB;
+
+        if (m == 1) {
+            final double denominator = 1.0 - A[0][0];
+            if (denominator <= 0.0) throw new IssueRequest("Cycle of unit productions has probability 1");
+            return new double[]{logB[0] - Math.log(denominator)};
+        }
+        final Matrix I_minus_A = new Matrix(m, m);
+        final Matrix b = new Matrix(m, 1);
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) I_minus_A.set(i, j, (i == j ? 1.0 : 0.0) - A[i][j]);
+            b.set(i, 0, Math.exp(logB[i] - max));
+        }
+        final LUDecomposition luDecomposition = new LUDecomposition(I_minus_A);
+        if (!luDecomposition.isNonsingular()) throw new IssueRequest("Matrix is singular");
+        final Matrix x = luDecomposition.solve(b);
+        final double[] solution = new double[m];
+        // Rounding may leave a tiny negative value where there is no probability
+        for (int i = 0; i < m; i++) solution[i] = max + Math.log(Math.max(0.0, x.get(i, 0)));
+        return solution;
+    }
+
+    private static double logSum(final double[] terms, final int count) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) max = Math.max(max, terms[i]);
+        if (max == Double.NEGATIVE_INFINITY) return max;
+        double sum = 0.0;
+        for (int i = 0; i < count; i++) sum += Math.exp(terms[i] - max);
+        return max + Math.log(sum);
+    }
+}
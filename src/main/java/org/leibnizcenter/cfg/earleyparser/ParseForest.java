@@ -0,0 +1,394 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.earleyparser.chart.state.ScannedToken;
+import org.leibnizcenter.cfg.earleyparser.chart.state.State;
+import org.leibnizcenter.cfg.earleyparser.chart.statesets.StateSets;
+import org.leibnizcenter.cfg.errors.IssueRequest;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Shared packed parse forest (SPPF): all derivations of a sentence in one graph, in the binarised form of Scott (2008).
+ * There are three kinds of nodes:
+ * </p>
+ * <ul>
+ * <li>{@link SymbolNode}: a category over a span of tokens. There is exactly one for every
+ * <code>(category, start, end)</code>, shared by every derivation that uses it.</li>
+ * <li>{@link IntermediateNode}: a rule with the dot after its first <code>d</code> categories, over a span. These
+ * are the partially recognized prefixes of a rule, so that every alternative has at most two children.</li>
+ * <li>{@link TokenNode}: a scanned token.</li>
+ * </ul>
+ * <p>
+ * Symbol nodes and intermediate nodes have one or more {@link PackedNode alternatives}. An alternative for
+ * <code>X → α C · β</code> over <code>(i, k)</code> splits the span at some <code>m</code>: its left child derives
+ * <code>α</code> over <code>(i, m)</code> (an intermediate node, or null if <code>α</code> is empty) and its right
+ * child derives <code>C</code> over <code>(m, k)</code>. A node with more than one alternative is ambiguous.
+ * </p>
+ * <p>
+ * The forest is read from the chart, without parsing again, and has <code>O(n<sup>2</sup>)</code> nodes and
+ * <code>O(n<sup>3</sup>)</code> alternatives for a sentence of length <code>n</code>. Cyclic unit productions make for
+ * a cyclic graph.
+ * </p>
+ * <p>
+ * Unlike the parse trees that the parser returns, the forest is not cleaned of prefix sharing: for a grammar built with
+ * {@link org.leibnizcenter.cfg.grammar.Grammar.Builder#withPrefixSharing()}, it contains symbol nodes for {@link
+ * org.leibnizcenter.cfg.category.nonterminal.SharedPrefix} categories, and the {@link PackedNode#rule rules} of
+ * alternatives are the rules of the shared grammar, not the rules that it was built from. The number of derivations
+ * and their scores are the same. A shared prefix node stands for the rest of a rule after the prefix, which does not
+ * fit the binarised form, so it is left to the user to see through them, as {@link SpanMarginals} does.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ParseForest<T> {
+    public final SymbolNode root;
+    private final int nodeCount;
+    private final int packedNodeCount;
+
+    private ParseForest(final SymbolNode root, final int nodeCount, final int packedNodeCount) {
+        this.root = root;
+        this.nodeCount = nodeCount;
+        this.packedNodeCount = packedNodeCount;
+    }
+
+    /**
+     * @param stateSets States of a chart in which the whole sentence has been parsed
+     * @param goal      Goal category of the parse
+     * @param length    Number of tokens in the sentence
+     * @return Forest of all derivations of <code>goal</code> over the sentence, or null if there are none
+     */
+    public static <T> ParseForest<T> of(final StateSets<T> stateSets, final NonTerminal goal, final int length) {
+        boolean parsed = false;
+        for (final State state : stateSets.completedStates.getCompletedStates(length, goal))
+            if (state.ruleStartPosition == 0) parsed = true;
+        if (!parsed) return null;
+        return new Builder<>(stateSets).build(goal, length);
+    }
+
+    public SymbolNode getRoot() {
+        return root;
+    }
+
+    /**
+     * @return Number of symbol, intermediate and token nodes
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getPackedNodeCount() {
+        return packedNodeCount;
+    }
+
+    /**
+     * @return Whether the sentence has more than one derivation
+     */
+    public boolean isAmbiguous() {
+        return countDerivations() > 1.0;
+    }
+
+    /**
+     * @return Number of distinct parse trees in this forest, which is infinite if the forest contains a cycle
+     */
+    public double countDerivations() {
+        final Map<Node, Double> counts = new HashMap<>();
+        final Set<Node> onPath = new HashSet<>();
+        final Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        // Post-order walk: a node is counted when it is on top of the stack for the second time
+        while (!stack.isEmpty()) {
+            final Node node = stack.peek();
+            if (counts.containsKey(node)) {
+                stack.pop();
+                continue;
+            }
+            if (onPath.add(node)) {
+                for (final PackedNode packed : node.getAlternatives()) {
+                    for (final Node child : packed.children())
+                        if (onPath.contains(child) && !counts.containsKey(child))
+                            return Double.POSITIVE_INFINITY;
+                        else if (!counts.containsKey(child)) stack.push(child);
+                }
+            } else {
+                stack.pop();
+                onPath.remove(node);
+                double count = node.getAlternatives().isEmpty() ? 1.0 : 0.0;
+                for (final PackedNode packed : node.getAlternatives()) {
+                    double product = 1.0;
+                    for (final Node child : packed.children()) product *= counts.get(child);
+                    count += product;
+                }
+                counts.put(node, count);
+            }
+        }
+        return counts.get(root);
+    }
+
+    public abstract static class Node {
+        public final int start;
+        public final int end;
+        /**
+         * Number of this node, from 0 to {@link ParseForest#getNodeCount()}
+         */
+        final int id;
+
+        Node(final int id, final int start, final int end) {
+            this.id = id;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return Ways in which this node is derived, empty for tokens
+         */
+        public abstract List<PackedNode> getAlternatives();
+    }
+
+    /**
+     * Category over a span
+     */
+    public static final class SymbolNode extends Node {
+        public final Category category;
+        private final List<PackedNode> alternatives = new ArrayList<>(1);
+
+        SymbolNode(final int id, final Category category, final int start, final int end) {
+            super(id, start, end);
+            this.category = category;
+        }
+
+        @Override
+        public List<PackedNode> getAlternatives() {
+            return Collections.unmodifiableList(alternatives);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + category + ", " + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Prefix of a rule over a span
+     */
+    public static final class IntermediateNode extends Node {
+        public final Rule rule;
+        /**
+         * Number of categories in the prefix
+         */
+        public final int dotPosition;
+        private final List<PackedNode> alternatives = new ArrayList<>(1);
+
+        IntermediateNode(final int id, final Rule rule, final int dotPosition, final int start, final int end) {
+            super(id, start, end);
+            this.rule = rule;
+            this.dotPosition = dotPosition;
+        }
+
+        @Override
+        public List<PackedNode> getAlternatives() {
+            return Collections.unmodifiableList(alternatives);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + rule.toString(dotPosition) + ", " + start + ", " + end + ")";
+        }
+    }
+
+    public static final class TokenNode<T> extends Node {
+        /**
+         * Terminal or error category that the token was scanned as
+         */
+        public final Category category;
+        public final Token<T> token;
+        /**
+         * Probability of scanning the token, from the {@link
+         * org.leibnizcenter.cfg.earleyparser.callbacks.ScanProbability} that was parsed with, or 1 if there was none.
+         * For an error token that panic mode skipped, this is the scan probability of the whole skipped span up to
+         * and including this token, as the chart has it.
+         */
+        public final double scanProbability;
+
+        TokenNode(final int id, final Category category, final Token<T> token, final int start, final double scanProbability) {
+            super(id, start, start + 1);
+            this.category = category;
+            this.token = token;
+            this.scanProbability = scanProbability;
+        }
+
+        @Override
+        public List<PackedNode> getAlternatives() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public String toString() {
+            return "(" + category + " '" + token + "', " + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * One way to derive a symbol or intermediate node
+     */
+    public static final class PackedNode {
+        /**
+         * Rule of the grammar that was parsed with, which may be one of the synthetic rules of prefix sharing
+         */
+        public final Rule rule;
+        /**
+         * Position where the left child ends and the right child starts
+         */
+        public final int split;
+        /**
+         * Intermediate node for the categories before the last one, or null if there are none
+         */
+        public final IntermediateNode left;
+        /**
+         * Symbol node or token node for the last category
+         */
+        public final Node right;
+
+        PackedNode(final Rule rule, final int split, final IntermediateNode left, final Node right) {
+            this.rule = rule;
+            this.split = split;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * @return {@link #left}, if any, and {@link #right}
+         */
+        List<Node> children() {
+            return left == null ? Collections.singletonList(right) : Arrays.asList(left, right);
+        }
+    }
+
+    private static final class Builder<T> {
+        private final StateSets<T> stateSets;
+        private final Map<List<Object>, SymbolNode> symbols = new HashMap<>();
+        private final Map<State, IntermediateNode> intermediates = new HashMap<>();
+        private final Map<List<Object>, TokenNode<T>> tokens = new HashMap<>();
+        /**
+         * Nodes of which the alternatives have not been added yet
+         */
+        private final Deque<Node> toExpand = new ArrayDeque<>();
+        private int nodeCount = 0;
+        private int packedNodeCount = 0;
+
+        Builder(final StateSets<T> stateSets) {
+            this.stateSets = stateSets;
+        }
+
+        ParseForest<T> build(final NonTerminal goal, final int length) {
+            final SymbolNode root = symbol(goal, 0, length);
+            while (!toExpand.isEmpty()) {
+                final Node node = toExpand.pop();
+                if (node instanceof SymbolNode) {
+                    final SymbolNode symbol = (SymbolNode) node;
+                    for (final State state : stateSets.completedStates.getCompletedStates(symbol.end, (NonTerminal) symbol.category))
+                        if (state.ruleStartPosition == symbol.start)
+                            addAlternatives(symbol.alternatives, state.rule, state.rule.right.length, symbol.start, symbol.end);
+                } else {
+                    final IntermediateNode intermediate = (IntermediateNode) node;
+                    addAlternatives(intermediate.alternatives, intermediate.rule, intermediate.dotPosition, intermediate.start, intermediate.end);
+                }
+            }
+            return new ParseForest<>(root, nodeCount, packedNodeCount);
+        }
+
+        /**
+         * Adds the ways to derive <code>X → α C · β</code> over <code>(start, end)</code>, where <code>C</code> is
+         * at <code>dot - 1</code>
+         */
+        private void addAlternatives(final List<PackedNode> alternatives,
+                                     final Rule rule,
+                                     final int dot,
+                                     final int start,
+                                     final int end) {
+            final Category last = rule.right[dot - 1];
+            if (last instanceof Terminal || last instanceof NonLexicalToken) {
+                final ScannedToken<T> scannedToken = stateSets.getScannedToken(State.create(end, start, dot, rule));
+                if (scannedToken == null) throw new IssueRequest("Expected scanned token for " + rule.toString(dot));
+                final TokenNode<T> token = token(last, scannedToken, end - 1);
+                addIfDerivable(alternatives, rule, dot - 1, start, end - 1, token);
+                // Error tokens may span more than one token, in which case the dot stays where it is
+                if (last instanceof NonLexicalToken && end - 1 > start)
+                    addIfDerivable(alternatives, rule, dot, start, end - 1, token);
+            } else {
+                final Set<Integer> splits = new HashSet<>();
+                for (final State completed : stateSets.completedStates.getCompletedStates(end, (NonTerminal) last)) {
+                    final int split = completed.ruleStartPosition;
+                    if (split >= start && splits.add(split))
+                        addIfDerivable(alternatives, rule, dot - 1, start, split, symbol(last, split, end));
+                }
+            }
+        }
+
+        /**
+         * Adds an alternative with given right child if <code>rule</code> with the dot at <code>dot</code> derives
+         * <code>(start, split)</code>
+         */
+        private void addIfDerivable(final List<PackedNode> alternatives,
+                                    final Rule rule,
+                                    final int dot,
+                                    final int start,
+                                    final int split,
+                                    final Node right) {
+            final IntermediateNode left;
+            if (dot == 0) {
+                if (split != start) return;
+                left = null;
+            } else {
+                final State prefix = State.create(split, start, dot, rule);
+                if (!stateSets.contains(prefix)) return;
+                left = intermediate(prefix);
+            }
+            alternatives.add(new PackedNode(rule, split, left, right));
+            packedNodeCount++;
+        }
+
+        private SymbolNode symbol(final Category category, final int start, final int end) {
+            final List<Object> key = Arrays.asList(category, start, end);
+            SymbolNode node = symbols.get(key);
+            if (node == null) {
+                node = new SymbolNode(nodeCount++, category, start, end);
+                symbols.put(key, node);
+                toExpand.push(node);
+            }
+            return node;
+        }
+
+        private IntermediateNode intermediate(final State state) {
+            IntermediateNode node = intermediates.get(state);
+            if (node == null) {
+                node = new IntermediateNode(nodeCount++, state.rule, state.ruleDotPosition, state.ruleStartPosition, state.position);
+                intermediates.put(state, node);
+                toExpand.push(node);
+            }
+            return node;
+        }
+
+        /**
+         * Token nodes are shared by category and position: the scan probability only depends on the token and its
+         * position
+         */
+        private TokenNode<T> token(final Category category, final ScannedToken<T> scannedToken, final int start) {
+            final List<Object> key = Arrays.asList(category, start);
+            TokenNode<T> node = tokens.get(key);
+            if (node == null) {
+                final double scanProbability = Double.isNaN(scannedToken.scanProbability)
+                        ? 1.0
+                        : stateSets.grammar.semiring.toProbability(scannedToken.scanProbability);
+                node = new TokenNode<>(nodeCount++, category, scannedToken.scannedToken, start, scanProbability);
+                tokens.put(key, node);
+            }
+            return node;
+        }
+    }
+}
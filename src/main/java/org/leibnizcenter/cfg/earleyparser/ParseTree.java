@@ -7,12 +7,8 @@ import org.leibnizcenter.cfg.earleyparser.chart.state.ScannedToken;
 import org.leibnizcenter.cfg.earleyparser.chart.state.State;
 import org.leibnizcenter.cfg.grammar.Grammar;
 
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
 import java.util.function.BiFunction;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * A parse tree that represents the derivation of a string based on the
@@ -56,22 +52,6 @@ public abstract class ParseTree {
         this.children = children;
     }
 
-    private static Stream<ParseTree> getFlattenedStream(
-            final BiFunction<List<ParseTree>, ParseTree, FlattenOption> subTreesToKeep,
-            final List<ParseTree> parents,
-            final ParseTree tree) {
-        switch (subTreesToKeep.apply(parents, tree)) {
-            case REMOVE:
-                return Stream.empty();
-            case KEEP:
-                return Stream.of(tree.flatten(parents, subTreesToKeep));
-            case KEEP_ONLY_CHILDREN:
-                return tree.children.stream().flatMap(c -> getFlattenedStream(subTreesToKeep, parents, c));
-            default:
-                throw new NullPointerException();
-        }
-    }
-
     /**
      * Gets the category category of this parse tree.
      *
@@ -152,24 +132,23 @@ public abstract class ParseTree {
      * @return Newly instantiated tree
      */
     public ParseTree flatten(final BiFunction<List<ParseTree>, ParseTree, FlattenOption> subTreesToKeep) {
-        return flatten(new ArrayList<>(), subTreesToKeep);
+        return flattenedView(subTreesToKeep).materialize();
     }
 
-    private ParseTree flatten(final List<ParseTree> parents, final BiFunction<List<ParseTree>, ParseTree, FlattenOption> subTreesToKeep) {
-        final List<ParseTree> parents2 = new ArrayList<>(parents);
-        parents2.add(this);
-
-
-        return this instanceof NonLeaf ? new NonLeaf(
-                category,
-                children.stream()
-                        .flatMap(child -> getFlattenedStream(subTreesToKeep, parents2, child))
-                        .collect(Collectors.toList())
-        ) : this;
+    /**
+     * Like {@link #flatten(BiFunction)}, but without copying: given function is only applied to the nodes that a
+     * {@link FlattenedView#walk(Visitor) walk} over the view reaches.
+     *
+     * @param subTreesToKeep A function that returns the {@link FlattenOption} that specifies how to deal with the given
+     *                       tree node. Its first argument is the list of kept ancestors of the node, which is shared
+     *                       and changes during the walk, so it should not be retained.
+     */
+    public FlattenedView flattenedView(final BiFunction<List<ParseTree>, ParseTree, FlattenOption> subTreesToKeep) {
+        return new FlattenedView(this, subTreesToKeep);
     }
 
     /**
-     * Specifies how to {@link #flatten(List, BiFunction) flatten} a {@link ParseTree}.
+     * Specifies how to {@link #flatten(BiFunction) flatten} a {@link ParseTree}.
      */
     public enum FlattenOption {
         /**
@@ -186,6 +165,121 @@ public abstract class ParseTree {
         KEEP_ONLY_CHILDREN
     }
 
+    /**
+     * Receives the nodes of a {@link FlattenedView} in depth-first order
+     */
+    public interface Visitor {
+        /**
+         * @param tree           Kept node of the original tree. Its children in the view are visited next.
+         * @param keptAncestors  Kept ancestors of the node, root first. Shared and changed during the walk.
+         * @return Whether to visit the children of the node
+         */
+        boolean enter(ParseTree tree, List<ParseTree> keptAncestors);
+
+        /**
+         * Called after the children of a node that was {@link #enter(ParseTree, List) entered}
+         */
+        void leave(ParseTree tree);
+    }
+
+    /**
+     * A parse tree with nodes removed according to some {@link FlattenOption} function, that is not copied but
+     * evaluated while it is walked. The root is always kept.
+     */
+    public static final class FlattenedView {
+        private final ParseTree root;
+        private final BiFunction<List<ParseTree>, ParseTree, FlattenOption> subTreesToKeep;
+
+        private FlattenedView(final ParseTree root,
+                              final BiFunction<List<ParseTree>, ParseTree, FlattenOption> subTreesToKeep) {
+            this.root = root;
+            this.subTreesToKeep = subTreesToKeep;
+        }
+
+        /**
+         * Walks the kept nodes depth-first, with an explicit stack and one ancestor list for the whole walk
+         */
+        public void walk(final Visitor visitor) {
+            final List<ParseTree> ancestors = new ArrayList<>();
+            final Deque<Frame> frames = new ArrayDeque<>();
+            enter(root, visitor, ancestors, frames);
+            while (!frames.isEmpty()) {
+                final Frame frame = frames.peek();
+                if (!frame.children.hasNext()) {
+                    frames.pop();
+                    if (frame.kept) {
+                        ancestors.remove(ancestors.size() - 1);
+                        visitor.leave(frame.tree);
+                    }
+                    continue;
+                }
+                final ParseTree child = frame.children.next();
+                switch (subTreesToKeep.apply(ancestors, child)) {
+                    case REMOVE:
+                        break;
+                    case KEEP:
+                        enter(child, visitor, ancestors, frames);
+                        break;
+                    case KEEP_ONLY_CHILDREN:
+                        if (child.children != null) frames.push(new Frame(child, false));
+                        break;
+                    default:
+                        throw new NullPointerException();
+                }
+            }
+        }
+
+        private static void enter(final ParseTree tree,
+                                  final Visitor visitor,
+                                  final List<ParseTree> ancestors,
+                                  final Deque<Frame> frames) {
+            if (visitor.enter(tree, ancestors) && tree.children != null && !tree.children.isEmpty()) {
+                ancestors.add(tree);
+                frames.push(new Frame(tree, true));
+            } else visitor.leave(tree);
+        }
+
+        /**
+         * @return The view as a new tree. Leaves are not copied.
+         */
+        public ParseTree materialize() {
+            final Deque<List<ParseTree>> childLists = new ArrayDeque<>();
+            final ParseTree[] result = {root};
+            walk(new Visitor() {
+                @Override
+                public boolean enter(final ParseTree tree, final List<ParseTree> keptAncestors) {
+                    if (tree instanceof NonLeaf) childLists.push(new ArrayList<>());
+                    return true;
+                }
+
+                @Override
+                public void leave(final ParseTree tree) {
+                    if (tree instanceof NonLeaf) {
+                        final ParseTree copy = new NonLeaf(tree.category, childLists.pop());
+                        if (childLists.isEmpty()) result[0] = copy;
+                        else childLists.peek().add(copy);
+                    } else if (!childLists.isEmpty()) childLists.peek().add(tree);
+                }
+            });
+            return result[0];
+        }
+
+        private static final class Frame {
+            private final ParseTree tree;
+            private final Iterator<ParseTree> children;
+            /**
+             * Whether {@link #tree} is in the view, or only its children are
+             */
+            private final boolean kept;
+
+            Frame(final ParseTree tree, final boolean kept) {
+                this.tree = tree;
+                this.children = tree.children.iterator();
+                this.kept = kept;
+            }
+        }
+    }
+
     public static class Leaf<E> extends ParseTree {
         public final org.leibnizcenter.cfg.token.Token<E> token;
 
@@ -0,0 +1,142 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * Draws random parse trees from a {@link ParseForest}, each with its probability given the sentence.
+ * </p>
+ * <p>
+ * On construction, we compute the inside probability of every node in the forest: the summed probability of all
+ * ways to derive it. Sampling then walks the forest top-down and picks an alternative at every node. Each
+ * alternative is picked in proportion to its share of the inside probability.
+ * </p>
+ * <p>
+ * The forest and the inside probabilities are not changed after construction, so any number of threads can sample
+ * at the same time. Each thread passes its own {@link SplittableRandom}.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ParseTreeSampler<T> {
+    private final ParseForest<T> forest;
+    /**
+     * Natural logarithm of the inside probability, by node id
+     */
+    private final double[] logInside;
+
+    public ParseTreeSampler(final ParseForest<T> forest) {
+        this.forest = forest;
+        this.logInside = ForestScores.logInside(forest, ForestScores.bottomUpComponents(forest));
+    }
+
+    /**
+     * @return Probability of the sentence, summed over all trees in the forest, including the scan probabilities of
+     * the tokens
+     */
+    public double getProbability() {
+        return Math.exp(logInside[forest.root.id]);
+    }
+
+    /**
+     * @return Natural logarithm of the summed probability of all derivations of given node
+     */
+    public double getLogInside(final ParseForest.Node node) {
+        return logInside[node.id];
+    }
+
+    /**
+     * Draws one tree
+     *
+     * @param random Source of randomness, which should not be shared with other threads
+     */
+    public ParseTree sample(final SplittableRandom random) {
+        final Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(forest.root, choose(forest.root, random)));
+        while (true) {
+            final Frame frame = frames.peek();
+            if (frame.next >= 0) {
+                final ParseForest.Node child = frame.reversedChildren.get(frame.next--);
+                if (child instanceof ParseForest.TokenNode) {
+                    final ParseForest.TokenNode<?> token = (ParseForest.TokenNode<?>) child;
+                    frame.children.add(new ParseTree.Leaf<>(token.token, token.category));
+                } else {
+                    final ParseForest.SymbolNode symbol = (ParseForest.SymbolNode) child;
+                    frames.push(new Frame(symbol, choose(symbol, random)));
+                }
+            } else {
+                frames.pop();
+                if (frames.isEmpty()) return new ParseTree.NonLeaf(frame.node.category, frame.children);
+                final Frame parent = frames.peek();
+                if (frame.node.category instanceof SharedPrefix) parent.children.addAll(frame.children);
+                else parent.children.add(new ParseTree.NonLeaf(frame.node.category, frame.children));
+            }
+        }
+    }
+
+    /**
+     * Draws trees in parallel. The result only depends on the seed, not on how the work is scheduled.
+     *
+     * @param count Number of trees to draw
+     * @param seed  Seed for the random number generators, which are split off one generator per tree
+     */
+    public List<ParseTree> sample(final int count, final long seed) {
+        final SplittableRandom random = new SplittableRandom(seed);
+        final SplittableRandom[] randoms = new SplittableRandom[count];
+        for (int i = 0; i < count; i++) randoms[i] = random.split();
+        return IntStream.range(0, count)
+                .parallel()
+                .mapToObj(i -> sample(randoms[i]))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return Right-hand side of a randomly chosen derivation of given node, from right to left
+     */
+    private List<ParseForest.Node> choose(final ParseForest.SymbolNode node, final SplittableRandom random) {
+        final List<ParseForest.Node> reversedChildren = new ArrayList<>();
+        ParseForest.Node current = node;
+        while (current != null) {
+            final ParseForest.PackedNode packed = choose(current, random.nextDouble());
+            reversedChildren.add(packed.right);
+            current = packed.left;
+        }
+        return reversedChildren;
+    }
+
+    /**
+     * @param uniform Number in [0, 1)
+     */
+    private ParseForest.PackedNode choose(final ParseForest.Node node, final double uniform) {
+        final List<ParseForest.PackedNode> alternatives = node.getAlternatives();
+        final double total = logInside[node.id];
+        double cumulative = 0.0;
+        for (final ParseForest.PackedNode packed : alternatives) {
+            cumulative += Math.exp(ForestScores.logInside(node, packed, logInside) - total);
+            if (uniform < cumulative) return packed;
+        }
+        // Rounding errors
+        return alternatives.get(alternatives.size() - 1);
+    }
+
+    private static final class Frame {
+        private final ParseForest.SymbolNode node;
+        private final List<ParseForest.Node> reversedChildren;
+        private final List<ParseTree> children;
+        private int next;
+
+        Frame(final ParseForest.SymbolNode node, final List<ParseForest.Node> reversedChildren) {
+            this.node = node;
+            this.reversedChildren = reversedChildren;
+            this.children = new ArrayList<>(reversedChildren.size());
+            this.next = reversedChildren.size() - 1;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.leibnizcenter.cfg.earleyparser;
 import org.leibnizcenter.cfg.category.Category;
 import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
 import org.leibnizcenter.cfg.category.terminal.Terminal;
 import org.leibnizcenter.cfg.earleyparser.callbacks.ParseOptions;
 import org.leibnizcenter.cfg.earleyparser.callbacks.ScanProbability;
@@ -13,9 +14,11 @@ import org.leibnizcenter.cfg.earleyparser.chart.state.State;
 import org.leibnizcenter.cfg.earleyparser.chart.statesets.StateSets;
 import org.leibnizcenter.cfg.errors.IssueRequest;
 import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.PreLexedCorpus;
 import org.leibnizcenter.cfg.token.Token;
 
-import java.util.Collection;
+import java.util.*;
 
 import static org.leibnizcenter.cfg.util.Collections2.isFilled;
 
@@ -143,86 +146,42 @@ public class Parser<T> {
     }
 
     /**
-     * Performs the backward part of the forward-backward algorithm
+     * Performs the backward part of the forward-backward algorithm. Walks back over the right hand side of every rule
+     * with a cursor of plain positions, and keeps an explicit stack of the rules that are waiting for a completed child,
+     * so that the depth of the tree is not limited by the call stack.
      */
-    public static ParseTree getViterbiParse(final State state, final Chart chart) {
-        if (state.ruleDotPosition <= 0)
-            // Prediction state
-            return new ParseTree.NonLeaf(state.rule.left);
-        else {
-            final Category prefixEnd = state.rule.getRight()[state.ruleDotPosition - 1];
-
-
-            if (prefixEnd instanceof NonLexicalToken) {
-                // Scanned terminal state
-                final ScannedToken scannedToken = chart.stateSets.getScannedToken(state);
-//                if (scannedToken.scannedCategory instanceof NonLexicalToken)
-//                    System.out.println(scannedToken.scannedToken);
-                // let \'a = \, call
-                final int position = state.position;
-
-                final int previousDotPosition = state.ruleDotPosition + state.ruleStartPosition == state.position ? state.ruleDotPosition - 1 : state.ruleDotPosition;
-                final State state1 = State.create(
-                        state.position - 1,
-                        state.ruleStartPosition,
-                        previousDotPosition,
-                        state.rule
-                );
-                final ParseTree T = getViterbiParse(
-                        state1,
-                        chart
-                );
-                if (scannedToken == null) {
-                    throw new NullPointerException();
-                }
-                //noinspection unchecked
-                T.addRightMost(new ParseTree.Leaf<>(scannedToken));
-                return T;
-            } else if (prefixEnd instanceof Terminal) {
-                // Scanned terminal state
-                final ScannedToken scannedState = chart.stateSets.getScannedToken(state);
-//                if (scannedState.scannedCategory instanceof NonLexicalToken)
-//                    System.out.println(scannedState.scannedToken);
-                // let \'a = \, call
-                final int position = state.position;
-
-                final State preScanState = State.create(
-                        state.position - 1,
-                        state.ruleStartPosition,
-                        state.ruleDotPosition - 1,
-                        state.rule
-                );
-                final ParseTree T = getViterbiParse(
-                        preScanState,
-                        chart
-                );
-                //noinspection unchecked
-                T.addRightMost(new ParseTree.Leaf<>(scannedState));
-                return T;
+    public static ParseTree getViterbiParse(final State state, final Chart<?> chart) {
+        return backtrace(state, chart, PARSE_TREE_BUILDER);
+    }
+
+    /**
+     * Like {@link #getViterbiParse(State, Chart)}, but writes the tree straight into a {@link CompactParseTree}
+     * without creating {@link ParseTree} objects.
+     */
+    public static <T> CompactParseTree<T> getCompactViterbiParse(final State state, final Chart<T> chart) {
+        return getCompactViterbiParse(state, chart, false);
+    }
+
+    private static <T> CompactParseTree<T> getCompactViterbiParse(final State state,
+                                                                  final Chart<T> chart,
+                                                                  final boolean inlineSharedPrefixes) {
+        final CompactParseTree.Builder<T> builder = new CompactParseTree.Builder<>(inlineSharedPrefixes);
+        return builder.build(backtrace(state, chart, builder));
+    }
+
+    private static <N> N backtrace(final State state, final Chart<?> chart, final TreeBuilder<N> builder) {
+        final Deque<Backtrace<N>> waiting = new ArrayDeque<>();
+        Backtrace<N> current = new Backtrace<>(state);
+        while (true) {
+            final Backtrace<N> child = current.walkBack(chart, builder);
+            if (child != null) {
+                waiting.push(current);
+                current = child;
             } else {
-                if (!(prefixEnd instanceof NonTerminal)) throw new IssueRequest("Something went terribly wrong.");
-
-                // Completed non-terminal state
-                final State.ViterbiScore viterbi = chart.getViterbiScore(state); // must exist
-
-                // Completed state that led to the current state
-                final State origin = viterbi.origin;
-
-                // Recurse for predecessor state (before the completion happened)
-                final State predecessor = State.create(
-                        origin.ruleStartPosition,
-                        state.ruleStartPosition,
-                        state.ruleDotPosition - 1,
-                        state.rule
-                );
-                final ParseTree T = getViterbiParse(
-                        predecessor
-                        , chart);
-                // Recurse for completed state
-                final ParseTree Tprime = getViterbiParse(origin, chart);
-
-                T.addRightMost(Tprime);
-                return T;
+                final N tree = builder.node(current.rule, current.ruleStartPosition, current.end, current.reversedChildren);
+                if (waiting.isEmpty()) return tree;
+                current = waiting.pop();
+                current.reversedChildren.add(tree);
             }
         }
     }
@@ -248,7 +207,25 @@ public class Parser<T> {
     public double recognize(final NonTerminal goal,
                             final Iterable<Token<T>> tokens,
                             @SuppressWarnings("SameParameterValue") final ParseOptions<T> callbacks) {
-        final ChartWithInputPosition<T> parse = parseAndCountTokens(goal, tokens, callbacks);
+        return recognize(parseAndCountTokens(goal, tokens, callbacks));
+    }
+
+    /**
+     * Parses a pre-lexed sentence and returns the parse probability
+     *
+     * @param goal     Goal category, typically S for Sentence
+     * @param corpus   Pre-lexed corpus, lexed with the grammar of this parser
+     * @param sentence Index of the sentence in the corpus
+     * @return Probability that given sentence matches given non-terminal with given grammar
+     */
+    public double recognize(final NonTerminal goal,
+                            final PreLexedCorpus<T> corpus,
+                            final int sentence,
+                            final ParseOptions<T> callbacks) {
+        return recognize(parseAndCountTokens(goal, corpus, sentence, callbacks));
+    }
+
+    private double recognize(final ChartWithInputPosition<T> parse) {
         final Collection<State> completedStates = parse.chart.stateSets.completedStates.getCompletedStates(parse.chartIndex, Category.START);
         if (isFilled(completedStates)) {
             if (completedStates.size() > 1)
@@ -290,15 +267,113 @@ public class Parser<T> {
             final NonTerminal S,
             final Iterable<Token<T>> tokens,
             final ParseOptions<T> callbacks) {
+        return getViterbiParseWithScore(S, parseAndCountTokens(S, tokens, callbacks));
+    }
+
+    public ParseTreeWithScore getViterbiParseWithScore(
+            final NonTerminal S,
+            final PreLexedCorpus<T> corpus,
+            final int sentence,
+            final ParseOptions<T> callbacks) {
+        return getViterbiParseWithScore(S, parseAndCountTokens(S, corpus, sentence, callbacks));
+    }
+
+    /**
+     * @return The Viterbi parse of given tokens, as a {@link CompactParseTree}
+     */
+    public CompactParseTree<T> getCompactViterbiParse(
+            final NonTerminal S,
+            final Iterable<Token<T>> tokens) {
+        return getCompactViterbiParse(S, tokens, null);
+    }
+
+    /**
+     * @return The Viterbi parse of given tokens, as a {@link CompactParseTree}
+     */
+    public CompactParseTree<T> getCompactViterbiParse(
+            final NonTerminal S,
+            final Iterable<Token<T>> tokens,
+            final ParseOptions<T> callbacks) {
         final ChartWithInputPosition<T> chart = parseAndCountTokens(S, tokens, callbacks);
+        return getCompactViterbiParse(getViterbiState(S, chart), chart.chart, grammar.hasSharedPrefixes());
+    }
+
+    /**
+     * @return All derivations of given tokens, as a {@link ParseForest}
+     * @see #getParseForest(NonTerminal, Iterable, ParseOptions)
+     */
+    public ParseForest<T> getParseForest(
+            final NonTerminal S,
+            final Iterable<Token<T>> tokens) {
+        return getParseForest(S, tokens, null);
+    }
+
+    /**
+     * @return All derivations of given tokens, as a {@link ParseForest}. Unlike parse trees, this contains the {@link
+     * SharedPrefix} nodes and synthetic rules of a grammar with prefix sharing.
+     */
+    public ParseForest<T> getParseForest(
+            final NonTerminal S,
+            final Iterable<Token<T>> tokens,
+            final ParseOptions<T> callbacks) {
+        final ChartWithInputPosition<T> chart = parseAndCountTokens(S, tokens, callbacks);
+        final ParseForest<T> forest = ParseForest.of(chart.chart.stateSets, S, chart.chartIndex);
+        if (forest == null) throw new RuntimeException("Could not parse sentence with goal " + S);
+        return forest;
+    }
+
+    /**
+     * @param threshold Constituents with a lower posterior probability are left out
+     * @return Posterior probability of every constituent of given tokens
+     * @see #getSpanMarginals(NonTerminal, Iterable, double, ParseOptions)
+     */
+    public SpanMarginals getSpanMarginals(
+            final NonTerminal S,
+            final Iterable<Token<T>> tokens,
+            final double threshold) {
+        return getSpanMarginals(S, tokens, threshold, null);
+    }
+
+    /**
+     * @param threshold Constituents with a lower posterior probability are left out
+     * @return Posterior probability of every constituent of given tokens. Scores include the scan probabilities of
+     * given options.
+     */
+    public SpanMarginals getSpanMarginals(
+            final NonTerminal S,
+            final Iterable<Token<T>> tokens,
+            final double threshold,
+            final ParseOptions<T> callbacks) {
+        return SpanMarginals.of(getParseForest(S, tokens, callbacks), threshold);
+    }
+
+    private static <T> State getViterbiState(final NonTerminal S, final ChartWithInputPosition<T> chart) {
         final StateSets<T> stateSets = chart.chart.stateSets;
         final Collection<State> completedStates = stateSets.completedStates.getCompletedStates(chart.chartIndex, Category.START);
 
         IssueRequest.ensure(completedStates.size() <= 1, "Found more than one Viterbi parse. This is a bug.");
         if (completedStates.isEmpty()) throw new RuntimeException("Could not parse sentence with goal " + S);
 
-        final State state = completedStates.iterator().next();
-        return new ParseTreeWithScore(getViterbiParse(state, chart.chart), chart.chart.getViterbiScore(state), grammar.semiring);
+        return completedStates.iterator().next();
+    }
+
+    private ParseTreeWithScore getViterbiParseWithScore(final NonTerminal S, final ChartWithInputPosition<T> chart) {
+        final State state = getViterbiState(S, chart);
+        final ParseTree parseTree = getViterbiParse(state, chart.chart);
+        return new ParseTreeWithScore(
+                grammar.hasSharedPrefixes() ? removeSharedPrefixes(parseTree) : parseTree,
+                chart.chart.getViterbiScore(state),
+                grammar.semiring
+        );
+    }
+
+    /**
+     * @return Given tree, with the children of every {@link SharedPrefix} node moved into its parent
+     */
+    private static ParseTree removeSharedPrefixes(final ParseTree parseTree) {
+        return parseTree.flatten((parents, tree) -> tree.category instanceof SharedPrefix
+                ? ParseTree.FlattenOption.KEEP_ONLY_CHILDREN
+                : ParseTree.FlattenOption.KEEP);
     }
 
     public Chart<T> parse(final NonTerminal S,
@@ -337,4 +412,112 @@ public class Parser<T> {
         return completeChart;
     }
 
+    /**
+     * Parses a sentence from a pre-lexed corpus, without matching tokens against terminals again
+     *
+     * @param S            Goal category
+     * @param corpus       Pre-lexed corpus, lexed with the grammar of this parser
+     * @param sentence     Index of the sentence in the corpus
+     * @param parseOptions Parse options, may be null
+     */
+    public ChartWithInputPosition<T> parseAndCountTokens(final NonTerminal S,
+                                                         final PreLexedCorpus<T> corpus,
+                                                         final int sentence,
+                                                         final ParseOptions<T> parseOptions) {
+        if (corpus.grammar.getTerminalsFingerprint() != grammar.getTerminalsFingerprint())
+            throw new IllegalArgumentException("Corpus was pre-lexed with a grammar that has different terminals");
+        final ChartWithInputPosition<T> completeChart = new ChartWithInputPosition<>(grammar, S, parseOptions);
+
+        final int length = corpus.getSentenceLength(sentence);
+        for (int i = 0; i < length; i++)
+            completeChart.next(corpus.getToken(sentence, i), corpus.getCategories(sentence, i));
+
+        return completeChart;
+    }
+
+
+    /**
+     * Receives the nodes of a Viterbi parse bottom-up, right to left
+     *
+     * @param <N> Type of built nodes
+     */
+    interface TreeBuilder<N> {
+        /**
+         * @param position Position after the scanned token
+         */
+        N leaf(ScannedToken<?> scannedToken, int position);
+
+        /**
+         * @param reversedChildren Children of the node from right to left
+         */
+        N node(Rule rule, int start, int end, List<N> reversedChildren);
+    }
+
+    private static final TreeBuilder<ParseTree> PARSE_TREE_BUILDER = new TreeBuilder<ParseTree>() {
+        @Override
+        public ParseTree leaf(final ScannedToken<?> scannedToken, final int position) {
+            return new ParseTree.Leaf<>(scannedToken);
+        }
+
+        @Override
+        public ParseTree node(final Rule rule, final int start, final int end, final List<ParseTree> reversedChildren) {
+            Collections.reverse(reversedChildren);
+            return new ParseTree.NonLeaf(rule.left, reversedChildren);
+        }
+    };
+
+    /**
+     * Position of the Viterbi backtrace in a single rule, with the children found so far from right to left
+     */
+    private static final class Backtrace<N> {
+        private final Rule rule;
+        private final int ruleStartPosition;
+        private final int end;
+        private final List<N> reversedChildren = new ArrayList<>();
+        private int position;
+        private int ruleDotPosition;
+
+        Backtrace(final State state) {
+            this.rule = state.rule;
+            this.ruleStartPosition = state.ruleStartPosition;
+            this.end = state.position;
+            this.position = state.position;
+            this.ruleDotPosition = state.ruleDotPosition;
+        }
+
+        /**
+         * Moves the dot back until it is at the start of the rule, or until it passes a non-terminal
+         *
+         * @return The completed state for the non-terminal that the dot was moved over, or null if the dot is at the
+         * start of the rule
+         */
+        Backtrace<N> walkBack(final Chart<?> chart, final TreeBuilder<N> builder) {
+            while (ruleDotPosition > 0) {
+                final State state = State.create(position, ruleStartPosition, ruleDotPosition, rule);
+                final Category prefixEnd = rule.getRight()[ruleDotPosition - 1];
+                if (prefixEnd instanceof NonLexicalToken) {
+                    // Scanned error token, which may span more than one token
+                    final ScannedToken<?> scannedToken = chart.stateSets.getScannedToken(state);
+                    if (scannedToken == null) throw new NullPointerException();
+                    reversedChildren.add(builder.leaf(scannedToken, position));
+                    if (ruleDotPosition + ruleStartPosition == position) ruleDotPosition--;
+                    position--;
+                } else if (prefixEnd instanceof Terminal) {
+                    // Scanned terminal state
+                    final ScannedToken<?> scannedToken = chart.stateSets.getScannedToken(state);
+                    reversedChildren.add(builder.leaf(scannedToken, position));
+                    ruleDotPosition--;
+                    position--;
+                } else {
+                    if (!(prefixEnd instanceof NonTerminal)) throw new IssueRequest("Something went terribly wrong.");
+                    // Completed non-terminal state, continue at the state before the completion happened
+                    final State origin = chart.getViterbiScore(state).origin; // must exist
+                    ruleDotPosition--;
+                    position = origin.ruleStartPosition;
+                    return new Backtrace<>(origin);
+                }
+            }
+            return null;
+        }
+    }
 }
@@ -0,0 +1,150 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>
+ * Posterior probability of every constituent: for every category <code>X</code> and span <code>(i, j)</code>, the
+ * probability that a parse of the sentence has an <code>X</code> over tokens <code>i</code> up to <code>j</code>,
+ * given the sentence:
+ * </p>
+ * <pre>
+ * P(X over (i, j) | sentence) = inside(X, i, j) * outside(X, i, j) / P(sentence)
+ * </pre>
+ * <p>
+ * Inside and outside probabilities are summed over the {@link ParseForest} of the sentence, and include the scan
+ * probabilities of its {@link ParseForest.TokenNode tokens}. When unit productions form
+ * a cycle, a category may occur more than once over the same span, and the posterior is the expected number of
+ * occurrences.
+ * </p>
+ * <p>
+ * The table is sparse: only entries with a posterior of at least some threshold are kept. Entries are ordered by
+ * start, then end, then descending posterior.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SpanMarginals {
+    private final double sentenceProbability;
+    private final int[] starts;
+    private final int[] ends;
+    private final Category[] categories;
+    private final double[] posteriors;
+
+    private SpanMarginals(final double sentenceProbability,
+                          final int[] starts,
+                          final int[] ends,
+                          final Category[] categories,
+                          final double[] posteriors) {
+        this.sentenceProbability = sentenceProbability;
+        this.starts = starts;
+        this.ends = ends;
+        this.categories = categories;
+        this.posteriors = posteriors;
+    }
+
+    /**
+     * @param threshold Entries with a lower posterior are left out
+     */
+    public static <T> SpanMarginals of(final ParseForest<T> forest, final double threshold) {
+        final List<ParseForest.Node[]> components = ForestScores.bottomUpComponents(forest);
+        final double[] logInside = ForestScores.logInside(forest, components);
+        final double[] logOutside = ForestScores.logOutside(forest, components, logInside);
+        final double logSentence = logInside[forest.root.id];
+
+        final List<ParseForest.SymbolNode> kept = new ArrayList<>();
+        final double[] posteriorById = new double[forest.getNodeCount()];
+        for (final ParseForest.Node[] component : components)
+            for (final ParseForest.Node node : component)
+                if (node instanceof ParseForest.SymbolNode && !(((ParseForest.SymbolNode) node).category instanceof SharedPrefix)) {
+                    final double posterior = Math.exp(logInside[node.id] + logOutside[node.id] - logSentence);
+                    if (posterior >= threshold && posterior > 0.0) {
+                        posteriorById[node.id] = posterior;
+                        kept.add((ParseForest.SymbolNode) node);
+                    }
+                }
+        kept.sort(Comparator.<ParseForest.SymbolNode>comparingInt(node -> node.start)
+                .thenComparingInt(node -> node.end)
+                .thenComparing(node -> -posteriorById[node.id]));
+
+        final int size = kept.size();
+        final int[] starts = new int[size];
+        final int[] ends = new int[size];
+        final Category[] categories = new Category[size];
+        final double[] posteriors = new double[size];
+        for (int i = 0; i < size; i++) {
+            final ParseForest.SymbolNode node = kept.get(i);
+            starts[i] = node.start;
+            ends[i] = node.end;
+            categories[i] = node.category;
+            posteriors[i] = posteriorById[node.id];
+        }
+        return new SpanMarginals(Math.exp(logSentence), starts, ends, categories, posteriors);
+    }
+
+    /**
+     * @return Probability of the sentence, summed over all its parses
+     */
+    public double getSentenceProbability() {
+        return sentenceProbability;
+    }
+
+    /**
+     * @return Number of entries
+     */
+    public int size() {
+        return posteriors.length;
+    }
+
+    public int getStart(final int entry) {
+        return starts[entry];
+    }
+
+    public int getEnd(final int entry) {
+        return ends[entry];
+    }
+
+    public Category getCategory(final int entry) {
+        return categories[entry];
+    }
+
+    public double getPosterior(final int entry) {
+        return posteriors[entry];
+    }
+
+    /**
+     * @return Posterior of given category over given span, or 0.0 if it is not in the table
+     */
+    public double get(final Category category, final int start, final int end) {
+        for (int entry = firstEntry(start, end); entry < size() && starts[entry] == start && ends[entry] == end; entry++)
+            if (categories[entry].equals(category)) return posteriors[entry];
+        return 0.0;
+    }
+
+    /**
+     * @return First entry with a span at or after given span
+     */
+    private int firstEntry(final int start, final int end) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[mid] < start || (starts[mid] == start && ends[mid] < end)) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (int entry = 0; entry < size(); entry++)
+            sb.append(categories[entry]).append(" (").append(starts[entry]).append(", ").append(ends[entry])
+                    .append("): ").append(posteriors[entry]).append('\n');
+        return sb.toString();
+    }
+}
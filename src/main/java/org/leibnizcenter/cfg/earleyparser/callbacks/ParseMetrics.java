@@ -0,0 +1,225 @@
+package org.leibnizcenter.cfg.earleyparser.callbacks;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Counters and timers for the phases of parsing, per chart column and in total. Attach an instance to a parse with
+ * {@link ParseOptions.Builder#withMetrics(ParseMetrics)}. Column <code>i</code> holds the work done for the token at
+ * chart position <code>i</code>: predicting at <code>i</code>, then scanning and completing into <code>i + 1</code>.
+ * </p>
+ * <p>
+ * Parses without metrics use {@link #NONE}, which records nothing and does not read the clock. Counts accumulate
+ * over all parses that an instance is attached to, until {@link #reset()}. Instances are not thread-safe, so
+ * use one per thread.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ParseMetrics {
+    /**
+     * Records nothing
+     */
+    public static final ParseMetrics NONE = new ParseMetrics(false);
+    /**
+     * Column that {@link Exporter} gets for totals over all columns
+     */
+    public static final int TOTAL = -1;
+
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final Phase[] PHASES = Phase.values();
+
+    private final boolean enabled;
+    /**
+     * By column, then by {@link Counter#ordinal()}
+     */
+    private long[][] counts = new long[0][];
+    /**
+     * By column, then by {@link Phase#ordinal()}
+     */
+    private long[][] nanos = new long[0][];
+    private int columnCount = 0;
+
+    public ParseMetrics() {
+        this(true);
+    }
+
+    private ParseMetrics(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return Current time in nanoseconds to pass to {@link #stop(Phase, int, long)}, or 0 if disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Adds the time since given start time to given phase
+     *
+     * @param start Result of {@link #start()}
+     */
+    public void stop(final Phase phase, final int column, final long start) {
+        if (enabled) nanosOf(column)[phase.ordinal()] += System.nanoTime() - start;
+    }
+
+    public void add(final Counter counter, final int column, final long amount) {
+        if (enabled) countsOf(column)[counter.ordinal()] += amount;
+    }
+
+    /**
+     * @return Number of columns that anything was recorded for
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+
+    public long getCount(final Counter counter, final int column) {
+        return column < columnCount ? counts[column][counter.ordinal()] : 0L;
+    }
+
+    public long getCount(final Counter counter) {
+        long total = 0L;
+        for (int column = 0; column < columnCount; column++) total += counts[column][counter.ordinal()];
+        return total;
+    }
+
+    public long getNanos(final Phase phase, final int column) {
+        return column < columnCount ? nanos[column][phase.ordinal()] : 0L;
+    }
+
+    public long getNanos(final Phase phase) {
+        long total = 0L;
+        for (int column = 0; column < columnCount; column++) total += nanos[column][phase.ordinal()];
+        return total;
+    }
+
+    /**
+     * @return Summed time of all phases in given column
+     */
+    public long getNanos(final int column) {
+        long total = 0L;
+        for (final Phase phase : PHASES) total += getNanos(phase, column);
+        return total;
+    }
+
+    public void reset() {
+        counts = new long[0][];
+        nanos = new long[0][];
+        columnCount = 0;
+    }
+
+    /**
+     * Passes every column to given exporter, in order, followed by the totals with column {@link #TOTAL}
+     */
+    public void export(final Exporter exporter) {
+        for (int column = 0; column < columnCount; column++) {
+            for (final Counter counter : COUNTERS) exporter.count(column, counter, counts[column][counter.ordinal()]);
+            for (final Phase phase : PHASES) exporter.nanos(column, phase, nanos[column][phase.ordinal()]);
+        }
+        for (final Counter counter : COUNTERS) exporter.count(TOTAL, counter, getCount(counter));
+        for (final Phase phase : PHASES) exporter.nanos(TOTAL, phase, getNanos(phase));
+    }
+
+    private long[] countsOf(final int column) {
+        ensureColumn(column);
+        return counts[column];
+    }
+
+    private long[] nanosOf(final int column) {
+        ensureColumn(column);
+        return nanos[column];
+    }
+
+    private void ensureColumn(final int column) {
+        if (column < columnCount) return;
+        if (column >= counts.length) {
+            final int capacity = Math.max(column + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, capacity);
+            nanos = Arrays.copyOf(nanos, capacity);
+        }
+        for (int i = columnCount; i <= column; i++) {
+            counts[i] = new long[COUNTERS.length];
+            nanos[i] = new long[PHASES.length];
+        }
+        columnCount = column + 1;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("column");
+        for (final Counter counter : COUNTERS) sb.append('\t').append(counter);
+        for (final Phase phase : PHASES) sb.append('\t').append(phase).append(" ns");
+        sb.append('\n');
+        export(new Exporter() {
+            @Override
+            public void count(final int column, final Counter counter, final long count) {
+                if (counter.ordinal() == 0) sb.append(column == TOTAL ? "total" : Integer.toString(column));
+                sb.append('\t').append(count);
+            }
+
+            @Override
+            public void nanos(final int column, final Phase phase, final long nanos) {
+                sb.append('\t').append(nanos);
+                if (phase.ordinal() == PHASES.length - 1) sb.append('\n');
+            }
+        });
+        return sb.toString();
+    }
+
+    public enum Counter {
+        /**
+         * States added by prediction
+         */
+        PREDICTED,
+        /**
+         * States added by scanning
+         */
+        SCANNED,
+        /**
+         * States added by completion, including the exact states that the Viterbi pass adds
+         */
+        COMPLETED,
+        /**
+         * Terms added to the forward and inner score expressions that are resolved after completion. Each term makes
+         * at most one product and one sum node; the semiring folds constant terms.
+         */
+        EXPRESSION_TERMS,
+        /**
+         * Times that a better Viterbi score was found for a state during completion
+         */
+        VITERBI_UPDATES
+    }
+
+    public enum Phase {
+        PREDICT,
+        SCAN,
+        /**
+         * Completion of forward and inner scores, not including {@link #VITERBI}
+         */
+        COMPLETE,
+        /**
+         * Completion of Viterbi scores
+         */
+        VITERBI
+    }
+
+    /**
+     * Receives recorded values, for example to send them to a monitoring system
+     */
+    public interface Exporter {
+        /**
+         * @param column Chart column, or {@link ParseMetrics#TOTAL}
+         */
+        void count(int column, Counter counter, long count);
+
+        /**
+         * @param column Chart column, or {@link ParseMetrics#TOTAL}
+         */
+        void nanos(int column, Phase phase, long nanos);
+    }
+}
@@ -23,6 +23,10 @@ public class ParseOptions<T> {
     public final ParseCallback<T> onPreComplete;
     public final ParseCallback<T> onPostComplete;
     public final ScanMode scanMode;
+    /**
+     * Never null; {@link ParseMetrics#NONE} if nothing should be recorded
+     */
+    public final ParseMetrics metrics;
 
 //    public final boolean parallelizePredict;
 //    public final boolean parallelizeScan;
@@ -44,6 +48,23 @@ public class ParseOptions<T> {
             boolean parallelizePredict,
             boolean parallelizeScan,
             boolean parallelizeComplete*/
+    ) {
+        this(scanProbability, onPostPredict, onPostScan, onPostComplete, onPrePredict, onPreScan, onPreComplete, scanMode, null);
+    }
+
+    public ParseOptions(
+            final ScanProbability<T> scanProbability,
+
+            final ParseCallback<T> onPostPredict,
+            final ParseCallback<T> onPostScan,
+            final ParseCallback<T> onPostComplete,
+
+            final ParseCallback<T> onPrePredict,
+            final ParseCallback<T> onPreScan,
+            final ParseCallback<T> onPreComplete,
+
+            final ScanMode scanMode,
+            final ParseMetrics metrics
     ) {
         this.scanProbability = scanProbability;
 
@@ -56,6 +77,7 @@ public class ParseOptions<T> {
         this.onPreComplete = onPreComplete;
 
         this.scanMode = scanMode;
+        this.metrics = metrics == null ? ParseMetrics.NONE : metrics;
 
 //        this.parallelizePredict = parallelizePredict;
 //        this.parallelizeScan = parallelizeScan;
@@ -99,6 +121,7 @@ public class ParseOptions<T> {
         private ParseCallback<T> onPreComplete;
 
         private ScanMode scanMode;
+        private ParseMetrics metrics;
 //        private boolean parallelizePredict = false;
 //        private boolean parallelizeScan = false;
 //        private boolean parallelizeComplete = false;
@@ -149,6 +172,14 @@ public class ParseOptions<T> {
             return this;
         }
 
+        /**
+         * Records counts and timings of the parse phases in given metrics
+         */
+        public Builder<T> withMetrics(final ParseMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
         public ParseOptions<T> build() {
             return new ParseOptions<>(
                     scanProbability,
@@ -158,7 +189,8 @@ public class ParseOptions<T> {
                     onPrePredict,
                     onPreScan,
                     onPreComplete,
-                    scanMode
+                    scanMode,
+                    metrics
             );
         }
 
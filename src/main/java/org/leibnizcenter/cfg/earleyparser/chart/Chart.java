@@ -10,6 +10,7 @@ import org.leibnizcenter.cfg.earleyparser.Complete;
 import org.leibnizcenter.cfg.earleyparser.DeferredStateScoreComputations;
 import org.leibnizcenter.cfg.earleyparser.ExpressionWrapper;
 import org.leibnizcenter.cfg.earleyparser.Scan;
+import org.leibnizcenter.cfg.earleyparser.callbacks.ParseMetrics;
 import org.leibnizcenter.cfg.earleyparser.callbacks.ParseOptions;
 import org.leibnizcenter.cfg.earleyparser.callbacks.ScanProbability;
 import org.leibnizcenter.cfg.earleyparser.chart.state.State;
@@ -17,6 +18,7 @@ import org.leibnizcenter.cfg.earleyparser.chart.statesets.StateSets;
 import org.leibnizcenter.cfg.errors.Bug;
 import org.leibnizcenter.cfg.errors.IssueRequest;
 import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.grammar.PredictionTable;
 import org.leibnizcenter.cfg.rule.Rule;
 import org.leibnizcenter.cfg.token.TokenWithCategories;
 
@@ -131,11 +133,16 @@ public class Chart<T> {
 
     public void predict(final int i, final TokenWithCategories<T> token) {
         final Chart<T> chart = this;
-        if (parseOptions != null) parseOptions.beforePredict(i, token, chart);
+        parseOptions.beforePredict(i, token, chart);
 
-        predict(i);
+        final ParseMetrics metrics = parseOptions.metrics;
+        final int statesBefore = metrics.isEnabled() ? stateSets.countStates(i) : 0;
+        final long start = metrics.start();
+        predict(i, token == null ? null : grammar.firstSets.toLookahead(token.categories));
+        metrics.stop(ParseMetrics.Phase.PREDICT, i, start);
+        if (metrics.isEnabled()) metrics.add(ParseMetrics.Counter.PREDICTED, i, stateSets.countStates(i) - statesBefore);
 
-        if (parseOptions != null) parseOptions.onPredict(i, token, chart);
+        parseOptions.onPredict(i, token, chart);
     }
 
     /**
@@ -147,13 +154,25 @@ public class Chart<T> {
      * @param index The token index to make predictions at.
      */
     void predict(final int index) {
+        predict(index, (int[]) null);
+    }
+
+    /**
+     * Makes predictions in the specified chart at the given index, skipping rules that can not start with
+     * the next token.
+     *
+     * @param index     The token index to make predictions at.
+     * @param lookahead Sorted terminal ids of the token at given index (see {@link org.leibnizcenter.cfg.grammar.FirstSets#toLookahead(Collection)}),
+     *                  or null to predict all rules.
+     */
+    void predict(final int index, final int[] lookahead) {
         // O(|stateset(i)|) = O(|grammar|): For all states <code>i: X<sub>k</sub> → λ·Zμ</code>...
         final Set<State> activeOnNonTerminals = stateSets.activeStates.getActiveOnNonTerminals(index);
         if (activeOnNonTerminals != null && activeOnNonTerminals.size() > 0) {
             assert activeOnNonTerminals.stream()
                     .noneMatch(p -> p.position != index); // all on position == index
             // Copy set to avoid concurrent modification
-            new HashSet<>(activeOnNonTerminals).forEach(this::predictStatesForState);
+            new HashSet<>(activeOnNonTerminals).forEach(state -> predictStatesForState(state, lookahead));
         }
 
         // Streamy:
@@ -215,25 +234,56 @@ public class Chart<T> {
     }
 
 
-    private void predictStatesForState(final State statePredecessor) {
+    private void predictStatesForState(final State statePredecessor, final int[] lookahead) {
         final Category Z = statePredecessor.getActiveCategory();
-        // For all productions Y → v such that R(Z =*L> Y) is nonzero
-        grammar.nonZeroLeftStartRules.get(Z).forEach(Y_to_v -> predictStatesForRule(statePredecessor, Z, Y_to_v));
+        final double prevForward = stateSets.forwardScores.get(statePredecessor);
+        if (lookahead == null) {
+            // For all productions Y → v such that R(Z =*L> Y) is nonzero
+            final PredictionTable predictions = grammar.getPredictions(Z);
+            for (int i = 0; i < predictions.rules.length; i++)
+                predictStatesForRule(statePredecessor, prevForward, predictions.rules[i], predictions.scores[i]);
+        } else {
+            // For all productions Y → v such that R(Z =*L> Y) is nonzero, v does not start with a terminal,
+            // and Y → v might derive a string starting with the next token
+            final PredictionTable predictions = grammar.getStructuralPredictions(Z);
+            for (int i = 0; i < predictions.rules.length; i++)
+                if (grammar.firstSets.mayStartWith(predictions.rules[i], lookahead))
+                    predictStatesForRule(statePredecessor, prevForward, predictions.rules[i], predictions.scores[i]);
+
+            // For all productions Y → tv such that t matches the next token and R(Z =*L> Y) is nonzero
+            final ExpressionSemiring semiring = grammar.semiring;
+            final double zero = semiring.zero();
+            final int zId = grammar.getNonTerminalId((NonTerminal) Z);
+            for (final int terminalId : lookahead) {
+                final Rule[] lexicalRules = grammar.getLexicalRules(terminalId);
+                final int[] leftIds = grammar.getLexicalRuleLeftIds(terminalId);
+                for (int i = 0; i < lexicalRules.length; i++) {
+                    final double leftStarScore = grammar.getLeftStarScore(zId, leftIds[i]);
+                    if (leftStarScore != zero) predictStatesForRule(
+                            statePredecessor,
+                            prevForward,
+                            lexicalRules[i],
+                            semiring.times(leftStarScore, lexicalRules[i].probabilityAsSemiringElement)
+                    );
+                }
+            }
+        }
     }
 
-    private void predictStatesForRule(final State statePredecessor, final Category activeOnPredecessor, final Rule Y_to_v) {
+    /**
+     * @param predictionScore <code>R(Z =*L&gt; Y) * P(Y → v)</code>
+     */
+    private void predictStatesForRule(final State statePredecessor,
+                                      final double prevForward,
+                                      final Rule Y_to_v,
+                                      final double predictionScore) {
         // we predict state <code>i: Y<sub>i</sub> → ·v</code>
-        final double prevForward = stateSets.forwardScores.get(statePredecessor);
 
         // γ' = P(Y → v)
         final double Y_to_vProbability = Y_to_v.probabilityAsSemiringElement;
 
         // α' = α * R(Z =*L> Y) * P(Y → v)
-        final double newForward = grammar.semiring.times(
-                prevForward,
-                grammar.getLeftStarScore(activeOnPredecessor, Y_to_v.left),
-                Y_to_vProbability
-        );
+        final double newForward = grammar.semiring.times(prevForward, predictionScore);
 
         final State predicted = State.create(statePredecessor.position, statePredecessor.position, 0, Y_to_v);
 
@@ -253,12 +303,17 @@ public class Chart<T> {
     }
 
     public void scan(final int i, final TokenWithCategories<T> token) {
-        final ScanProbability<T> scanProbability = parseOptions != null ? parseOptions.scanProbability : null;
-        if (parseOptions != null) parseOptions.beforeScan(i, token, this);
+        final ScanProbability<T> scanProbability = parseOptions.scanProbability;
+        parseOptions.beforeScan(i, token, this);
 
+        final ParseMetrics metrics = parseOptions.metrics;
+        final int statesBefore = metrics.isEnabled() ? stateSets.countStates(i + 1) : 0;
+        final long start = metrics.start();
         scan(i, token, scanProbability);
+        metrics.stop(ParseMetrics.Phase.SCAN, i, start);
+        if (metrics.isEnabled()) metrics.add(ParseMetrics.Counter.SCANNED, i, stateSets.countStates(i + 1) - statesBefore);
 
-        if (parseOptions != null) parseOptions.onScan(i, token, this);
+        parseOptions.onScan(i, token, this);
     }
 
     /**
@@ -305,7 +360,8 @@ public class Chart<T> {
                         postScanForward,
                         postScanInner,
                         /* Create the state <code>i+1: X<sub>k</sub> → λt·μ</code>. Note that this state is unique for each preScanState */
-                        State.create(chartPosition + 1, preScanState.ruleStartPosition, preScanState.advanceDot(), preScanState.rule)
+                        State.create(chartPosition + 1, preScanState.ruleStartPosition, preScanState.advanceDot(), preScanState.rule),
+                        scanProb
                 );
             }
         }
@@ -397,9 +453,11 @@ public class Chart<T> {
      * (assuming p = [0,1] and Occam's razor). ~This method does not guarantee a left most parse.~
      *
      * @param completedStates Completed state to calculate Viterbi score for
+     * @return Number of states that got a better Viterbi score
      */
     @SuppressWarnings("WeakerAccess")
-    private void computeViterbiScoresForCompletedStates(Collection<State> completedStates) {
+    private int computeViterbiScoresForCompletedStates(Collection<State> completedStates) {
+        int updates = 0;
         while (completedStates.size() > 0) {
             final Set<State> nextSetOfCompletedStates = new HashSet<>();
             for (final State completedState : completedStates) {
@@ -412,6 +470,7 @@ public class Chart<T> {
                     for (final State stateToAdvance : statesToAdvance) {
                         final Complete.ViterbiDelta d = computeViterbiForState(completedState, stateSets.viterbiScores.get(completedState).probabilityAsSemiringElement, stateToAdvance);
                         if (d != null) {
+                            if (d.newViterbiScore != null) updates++;
                             stateSets.processDelta(d);
                             if (d.isNewCompletedState()) {
                                 nextSetOfCompletedStates.add(d.resultingState);
@@ -422,6 +481,7 @@ public class Chart<T> {
             }
             completedStates = nextSetOfCompletedStates;
         }
+        return updates;
     }
 
     private Complete.ViterbiDelta computeViterbiForState(final State completedState, final double completedViterbi, final State stateToAdvance) {
@@ -458,8 +518,9 @@ public class Chart<T> {
      * Makes completions in the specified chart at the given index.
      *
      * @param i The index to make completions at.
+     * @return Number of terms added to the forward and inner score expressions
      */
-    private void completeNoViterbi(
+    private int completeNoViterbi(
             final int i
     ) {
         final DeferredStateScoreComputations addForwardScores = new DeferredStateScoreComputations(grammar);
@@ -486,19 +547,32 @@ public class Chart<T> {
                         score.resolveFinal()
                 )
         );
+        return addForwardScores.getTermCount() + addInnerScores.getTermCount();
     }
 
     public void complete(final int i, final TokenWithCategories<T> token) {
         final Chart<T> chart = this;
 
-        if (parseOptions != null) parseOptions.beforeComplete(i, token, chart);
+        parseOptions.beforeComplete(i, token, chart);
 
 
+        final ParseMetrics metrics = parseOptions.metrics;
+        final int statesBefore = metrics.isEnabled() ? stateSets.countStates(i + 1) : 0;
+        long start = metrics.start();
         final Set<State> completedStates = new HashSet<>(chart.stateSets.completedStates.getCompletedStates(i + 1));
-        completeNoViterbi(i + 1);
-        computeViterbiScoresForCompletedStates(completedStates);
+        final int expressionTerms = completeNoViterbi(i + 1);
+        metrics.stop(ParseMetrics.Phase.COMPLETE, i, start);
+
+        start = metrics.start();
+        final int viterbiUpdates = computeViterbiScoresForCompletedStates(completedStates);
+        metrics.stop(ParseMetrics.Phase.VITERBI, i, start);
+        if (metrics.isEnabled()) {
+            metrics.add(ParseMetrics.Counter.COMPLETED, i, stateSets.countStates(i + 1) - statesBefore);
+            metrics.add(ParseMetrics.Counter.EXPRESSION_TERMS, i, expressionTerms);
+            metrics.add(ParseMetrics.Counter.VITERBI_UPDATES, i, viterbiUpdates);
+        }
 
-        if (parseOptions != null) parseOptions.onComplete(i, token, chart);
+        parseOptions.onComplete(i, token, chart);
     }
 
     @SuppressWarnings("WeakerAccess")
@@ -63,8 +63,17 @@ public class ChartWithInputPosition<T> {
 
 
     public void next(final Token<T> t) {
-        final Set<Terminal<T>> categories = grammar.getCategories(t);
+        next(t, grammar.getCategories(t));
+    }
 
+    /**
+     * Processes the next token, for which the matching terminals are already known
+     *
+     * @param t          Token
+     * @param categories All terminals in the grammar that match given token
+     * @see org.leibnizcenter.cfg.token.PreLexedCorpus
+     */
+    public void next(final Token<T> t, final Set<Terminal<T>> categories) {
 //            final Set<Terminal<T>> categories = determineCategoriesForToken(grammar, callbacks, indexForTokenList, t);
 
         if (nullOrEmpty(categories)) {
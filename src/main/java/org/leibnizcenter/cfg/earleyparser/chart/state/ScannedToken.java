@@ -10,11 +10,20 @@ import org.leibnizcenter.cfg.token.Token;
 public class ScannedToken<E> {
     public final Token<E> scannedToken;
     public final Category scannedCategory;
+    /**
+     * Scan probability that the token was scanned with, as a semiring element, or NaN if there was none
+     */
+    public final double scanProbability;
 
 
     public ScannedToken(final Token<E> scannedToken, final Rule rule, final int ruleDotPosition) {
+        this(scannedToken, rule, ruleDotPosition, Double.NaN);
+    }
+
+    public ScannedToken(final Token<E> scannedToken, final Rule rule, final int ruleDotPosition, final double scanProbability) {
         this.scannedToken = scannedToken;
         this.scannedCategory = rule.getRight()[ruleDotPosition - 1];
+        this.scanProbability = scanProbability;
     }
 
     @Override
@@ -71,10 +71,18 @@ public class StateSets<T> {
      * @return State specified by parameter. May or may not be in the state table. If not, it is added.
      */
     public State getOrCreate(final State state, final Token<T> scannedToken) {
+        return getOrCreate(state, scannedToken, Double.NaN);
+    }
+
+    /**
+     * @param scanProbability Scan probability that the token was scanned with, as a semiring element, or NaN if there
+     *                        was none
+     */
+    public State getOrCreate(final State state, final Token<T> scannedToken, final double scanProbability) {
         if (contains(state)) {
             return state;
         } else {
-            addState(state, scannedToken);
+            addState(state, scannedToken, scanProbability);
             return state;
         }
     }
@@ -84,7 +92,7 @@ public class StateSets<T> {
      *
      * @param state State to add
      */
-    private void addState(final State state, final Token<T> scannedToken) {
+    private void addState(final State state, final Token<T> scannedToken, final double scanProbability) {
         final int index = state.position;
 
         states.add(state);
@@ -99,7 +107,8 @@ public class StateSets<T> {
             final ScannedToken<T> eScannedToken = new ScannedToken<>(
                     scannedToken,
                     state.rule,
-                    state.ruleDotPosition
+                    state.ruleDotPosition,
+                    scanProbability
             );
             scannedTokens.put(state, eScannedToken);
 
@@ -127,6 +136,15 @@ public class StateSets<T> {
     }
 
 
+    /**
+     * @return Number of states at given position
+     */
+    public int countStates(final int index) {
+        if (index >= byIndex.size()) return 0;
+        final Set<State> states = byIndex.get(index);
+        return states == null ? 0 : states.size();
+    }
+
     public int countStates() {
         return byIndex.stream().filter(Objects::nonNull)
                 .mapToInt(Set::size).sum();
@@ -141,11 +159,25 @@ public class StateSets<T> {
             final double postScanForward,
             final double postScanInner,
             final State nextState
+    ) {
+        createStateAndSetScores(token, preScanState, postScanForward, postScanInner, nextState, Double.NaN);
+    }
+
+    /**
+     * @param scanProbability Scan probability that is included in the scores, as a semiring element, or NaN if there
+     *                        is none. Kept on the {@link ScannedToken} of the new state.
+     */
+    public void createStateAndSetScores(
+            final Token<T> token, final State preScanState,
+            final double postScanForward,
+            final double postScanInner,
+            final State nextState,
+            final double scanProbability
     ) {
         Objects.requireNonNull(token);
         final DblSemiring sr = this.grammar.semiring;
         final State postScanState = this.getOrCreate(
-                nextState, token
+                nextState, token, scanProbability
         );
 
 //                    if (checkNoNewStatesAreDoubles.contains(rule, position, ruleStart, dot))
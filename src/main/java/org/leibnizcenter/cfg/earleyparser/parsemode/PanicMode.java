@@ -58,7 +58,8 @@ public class PanicMode {
                                                     rootStateActiveOnError,
                                                     Scan.calculateForwardScore(scanProbPow, sr, newForward),
                                                     Scan.calculateInnerScore(scanProbPow, sr, newInner),
-                                                    State.create(position, preScanState.ruleStartPosition, preScanState.advanceDot(), preScanState.rule)
+                                                    State.create(position, preScanState.ruleStartPosition, preScanState.advanceDot(), preScanState.rule),
+                                                    scanProbPow
                                             );
                                         }
                                     });
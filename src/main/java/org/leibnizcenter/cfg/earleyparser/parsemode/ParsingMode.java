@@ -10,6 +10,7 @@ import org.leibnizcenter.cfg.token.TokenWithCategories;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 
 import static org.leibnizcenter.cfg.util.Collections2.nullOrEmpty;
@@ -60,15 +61,18 @@ public enum ParsingMode {
         }
 
 
-        final TokenWithCategories<T> token = new TokenWithCategories<>(t, categories);
+        TokenWithCategories<T> token = new TokenWithCategories<>(t, categories);
         // todo make more robust
 
         chart.predict(indexForChart, token);
         final Collection<State> justScannedErrors = chart.stateSets.activeStates.getJustScannedError(indexForChart);
         if (justScannedErrors != null && justScannedErrors.size() > 0) {
             if (!categories.contains(NonLexicalToken.INSTANCE)) {
+                // Categories may be shared through the grammar's token cache, so don't modify them in place
+                categories = new HashSet<>(categories);
                 //noinspection unchecked
                 categories.add(NonLexicalToken.INSTANCE);
+                token = new TokenWithCategories<>(t, categories);
             }
             chart.predictError(justScannedErrors);
         }
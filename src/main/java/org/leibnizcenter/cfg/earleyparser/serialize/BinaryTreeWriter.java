@@ -0,0 +1,196 @@
+package org.leibnizcenter.cfg.earleyparser.serialize;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Writes trees in a compact binary form. The output is a sequence of records that each start with a tag byte:
+ * </p>
+ * <ul>
+ * <li>{@link #CATEGORY}: defines the next category id. Followed by {@link #NON_TERMINAL} or {@link #TERMINAL} and
+ * the name of the category. Written once per category, before its first use.</li>
+ * <li>{@link #START_NODE}: followed by a category id. Its children follow, and then {@link #END_NODE}.</li>
+ * <li>{@link #LEAF}: followed by a category id and the token.</li>
+ * <li>{@link #END_NODE}</li>
+ * <li>{@link #END_TREE}</li>
+ * </ul>
+ * <p>
+ * Ids are written as unsigned LEB128 varints, and names and tokens as a varint byte length followed by UTF-8. Category
+ * ids are shared by all trees written by one writer.
+ * </p>
+ * <p>
+ * Output is buffered. When writing to a {@link ByteBuffer}, every tree is copied into it when it is complete, so that a
+ * {@link BufferOverflowException} is thrown for the tree that does not fit. That tree is then dropped as a whole: the
+ * buffer is left as it was, and categories that were first defined in it are defined again by the next tree that uses
+ * them. So the writer can be used again, for example after draining the buffer. When writing to an
+ * {@link OutputStream}, output may be flushed half-way through a tree, so a failed write leaves the output unusable.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public class BinaryTreeWriter extends TreeWriter {
+    public static final byte END_TREE = 0;
+    public static final byte START_NODE = 1;
+    public static final byte LEAF = 2;
+    public static final byte END_NODE = 3;
+    public static final byte CATEGORY = 4;
+
+    public static final byte NON_TERMINAL = 0;
+    public static final byte TERMINAL = 1;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream outputStream;
+    private final ByteBuffer byteBuffer;
+    private final Map<Category, Integer> categoryIds = new HashMap<>();
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int count = 0;
+    /**
+     * Number of categories that were defined in output that made it into the byte buffer
+     */
+    private int writtenCategoryCount = 0;
+
+    public BinaryTreeWriter(final OutputStream out) {
+        this.outputStream = out;
+        this.byteBuffer = null;
+    }
+
+    public BinaryTreeWriter(final ByteBuffer out) {
+        this.outputStream = null;
+        this.byteBuffer = out;
+    }
+
+    private void writeByte(final int b) throws IOException {
+        if (count == buffer.length) {
+            if (outputStream != null) flushBuffer();
+            else buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private void writeString(final CharSequence s) throws IOException {
+        final int length = s.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) utf8Length++;
+            else if (c < 0x800) utf8Length += 2;
+            else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else utf8Length += 3;
+        }
+        writeVarInt(utf8Length);
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            if (c < 0x80) writeByte(c);
+            else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                writeByte(0xF0 | (codePoint >> 18));
+                writeByte(0x80 | ((codePoint >> 12) & 0x3F));
+                writeByte(0x80 | ((codePoint >> 6) & 0x3F));
+                writeByte(0x80 | (codePoint & 0x3F));
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * @return Id of given category, after defining it if this is its first use
+     */
+    private int categoryId(final Category category) throws IOException {
+        final Integer id = categoryIds.get(category);
+        if (id != null) return id;
+        final int newId = categoryIds.size();
+        categoryIds.put(category, newId);
+        writeByte(CATEGORY);
+        writeByte(category instanceof Terminal ? TERMINAL : NON_TERMINAL);
+        writeString(category.toString());
+        return newId;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (outputStream != null) outputStream.write(buffer, 0, count);
+        else //noinspection ConstantConditions
+            byteBuffer.put(buffer, 0, count);
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (outputStream != null) outputStream.flush();
+    }
+
+    /**
+     * Forgets the bytes and category definitions of a tree that was not copied to the byte buffer
+     */
+    private void discardTree() {
+        count = 0;
+        if (categoryIds.size() > writtenCategoryCount)
+            categoryIds.values().removeIf(id -> id >= writtenCategoryCount);
+    }
+
+    @Override
+    protected void startTree() {
+        // Previous tree may have failed half-way
+        if (byteBuffer != null) discardTree();
+    }
+
+    @Override
+    protected void startNode(final Category category) throws IOException {
+        final int id = categoryId(category);
+        writeByte(START_NODE);
+        writeVarInt(id);
+    }
+
+    @Override
+    protected void leaf(final Category category, final Token<?> token) throws IOException {
+        final int id = categoryId(category);
+        writeByte(LEAF);
+        writeVarInt(id);
+        writeString(String.valueOf(token.obj));
+    }
+
+    @Override
+    protected void endNode() throws IOException {
+        writeByte(END_NODE);
+    }
+
+    @Override
+    protected void endTree() throws IOException {
+        writeByte(END_TREE);
+        if (byteBuffer != null) {
+            try {
+                flushBuffer();
+            } catch (final BufferOverflowException e) {
+                discardTree();
+                throw e;
+            }
+            writtenCategoryCount = categoryIds.size();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.leibnizcenter.cfg.earleyparser.serialize;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Writes trees in the bracketed format of the Penn Treebank, one tree per line:
+ * </p>
+ * <pre>
+ * (S (NP (Det the) (N man)) (VP (V left)))
+ * </pre>
+ * <p>
+ * Leaves are written as their token. Brackets in labels and tokens are written as <code>-LRB-</code> and
+ * <code>-RRB-</code>, and whitespace as <code>_</code>, so that every label and token is a single atom.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public class BracketedTreeWriter extends TreeWriter {
+    private final Appendable out;
+    private boolean inNode = false;
+
+    public BracketedTreeWriter(final Appendable out) {
+        this.out = out;
+    }
+
+    private void appendAtom(final CharSequence s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '(') out.append("-LRB-");
+            else if (c == ')') out.append("-RRB-");
+            else if (Character.isWhitespace(c)) out.append('_');
+            else out.append(c);
+        }
+    }
+
+    @Override
+    protected void startTree() {
+        inNode = false;
+    }
+
+    @Override
+    protected void startNode(final Category category) throws IOException {
+        if (inNode) out.append(' ');
+        out.append('(');
+        appendAtom(category.toString());
+        inNode = true;
+    }
+
+    @Override
+    protected void leaf(final Category category, final Token<?> token) throws IOException {
+        if (inNode) out.append(' ');
+        appendAtom(String.valueOf(token.obj));
+    }
+
+    @Override
+    protected void endNode() throws IOException {
+        out.append(')');
+    }
+
+    @Override
+    protected void endTree() throws IOException {
+        out.append('\n');
+    }
+}
@@ -0,0 +1,92 @@
+package org.leibnizcenter.cfg.earleyparser.serialize;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * Writes trees as JSON, one tree per line, so that a corpus of trees is a JSON Lines file:
+ * </p>
+ * <pre>
+ * {"category":"NP","children":[{"category":"Det","children":[{"category":"the","token":"the"}]}]}
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class JsonTreeWriter extends TreeWriter {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Appendable out;
+    private boolean needsComma = false;
+
+    public JsonTreeWriter(final Appendable out) {
+        this.out = out;
+    }
+
+    private void appendString(final CharSequence s) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    else out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    private void appendCategory(final Category category) throws IOException {
+        if (needsComma) out.append(',');
+        out.append("{\"category\":");
+        appendString(category.toString());
+    }
+
+    @Override
+    protected void startTree() {
+        needsComma = false;
+    }
+
+    @Override
+    protected void startNode(final Category category) throws IOException {
+        appendCategory(category);
+        out.append(",\"children\":[");
+        needsComma = false;
+    }
+
+    @Override
+    protected void leaf(final Category category, final Token<?> token) throws IOException {
+        appendCategory(category);
+        out.append(",\"token\":");
+        appendString(String.valueOf(token.obj));
+        out.append('}');
+        needsComma = true;
+    }
+
+    @Override
+    protected void endNode() throws IOException {
+        out.append("]}");
+        needsComma = true;
+    }
+
+    @Override
+    protected void endTree() throws IOException {
+        out.append('\n');
+    }
+}
@@ -0,0 +1,119 @@
+package org.leibnizcenter.cfg.earleyparser.serialize;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.earleyparser.CompactParseTree;
+import org.leibnizcenter.cfg.earleyparser.ParseTree;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * <p>
+ * Streams parse trees to some output, one tree after the other. Trees are walked with an explicit stack, so deep trees
+ * don't overflow the call stack, and subclasses write every node straight to their output, without building a string
+ * for it.
+ * </p>
+ * <p>
+ * Not thread-safe. Call {@link #flush()} when done.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public abstract class TreeWriter {
+    private int[] openNodes = new int[16];
+
+    /**
+     * Writes given tree
+     */
+    public final void write(final ParseTree tree) throws IOException {
+        startTree();
+        if (tree instanceof ParseTree.Leaf) {
+            leaf(tree.category, ((ParseTree.Leaf<?>) tree).token);
+        } else {
+            final Deque<Iterator<ParseTree>> open = new ArrayDeque<>();
+            startNode(tree.category);
+            open.push(childrenOf(tree));
+            while (!open.isEmpty()) {
+                final Iterator<ParseTree> children = open.peek();
+                if (!children.hasNext()) {
+                    open.pop();
+                    endNode();
+                } else {
+                    final ParseTree child = children.next();
+                    if (child instanceof ParseTree.Leaf) leaf(child.category, ((ParseTree.Leaf<?>) child).token);
+                    else {
+                        startNode(child.category);
+                        open.push(childrenOf(child));
+                    }
+                }
+            }
+        }
+        endTree();
+    }
+
+    /**
+     * Writes given tree
+     */
+    public final void write(final CompactParseTree<?> tree) throws IOException {
+        startTree();
+        int depth = 0;
+        int node = CompactParseTree.ROOT;
+        walk:
+        while (true) {
+            if (tree.isLeaf(node)) leaf(tree.getCategory(node), tree.getToken(node));
+            else {
+                startNode(tree.getCategory(node));
+                final int firstChild = tree.getFirstChild(node);
+                if (firstChild != CompactParseTree.NONE) {
+                    if (depth == openNodes.length) openNodes = Arrays.copyOf(openNodes, depth * 2);
+                    openNodes[depth++] = node;
+                    node = firstChild;
+                    continue;
+                }
+                endNode();
+            }
+            // Move on to the next sibling, closing parents that have no more children
+            while (depth > 0) {
+                final int sibling = tree.getNextSibling(node);
+                if (sibling != CompactParseTree.NONE) {
+                    node = sibling;
+                    continue walk;
+                }
+                node = openNodes[--depth];
+                endNode();
+            }
+            break;
+        }
+        endTree();
+    }
+
+    /**
+     * Writes given trees in order
+     */
+    public final void writeAll(final Iterable<? extends ParseTree> trees) throws IOException {
+        for (final ParseTree tree : trees) write(tree);
+    }
+
+    /**
+     * Writes anything that is buffered to the underlying output
+     */
+    public void flush() throws IOException {
+    }
+
+    private static Iterator<ParseTree> childrenOf(final ParseTree tree) {
+        return tree.children == null ? Collections.emptyIterator() : tree.children.iterator();
+    }
+
+    protected abstract void startTree() throws IOException;
+
+    /**
+     * Opens a node that is not a leaf. Its children follow, and then a matching {@link #endNode()}.
+     */
+    protected abstract void startNode(Category category) throws IOException;
+
+    protected abstract void leaf(Category category, Token<?> token) throws IOException;
+
+    protected abstract void endNode() throws IOException;
+
+    protected abstract void endTree() throws IOException;
+}
@@ -0,0 +1,346 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.algebra.semiring.dbl.ExpressionSemiring;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.LogSemiring;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.ProbabilitySemiring;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.CaseInsensitiveStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
+import org.leibnizcenter.cfg.rule.LexicalErrorRule;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.util.MyMultimap;
+import org.leibnizcenter.cfg.util.cache.SegmentedLruCache;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * <p>
+ * Binary format for a fully built {@link Grammar}, so that it can be loaded without parsing rules or computing the
+ * left-corner and unit-star closures again. The file contains the rules, the ids of all categories, both closures (as
+ * sparse rows of raw probabilities) and the non-zero left-start rules of every non-terminal. Loading a file maps it
+ * into memory and only decodes it.
+ * </p>
+ * <p>
+ * Only grammars over the {@link LogSemiring} or {@link ProbabilitySemiring} with {@link ExactStringTerminal},
+ * {@link CaseInsensitiveStringTerminal}, {@link RegexTerminal} and {@link NonLexicalToken} terminals can be compiled.
+ * Rules must be plain {@link Rule rules} or {@link LexicalErrorRule lexical error rules}.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class CompiledGrammar {
+    private static final int MAGIC = 0x43464743; // "CFGC"
+    private static final int VERSION = 3;
+
+    private static final byte SEMIRING_LOG = 0;
+    private static final byte SEMIRING_PROBABILITY = 1;
+
+    private static final byte TERMINAL_EXACT = 0;
+    private static final byte TERMINAL_CASE_INSENSITIVE = 1;
+    private static final byte TERMINAL_REGEX = 2;
+    private static final byte TERMINAL_ERROR = 3;
+
+    private static final byte RULE_PLAIN = 0;
+    private static final byte RULE_LEXICAL_ERROR = 1;
+
+    private CompiledGrammar() {
+        throw new IllegalStateException();
+    }
+
+    public static void write(final Grammar<String> grammar, final Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(grammar, out);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If the grammar has a semiring or terminal type that can't be compiled
+     */
+    public static void write(final Grammar<String> grammar, final OutputStream out) throws IOException {
+        final Grammar.Analysis<String> analysis = grammar.getAnalysis();
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeByte(semiringKind(grammar.semiring));
+        data.writeBoolean(grammar.name != null);
+        if (grammar.name != null) writeString(data, grammar.name);
+
+        final NonTerminal[] nonTerminals = analysis.nonTerminalsById;
+        final Map<Category, Integer> nonTerminalIds = new HashMap<>(nonTerminals.length * 2);
+        data.writeInt(nonTerminals.length);
+        for (int i = 0; i < nonTerminals.length; i++) {
+            nonTerminalIds.put(nonTerminals[i], i);
+            data.writeBoolean(nonTerminals[i] instanceof SharedPrefix);
+            writeString(data, nonTerminals[i].name);
+        }
+
+        final Terminal<String>[] terminals = analysis.terminalsById;
+        data.writeInt(terminals.length);
+        for (final Terminal<String> terminal : terminals) writeTerminal(data, terminal);
+
+        final List<Rule> rules = new ArrayList<>(grammar.getAllRules());
+        final Map<Rule, Integer> ruleIds = new HashMap<>(rules.size() * 2);
+        data.writeInt(rules.size());
+        for (final Rule rule : rules) {
+            ruleIds.put(rule, ruleIds.size());
+            data.writeByte(ruleKind(rule));
+            data.writeInt(nonTerminalIds.get(rule.left));
+            data.writeDouble(rule.probability);
+            data.writeInt(rule.right.length);
+            for (final Category category : rule.right)
+                data.writeInt(category instanceof NonTerminal
+                        ? nonTerminalIds.get(category)
+                        : -1 - grammar.getTerminalId((Terminal<?>) category));
+        }
+
+        writeRows(data, analysis.leftCorners);
+        writeRows(data, analysis.leftStarCorners);
+        writeRows(data, analysis.unitStarCorners);
+
+        for (final NonTerminal nonTerminal : nonTerminals) {
+            final Set<Rule> leftStartRules = analysis.nonZeroLeftStartRules.get(nonTerminal);
+            if (leftStartRules == null) data.writeInt(-1);
+            else {
+                data.writeInt(leftStartRules.size());
+                for (final Rule rule : leftStartRules) data.writeInt(ruleIds.get(rule));
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Loads a compiled grammar by mapping the file into memory
+     *
+     * @throws IOException If the file can't be read, or does not contain a compiled grammar
+     */
+    public static Grammar<String> read(final Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @throws IOException If the buffer does not contain a compiled grammar
+     */
+    public static Grammar<String> read(final ByteBuffer buffer) throws IOException {
+        try {
+            return decode(buffer);
+        } catch (final BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Compiled grammar is truncated or corrupt", e);
+        }
+    }
+
+    private static Grammar<String> decode(final ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) throw new IOException("Not a compiled grammar");
+        final int version = buffer.getInt();
+        if (version != VERSION) throw new IOException("Unsupported compiled grammar version: " + version);
+        final ExpressionSemiring semiring = semiring(buffer.get());
+        final String name = buffer.get() != 0 ? readString(buffer) : null;
+
+        final NonTerminal[] nonTerminals = new NonTerminal[buffer.getInt()];
+        for (int i = 0; i < nonTerminals.length; i++) {
+            final boolean sharedPrefix = buffer.get() != 0;
+            final String nonTerminalName = readString(buffer);
+            nonTerminals[i] = sharedPrefix ? new SharedPrefix(nonTerminalName) : Category.nonTerminal(nonTerminalName);
+        }
+
+        @SuppressWarnings("unchecked") final Terminal<String>[] terminals = (Terminal<String>[]) new Terminal<?>[buffer.getInt()];
+        for (int i = 0; i < terminals.length; i++) terminals[i] = readTerminal(buffer);
+
+        final Rule[] rules = new Rule[buffer.getInt()];
+        final MyMultimap<NonTerminal, Rule> ruleMap = new MyMultimap<>();
+        for (int i = 0; i < rules.length; i++) {
+            final byte kind = buffer.get();
+            final NonTerminal left = nonTerminals[buffer.getInt()];
+            final double probability = buffer.getDouble();
+            final Category[] right = new Category[buffer.getInt()];
+            for (int j = 0; j < right.length; j++) {
+                final int id = buffer.getInt();
+                right[j] = id >= 0 ? nonTerminals[id] : terminals[-1 - id];
+            }
+            rules[i] = rule(kind, semiring, probability, left, right);
+            ruleMap.put(left, rules[i]);
+        }
+
+        final LeftCorners leftCorners = new LeftCorners(readRows(buffer, nonTerminals.length), nonTerminals);
+        final LeftCorners leftStarCorners = new LeftCorners(readRows(buffer, nonTerminals.length), nonTerminals);
+        final LeftCorners unitStarCorners = new LeftCorners(readRows(buffer, nonTerminals.length), nonTerminals);
+
+        final Map<Category, Set<Rule>> nonZeroLeftStartRules = new HashMap<>(nonTerminals.length * 2);
+        for (final NonTerminal nonTerminal : nonTerminals) {
+            final int count = buffer.getInt();
+            if (count >= 0) {
+                final Set<Rule> leftStartRules = new HashSet<>(count * 2);
+                for (int i = 0; i < count; i++) leftStartRules.add(rules[buffer.getInt()]);
+                nonZeroLeftStartRules.put(nonTerminal, leftStartRules);
+            }
+        }
+
+        return new Grammar<>(
+                name,
+                ruleMap,
+                semiring,
+                new SegmentedLruCache<>(Grammar.DEFAULT_TOKEN_CACHE_SIZE),
+                new Grammar.Analysis<>(
+                        terminals,
+                        nonTerminals,
+                        leftCorners,
+                        leftStarCorners,
+                        unitStarCorners,
+                        Collections.unmodifiableMap(nonZeroLeftStartRules)
+                )
+        );
+    }
+
+    private static byte semiringKind(final ExpressionSemiring semiring) {
+        if (semiring instanceof LogSemiring) return SEMIRING_LOG;
+        else if (semiring instanceof ProbabilitySemiring) return SEMIRING_PROBABILITY;
+        else throw new IllegalArgumentException("Can not compile grammar with semiring " + semiring.getClass().getName());
+    }
+
+    private static byte ruleKind(final Rule rule) {
+        if (rule instanceof LexicalErrorRule) return RULE_LEXICAL_ERROR;
+        else if (rule.getClass() == Rule.class) return RULE_PLAIN;
+        else throw new IllegalArgumentException("Can not compile rule of type " + rule.getClass().getName());
+    }
+
+    private static Rule rule(final byte kind,
+                             final ExpressionSemiring semiring,
+                             final double probability,
+                             final NonTerminal left,
+                             final Category[] right) throws IOException {
+        switch (kind) {
+            case RULE_PLAIN:
+                return Rule.create(semiring, probability, left, right);
+            case RULE_LEXICAL_ERROR:
+                return LexicalErrorRule.create(semiring, probability, left, right);
+            default:
+                throw new IOException("Unknown rule type: " + kind);
+        }
+    }
+
+    private static ExpressionSemiring semiring(final byte kind) throws IOException {
+        switch (kind) {
+            case SEMIRING_LOG:
+                return LogSemiring.get();
+            case SEMIRING_PROBABILITY:
+                return ProbabilitySemiring.get();
+            default:
+                throw new IOException("Unknown semiring: " + kind);
+        }
+    }
+
+    private static void writeTerminal(final DataOutputStream data, final Terminal<String> terminal) throws IOException {
+        if (terminal instanceof NonLexicalToken) {
+            data.writeByte(TERMINAL_ERROR);
+        } else if (terminal.getClass() == ExactStringTerminal.class) {
+            data.writeByte(TERMINAL_EXACT);
+            writeString(data, ((ExactStringTerminal) terminal).string);
+        } else if (terminal.getClass() == CaseInsensitiveStringTerminal.class) {
+            final CaseInsensitiveStringTerminal caseInsensitive = (CaseInsensitiveStringTerminal) terminal;
+            data.writeByte(TERMINAL_CASE_INSENSITIVE);
+            writeString(data, caseInsensitive.string);
+            writeString(data, caseInsensitive.locale.toLanguageTag());
+        } else if (terminal.getClass() == RegexTerminal.class) {
+            final RegexTerminal regex = (RegexTerminal) terminal;
+            data.writeByte(TERMINAL_REGEX);
+            writeString(data, regex.pattern.pattern());
+            data.writeInt(regex.pattern.flags());
+        } else {
+            throw new IllegalArgumentException("Can not compile terminal of type " + terminal.getClass().getName());
+        }
+    }
+
+    /**
+     * The error terminal is a raw {@link Terminal} that never matches a token itself, so it is a terminal of any token type
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Terminal<T> errorTerminal() {
+        return (Terminal<T>) NonLexicalToken.INSTANCE;
+    }
+
+    private static Terminal<String> readTerminal(final ByteBuffer buffer) throws IOException {
+        final byte kind = buffer.get();
+        switch (kind) {
+            case TERMINAL_ERROR:
+                return errorTerminal();
+            case TERMINAL_EXACT:
+                return new ExactStringTerminal(readString(buffer));
+            case TERMINAL_CASE_INSENSITIVE:
+                final String string = readString(buffer);
+                return new CaseInsensitiveStringTerminal(string, Locale.forLanguageTag(readString(buffer)));
+            case TERMINAL_REGEX:
+                final String pattern = readString(buffer);
+                return new RegexTerminal(pattern, buffer.getInt());
+            default:
+                throw new IOException("Unknown terminal type: " + kind);
+        }
+    }
+
+    /**
+     * Writes every row as its number of non-zero entries, followed by (column, value) pairs
+     */
+    private static void writeRows(final DataOutputStream data, final LeftCorners relation) throws IOException {
+        final int[] columns = new int[relation.size()];
+        final double[] values = new double[relation.size()];
+        for (int row = 0; row < relation.size(); row++) {
+            final int[] count = {0};
+            relation.forEachNonZero(row, (column, value) -> {
+                columns[count[0]] = column;
+                values[count[0]] = value;
+                count[0]++;
+            });
+            data.writeInt(count[0]);
+            for (int i = 0; i < count[0]; i++) {
+                data.writeInt(columns[i]);
+                data.writeDouble(values[i]);
+            }
+        }
+    }
+
+    private static SparseRow[] readRows(final ByteBuffer buffer, final int size) throws IOException {
+        final SparseRow[] rows = new SparseRow[size];
+        for (int row = 0; row < size; row++) {
+            final int count = buffer.getInt();
+            if (count < 0 || count > size) throw new IOException("Invalid row length: " + count);
+            if (count > 0) {
+                final int[] columns = new int[count];
+                final double[] values = new double[count];
+                for (int i = 0; i < count; i++) {
+                    columns[i] = buffer.getInt();
+                    values[i] = buffer.getDouble();
+                    if (columns[i] < 0 || columns[i] >= size || (i > 0 && columns[i] <= columns[i - 1]))
+                        throw new IOException("Invalid column: " + columns[i]);
+                }
+                rows[row] = new SparseRow(columns, values);
+            }
+        }
+        return rows;
+    }
+
+    private static void writeString(final DataOutputStream data, final String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) throws IOException {
+        final int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IOException("Invalid string length: " + length);
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
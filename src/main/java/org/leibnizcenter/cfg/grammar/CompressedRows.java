@@ -0,0 +1,306 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.algebra.matrix.Matrix;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * <p>
+ * Immutable square matrix in compressed row storage: the stored columns and values of all sparse rows are laid out
+ * one after the other in two flat arrays, and <code>rowStart[i]</code> points at the first entry of row <code>i</code>.
+ * Entries that are not stored have a default value (0.0 for probabilities, semiring zero for semiring elements).
+ * </p>
+ * <p>
+ * Rows in which more than {@link #DENSE_ROW_DENSITY} of the entries are stored are kept as a full array instead, so
+ * that lookups in them are a plain index. Lookups in sparse rows are a binary search.
+ * </p>
+ */
+final class CompressedRows {
+    /**
+     * Rows with a larger fraction of stored entries are stored densely
+     */
+    static final double DENSE_ROW_DENSITY = 0.5;
+
+    private final int size;
+    private final double defaultValue;
+    private final int[] rowStart;
+    private final int[] columns;
+    private final double[] values;
+    /**
+     * Densely stored rows, null for rows that are in {@link #columns} and {@link #values}
+     */
+    private final double[][] denseRows;
+
+    private CompressedRows(final int size,
+                           final double defaultValue,
+                           final int[] rowStart,
+                           final int[] columns,
+                           final double[] values,
+                           final double[][] denseRows) {
+        this.size = size;
+        this.defaultValue = defaultValue;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+        this.denseRows = denseRows;
+    }
+
+    /**
+     * @param rows Rows of a square matrix, null rows have no entries. Entries equal to 0.0 are not stored.
+     */
+    static CompressedRows of(final SparseRow[] rows) {
+        final int n = rows.length;
+        final Builder builder = new Builder(n, 0.0);
+        final int[] rowColumns = new int[n];
+        final double[] rowValues = new double[n];
+        for (final SparseRow row : rows) {
+            int count = 0;
+            if (row != null) for (int i = 0; i < row.size(); i++)
+                if (row.valueAt(i) != 0.0) {
+                    rowColumns[count] = row.columnAt(i);
+                    rowValues[count] = row.valueAt(i);
+                    count++;
+                }
+            builder.addRow(rowColumns, rowValues, count);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param rows Full rows of a square matrix. Entries equal to 0.0 are not stored.
+     */
+    static CompressedRows of(final double[][] rows) {
+        final Builder builder = new Builder(rows.length, 0.0);
+        for (final double[] row : rows) builder.addFullRow(row);
+        return builder.build();
+    }
+
+    /**
+     * @param matrix Square matrix. Entries equal to 0.0 are not stored.
+     */
+    static CompressedRows of(final Matrix matrix) {
+        final int n = matrix.getRowDimension();
+        final Builder builder = new Builder(n, 0.0);
+        final double[] row = new double[n];
+        for (int i = 0; i < n; i++) {
+            for (int column = 0; column < n; column++) row[column] = matrix.get(i, column);
+            builder.addFullRow(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param function     Applied to every stored value, and to the default value of densely stored rows
+     * @param defaultValue Value of entries that are not stored in the result, should be
+     *                     <code>function.applyAsDouble(</code>{@link #defaultValue}<code>)</code>
+     * @return A matrix with the same layout, holding the mapped values
+     */
+    CompressedRows map(final DoubleUnaryOperator function, final double defaultValue) {
+        final double[] mappedValues = new double[values.length];
+        for (int i = 0; i < values.length; i++) mappedValues[i] = function.applyAsDouble(values[i]);
+        final double[][] mappedDenseRows = new double[size][];
+        for (int row = 0; row < size; row++)
+            if (denseRows[row] != null) {
+                final double[] dense = denseRows[row];
+                final double[] mapped = new double[size];
+                for (int column = 0; column < size; column++) mapped[column] = function.applyAsDouble(dense[column]);
+                mappedDenseRows[row] = mapped;
+            }
+        return new CompressedRows(size, defaultValue, rowStart, columns, mappedValues, mappedDenseRows);
+    }
+
+    /**
+     * @param replaced Rows to replace
+     * @param rows     New rows, at the indices of the replaced rows. Null rows have no entries.
+     * @return A matrix with given rows replaced. All other rows are copied in bulk, and densely stored rows are
+     * shared with this matrix.
+     */
+    CompressedRows withRows(final boolean[] replaced, final SparseRow[] rows) {
+        if (defaultValue != 0.0) throw new IllegalStateException("Can only replace rows of probabilities");
+        final Builder builder = new Builder(size, defaultValue);
+        final int[] rowColumns = new int[size];
+        final double[] rowValues = new double[size];
+        for (int row = 0; row < size; row++) {
+            if (!replaced[row]) {
+                if (denseRows[row] != null) builder.addDenseRow(denseRows[row]);
+                else builder.addRow(columns, values, rowStart[row], rowStart[row + 1] - rowStart[row]);
+            } else {
+                final SparseRow sparseRow = rows[row];
+                int count = 0;
+                if (sparseRow != null) for (int i = 0; i < sparseRow.size(); i++)
+                    if (sparseRow.valueAt(i) != 0.0) {
+                        rowColumns[count] = sparseRow.columnAt(i);
+                        rowValues[count] = sparseRow.valueAt(i);
+                        count++;
+                    }
+                builder.addRow(rowColumns, rowValues, count);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return Copy of the entries of given row that are not the default value
+     */
+    SparseRow row(final int row) {
+        final double[] dense = denseRows[row];
+        if (dense == null) return new SparseRow(
+                Arrays.copyOfRange(columns, rowStart[row], rowStart[row + 1]),
+                Arrays.copyOfRange(values, rowStart[row], rowStart[row + 1])
+        );
+        int count = 0;
+        for (int column = 0; column < size; column++) if (dense[column] != defaultValue) count++;
+        final int[] rowColumns = new int[count];
+        final double[] rowValues = new double[count];
+        count = 0;
+        for (int column = 0; column < size; column++)
+            if (dense[column] != defaultValue) {
+                rowColumns[count] = column;
+                rowValues[count] = dense[column];
+                count++;
+            }
+        return new SparseRow(rowColumns, rowValues);
+    }
+
+    /**
+     * @return Value at given row and column, which is the default value if it is not stored
+     */
+    double get(final int row, final int column) {
+        final double[] dense = denseRows[row];
+        if (dense != null) return dense[column];
+        final int from = rowStart[row];
+        final int to = rowStart[row + 1];
+        if (from == to) return defaultValue;
+        final int i = Arrays.binarySearch(columns, from, to, column);
+        return i >= 0 ? values[i] : defaultValue;
+    }
+
+    /**
+     * Calls given consumer for every entry in given row that is not the default value, in ascending column order
+     */
+    void forEachNonDefault(final int row, final LeftCorners.EntryConsumer consumer) {
+        final double[] dense = denseRows[row];
+        if (dense != null) {
+            for (int column = 0; column < size; column++)
+                if (dense[column] != defaultValue) consumer.accept(column, dense[column]);
+        } else for (int i = rowStart[row]; i < rowStart[row + 1]; i++)
+            if (values[i] != defaultValue) consumer.accept(columns[i], values[i]);
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of rows that are stored as a full array
+     */
+    int denseRowCount() {
+        int count = 0;
+        for (final double[] row : denseRows) if (row != null) count++;
+        return count;
+    }
+
+    /**
+     * @return Number of entries stored in sparse rows
+     */
+    int sparseEntryCount() {
+        return columns.length;
+    }
+
+    /**
+     * Appends rows in order
+     */
+    private static final class Builder {
+        private final int size;
+        private final double defaultValue;
+        private final int[] rowStart;
+        private final double[][] denseRows;
+        private int[] columns;
+        private double[] values;
+        private int rows = 0;
+        private int entries = 0;
+        private int[] scratchColumns;
+        private double[] scratchValues;
+
+        Builder(final int size, final double defaultValue) {
+            this.size = size;
+            this.defaultValue = defaultValue;
+            this.rowStart = new int[size + 1];
+            this.denseRows = new double[size][];
+            this.columns = new int[Math.max(16, size)];
+            this.values = new double[columns.length];
+        }
+
+        /**
+         * Appends the non-zero entries of given full row
+         */
+        void addFullRow(final double[] row) {
+            if (scratchColumns == null) {
+                scratchColumns = new int[size];
+                scratchValues = new double[size];
+            }
+            int count = 0;
+            for (int column = 0; column < size; column++)
+                if (row[column] != 0.0) {
+                    scratchColumns[count] = column;
+                    scratchValues[count] = row[column];
+                    count++;
+                }
+            addRow(scratchColumns, scratchValues, count);
+        }
+
+        /**
+         * @param rowColumns Ascending columns of the next row
+         * @param rowValues  Values for the columns
+         * @param count      Number of entries in the row
+         */
+        void addRow(final int[] rowColumns, final double[] rowValues, final int count) {
+            addRow(rowColumns, rowValues, 0, count);
+        }
+
+        /**
+         * @param from Index of the first entry of the row in given arrays
+         */
+        void addRow(final int[] rowColumns, final double[] rowValues, final int from, final int count) {
+            if (count > DENSE_ROW_DENSITY * size) {
+                final double[] dense = new double[size];
+                if (defaultValue != 0.0) Arrays.fill(dense, defaultValue);
+                for (int i = from; i < from + count; i++) dense[rowColumns[i]] = rowValues[i];
+                addDenseRow(dense);
+            } else {
+                if (entries + count > columns.length) {
+                    final int capacity = Math.max(entries + count, columns.length * 2);
+                    columns = Arrays.copyOf(columns, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+                System.arraycopy(rowColumns, from, columns, entries, count);
+                System.arraycopy(rowValues, from, values, entries, count);
+                entries += count;
+                rows++;
+                rowStart[rows] = entries;
+            }
+        }
+
+        /**
+         * Appends a row that is stored densely. Not copied.
+         */
+        void addDenseRow(final double[] dense) {
+            denseRows[rows] = dense;
+            rows++;
+            rowStart[rows] = entries;
+        }
+
+        CompressedRows build() {
+            if (rows != size) throw new IllegalStateException("Expected " + size + " rows, got " + rows);
+            return new CompressedRows(
+                    size,
+                    defaultValue,
+                    rowStart,
+                    Arrays.copyOf(columns, entries),
+                    Arrays.copyOf(values, entries),
+                    denseRows
+            );
+        }
+    }
+}
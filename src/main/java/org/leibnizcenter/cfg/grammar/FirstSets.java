@@ -0,0 +1,125 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.rule.Rule;
+
+import java.util.*;
+
+/**
+ * <p>
+ * For every non-terminal, the set of terminals that a derivation of it can start with (FIRST set). Used to filter
+ * predictions by the next token: a rule can only ever be scanned past its first position if the token at that position
+ * has one of the terminals in the FIRST set of its right hand side.
+ * </p>
+ * <p>
+ * FIRST sets are stored as sorted arrays of {@link Grammar#getTerminalId(Terminal) terminal ids}. Since rules can not
+ * be empty, the FIRST set of a rule is simply the FIRST set of its first right hand side category.
+ * The {@link NonLexicalToken error token} is not a real terminal, so rules that can start with it are never filtered.
+ * </p>
+ */
+public final class FirstSets<T> {
+    private static final int[] EMPTY = new int[0];
+
+    private final Grammar<T> grammar;
+    private final Map<NonTerminal, int[]> firstIds;
+    private final Set<NonTerminal> mayStartWithError;
+
+    /**
+     * @param nonZeroLeftStartRules For every non-terminal <code>Z</code>, all rules <code>Y → v</code> such that
+     *                              <code>Z =*L&gt; Y</code>. Every terminal that is the first category of such a rule is
+     *                              in the FIRST set of <code>Z</code>.
+     */
+    FirstSets(final Grammar<T> grammar, final Map<Category, Set<Rule>> nonZeroLeftStartRules) {
+        this(grammar, nonZeroLeftStartRules, null, Collections.emptyMap());
+    }
+
+    /**
+     * Shares the FIRST set of every non-terminal of which the left-start rules are the very same set as before
+     *
+     * @param old                      FIRST sets of a grammar with the same terminal ids, or null
+     * @param oldNonZeroLeftStartRules Left-start rules that the old FIRST sets were computed from
+     */
+    FirstSets(final Grammar<T> grammar,
+              final Map<Category, Set<Rule>> nonZeroLeftStartRules,
+              final FirstSets<T> old,
+              final Map<Category, Set<Rule>> oldNonZeroLeftStartRules) {
+        this.grammar = grammar;
+        final Map<NonTerminal, int[]> firstIds = new HashMap<>(nonZeroLeftStartRules.size() * 2);
+        final Set<NonTerminal> mayStartWithError = new HashSet<>();
+        nonZeroLeftStartRules.forEach((category, rules) -> {
+            if (!(category instanceof NonTerminal)) return;
+            final NonTerminal Z = (NonTerminal) category;
+            if (old != null && oldNonZeroLeftStartRules.get(Z) == rules) {
+                if (old.mayStartWithError.contains(Z)) mayStartWithError.add(Z);
+                firstIds.put(Z, old.firstIds.get(Z));
+                return;
+            }
+            final Set<Integer> ids = new HashSet<>();
+            for (final Rule rule : rules) {
+                final Category first = rule.right[0];
+                if (first instanceof NonLexicalToken) mayStartWithError.add(Z);
+                else if (first instanceof Terminal) ids.add(grammar.getTerminalId((Terminal<?>) first));
+            }
+            final int[] sorted = ids.stream().mapToInt(Integer::intValue).sorted().toArray();
+            firstIds.put(Z, sorted);
+        });
+        this.firstIds = firstIds;
+        this.mayStartWithError = mayStartWithError;
+    }
+
+    /**
+     * @return Sorted terminal ids that can be scanned as the first token of given category
+     */
+    private int[] getFirstIds(final NonTerminal category) {
+        final int[] ids = firstIds.get(category);
+        return ids == null ? EMPTY : ids;
+    }
+
+    /**
+     * @return All terminals that a derivation of given non-terminal can start with, not including the error token
+     */
+    public Set<Terminal<T>> getFirstSet(final NonTerminal category) {
+        final int[] ids = getFirstIds(category);
+        final Set<Terminal<T>> terminals = new HashSet<>(ids.length * 2);
+        for (final int id : ids) terminals.add(grammar.getTerminal(id));
+        return terminals;
+    }
+
+    /**
+     * @return Sorted terminal ids of given categories, to be passed into {@link #mayStartWith(Rule, int[])}
+     */
+    public int[] toLookahead(final Collection<Terminal<T>> categories) {
+        final int[] ids = new int[categories.size()];
+        int size = 0;
+        for (final Terminal<T> category : categories) {
+            final int id = grammar.getTerminalId(category);
+            if (id >= 0) ids[size++] = id;
+        }
+        final int[] lookahead = size == ids.length ? ids : Arrays.copyOf(ids, size);
+        Arrays.sort(lookahead);
+        return lookahead;
+    }
+
+    /**
+     * @param rule      Rule to test
+     * @param lookahead Sorted ids of the terminals of the next token, as given by {@link #toLookahead(Collection)}
+     * @return Whether the given rule could be the start of a derivation that scans the next token.
+     */
+    public boolean mayStartWith(final Rule rule, final int[] lookahead) {
+        final Category first = rule.right[0];
+        if (first instanceof NonLexicalToken) return true;
+        else if (first instanceof Terminal) {
+            final int id = grammar.getTerminalId((Terminal<?>) first);
+            return Arrays.binarySearch(lookahead, id) >= 0;
+        } else {
+            final NonTerminal nonTerminal = (NonTerminal) first;
+            if (mayStartWithError.contains(nonTerminal)) return true;
+            final int[] firstSet = getFirstIds(nonTerminal);
+            for (final int id : lookahead) if (Arrays.binarySearch(firstSet, id) >= 0) return true;
+            return false;
+        }
+    }
+}
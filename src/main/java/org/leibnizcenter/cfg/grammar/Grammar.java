@@ -7,12 +7,17 @@ import org.leibnizcenter.cfg.algebra.semiring.dbl.LogSemiring;
 import org.leibnizcenter.cfg.category.Category;
 import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
 import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
 import org.leibnizcenter.cfg.rule.Rule;
 import org.leibnizcenter.cfg.rule.RuleFactory;
 import org.leibnizcenter.cfg.rule.RuleParser;
 import org.leibnizcenter.cfg.token.Token;
 import org.leibnizcenter.cfg.util.MyMultimap;
+import org.leibnizcenter.cfg.util.cache.Cache;
+import org.leibnizcenter.cfg.util.cache.CacheStats;
+import org.leibnizcenter.cfg.util.cache.SegmentedLruCache;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -23,9 +28,17 @@ import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.computeLexicon;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.computeUnitCorners;
 import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.computeUnitStarCorners;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.sumUnitProbabilities;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.findAncestors;
 import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.findNonZeroLeftStartRules;
 import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.computeReflexiveTransitiveClosure;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.updateLexicon;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.updateNonZeroLeftStartRules;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.updatePredictionTables;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.updateReflexiveTransitiveClosure;
 import static org.leibnizcenter.cfg.grammar.GrammarParser.STRING_CATEGORY_FUNCTION;
 import static org.leibnizcenter.cfg.grammar.GrammarParser.TRAILING_COMMENT;
 
@@ -34,15 +47,24 @@ import static org.leibnizcenter.cfg.grammar.GrammarParser.TRAILING_COMMENT;
  * Represents a stochastic context-free grammar (set of production rules with probabilities).
  *
  * Grammars maintain their rules indexed by
- * {@link Rule#getLeft() left side category}. The rule sets contained for
- * any given {@link Category left category} are not guaranteed to be
- * maintained in the order of insertion.
+ * {@link Rule#getLeft() left side category}. The rules for
+ * any given {@link Category left category} are kept in the order of insertion.
  *
  * This class pre-computes all the left-relations for the non-terminals that occur
  *
  * Once the Grammar is instantiated, it is immutable.
  */
 public final class Grammar<T> {
+    /**
+     * Default maximum number of tokens for which {@link #getCategories(Token)} remembers the matching terminals
+     */
+    @SuppressWarnings("WeakerAccess")
+    public static final int DEFAULT_TOKEN_CACHE_SIZE = 16384;
+    private static final String STAGE_SEMIRING_SCORES = "semiring scores";
+    private static final String STAGE_FIRST_SETS = "first sets";
+    private static final String STAGE_PREDICTION_TABLES = "prediction tables";
+    private static final String STAGE_LEXICON = "lexicon";
+
     @SuppressWarnings("WeakerAccess")
     public final String name;
     /**
@@ -52,6 +74,27 @@ public final class Grammar<T> {
     public final ExpressionSemiring semiring;
     public final AtomFactory atoms = new AtomFactory();
     public final Map<Category, Set<Rule>> nonZeroLeftStartRules;
+    /**
+     * Terminals that each non-terminal can start with, used to filter predictions by the next token
+     */
+    public final FirstSets<T> firstSets;
+    /**
+     * {@link #nonZeroLeftStartRules} as flat arrays, with the left-star score and rule probability multiplied in
+     */
+    private final Map<Category, PredictionTable> predictions;
+    /**
+     * Like {@link #predictions}, but without the rules that start with a terminal. Those are looked up in the
+     * lexicon instead.
+     */
+    private final Map<Category, PredictionTable> structuralPredictions;
+    /**
+     * All rules that start with a terminal, indexed by {@link #getTerminalId(Terminal) terminal id}
+     */
+    private final Rule[][] lexicon;
+    /**
+     * {@link #getNonTerminalId(NonTerminal) Ids} of the left hand sides of the rules in {@link #lexicon}
+     */
+    private final int[][] lexiconLeftIds;
     public final Set<Terminal<T>> terminals = new HashSet<>();
     private final MyMultimap<NonTerminal, Rule> rules;
     /**
@@ -64,10 +107,27 @@ public final class Grammar<T> {
     /**
      * Reflexive, transitive closure of leftCorners, with the probabilities summed
      */
+    private final LeftCorners leftStarCorners;
     private final ScoresAsSemiringElements leftStarCornersAsSemiringElements;
+    private final LeftCorners unitStarCorners;
 
     private final Set<NonTerminal> nonTerminals = new HashSet<>();
-    private final Map<Token<T>, Set<Terminal<T>>> tokenToTerminalsCache = new WeakHashMap<>();
+    /**
+     * All non-terminals, in the order in which they index {@link #leftCorners} and its closures
+     */
+    private final NonTerminal[] nonTerminalsById;
+    /**
+     * All terminals, in a deterministic order so that their indices can be used as stable identifiers
+     */
+    private final Terminal<T>[] terminalsById;
+    private final Map<Terminal<T>, Integer> terminalIds;
+    private final long terminalsFingerprint;
+    private final Cache<Token<T>, Set<Terminal<T>>> tokenToTerminalsCache;
+    private final boolean hasSharedPrefixes;
+    /**
+     * Nanoseconds spent per stage of building this grammar
+     */
+    private final Map<String, Long> stageNanos;
 
     /**
      * Creates a grammar with the given name, and given rules.
@@ -80,34 +140,153 @@ public final class Grammar<T> {
      * @param semiring Semiring
      */
     public Grammar(final String name, final MyMultimap<NonTerminal, Rule> rules_, final ExpressionSemiring semiring) {
+        this(name, rules_, semiring, new SegmentedLruCache<>(DEFAULT_TOKEN_CACHE_SIZE));
+    }
+
+    /**
+     * @param name       The mnemonic name for this grammar.
+     * @param rules_     Rules for the grammar
+     * @param semiring   Semiring
+     * @param tokenCache Cache that remembers which terminals match a token. Use {@link Cache#disabled()} to not cache at all.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public Grammar(final String name, final MyMultimap<NonTerminal, Rule> rules_, final ExpressionSemiring semiring, final Cache<Token<T>, Set<Terminal<T>>> tokenCache) {
+        this(name, rules_, semiring, tokenCache, Analysis.compute(rules_));
+    }
+
+    /**
+     * Creates a grammar from rules that have already been analysed, for example by loading a
+     * {@link CompiledGrammar compiled grammar}
+     */
+    Grammar(final String name,
+            final MyMultimap<NonTerminal, Rule> rules_,
+            final ExpressionSemiring semiring,
+            final Cache<Token<T>, Set<Terminal<T>>> tokenCache,
+            final Analysis<T> analysis) {
+        this(name, rules_, semiring, tokenCache, analysis, null, Collections.emptyMap(), Collections.emptyList());
+    }
+
+    /**
+     * Creates a grammar that is a change of a previous grammar, and shares every derived table that the change does
+     * not affect with it
+     *
+     * @param previous Grammar that given rules are a change of, or null to compute all tables
+     * @param replaced Rules of the previous grammar that were removed (mapped to null) or replaced by another rule
+     * @param added    Rules that were added to the previous grammar
+     */
+    private Grammar(final String name,
+                    final MyMultimap<NonTerminal, Rule> rules_,
+                    final ExpressionSemiring semiring,
+                    final Cache<Token<T>, Set<Terminal<T>>> tokenCache,
+                    final Analysis<T> analysis,
+                    final Grammar<T> previous,
+                    final Map<Rule, Rule> replaced,
+                    final Collection<Rule> added) {
+        if (tokenCache == null) throw new NullPointerException("null token cache");
         this.name = name;
         this.rules = rules_;
         this.semiring = semiring;
+        this.tokenToTerminalsCache = tokenCache;
 
         rules.lock();
+        final StageTimer timer = new StageTimer(analysis.stageNanos);
+
+        terminalsById = analysis.terminalsById;
+        nonTerminalsById = analysis.nonTerminalsById;
+        final boolean shareable = previous != null && previous.semiring == semiring;
+        // Same ids for all symbols, so that tables indexed by id can be shared
+        final boolean sameSymbols = shareable
+                && previous.terminalsById == terminalsById
+                && previous.nonTerminalsById == nonTerminalsById;
+        terminals.addAll(Arrays.asList(terminalsById));
+        nonTerminals.addAll(Arrays.asList(nonTerminalsById));
+        if (sameSymbols) {
+            hasSharedPrefixes = previous.hasSharedPrefixes;
+            terminalIds = previous.terminalIds;
+            terminalsFingerprint = previous.terminalsFingerprint;
+        } else {
+            hasSharedPrefixes = nonTerminals.stream().anyMatch(nonTerminal -> nonTerminal instanceof SharedPrefix);
+            terminalIds = new HashMap<>(terminalsById.length * 2);
+            for (int id = 0; id < terminalsById.length; id++) terminalIds.put(terminalsById[id], id);
+            terminalsFingerprint = fingerprint(terminalsById);
+        }
+        timer.lap(Analysis.STAGE_SYMBOLS);
+
+        leftCorners = analysis.leftCorners;
+        leftStarCorners = analysis.leftStarCorners;
+        unitStarCorners = analysis.unitStarCorners;
+
+        leftStarCornersAsSemiringElements = shareable && previous.leftStarCorners == leftStarCorners
+                ? previous.leftStarCornersAsSemiringElements
+                : new ScoresAsSemiringElements(leftStarCorners, semiring);
+        unitStarScores = shareable && previous.unitStarCorners == unitStarCorners
+                ? previous.unitStarScores
+                : new ScoresAsSemiringElements(unitStarCorners, this.semiring);
+        timer.lap(STAGE_SEMIRING_SCORES);
+        nonZeroLeftStartRules = analysis.nonZeroLeftStartRules;
+        firstSets = sameSymbols
+                ? new FirstSets<>(this, nonZeroLeftStartRules, previous.firstSets, previous.nonZeroLeftStartRules)
+                : new FirstSets<>(this, nonZeroLeftStartRules);
+        timer.lap(STAGE_FIRST_SETS);
+        final Map<Category, Set<Rule>> oldNonZeroLeftStartRules = shareable ? previous.nonZeroLeftStartRules : Collections.emptyMap();
+        predictions = updatePredictionTables(
+                shareable ? previous.predictions : Collections.emptyMap(),
+                oldNonZeroLeftStartRules,
+                nonZeroLeftStartRules, leftStarCornersAsSemiringElements, semiring, false
+        );
+        structuralPredictions = updatePredictionTables(
+                shareable ? previous.structuralPredictions : Collections.emptyMap(),
+                oldNonZeroLeftStartRules,
+                nonZeroLeftStartRules, leftStarCornersAsSemiringElements, semiring, true
+        );
+        timer.lap(STAGE_PREDICTION_TABLES);
+        lexicon = sameSymbols
+                ? updateLexicon(previous.lexicon, replaced, added, this)
+                : computeLexicon(rules.values(), this);
+        lexiconLeftIds = sameSymbols ? previous.lexiconLeftIds.clone() : new int[lexicon.length][];
+        for (int terminal = 0; terminal < lexicon.length; terminal++) {
+            if (sameSymbols && lexicon[terminal] == previous.lexicon[terminal]) continue;
+            lexiconLeftIds[terminal] = new int[lexicon[terminal].length];
+            for (int i = 0; i < lexicon[terminal].length; i++)
+                lexiconLeftIds[terminal][i] = getNonTerminalId(lexicon[terminal][i].left);
+        }
+        timer.lap(STAGE_LEXICON);
+        stageNanos = timer.getNanos();
+    }
 
-        collectTerminalsAndNonTerminals(rules.values());
-        final NonTerminal[] nonTerminalsArr = nonTerminals.toArray(new NonTerminal[nonTerminals.size()]);
-
-
-        leftCorners = new LeftCorners(rules, nonTerminalsArr);
-        final LeftCorners leftStarCorners = computeReflexiveTransitiveClosure(leftCorners, nonTerminalsArr);
-
-        leftStarCornersAsSemiringElements = new ScoresAsSemiringElements(leftStarCorners, semiring);
-        unitStarScores = new ScoresAsSemiringElements(computeUnitStarCorners(this.rules, nonTerminalsArr), this.semiring);
-        nonZeroLeftStartRules = findNonZeroLeftStartRules(leftStarCorners, nonTerminals, rules);
+    /**
+     * Orders terminals by their description, class name and flags. Terminals that are alike in all three keep the
+     * order in which they first occur in the rules, which does not depend on hash codes because the rules are kept in
+     * insertion order.
+     *
+     * @param terminals Terminals in order of first occurrence
+     */
+    private static <T> Terminal<T>[] sortTerminals(final Collection<Terminal<T>> terminals) {
+        // Arrays of a generic type can only be made unchecked; the array only ever holds Terminal<T>
+        @SuppressWarnings("unchecked") final Terminal<T>[] sorted = (Terminal<T>[]) terminals.toArray(new Terminal<?>[terminals.size()]);
+        // Stable, so ties keep their order
+        Arrays.sort(sorted, Comparator
+                .comparing((Terminal<T> terminal) -> terminal.toString())
+                .thenComparing(terminal -> terminal.getClass().getName())
+                .thenComparingInt(Grammar::flagsOf));
+        return sorted;
+    }
 
+    /**
+     * @return Pattern flags of a {@link RegexTerminal}, which its description leaves out; 0 for other terminals
+     */
+    private static int flagsOf(final Terminal<?> terminal) {
+        return terminal instanceof RegexTerminal ? ((RegexTerminal) terminal).pattern.flags() : 0;
     }
 
-    @SuppressWarnings("unchecked")
-    private void collectTerminalsAndNonTerminals(final Collection<Rule> rules) {
-        rules.forEach(rule -> {
-            nonTerminals.add(rule.left);
-            for (final Category c : rule.right)
-                if (c instanceof Terminal) terminals.add((Terminal) c);
-                else if (c instanceof NonTerminal) nonTerminals.add((NonTerminal) c);
-                else throw new Error("This is a bug");
-        });
+    private static long fingerprint(final Terminal<?>[] terminals) {
+        long hash = 1125899906842597L;
+        for (final Terminal<?> terminal : terminals) {
+            hash = 31 * hash + terminal.getClass().getName().hashCode();
+            hash = 31 * hash + terminal.toString().hashCode();
+            hash = 31 * hash + flagsOf(terminal);
+        }
+        return hash;
     }
 
     @SuppressWarnings("SameParameterValue")
@@ -122,7 +301,7 @@ public final class Grammar<T> {
                 .map(line -> TRAILING_COMMENT.matcher(line).replaceAll("").trim())
                 .filter(line -> !line.isEmpty())
                 .map(parser::fromString)
-                .collect(Collectors.toSet())).build();
+                .collect(Collectors.toCollection(LinkedHashSet::new))).build();
     }
 
     public static Grammar<String> fromString(final Path path, final Charset charset) throws IOException {
@@ -136,7 +315,7 @@ public final class Grammar<T> {
                 .map(line -> TRAILING_COMMENT.matcher(line).replaceAll("").trim())
                 .filter(line -> !line.isEmpty())
                 .map(ruleParser::fromString)
-                .collect(Collectors.toSet())).build();
+                .collect(Collectors.toCollection(LinkedHashSet::new))).build();
     }
 
 
@@ -194,13 +373,19 @@ public final class Grammar<T> {
      * {@link Rule#getLeft() left side} is
      * the same as <code>left</code>, or
      * <code>null</code> if no such rules are contained in this grammar. The
-     * rule set returned by this method is <em>not</em> guaranteed to contain
-     * the rules in the order in which they were {@link Builder#addRule(Rule) added}.
+     * rules are in the order in which they were {@link Builder#addRule(Rule) added}.
      */
     public Collection<Rule> getRules(final NonTerminal LHS) {
         return rules.get(LHS);
     }
 
+    /**
+     * @return All rules, indexed by their left hand side
+     */
+    MyMultimap<NonTerminal, Rule> getRulesByLeftHandSide() {
+        return rules;
+    }
+
     /**
      * Gets every rule in this grammar.
      */
@@ -209,10 +394,68 @@ public final class Grammar<T> {
         return rules.values();
     }
 
+    /**
+     * @return All rules <code>Y → v</code> such that <code>R(Z =*L&gt; Y)</code> is non-zero and <code>v</code> does
+     * not start with a terminal
+     */
+    public Rule[] getStructuralLeftStartRules(final Category Z) {
+        return getStructuralPredictions(Z).rules;
+    }
+
+    /**
+     * @return All rules <code>Y → v</code> such that <code>R(Z =*L&gt; Y)</code> is non-zero, with the factor that
+     * predicting them multiplies the forward score with
+     */
+    public PredictionTable getPredictions(final Category Z) {
+        final PredictionTable table = predictions.get(Z);
+        return table == null ? PredictionTable.EMPTY : table;
+    }
+
+    /**
+     * @return Like {@link #getPredictions(Category)}, but without rules that start with a terminal
+     */
+    public PredictionTable getStructuralPredictions(final Category Z) {
+        final PredictionTable table = structuralPredictions.get(Z);
+        return table == null ? PredictionTable.EMPTY : table;
+    }
+
+    /**
+     * @param terminalId {@link #getTerminalId(Terminal) Terminal id}
+     * @return All rules of which the right hand side starts with given terminal
+     */
+    public Rule[] getLexicalRules(final int terminalId) {
+        return lexicon[terminalId];
+    }
+
+    /**
+     * @param terminalId {@link #getTerminalId(Terminal) Terminal id}
+     * @return {@link #getNonTerminalId(NonTerminal) Non-terminal ids} of the left hand sides of the
+     * {@link #getLexicalRules(int) lexical rules} for given terminal, in the same order
+     */
+    public int[] getLexicalRuleLeftIds(final int terminalId) {
+        return lexiconLeftIds[terminalId];
+    }
+
     public double getLeftStarScore(final Category LHS, final Category RHS) {
         return leftStarCornersAsSemiringElements.get(LHS, RHS);
     }
 
+    /**
+     * @param LHS {@link #getNonTerminalId(NonTerminal) Id} of the left hand side
+     * @param RHS {@link #getNonTerminalId(NonTerminal) Id} of the right hand side
+     */
+    public double getLeftStarScore(final int LHS, final int RHS) {
+        return leftStarCornersAsSemiringElements.get(LHS, RHS);
+    }
+
+    /**
+     * @return Index of given non-terminal in the left-corner relations, or -1 if it is not in this grammar
+     */
+    public int getNonTerminalId(final NonTerminal nonTerminal) {
+        final Integer id = leftStarCorners.mapToIndex.get(nonTerminal);
+        return id == null ? -1 : id;
+    }
+
     /**
      * Gets a string representation of this grammar.
      *
@@ -244,6 +487,30 @@ public final class Grammar<T> {
         return unitStarScores.get(LHS, RHS);
     }
 
+    /**
+     * @return Whether this grammar contains {@link SharedPrefix shared prefix} non-terminals, which the parser removes
+     * from parse trees
+     * @see Builder#withPrefixSharing()
+     */
+    public boolean hasSharedPrefixes() {
+        return hasSharedPrefixes;
+    }
+
+    /**
+     * @return Nanoseconds spent in each stage of building this grammar, in the order in which the stages ran. Stages
+     * that were skipped, for example because the analysis was loaded from a {@link CompiledGrammar}, are missing.
+     */
+    public Map<String, Long> getStageNanos() {
+        return stageNanos;
+    }
+
+    /**
+     * @return Statistics that predict how expensive this grammar is to parse with
+     */
+    public GrammarReport getReport() {
+        return GrammarReport.of(this);
+    }
+
     @SuppressWarnings("unused")
     public Set<NonTerminal> getNonTerminals() {
         return nonTerminals;
@@ -258,26 +525,311 @@ public final class Grammar<T> {
 //    }
 
     /**
-     * Runs in O(N) for N is the number of terminals. Weakly caches tokens on {@link Token#equals(Object)} to make subsequent
-     * calls potentially quicker.
+     * Runs in O(N) for N is the number of terminals. Caches tokens on {@link Token#equals(Object)} in a bounded cache
+     * to make subsequent calls potentially quicker.
      *
-     * @return set of all terminals that match given token, usually a singleton set.
+     * @return unmodifiable set of all terminals that match given token, usually a singleton set.
      */
     public Set<Terminal<T>> getCategories(final Token<T> token) {
         return tokenToTerminalsCache.computeIfAbsent(
                 token,
-                ignored -> this.terminals.stream()
+                ignored -> Collections.unmodifiableSet(this.terminals.stream()
                         .filter(category -> !(category instanceof NonLexicalToken))
                         .filter(category -> category.hasCategory(token))
-                        .collect(Collectors.toSet()));
+                        .collect(Collectors.toSet())));
+    }
+
+    /**
+     * @return Number of distinct terminals in this grammar. Terminal ids range from 0 (inclusive) to this number (exclusive).
+     */
+    public int getTerminalCount() {
+        return terminalsById.length;
+    }
+
+    /**
+     * @return Stable identifier of the given terminal, or -1 if it does not occur in this grammar
+     * @see #getTerminal(int)
+     */
+    public int getTerminalId(final Terminal<?> terminal) {
+        final Integer id = terminalIds.get(terminal);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @return Terminal with given identifier
+     * @see #getTerminalId(Terminal)
+     */
+    public Terminal<T> getTerminal(final int id) {
+        return terminalsById[id];
+    }
+
+    /**
+     * @return Hash of all terminals with their identifiers, used to check whether terminal ids that were stored
+     * earlier are still valid for this grammar.
+     */
+    public long getTerminalsFingerprint() {
+        return terminalsFingerprint;
     }
 
+    /**
+     * <p>
+     * Creates a new grammar with some rules added, removed or reweighted. The rule index and the sets of terminals and
+     * non-terminals are rebuilt, which takes time linear in the number of rules. Everything that is derived from the
+     * rules is only recomputed where the changes affect it:
+     * </p>
+     * <ul>
+     * <li>Closure rows are only recomputed for the non-terminals that can reach a changed rule through left corners (or
+     * unit productions). The other rows are copied over in bulk, since closures are stored in flat arrays, and
+     * only rows that are dense are shared. Changes that only concern rules that start with a terminal, such as adding
+     * lexical rules, share the closures as a whole.</li>
+     * <li>Left-start rules, prediction tables and FIRST sets are shared for every non-terminal that can not reach a
+     * changed rule.</li>
+     * <li>If the changes keep the same terminals, the lexicon is only rebuilt for the terminals that changed rules
+     * start with.</li>
+     * </ul>
+     * <p>
+     * Rule weights are used as given, and are not normalized as in {@link Builder#build()}. If the changes add or
+     * remove a non-terminal, the new grammar is built from scratch. It gets an {@link Cache#newEmpty() empty token
+     * cache} that is configured like the one of this grammar.
+     * </p>
+     *
+     * @param added      Rules to add
+     * @param removed    Rules of this grammar to remove
+     * @param reweighted Rules of this grammar, with their new probability
+     * @throws IllegalArgumentException if a rule to remove or reweight is not in this grammar
+     */
+    public Grammar<T> withChanges(final Collection<Rule> added,
+                                  final Collection<Rule> removed,
+                                  final Map<Rule, Double> reweighted) {
+        // Old rule to the rule that replaces it, or to null if it is removed
+        final Map<Rule, Rule> replaced = new HashMap<>();
+        for (final Rule rule : removed) {
+            if (!containsRule(rule)) throw new IllegalArgumentException("Rule not in grammar: " + rule);
+            replaced.put(rule, null);
+        }
+        reweighted.forEach((rule, probability) -> {
+            if (!containsRule(rule)) throw new IllegalArgumentException("Rule not in grammar: " + rule);
+            if (!replaced.containsKey(rule)) replaced.put(rule, Rule.create(semiring, probability, rule.left, rule.right));
+        });
+
+        final MyMultimap<NonTerminal, Rule> newRules = new MyMultimap<>();
+        for (final Rule rule : getAllRules()) {
+            if (!replaced.containsKey(rule)) newRules.put(rule.left, rule);
+            else if (replaced.get(rule) != null) newRules.put(rule.left, replaced.get(rule));
+        }
+        for (final Rule rule : added) newRules.put(rule.left, rule);
+        final Set<Rule> changedRules = new HashSet<>(replaced.keySet());
+        changedRules.addAll(added);
+
+        final Set<Terminal<T>> newTerminals = new LinkedHashSet<>();
+        final Set<NonTerminal> newNonTerminals = new HashSet<>();
+        Analysis.collectTerminalsAndNonTerminals(newRules.values(), newTerminals, newNonTerminals);
+        // Terminals may have changed, so cached matches are stale
+        final Cache<Token<T>, Set<Terminal<T>>> tokenCache = tokenToTerminalsCache.newEmpty();
+        if (!newNonTerminals.equals(nonTerminals))
+            return new Grammar<>(name, newRules, semiring, tokenCache, Analysis.compute(newRules));
+        final Analysis<T> analysis = Analysis.update(getAnalysis(), rules, newRules, newTerminals, changedRules);
+        return new Grammar<>(name, newRules, semiring, tokenCache, analysis, this, replaced, added);
+    }
+
+    private boolean containsRule(final Rule rule) {
+        final Collection<Rule> rulesForLeft = rules.get(rule.left);
+        return rulesForLeft != null && rulesForLeft.contains(rule);
+    }
+
+    /**
+     * @return The information derived from the rules of this grammar
+     */
+    Analysis<T> getAnalysis() {
+        return new Analysis<>(terminalsById, nonTerminalsById, leftCorners, leftStarCorners, unitStarCorners, nonZeroLeftStartRules);
+    }
+
+    /**
+     * @return Hit, miss and eviction counts of the cache used by {@link #getCategories(Token)}
+     */
+    @SuppressWarnings("unused")
+    public CacheStats getTokenCacheStats() {
+        return tokenToTerminalsCache.stats();
+    }
+
+
+    /**
+     * All information that is derived from the rules when building a grammar
+     */
+    static final class Analysis<T> {
+        static final String STAGE_SYMBOLS = "symbols";
+        static final String STAGE_LEFT_CORNERS = "left corners";
+        static final String STAGE_LEFT_STAR = "left-star closure";
+        static final String STAGE_UNIT_STAR = "unit-star closure";
+        static final String STAGE_LEFT_START_RULES = "left-start rules";
+
+        final Terminal<T>[] terminalsById;
+        final NonTerminal[] nonTerminalsById;
+        final LeftCorners leftCorners;
+        final LeftCorners leftStarCorners;
+        final LeftCorners unitStarCorners;
+        final Map<Category, Set<Rule>> nonZeroLeftStartRules;
+        /**
+         * Nanoseconds spent per stage of computing this analysis
+         */
+        final Map<String, Long> stageNanos;
+
+        Analysis(final Terminal<T>[] terminalsById,
+                 final NonTerminal[] nonTerminalsById,
+                 final LeftCorners leftCorners,
+                 final LeftCorners leftStarCorners,
+                 final LeftCorners unitStarCorners,
+                 final Map<Category, Set<Rule>> nonZeroLeftStartRules) {
+            this(terminalsById, nonTerminalsById, leftCorners, leftStarCorners, unitStarCorners, nonZeroLeftStartRules, Collections.emptyMap());
+        }
+
+        Analysis(final Terminal<T>[] terminalsById,
+                 final NonTerminal[] nonTerminalsById,
+                 final LeftCorners leftCorners,
+                 final LeftCorners leftStarCorners,
+                 final LeftCorners unitStarCorners,
+                 final Map<Category, Set<Rule>> nonZeroLeftStartRules,
+                 final Map<String, Long> stageNanos) {
+            this.terminalsById = terminalsById;
+            this.nonTerminalsById = nonTerminalsById;
+            this.leftCorners = leftCorners;
+            this.leftStarCorners = leftStarCorners;
+            this.unitStarCorners = unitStarCorners;
+            this.nonZeroLeftStartRules = nonZeroLeftStartRules;
+            this.stageNanos = stageNanos;
+        }
+
+        static <T> Analysis<T> compute(final MyMultimap<NonTerminal, Rule> rules) {
+            rules.lock();
+            final StageTimer timer = new StageTimer();
+            final Set<Terminal<T>> terminals = new LinkedHashSet<>();
+            final Set<NonTerminal> nonTerminals = new HashSet<>();
+            collectTerminalsAndNonTerminals(rules.values(), terminals, nonTerminals);
+            final NonTerminal[] nonTerminalsArr = nonTerminals.toArray(new NonTerminal[nonTerminals.size()]);
+            final Terminal<T>[] terminalsById = sortTerminals(terminals);
+            timer.lap(STAGE_SYMBOLS);
+
+            final LeftCorners leftCorners = new LeftCorners(rules, nonTerminalsArr);
+            timer.lap(STAGE_LEFT_CORNERS);
+            final LeftCorners leftStarCorners = computeReflexiveTransitiveClosure(leftCorners, nonTerminalsArr);
+            timer.lap(STAGE_LEFT_STAR);
+            final LeftCorners unitStarCorners = computeUnitStarCorners(rules, nonTerminalsArr);
+            timer.lap(STAGE_UNIT_STAR);
+            final Map<Category, Set<Rule>> nonZeroLeftStartRules = findNonZeroLeftStartRules(leftStarCorners, nonTerminals, rules);
+            timer.lap(STAGE_LEFT_START_RULES);
+            return new Analysis<>(
+                    terminalsById,
+                    nonTerminalsArr,
+                    leftCorners,
+                    leftStarCorners,
+                    unitStarCorners,
+                    nonZeroLeftStartRules,
+                    timer.getNanos()
+            );
+        }
+
+        /**
+         * Derives the analysis of new rules from the analysis of old rules, over the same non-terminals. Only rows of the
+         * left-corner relation whose left hand side has a changed rule are recomputed. Changes to unit productions
+         * also scan the old rules once for the old unit relation, which is not kept.
+         *
+         * @param terminals    Terminals of the new rules, in order of first occurrence. If they are the same as the
+         *                     old terminals, the old terminal ids are kept.
+         * @param changedRules Rules that were added to, removed from, or reweighted in the old rules
+         */
+        static <T> Analysis<T> update(final Analysis<T> old,
+                                      final MyMultimap<NonTerminal, Rule> oldRules,
+                                      final MyMultimap<NonTerminal, Rule> rules,
+                                      final Set<Terminal<T>> terminals,
+                                      final Collection<Rule> changedRules) {
+            rules.lock();
+            final StageTimer timer = new StageTimer();
+            final NonTerminal[] nonTerminalsArr = old.nonTerminalsById;
+            final Terminal<T>[] terminalsById =
+                    terminals.size() == old.terminalsById.length && terminals.containsAll(Arrays.asList(old.terminalsById))
+                            ? old.terminalsById
+                            : sortTerminals(terminals);
+
+            final Set<NonTerminal> changed = new HashSet<>();
+            final Set<NonTerminal> changedLeftCorners = new HashSet<>();
+            final Set<NonTerminal> changedUnits = new HashSet<>();
+            for (final Rule rule : changedRules) {
+                changed.add(rule.left);
+                if (rule.right[0] instanceof NonTerminal) changedLeftCorners.add(rule.left);
+                if (rule.isUnitProduction()) changedUnits.add(rule.left);
+            }
+
+            timer.lap(STAGE_SYMBOLS);
+
+            final LeftCorners leftCorners = changedLeftCorners.isEmpty()
+                    ? old.leftCorners
+                    : old.leftCorners.withRows(
+                    changedLeftCorners,
+                    X -> LeftCorners.sumLeftCornerProbabilities(rules.get(X), old.leftCorners.mapToIndex)
+            );
+            timer.lap(STAGE_LEFT_CORNERS);
+            final LeftCorners leftStarCorners = updateReflexiveTransitiveClosure(
+                    old.leftCorners, old.leftStarCorners, leftCorners, changedLeftCorners
+            );
+            timer.lap(STAGE_LEFT_STAR);
+            final LeftCorners unitStarCorners;
+            if (changedUnits.isEmpty()) unitStarCorners = old.unitStarCorners;
+            else {
+                final LeftCorners oldUnitCorners = computeUnitCorners(oldRules, nonTerminalsArr);
+                unitStarCorners = updateReflexiveTransitiveClosure(
+                        oldUnitCorners,
+                        old.unitStarCorners,
+                        oldUnitCorners.withRows(
+                                changedUnits,
+                                X -> sumUnitProbabilities(rules.get(X), oldUnitCorners.mapToIndex)
+                        ),
+                        changedUnits
+                );
+            }
+            timer.lap(STAGE_UNIT_STAR);
+            final Map<Category, Set<Rule>> nonZeroLeftStartRules = updateNonZeroLeftStartRules(
+                    old.nonZeroLeftStartRules,
+                    leftStarCorners,
+                    nonTerminalsArr,
+                    findAncestors(changed, old.leftCorners, leftCorners),
+                    rules
+            );
+            timer.lap(STAGE_LEFT_START_RULES);
+            return new Analysis<>(
+                    terminalsById,
+                    nonTerminalsArr,
+                    leftCorners,
+                    leftStarCorners,
+                    unitStarCorners,
+                    nonZeroLeftStartRules,
+                    timer.getNanos()
+            );
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> void collectTerminalsAndNonTerminals(final Collection<Rule> rules,
+                                                                final Set<Terminal<T>> terminals,
+                                                                final Set<NonTerminal> nonTerminals) {
+            rules.forEach(rule -> {
+                nonTerminals.add(rule.left);
+                for (final Category c : rule.right)
+                    if (c instanceof Terminal) terminals.add((Terminal) c);
+                    else if (c instanceof NonTerminal) nonTerminals.add((NonTerminal) c);
+                    else throw new Error("This is a bug");
+            });
+        }
+    }
 
     public static class Builder<E> {
         private final MyMultimap<NonTerminal, Rule> rules = new MyMultimap<>();
         private String name;
         private ExpressionSemiring semiring = LogSemiring.get();
         private RuleFactory rf = new RuleFactory(semiring);
+        private Cache<Token<E>, Set<Terminal<E>>> tokenCache;
+        private Set<NonTerminal> trimGoals;
+        private double trimEpsilon;
+        private TrimReport trimReport;
+        private boolean sharePrefixes;
 
         public Builder(final String name) {
             this.name = name;
@@ -293,6 +845,54 @@ public final class Grammar<T> {
             return this;
         }
 
+        /**
+         * @param tokenCache Cache that remembers which terminals match a token. Defaults to a
+         *                   {@link SegmentedLruCache} of {@link #DEFAULT_TOKEN_CACHE_SIZE} entries.
+         */
+        @SuppressWarnings("unused")
+        public Builder<E> withTokenCache(final Cache<Token<E>, Set<Terminal<E>>> tokenCache) {
+            this.tokenCache = tokenCache;
+            return this;
+        }
+
+        /**
+         * Trims the grammar when it is built: drops all rules with a probability below <code>epsilon</code>, then all
+         * rules that use a non-terminal that can not derive a string of terminals, then all rules for non-terminals
+         * that can not be reached from any of the goals. If the grammar is made proper, probabilities are compared
+         * after normalizing, and the remaining rules are normalized again.
+         *
+         * @param epsilon Minimum rule probability, or 0.0 to keep all rules
+         * @param goals   Categories that the grammar will be used to parse
+         * @see #getTrimReport()
+         */
+        @SuppressWarnings("unused")
+        public Builder<E> withTrimming(final double epsilon, final NonTerminal... goals) {
+            if (goals.length == 0) throw new IllegalArgumentException("Trimming needs at least one goal");
+            this.trimEpsilon = epsilon;
+            this.trimGoals = new HashSet<>(Arrays.asList(goals));
+            return this;
+        }
+
+        /**
+         * Organizes the right hand sides of every non-terminal into a prefix trie when the grammar is built, so that
+         * rules with a common prefix share their chart states up to the point where they diverge. Trie nodes are
+         * {@link SharedPrefix synthetic non-terminals} that carry the rule probabilities, so scores are unchanged, and
+         * the parser removes them from the parse trees that it returns.
+         */
+        @SuppressWarnings("unused")
+        public Builder<E> withPrefixSharing() {
+            this.sharePrefixes = true;
+            return this;
+        }
+
+        /**
+         * @return What trimming removed during the last {@link #build()}, or null if the grammar was not trimmed
+         */
+        @SuppressWarnings("unused")
+        public TrimReport getTrimReport() {
+            return trimReport;
+        }
+
         @SuppressWarnings("unused")
         public Builder<E> setName(final String name) {
             this.name = name;
@@ -349,7 +949,19 @@ public final class Grammar<T> {
         }
 
         public Grammar<E> build(final boolean makeProper) {
-            return new Grammar<>(name, makeProper ? normalizeRuleWeights(rules, semiring) : rules, semiring);
+            MyMultimap<NonTerminal, Rule> grammarRules = makeProper ? normalizeRuleWeights(rules, semiring) : rules;
+            if (trimGoals != null) {
+                final MyMultimap<NonTerminal, Rule> trimmed = new MyMultimap<>();
+                trimReport = GrammarTrimmer.trim(grammarRules.values(), trimEpsilon, trimGoals, trimmed);
+                grammarRules = makeProper ? normalizeRuleWeights(trimmed, semiring) : trimmed;
+            } else trimReport = null;
+            if (sharePrefixes) grammarRules = PrefixSharing.share(grammarRules, semiring);
+            return new Grammar<>(
+                    name,
+                    grammarRules,
+                    semiring,
+                    tokenCache != null ? tokenCache : new SegmentedLruCache<>(DEFAULT_TOKEN_CACHE_SIZE)
+            );
         }
 
         @SuppressWarnings({"unused", "WeakerAccess", "UnusedReturnValue"})
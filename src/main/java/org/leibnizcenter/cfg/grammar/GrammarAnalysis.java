@@ -1,9 +1,13 @@
 package org.leibnizcenter.cfg.grammar;
 
+import org.leibnizcenter.cfg.algebra.matrix.BlockedLUDecomposition;
 import org.leibnizcenter.cfg.algebra.matrix.LUDecomposition;
 import org.leibnizcenter.cfg.algebra.matrix.Matrix;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.DblSemiring;
 import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
 import org.leibnizcenter.cfg.errors.IssueRequest;
 import org.leibnizcenter.cfg.rule.Rule;
 import org.leibnizcenter.cfg.util.MyMultimap;
@@ -13,6 +17,11 @@ import java.util.*;
 import static java.util.Collections.unmodifiableMap;
 
 class GrammarAnalysis {
+    /**
+     * Matrices of at least this size are inverted with a {@link BlockedLUDecomposition}
+     */
+    private static final int BLOCKED_INVERSION_THRESHOLD = 128;
+
     private GrammarAnalysis() {
         throw new IllegalStateException();
     }
@@ -22,9 +31,22 @@ class GrammarAnalysis {
      *
      * <code>R_L = I + P_L R_L = (I - P_L)^-1</code>
      *
+     * Small relations are inverted as a whole; large ones per strongly connected component, see
+     * {@link #computeSparseReflexiveTransitiveClosure(LeftCorners, NonTerminal[])}.
+     *
      * @param leftCorners left corners
      */
     static LeftCorners computeReflexiveTransitiveClosure(final LeftCorners leftCorners, final NonTerminal[] nonterminalsArr) {
+        if (nonterminalsArr.length <= LeftCorners.DENSE_THRESHOLD)
+            return computeDenseReflexiveTransitiveClosure(leftCorners, nonterminalsArr);
+        else
+            return computeSparseReflexiveTransitiveClosure(leftCorners, nonterminalsArr);
+    }
+
+    /**
+     * Computes <code>(I - P_L)^-1</code> by inverting the full matrix, which is cubic in the number of non-terminals
+     */
+    static LeftCorners computeDenseReflexiveTransitiveClosure(final LeftCorners leftCorners, final NonTerminal[] nonterminalsArr) {
         final int nonTerminalsCount = nonterminalsArr.length;
         final Matrix R_L_inverse = new Matrix(nonTerminalsCount, nonTerminalsCount);
         R_L_inverse.forEach((row, col, value) -> {
@@ -37,7 +59,287 @@ class GrammarAnalysis {
         return new LeftCorners(R_L, nonterminalsArr);
     }
 
+    /**
+     * <p>
+     * Computes <code>(I - P_L)^-1</code> one strongly connected component of the left-corner graph at a time. Components
+     * are visited sinks first, so that for every non-terminal <code>Y</code> in component <code>C</code>,
+     * </p>
+     * <pre>
+     * B[Y] = e_Y + &Sigma;<sub>Z &notin; C</sub> P_L[Y][Z] R_L[Z]
+     * </pre>
+     * <p>
+     * only depends on rows that are already known, and <code>R_L[X] = &Sigma;<sub>Y &isin; C</sub> L[X][Y] B[Y]</code>
+     * where <code>L = (I - A)^-1</code> for <code>A</code> the restriction of <code>P_L</code> to <code>C</code>.
+     * Only the (usually tiny) components are inverted, and rows are kept sparse.
+     * </p>
+     */
+    static LeftCorners computeSparseReflexiveTransitiveClosure(final LeftCorners leftCorners, final NonTerminal[] nonterminalsArr) {
+        final SparseRow[] closure = new SparseRow[nonterminalsArr.length];
+        closeComponents(leftCorners, null, null, closure);
+        return new LeftCorners(closure, nonterminalsArr);
+    }
+
+    /**
+     * Recomputes the closure of a relation of which only the rows of some non-terminals changed. Only rows of
+     * non-terminals that have a path to a changed row, in the old or the new relation, are recomputed. Of the other
+     * rows, only those that a recomputed row depends on are read from the old closure; all of them are copied over in
+     * bulk, see {@link LeftCorners#withRows(boolean[], SparseRow[])}.
+     *
+     * @param oldRelation Relation before the change
+     * @param oldClosure  Closure of the old relation
+     * @param newRelation Relation after the change, over the same non-terminals
+     * @param changedRows Non-terminals of which the row in the relation changed
+     */
+    static LeftCorners updateReflexiveTransitiveClosure(final LeftCorners oldRelation,
+                                                        final LeftCorners oldClosure,
+                                                        final LeftCorners newRelation,
+                                                        final Collection<NonTerminal> changedRows) {
+        if (changedRows.isEmpty()) return oldClosure;
+        final boolean[] affected = findAncestors(changedRows, oldRelation, newRelation);
+        final SparseRow[] closure = new SparseRow[affected.length];
+        closeComponents(newRelation, affected, oldClosure, closure);
+        return oldClosure.withRows(affected, closure);
+    }
+
+    /**
+     * @return For every non-terminal, whether it has a path to one of the given non-terminals in any of the given
+     * relations. Given non-terminals are their own ancestors.
+     */
+    static boolean[] findAncestors(final Collection<NonTerminal> nonTerminals, final LeftCorners... relations) {
+        final int n = relations[0].size();
+        final boolean[] ancestor = new boolean[n];
+        final int[] queue = new int[n];
+        final Set<LeftCorners> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final LeftCorners relation : relations) {
+            if (!visited.add(relation)) continue;
+            final int[][] predecessors = relation.predecessors();
+            final boolean[] found = new boolean[n];
+            int queueStart = 0;
+            int queueEnd = 0;
+            for (final NonTerminal nonTerminal : nonTerminals) {
+                final int X = relation.mapToIndex.get(nonTerminal);
+                if (!found[X]) {
+                    found[X] = true;
+                    queue[queueEnd++] = X;
+                }
+            }
+            while (queueStart < queueEnd) {
+                final int Y = queue[queueStart++];
+                ancestor[Y] = true;
+                for (final int X : predecessors[Y])
+                    if (!found[X]) {
+                        found[X] = true;
+                        queue[queueEnd++] = X;
+                    }
+            }
+        }
+        return ancestor;
+    }
+
+    /**
+     * Computes the closure rows of all included non-terminals, one strongly connected component at a time
+     *
+     * @param include    Non-terminals to compute the rows of, or null for all
+     * @param oldClosure Closure to read the rows of non-terminals that are not included from, or null if all are
+     *                   included
+     * @param closure    Closure rows, to be filled in
+     */
+    private static void closeComponents(final LeftCorners leftCorners,
+                                        final boolean[] include,
+                                        final LeftCorners oldClosure,
+                                        final SparseRow[] closure) {
+        final int n = leftCorners.size();
+
+        final double[] accumulator = new double[n];
+        final boolean[] touched = new boolean[n];
+        final int[] touchedColumns = new int[n];
+        final int[] localIndex = new int[n];
+        Arrays.fill(localIndex, -1);
+
+        for (final int[] component : stronglyConnectedComponents(leftCorners, include)) {
+            final int m = component.length;
+            for (int i = 0; i < m; i++) localIndex[component[i]] = i;
+
+            // A: restriction of P_L to this component; B: paths that leave the component
+            final double[][] A = new double[m][m];
+            final SparseRow[] B = new SparseRow[m];
+            for (int i = 0; i < m; i++) {
+                final int Y = component[i];
+                final int[] touchedCount = {0};
+                final double[] a = A[i];
+                addTo(accumulator, touched, touchedColumns, touchedCount, Y, 1.0);
+                leftCorners.forEachNonZero(Y, (Z, p) -> {
+                    if (localIndex[Z] >= 0) a[localIndex[Z]] += p;
+                    else {
+                        if (closure[Z] == null) closure[Z] = oldClosure.row(Z);
+                        final SparseRow R_Z = closure[Z];
+                        for (int k = 0; k < R_Z.size(); k++)
+                            addTo(accumulator, touched, touchedColumns, touchedCount, R_Z.columnAt(k), p * R_Z.valueAt(k));
+                    }
+                });
+                B[i] = collect(accumulator, touched, touchedColumns, touchedCount[0]);
+            }
+
+            final double[][] L = inverseComponent(A);
+            for (int i = 0; i < m; i++) {
+                final int[] touchedCount = {0};
+                for (int j = 0; j < m; j++) {
+                    final double l = L[i][j];
+                    if (l != 0.0) {
+                        final SparseRow B_Y = B[j];
+                        for (int k = 0; k < B_Y.size(); k++)
+                            addTo(accumulator, touched, touchedColumns, touchedCount, B_Y.columnAt(k), l * B_Y.valueAt(k));
+                    }
+                }
+                closure[component[i]] = collect(accumulator, touched, touchedColumns, touchedCount[0]);
+            }
+
+            for (final int X : component) localIndex[X] = -1;
+        }
+    }
+
+    private static void addTo(final double[] accumulator,
+                              final boolean[] touched,
+                              final int[] touchedColumns,
+                              final int[] touchedCount,
+                              final int column,
+                              final double value) {
+        if (!touched[column]) {
+            touched[column] = true;
+            touchedColumns[touchedCount[0]++] = column;
+        }
+        accumulator[column] += value;
+    }
+
+    /**
+     * Moves the accumulated values into a new sparse row, and resets the accumulator
+     */
+    private static SparseRow collect(final double[] accumulator,
+                                     final boolean[] touched,
+                                     final int[] touchedColumns,
+                                     final int touchedCount) {
+        Arrays.sort(touchedColumns, 0, touchedCount);
+        final int[] columns = new int[touchedCount];
+        final double[] values = new double[touchedCount];
+        int size = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            final int column = touchedColumns[i];
+            if (accumulator[column] != 0.0) {
+                columns[size] = column;
+                values[size] = accumulator[column];
+                size++;
+            }
+            accumulator[column] = 0.0;
+            touched[column] = false;
+        }
+        return size == touchedCount
+                ? new SparseRow(columns, values)
+                : new SparseRow(Arrays.copyOf(columns, size), Arrays.copyOf(values, size));
+    }
+
+    /**
+     * @return <code>(I - A)^-1</code>
+     */
+    private static double[][] inverseComponent(final double[][] A) {
+        final int m = A.length;
+        if (m == 1) {
+            final double denominator = 1.0 - A[0][0];
+            if (denominator == 0.0) throw new IssueRequest("Matrix is singular");
+            return new double[][]{{1.0 / denominator}};
+        }
+        final Matrix I_minus_A = new Matrix(m, m);
+        for (int i = 0; i < m; i++)
+            for (int j = 0; j < m; j++)
+                I_minus_A.set(i, j, (i == j ? 1.0 : 0.0) - A[i][j]);
+        final Matrix inverse = inverseMatrix(I_minus_A);
+        final double[][] L = new double[m][m];
+        for (int i = 0; i < m; i++) for (int j = 0; j < m; j++) L[i][j] = inverse.get(i, j);
+        return L;
+    }
+
+    /**
+     * Iterative version of Tarjan's algorithm over the non-zero entries of given relation
+     *
+     * @return Strongly connected components, in reverse topological order (every component comes after all components
+     * it has an edge into)
+     */
+    static List<int[]> stronglyConnectedComponents(final LeftCorners relation) {
+        return stronglyConnectedComponents(relation, null);
+    }
+
+    /**
+     * @param include Non-terminals to include, or null for all. Edges to other non-terminals are ignored.
+     */
+    private static List<int[]> stronglyConnectedComponents(final LeftCorners relation, final boolean[] include) {
+        final int n = relation.size();
+        final int[][] successors = new int[n][];
+        final int[] columns = new int[n];
+        for (int X = 0; X < n; X++) {
+            if (include != null && !include[X]) continue;
+            final int[] count = {0};
+            relation.forEachNonZero(X, (Y, p) -> {
+                if (include == null || include[Y]) columns[count[0]++] = Y;
+            });
+            successors[X] = Arrays.copyOf(columns, count[0]);
+        }
+
+        final List<int[]> components = new ArrayList<>();
+        final int[] index = new int[n];
+        Arrays.fill(index, -1);
+        final int[] lowLink = new int[n];
+        final boolean[] onStack = new boolean[n];
+        final int[] stack = new int[n];
+        int stackSize = 0;
+        final int[] callStack = new int[n];
+        final int[] nextSuccessor = new int[n];
+        int nextIndex = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0 || (include != null && !include[root])) continue;
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            nextSuccessor[root] = 0;
+
+            while (depth > 0) {
+                final int v = callStack[depth - 1];
+                if (nextSuccessor[v] < successors[v].length) {
+                    final int w = successors[v][nextSuccessor[v]++];
+                    if (index[w] < 0) {
+                        index[w] = lowLink[w] = nextIndex++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        nextSuccessor[w] = 0;
+                        callStack[depth++] = w;
+                    } else if (onStack[w]) lowLink[v] = Math.min(lowLink[v], index[w]);
+                } else {
+                    depth--;
+                    if (depth > 0) {
+                        final int parent = callStack[depth - 1];
+                        lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                    }
+                    if (lowLink[v] == index[v]) {
+                        int start = stackSize;
+                        do start--; while (stack[start] != v);
+                        final int[] component = Arrays.copyOfRange(stack, start, stackSize);
+                        for (final int w : component) onStack[w] = false;
+                        stackSize = start;
+                        components.add(component);
+                    }
+                }
+            }
+        }
+        return components;
+    }
+
     private static Matrix inverseMatrix(final Matrix R_L_inverse) {
+        if (R_L_inverse.getRowDimension() >= BLOCKED_INVERSION_THRESHOLD) {
+            final BlockedLUDecomposition luDecomposition = new BlockedLUDecomposition(R_L_inverse);
+            if (luDecomposition.isNonsingular()) return luDecomposition.inverse();
+            else throw new IssueRequest("Matrix is singular");
+        }
         final LUDecomposition luDecomposition = new LUDecomposition(R_L_inverse);
         if (luDecomposition.isNonsingular()) {
             return R_L_inverse.inverse(luDecomposition);
@@ -66,25 +368,146 @@ class GrammarAnalysis {
         return unmodifiableMap(nonZeroLeftStartRules_);
     }
 
+    /**
+     * Like {@link #findNonZeroLeftStartRules(LeftCorners, Set, MyMultimap)}, but only recomputes the entries of the
+     * given non-terminals and shares all others with the old map
+     */
+    static Map<Category, Set<Rule>> updateNonZeroLeftStartRules(final Map<Category, Set<Rule>> oldNonZeroLeftStartRules,
+                                                                final LeftCorners leftStarCorners,
+                                                                final NonTerminal[] nonterminalsArr,
+                                                                final boolean[] affected,
+                                                                final MyMultimap<NonTerminal, Rule> rules) {
+        final Set<NonTerminal> affectedNonTerminals = new HashSet<>();
+        for (int X = 0; X < nonterminalsArr.length; X++) if (affected[X]) affectedNonTerminals.add(nonterminalsArr[X]);
+        final Map<Category, Set<Rule>> nonZeroLeftStartRules_ = new HashMap<>(oldNonZeroLeftStartRules);
+        affectedNonTerminals.forEach(nonZeroLeftStartRules_::remove);
+        nonZeroLeftStartRules_.putAll(findNonZeroLeftStartRules(leftStarCorners, affectedNonTerminals, rules));
+        return unmodifiableMap(nonZeroLeftStartRules_);
+    }
+
     /**
      * Sum all probabilities for unit relations (form X -> Y)
      */
     static LeftCorners computeUnitStarCorners(final MyMultimap<NonTerminal, Rule> rules, final NonTerminal[] nonterminalsArr) {
-        final LeftCorners unitRuleProbabilities = new LeftCorners(nonterminalsArr);
-        for (int i = 0; i < nonterminalsArr.length; i++) {
-            final NonTerminal leftHandSide = nonterminalsArr[i];
-            final Collection<Rule> rulesForCategory = rules.get(leftHandSide);
-            if (rulesForCategory != null && !rulesForCategory.isEmpty()) {
-                for (final Rule unitProduction : rulesForCategory) {
-                    if (unitProduction.isUnitProduction()) {
-                        unitRuleProbabilities.plusRawProbability(i,
-                                (NonTerminal) unitProduction.right[0], unitProduction.probability);
-                    }
-                }
+        // R_U = (I - P_U)
+        return computeReflexiveTransitiveClosure(computeUnitCorners(rules, nonterminalsArr), nonterminalsArr);
+    }
+
+    /**
+     * @return P_U, the probabilities of unit productions
+     */
+    static LeftCorners computeUnitCorners(final MyMultimap<NonTerminal, Rule> rules, final NonTerminal[] nonterminalsArr) {
+        final Map<Category, Integer> index = new HashMap<>(nonterminalsArr.length * 2);
+        for (int i = 0; i < nonterminalsArr.length; i++) index.put(nonterminalsArr[i], i);
+        final SparseRow[] unitRuleProbabilities = new SparseRow[nonterminalsArr.length];
+        for (int i = 0; i < nonterminalsArr.length; i++)
+            unitRuleProbabilities[i] = sumUnitProbabilities(rules.get(nonterminalsArr[i]), index);
+        return new LeftCorners(unitRuleProbabilities, nonterminalsArr);
+    }
+
+    /**
+     * @param rulesForCategory Rules with the same left hand side, or null
+     * @return Row of the left hand side in P_U, or null if it has no unit productions
+     */
+    static SparseRow sumUnitProbabilities(final Collection<Rule> rulesForCategory, final Map<Category, Integer> index) {
+        SparseRow row = null;
+        if (rulesForCategory != null) for (final Rule unitProduction : rulesForCategory)
+            if (unitProduction.isUnitProduction()) {
+                if (row == null) row = new SparseRow();
+                row.plus(index.get(unitProduction.right[0]), unitProduction.probability);
+            }
+        return row;
+    }
+
+    /**
+     * @return Whether the first right hand side category of given rule is a real terminal (not the error token)
+     */
+    static boolean startsWithTerminal(final Rule rule) {
+        final Category first = rule.right[0];
+        return first instanceof Terminal && !(first instanceof NonLexicalToken);
+    }
+
+    /**
+     * Shares the table of every non-terminal of which the left-start rules are the very same set as in the old tables.
+     * Such a non-terminal can not reach a changed rule, so its row of left-star scores did not change either.
+     *
+     * @param oldTables                Tables computed with the same semiring, or an empty map
+     * @param oldNonZeroLeftStartRules Left-start rules that the old tables were computed from
+     * @param structuralOnly           Whether to leave out rules that start with a terminal, which are looked up in the
+     *                                 lexicon
+     * @return For every non-terminal <code>Z</code>, all rules <code>Y → v</code> such that <code>R(Z =*L&gt; Y)</code>
+     * is non-zero, with <code>R(Z =*L&gt; Y) * P(Y → v)</code> folded in
+     */
+    static Map<Category, PredictionTable> updatePredictionTables(final Map<Category, PredictionTable> oldTables,
+                                                                final Map<Category, Set<Rule>> oldNonZeroLeftStartRules,
+                                                                final Map<Category, Set<Rule>> nonZeroLeftStartRules,
+                                                                final ScoresAsSemiringElements leftStarScores,
+                                                                final DblSemiring semiring,
+                                                                final boolean structuralOnly) {
+        final Map<Category, PredictionTable> tables = new HashMap<>(nonZeroLeftStartRules.size() * 2);
+        nonZeroLeftStartRules.forEach((Z, rules) -> {
+            if (oldNonZeroLeftStartRules.get(Z) == rules) {
+                tables.put(Z, oldTables.get(Z));
+                return;
             }
+            final Rule[] predicted = structuralOnly
+                    ? rules.stream().filter(rule -> !startsWithTerminal(rule)).toArray(Rule[]::new)
+                    : rules.toArray(new Rule[rules.size()]);
+            final double[] scores = new double[predicted.length];
+            for (int i = 0; i < predicted.length; i++)
+                scores[i] = semiring.times(leftStarScores.get(Z, predicted[i].left), predicted[i].probabilityAsSemiringElement);
+            tables.put(Z, new PredictionTable(predicted, scores));
+        });
+        return unmodifiableMap(tables);
+    }
+
+    /**
+     * Groups all rules that start with a terminal by the id of that terminal
+     */
+    static <T> Rule[][] computeLexicon(final Collection<Rule> rules, final Grammar<T> grammar) {
+        final List<List<Rule>> byTerminal = new ArrayList<>(grammar.getTerminalCount());
+        for (int i = 0; i < grammar.getTerminalCount(); i++) byTerminal.add(new ArrayList<>(1));
+        for (final Rule rule : rules)
+            if (startsWithTerminal(rule)) byTerminal.get(grammar.getTerminalId((Terminal<?>) rule.right[0])).add(rule);
+
+        final Rule[][] lexicon = new Rule[byTerminal.size()][];
+        for (int i = 0; i < lexicon.length; i++) lexicon[i] = byTerminal.get(i).toArray(new Rule[byTerminal.get(i).size()]);
+        return lexicon;
+    }
+
+    /**
+     * Like {@link #computeLexicon(Collection, Grammar)}, but only rebuilds the entries of the terminals that changed
+     * rules start with, and shares all others with the old lexicon. Rules keep the order that a full computation over
+     * the changed rules would give them: replacements take the place of the rule they replace, and added rules go last.
+     *
+     * @param oldLexicon Lexicon of the old rules, over the same terminal ids
+     * @param replaced   Rules of the old lexicon that were removed (mapped to null) or replaced by another rule
+     * @param added      Rules that were added
+     */
+    static <T> Rule[][] updateLexicon(final Rule[][] oldLexicon,
+                                      final Map<Rule, Rule> replaced,
+                                      final Collection<Rule> added,
+                                      final Grammar<T> grammar) {
+        final Map<Integer, List<Rule>> changed = new HashMap<>();
+        for (final Rule rule : replaced.keySet())
+            if (startsWithTerminal(rule)) changed.put(grammar.getTerminalId((Terminal<?>) rule.right[0]), null);
+        for (final Rule rule : added)
+            if (startsWithTerminal(rule)) changed.put(grammar.getTerminalId((Terminal<?>) rule.right[0]), null);
+        for (final Integer terminal : changed.keySet()) {
+            final List<Rule> rules = new ArrayList<>(oldLexicon[terminal].length + 1);
+            for (final Rule rule : oldLexicon[terminal])
+                if (!replaced.containsKey(rule)) rules.add(rule);
+                else if (replaced.get(rule) != null) rules.add(replaced.get(rule));
+            changed.put(terminal, rules);
         }
+        for (final Rule rule : added)
+            if (startsWithTerminal(rule)) {
+                final List<Rule> rules = changed.get(grammar.getTerminalId((Terminal<?>) rule.right[0]));
+                if (!rules.contains(rule)) rules.add(rule);
+            }
 
-        // R_U = (I - P_U)
-        return computeReflexiveTransitiveClosure(unitRuleProbabilities, nonterminalsArr);
+        final Rule[][] lexicon = oldLexicon.clone();
+        changed.forEach((terminal, rules) -> lexicon[terminal] = rules.toArray(new Rule[rules.size()]));
+        return lexicon;
     }
 }
@@ -15,7 +15,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
@@ -31,7 +31,7 @@ public class GrammarParser {
         final RuleParser ruleParser = new RuleParser(parseCategory, semiring);
 
         String line = reader.readLine();
-        final Collection<Rule> rules = new HashSet<>();
+        final Collection<Rule> rules = new LinkedHashSet<>();
         while (line != null) {
             line = TRAILING_COMMENT.matcher(line).replaceAll("").trim();
             if (!line.isEmpty())
@@ -0,0 +1,243 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
+import org.leibnizcenter.cfg.rule.Rule;
+
+import java.util.*;
+
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.computeUnitCorners;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.startsWithTerminal;
+import static org.leibnizcenter.cfg.grammar.GrammarAnalysis.stronglyConnectedComponents;
+
+/**
+ * <p>
+ * Statistics of a {@link Grammar} that determine how expensive it is to build and to parse with:
+ * </p>
+ * <ul>
+ * <li>Rule and symbol counts. Lexical rules are looked up by the next token, structural rules are predicted.</li>
+ * <li>Cycles in the left-corner and unit graphs. Every cycle is inverted as a dense matrix when the grammar is built,
+ * so the largest cycle bounds build time.</li>
+ * <li>Density of the left-star and unit-star closures, the fraction of non-terminal pairs that have a non-zero
+ * score.</li>
+ * <li>Number of rules that a state predicts, on average and at most.</li>
+ * <li>Time spent in each stage of building the grammar.</li>
+ * </ul>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class GrammarReport {
+    private final String name;
+    private final int ruleCount;
+    private final int lexicalRuleCount;
+    private final int nonTerminalCount;
+    private final int terminalCount;
+    private final int regexTerminalCount;
+    private final int[] leftCornerCycleSizes;
+    private final int[] unitCycleSizes;
+    private final double leftStarDensity;
+    private final double unitStarDensity;
+    private final double averageLeftStartRules;
+    private final int maxLeftStartRules;
+    private final Map<String, Long> stageNanos;
+
+    private GrammarReport(final String name,
+                          final int ruleCount,
+                          final int lexicalRuleCount,
+                          final int nonTerminalCount,
+                          final int terminalCount,
+                          final int regexTerminalCount,
+                          final int[] leftCornerCycleSizes,
+                          final int[] unitCycleSizes,
+                          final double leftStarDensity,
+                          final double unitStarDensity,
+                          final double averageLeftStartRules,
+                          final int maxLeftStartRules,
+                          final Map<String, Long> stageNanos) {
+        this.name = name;
+        this.ruleCount = ruleCount;
+        this.lexicalRuleCount = lexicalRuleCount;
+        this.nonTerminalCount = nonTerminalCount;
+        this.terminalCount = terminalCount;
+        this.regexTerminalCount = regexTerminalCount;
+        this.leftCornerCycleSizes = leftCornerCycleSizes;
+        this.unitCycleSizes = unitCycleSizes;
+        this.leftStarDensity = leftStarDensity;
+        this.unitStarDensity = unitStarDensity;
+        this.averageLeftStartRules = averageLeftStartRules;
+        this.maxLeftStartRules = maxLeftStartRules;
+        this.stageNanos = stageNanos;
+    }
+
+    static <T> GrammarReport of(final Grammar<T> grammar) {
+        final Grammar.Analysis<T> analysis = grammar.getAnalysis();
+        final NonTerminal[] nonTerminals = analysis.nonTerminalsById;
+
+        final Collection<Rule> rules = grammar.getAllRules();
+        int lexicalRuleCount = 0;
+        for (final Rule rule : rules) if (startsWithTerminal(rule)) lexicalRuleCount++;
+
+        int regexTerminalCount = 0;
+        for (final Terminal<T> terminal : analysis.terminalsById)
+            if (terminal instanceof RegexTerminal) regexTerminalCount++;
+
+        int maxLeftStartRules = 0;
+        long leftStartRules = 0;
+        for (final NonTerminal nonTerminal : nonTerminals) {
+            final Set<Rule> rulesForNonTerminal = analysis.nonZeroLeftStartRules.get(nonTerminal);
+            final int size = rulesForNonTerminal == null ? 0 : rulesForNonTerminal.size();
+            leftStartRules += size;
+            maxLeftStartRules = Math.max(maxLeftStartRules, size);
+        }
+
+        return new GrammarReport(
+                grammar.name,
+                rules.size(),
+                lexicalRuleCount,
+                nonTerminals.length,
+                analysis.terminalsById.length,
+                regexTerminalCount,
+                cycleSizes(analysis.leftCorners),
+                cycleSizes(computeUnitCorners(grammar.getRulesByLeftHandSide(), nonTerminals)),
+                density(analysis.leftStarCorners),
+                density(analysis.unitStarCorners),
+                nonTerminals.length == 0 ? 0.0 : leftStartRules / (double) nonTerminals.length,
+                maxLeftStartRules,
+                grammar.getStageNanos()
+        );
+    }
+
+    /**
+     * @return Sizes of all strongly connected components that contain a cycle, largest first
+     */
+    private static int[] cycleSizes(final LeftCorners relation) {
+        final List<Integer> sizes = new ArrayList<>();
+        for (final int[] component : stronglyConnectedComponents(relation))
+            if (component.length > 1 || relation.getRawProbability(component[0], component[0]) != 0.0)
+                sizes.add(component.length);
+        sizes.sort(Comparator.reverseOrder());
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static double density(final LeftCorners relation) {
+        final int n = relation.size();
+        if (n == 0) return 0.0;
+        final long[] nonZero = {0};
+        for (int row = 0; row < n; row++) relation.forEachNonZero(row, (column, value) -> nonZero[0]++);
+        return nonZero[0] / ((double) n * n);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return Number of rules of which the right hand side starts with a terminal
+     */
+    public int getLexicalRuleCount() {
+        return lexicalRuleCount;
+    }
+
+    /**
+     * @return Number of rules of which the right hand side starts with a non-terminal or the error token
+     */
+    public int getStructuralRuleCount() {
+        return ruleCount - lexicalRuleCount;
+    }
+
+    public int getNonTerminalCount() {
+        return nonTerminalCount;
+    }
+
+    public int getTerminalCount() {
+        return terminalCount;
+    }
+
+    public int getRegexTerminalCount() {
+        return regexTerminalCount;
+    }
+
+    /**
+     * @return Sizes of the cycles (strongly connected components with at least one edge) in the left-corner graph,
+     * largest first
+     */
+    public int[] getLeftCornerCycleSizes() {
+        return leftCornerCycleSizes.clone();
+    }
+
+    /**
+     * @return Sizes of the cycles in the graph of unit productions, largest first
+     */
+    public int[] getUnitCycleSizes() {
+        return unitCycleSizes.clone();
+    }
+
+    /**
+     * @return Fraction of pairs of non-terminals with a non-zero left-star score
+     */
+    public double getLeftStarDensity() {
+        return leftStarDensity;
+    }
+
+    /**
+     * @return Fraction of pairs of non-terminals with a non-zero unit-star score
+     */
+    public double getUnitStarDensity() {
+        return unitStarDensity;
+    }
+
+    /**
+     * @return Average number of rules that a state active on a non-terminal predicts, without token filtering
+     */
+    public double getAverageLeftStartRules() {
+        return averageLeftStartRules;
+    }
+
+    /**
+     * @return Maximum number of rules that a state active on a non-terminal predicts, without token filtering
+     */
+    public int getMaxLeftStartRules() {
+        return maxLeftStartRules;
+    }
+
+    /**
+     * @see Grammar#getStageNanos()
+     */
+    public Map<String, Long> getStageNanos() {
+        return stageNanos;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Grammar ").append(name == null ? "(unnamed)" : name).append('\n');
+        sb.append("  rules: ").append(ruleCount)
+                .append(" (").append(lexicalRuleCount).append(" lexical, ")
+                .append(getStructuralRuleCount()).append(" structural)\n");
+        sb.append("  non-terminals: ").append(nonTerminalCount).append('\n');
+        sb.append("  terminals: ").append(terminalCount)
+                .append(" (").append(regexTerminalCount).append(" regex)\n");
+        appendCycles(sb, "left-corner cycles", leftCornerCycleSizes);
+        appendCycles(sb, "unit cycles", unitCycleSizes);
+        sb.append(String.format(Locale.ROOT, "  left-star density: %.6f%n", leftStarDensity));
+        sb.append(String.format(Locale.ROOT, "  unit-star density: %.6f%n", unitStarDensity));
+        sb.append(String.format(Locale.ROOT, "  left-start rules per non-terminal: %.2f average, %d max%n",
+                averageLeftStartRules, maxLeftStartRules));
+        if (!stageNanos.isEmpty()) {
+            sb.append("  build stages:\n");
+            stageNanos.forEach((stage, nanos) ->
+                    sb.append(String.format(Locale.ROOT, "    %s: %.3f ms%n", stage, nanos / 1e6)));
+        }
+        return sb.toString();
+    }
+
+    private static void appendCycles(final StringBuilder sb, final String label, final int[] sizes) {
+        sb.append("  ").append(label).append(": ").append(sizes.length);
+        if (sizes.length > 0) sb.append(" (largest ").append(sizes[0]).append(')');
+        sb.append('\n');
+    }
+}
@@ -0,0 +1,130 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.util.MyMultimap;
+
+import java.util.*;
+
+/**
+ * Removes rules that can never take part in a derivation of a goal: rules below a probability threshold, rules that
+ * use a non-terminal that can not derive any string of terminals, and rules for non-terminals that can not be reached
+ * from a goal. Both analyses are linear in the size of the grammar.
+ */
+final class GrammarTrimmer {
+    private GrammarTrimmer() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @param rules   Rules to trim. Not modified.
+     * @param epsilon Rules with a probability below this are dropped first
+     * @param goals   Categories that will be parsed for
+     * @param trimmed Receives all rules that are kept
+     * @return Report of what was removed
+     */
+    static TrimReport trim(final Collection<Rule> rules,
+                           final double epsilon,
+                           final Set<NonTerminal> goals,
+                           final MyMultimap<NonTerminal, Rule> trimmed) {
+        final Set<Rule> lowProbabilityRules = new HashSet<>();
+        final List<Rule> candidates = new ArrayList<>(rules.size());
+        for (final Rule rule : rules)
+            if (rule.probability < epsilon) lowProbabilityRules.add(rule);
+            else candidates.add(rule);
+
+        final Set<NonTerminal> allNonTerminals = new HashSet<>();
+        for (final Rule rule : rules) {
+            allNonTerminals.add(rule.left);
+            for (final Category category : rule.right)
+                if (category instanceof NonTerminal) allNonTerminals.add((NonTerminal) category);
+        }
+
+        final Set<NonTerminal> productive = findProductive(candidates);
+        final Set<Rule> unproductiveRules = new HashSet<>();
+        final List<Rule> productiveRules = new ArrayList<>(candidates.size());
+        for (final Rule rule : candidates)
+            if (isProductive(rule, productive)) productiveRules.add(rule);
+            else unproductiveRules.add(rule);
+
+        final Set<NonTerminal> reachable = findReachable(productiveRules, goals);
+        final Set<Rule> unreachableRules = new HashSet<>();
+        int kept = 0;
+        for (final Rule rule : productiveRules)
+            if (reachable.contains(rule.left)) {
+                trimmed.put(rule.left, rule);
+                kept++;
+            } else unreachableRules.add(rule);
+
+        final Set<NonTerminal> unproductiveNonTerminals = new HashSet<>(allNonTerminals);
+        unproductiveNonTerminals.removeAll(productive);
+        final Set<NonTerminal> unreachableNonTerminals = new HashSet<>(productive);
+        unreachableNonTerminals.removeAll(reachable);
+
+        return new TrimReport(
+                new HashSet<>(goals),
+                lowProbabilityRules,
+                unproductiveNonTerminals,
+                unproductiveRules,
+                unreachableNonTerminals,
+                unreachableRules,
+                kept
+        );
+    }
+
+    private static boolean isProductive(final Rule rule, final Set<NonTerminal> productive) {
+        for (final Category category : rule.right)
+            if (category instanceof NonTerminal && !productive.contains(category)) return false;
+        return true;
+    }
+
+    /**
+     * A non-terminal is productive if it has a rule of which all non-terminals are productive. Every rule keeps a count
+     * of the non-terminals in its right hand side that are not known to be productive yet, and rules are revisited only
+     * when one of those becomes productive.
+     */
+    static Set<NonTerminal> findProductive(final Collection<Rule> rules) {
+        final Map<NonTerminal, List<Rule>> rulesByRightHandSide = new HashMap<>();
+        final Map<Rule, Integer> unknownCount = new HashMap<>(rules.size() * 2);
+        final Deque<NonTerminal> queue = new ArrayDeque<>();
+        final Set<NonTerminal> productive = new HashSet<>();
+
+        for (final Rule rule : rules) {
+            int count = 0;
+            for (final Category category : rule.right)
+                if (category instanceof NonTerminal) {
+                    rulesByRightHandSide.computeIfAbsent((NonTerminal) category, ignored -> new ArrayList<>()).add(rule);
+                    count++;
+                }
+            unknownCount.merge(rule, count, Integer::sum);
+            if (count == 0 && productive.add(rule.left)) queue.add(rule.left);
+        }
+
+        while (!queue.isEmpty()) {
+            final NonTerminal nonTerminal = queue.poll();
+            final List<Rule> dependents = rulesByRightHandSide.get(nonTerminal);
+            if (dependents != null) for (final Rule rule : dependents) {
+                final int remaining = unknownCount.merge(rule, -1, Integer::sum);
+                if (remaining == 0 && productive.add(rule.left)) queue.add(rule.left);
+            }
+        }
+        return productive;
+    }
+
+    static Set<NonTerminal> findReachable(final Collection<Rule> rules, final Collection<NonTerminal> goals) {
+        final Map<NonTerminal, List<Rule>> rulesByLeftHandSide = new HashMap<>();
+        for (final Rule rule : rules) rulesByLeftHandSide.computeIfAbsent(rule.left, ignored -> new ArrayList<>()).add(rule);
+
+        final Set<NonTerminal> reachable = new HashSet<>(goals);
+        final Deque<NonTerminal> queue = new ArrayDeque<>(goals);
+        while (!queue.isEmpty()) {
+            final List<Rule> rulesForCategory = rulesByLeftHandSide.get(queue.poll());
+            if (rulesForCategory != null) for (final Rule rule : rulesForCategory)
+                for (final Category category : rule.right)
+                    if (category instanceof NonTerminal && reachable.add((NonTerminal) category))
+                        queue.add((NonTerminal) category);
+        }
+        return reachable;
+    }
+}
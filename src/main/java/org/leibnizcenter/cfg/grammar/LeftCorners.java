@@ -1,66 +1,46 @@
 package org.leibnizcenter.cfg.grammar;
 
 import org.leibnizcenter.cfg.algebra.matrix.Matrix;
-import org.leibnizcenter.cfg.algebra.semiring.dbl.DblSemiring;
 import org.leibnizcenter.cfg.category.Category;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
 import org.leibnizcenter.cfg.rule.Rule;
 import org.leibnizcenter.cfg.util.MyMultimap;
 
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * Information holder for left-corner relations and left*-corner relations. Essentially a map from {@link Category}
  * to {@link Category} with some utility functions to deal with probabilities.
+ *
+ * Entries are stored as {@link CompressedRows compressed rows}, so that memory and row scans are proportional to the
+ * number of non-zero entries rather than to the square of the number of categories.
  */
 public class LeftCorners {
-    final MyMultimap<NonTerminal, NonTerminal> nonZeroScores = new MyMultimap<>();
-
-    //private final Map<Category, TObjectDoubleMap<Category>> mapToElements = new HashMap<>();
-    final double[][] mapToProb;
-    final HashMap<Category, Integer> mapToIndex = new HashMap<>();
-    private final Category[] categories;
-
     /**
-     * Information holder for left-corner relations and left*-corner relations. Essentially a map from {@link Category}
-     * to {@link Category} with some utility functions to deal with probabilities.
+     * Closures of relations over at most this many categories are computed by inverting the full matrix
      */
-    LeftCorners(final Category[] categories) {
-        mapToProb = new double[categories.length][categories.length];
-        this.categories = categories;
-        for (int i = 0, categoriesLength = categories.length; i < categoriesLength; i++)
-            mapToIndex.put(categories[i], i);
-    }
+    static final int DENSE_THRESHOLD = 256;
 
     /**
-     * Compute left corner relations
+     * For every row, the categories of its non-zero entries in ascending column order, or null if there are none
      */
-    LeftCorners(final MyMultimap<NonTerminal, Rule> rules, final NonTerminal[] categories) {
-        mapToProb = new double[categories.length][categories.length];
-        this.categories = categories;
-        for (int i = 0, categoriesLength = categories.length; i < categoriesLength; i++)
-            mapToIndex.put(categories[i], i);
+    private final List<Collection<NonTerminal>> nonZeroScores;
 
-        sumLeftCornerProbabilities(rules, categories);
-    }
+    //private final Map<Category, TObjectDoubleMap<Category>> mapToElements = new HashMap<>();
+    final CompressedRows rows;
+    final Map<Category, Integer> mapToIndex;
+    private final NonTerminal[] categories;
+    /**
+     * For every column, the rows that have a non-zero entry in it. Computed on first use.
+     */
+    private volatile int[][] predecessors;
 
     /**
-     * Sum all probabilities for left corners
+     * Compute left corner relations
      */
-    private void sumLeftCornerProbabilities(final MyMultimap<NonTerminal, Rule> rules, final NonTerminal[] categories) {
-        for (int i = 0, categoriesLength = categories.length; i < categoriesLength; i++) {
-            final NonTerminal leftHandSide = categories[i];
-            final Collection<Rule> rulesOnNonTerminal = rules.get(leftHandSide);
-            if (rulesOnNonTerminal != null) {
-                for (final Rule yRule : rulesOnNonTerminal) {
-                    final boolean startsWithNonTerminal = yRule.right.length > 0 && yRule.right[0] instanceof NonTerminal;
-                    if (startsWithNonTerminal) {
-                        plusRawProbability(i, (NonTerminal) yRule.right[0], yRule.probability);
-                    }
-                }
-            }
-        }
+    LeftCorners(final MyMultimap<NonTerminal, Rule> rules, final NonTerminal[] categories) {
+        this(sumLeftCornerProbabilities(rules, categories), categories);
     }
 
     /**
@@ -70,48 +50,102 @@ public class LeftCorners {
      * @param nonTerminals indexes of matrix
      */
     LeftCorners(final Matrix r_L, final NonTerminal[] nonTerminals) {
-        final int n = nonTerminals.length;
-        this.categories = nonTerminals;
-        mapToProb = new double[n][n];
-        for (int i = 0; i < n; i++) mapToIndex.put(nonTerminals[i], i);
-        final int bound = r_L.getRowDimension();
-        for (int i = 0; i < bound; i++)
-            for (int col = 0; col < r_L.getColumnDimension(); col++)
-                setRawProbability(i, col, r_L.get(i, col));
+        this(CompressedRows.of(r_L), nonTerminals);
     }
 
     /**
-     * Will instantiate empty map if it does not exist yet.
+     * Wraps sparse rows into a new {@link LeftCorners} object
      *
-     * @param element LHS
-     * @return map for given LHS.
-     */
-    private static double[] getYToProbs(final double[][] mapToProb, final int element) {
-        final double[] doubles = mapToProb[element];
-        if (doubles != null) return doubles;
-        else {
-            final double[] yToProb = new double[mapToProb.length];
-            mapToProb[element] = yToProb;
-            return yToProb;
-        }
+     * @param rows         Rows of raw probabilities. Null rows are all zero.
+     * @param nonTerminals indexes of rows and columns
+     */
+    LeftCorners(final SparseRow[] rows, final NonTerminal[] nonTerminals) {
+        this(CompressedRows.of(rows), nonTerminals);
+    }
+
+    private LeftCorners(final CompressedRows rows, final NonTerminal[] nonTerminals) {
+        this.rows = rows;
+        this.categories = nonTerminals;
+        final Map<Category, Integer> mapToIndex = new HashMap<>(nonTerminals.length * 2);
+        for (int i = 0; i < nonTerminals.length; i++) mapToIndex.put(nonTerminals[i], i);
+        this.mapToIndex = mapToIndex;
+        this.nonZeroScores = new ArrayList<>(nonTerminals.length);
+        for (int i = 0; i < nonTerminals.length; i++) nonZeroScores.add(nonZeroCategories(i));
     }
 
     /**
-     * @param from        From category
-     * @param to          To category
-     * @param probability Between 0.0 and 1.0
+     * @param replaced Rows that differ from given relation
      */
-    void plusRawProbability(final int from, final NonTerminal to, final double probability) {
-        final double[] yToProb = getYToProbs(mapToProb, from);
-        final int yIndex = mapToIndex.get(to);
-        final double newProbability = yToProb[yIndex] + probability;
-        if (Double.isNaN(newProbability)) throw new Error();
+    private LeftCorners(final LeftCorners relation, final CompressedRows rows, final boolean[] replaced) {
+        this.rows = rows;
+        this.categories = relation.categories;
+        this.mapToIndex = relation.mapToIndex;
+        this.nonZeroScores = new ArrayList<>(relation.nonZeroScores);
+        for (int i = 0; i < replaced.length; i++) if (replaced[i]) nonZeroScores.set(i, nonZeroCategories(i));
+    }
 
+    private Collection<NonTerminal> nonZeroCategories(final int row) {
+        final List<NonTerminal> nonZero = new ArrayList<>();
+        rows.forEachNonDefault(row, (column, value) -> nonZero.add(categories[column]));
+        return nonZero.isEmpty() ? null : Collections.unmodifiableList(nonZero);
+    }
 
-        yToProb[yIndex] = newProbability;
-        if (probability != 0.0) {
-            nonZeroScores.put((NonTerminal) categories[from], to);
+    /**
+     * @param replaced Rows to replace
+     * @param newRows  New rows, at the indices of the replaced rows. Null rows are all zero.
+     * @return A relation over the same categories with given rows replaced. The rows that are kept are copied in bulk,
+     * and their lists of {@link #getNonZeroScores(NonTerminal) non-zero entries} are shared with this relation.
+     */
+    LeftCorners withRows(final boolean[] replaced, final SparseRow[] newRows) {
+        return new LeftCorners(this, rows.withRows(replaced, newRows), replaced);
+    }
+
+    /**
+     * @param changed Categories of which to replace the row
+     * @param newRow  Computes the new row of a category; null if it is all zero
+     * @see #withRows(boolean[], SparseRow[])
+     */
+    LeftCorners withRows(final Collection<NonTerminal> changed, final Function<NonTerminal, SparseRow> newRow) {
+        final boolean[] replaced = new boolean[size()];
+        final SparseRow[] newRows = new SparseRow[size()];
+        for (final NonTerminal category : changed) {
+            final int row = mapToIndex.get(category);
+            replaced[row] = true;
+            newRows[row] = newRow.apply(category);
         }
+        return withRows(replaced, newRows);
+    }
+
+    /**
+     * Sum all probabilities for left corners
+     */
+    private static SparseRow[] sumLeftCornerProbabilities(final MyMultimap<NonTerminal, Rule> rules, final NonTerminal[] categories) {
+        final Map<Category, Integer> index = new HashMap<>(categories.length * 2);
+        for (int i = 0; i < categories.length; i++) index.put(categories[i], i);
+        final SparseRow[] rows = new SparseRow[categories.length];
+        for (int i = 0, categoriesLength = categories.length; i < categoriesLength; i++)
+            rows[i] = sumLeftCornerProbabilities(rules.get(categories[i]), index);
+        return rows;
+    }
+
+    /**
+     * @param rulesOnNonTerminal Rules with the same left hand side, or null
+     * @param index              Index of every non-terminal
+     * @return Row of the left hand side, or null if it has no left corners
+     */
+    static SparseRow sumLeftCornerProbabilities(final Collection<Rule> rulesOnNonTerminal, final Map<Category, Integer> index) {
+        SparseRow row = null;
+        if (rulesOnNonTerminal != null) {
+            for (final Rule yRule : rulesOnNonTerminal) {
+                final boolean startsWithNonTerminal = yRule.right.length > 0 && yRule.right[0] instanceof NonTerminal;
+                if (startsWithNonTerminal) {
+                    if (Double.isNaN(yRule.probability)) throw new Error();
+                    if (row == null) row = new SparseRow();
+                    row.plus(index.get(yRule.right[0]), yRule.probability);
+                }
+            }
+        }
+        return row;
     }
 
 //    private void setPlusElement(NonTerminal x, NonTerminal y, double Element, DblSemiring semiring) {
@@ -156,70 +190,73 @@ public class LeftCorners {
 //        putProbability_(x, y, semiring.toProbability(val));
 //    }
 
-    private void setPlusProbability(final NonTerminal x, final NonTerminal y, final double probability) {
-        final double[] yToProb = getYToProbs(mapToProb, mapToIndex.get(x));
-        final int yIndex = mapToIndex.get(y);
-        final double newProbability = yToProb[yIndex] + probability;
-        if (Double.isNaN(newProbability)) throw new Error();
-
-
-        yToProb[yIndex] = newProbability;
-        if (probability != 0.0) {
-            nonZeroScores.put(x, y);
-        }
+    /**
+     * @return stored value in left-corner relationship. zero by default
+     */
+    public double getProbability(final Category x, final Category y) {
+        return getRawProbability(mapToIndex.get(x), mapToIndex.get(y));
     }
 
     /**
      * @return stored value in left-corner relationship. zero by default
      */
-    public double getProbability(final Category x, final Category y) {
-        return getYToProbs(mapToProb, mapToIndex.get(x))[mapToIndex.get(y)]/*defaults to zero*/;
+    double getRawProbability(final int x, final int y) {
+        return rows.get(x, y);
     }
 
-    private void putProb_(final double[][] mapToProb,
-                          final NonTerminal x,
-                          final NonTerminal y,
-                          final double val,
-                          final double zero) {
-        final double[] yToElements = getYToProbs(mapToProb, mapToIndex.get(x));
-        yToElements[mapToIndex.get(y)] = val;
-        if (val != zero) nonZeroScores.put(x, y);
+    /**
+     * @return Number of categories; the relation is a square matrix of this size
+     */
+    int size() {
+        return categories.length;
     }
 
-    private void putProb_(final double[][] mapToProb,
-                          final int x,
-                          final int y,
-                          final double val,
-                          @SuppressWarnings("SameParameterValue") final double zero) {
-        final double[] yToElements = getYToProbs(mapToProb, x);
-        yToElements[y] = val;
-        if (val != zero) nonZeroScores.put((NonTerminal) this.categories[x], (NonTerminal) this.categories[y]);
+    /**
+     * Calls given consumer for every non-zero entry in given row, in ascending column order
+     */
+    void forEachNonZero(final int row, final EntryConsumer consumer) {
+        rows.forEachNonDefault(row, consumer);
     }
 
     /**
-     * Sets table entry to a given probability. Will instantiate empty map if it does not exist yet.
+     * @return Copy of the non-zero entries of given row
      */
-    @SuppressWarnings("unused")
-    void setProbability(final NonTerminal x, final NonTerminal y, final double prob, final DblSemiring semiring) {
-        putProb_(mapToProb, x, y, semiring.fromProbability(prob), semiring.zero());
+    SparseRow row(final int row) {
+        return rows.row(row);
     }
 
     /**
-     * Sets table entry to a given raw probability (default 0.0). Will instantiate empty map if it does not exist yet.
+     * @return Categories with a non-zero entry in the row of given category, in ascending column order; null if there
+     * are none
      */
-    void setRawProbability(final NonTerminal x, final NonTerminal y, final double prob) {
-        //putProb_(mapToElements, x, y, semiring.fromProbability(prob), semiring.zero());
-        putProb_(mapToProb, x, y, prob, 0.0);
+    Collection<NonTerminal> getNonZeroScores(final NonTerminal Y) {
+        final Integer row = mapToIndex.get(Y);
+        return row == null ? null : nonZeroScores.get(row);
     }
 
     /**
-     * Sets table entry to a given raw probability (default 0.0). Will instantiate empty map if it does not exist yet.
+     * @return For every column, the rows that have a non-zero entry in it
      */
-    private void setRawProbability(final int x, final int y, final double prob) {
-        putProb_(mapToProb, x, y, prob, 0.0);
+    int[][] predecessors() {
+        int[][] predecessors = this.predecessors;
+        if (predecessors == null) {
+            final int n = size();
+            final int[] counts = new int[n];
+            for (int X = 0; X < n; X++) forEachNonZero(X, (Y, p) -> counts[Y]++);
+            final int[][] result = new int[n][];
+            for (int Y = 0; Y < n; Y++) result[Y] = new int[counts[Y]];
+            Arrays.fill(counts, 0);
+            for (int X = 0; X < n; X++) {
+                final int from = X;
+                forEachNonZero(X, (Y, p) -> result[Y][counts[Y]++] = from);
+            }
+            this.predecessors = predecessors = result;
+        }
+        return predecessors;
     }
 
-    Collection<NonTerminal> getNonZeroScores(final NonTerminal Y) {
-        return nonZeroScores.get(Y);
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(int column, double value);
     }
 }
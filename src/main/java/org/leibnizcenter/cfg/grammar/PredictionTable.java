@@ -0,0 +1,36 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.rule.Rule;
+
+/**
+ * <p>
+ * The rules <code>Y → v</code> that are predicted by a state that is active on some non-terminal <code>Z</code>, as
+ * two parallel arrays. Next to every rule is the factor that prediction multiplies the forward score of the
+ * predecessor with:
+ * </p>
+ * <pre>
+ * scores[i] = R(Z =*L&gt; Y) * P(Y → v)
+ * </pre>
+ * <p>
+ * so that predicting is one semiring multiplication per entry, without looking up the left-star score.
+ * </p>
+ */
+public final class PredictionTable {
+    static final PredictionTable EMPTY = new PredictionTable(new Rule[0], new double[0]);
+
+    public final Rule[] rules;
+    /**
+     * Semiring elements
+     */
+    public final double[] scores;
+
+    PredictionTable(final Rule[] rules, final double[] scores) {
+        if (rules.length != scores.length) throw new IllegalArgumentException("Rules and scores differ in length");
+        this.rules = rules;
+        this.scores = scores;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+}
@@ -0,0 +1,161 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.algebra.semiring.dbl.DblSemiring;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.util.MyMultimap;
+
+import java.util.*;
+
+/**
+ * <p>
+ * Organizes the right hand sides of every non-terminal into a trie, so that the parser keeps one state for a prefix
+ * that several rules have in common instead of one state per rule. Every inner trie node becomes a {@link SharedPrefix}
+ * non-terminal: <code>NP → Det N</code>, <code>NP → Det N PP</code> and <code>NP → Det Adj N</code> become
+ * <code>NP → Det NP[Det]</code>, <code>NP[Det] → N</code>, <code>NP[Det] → N PP</code> and
+ * <code>NP[Det] → Adj N</code>.
+ * </p>
+ * <p>
+ * The rule into a node gets the summed probability of all rules below it, and rules below the node get their
+ * probability divided by that sum, so the product over every path is the probability of the original rule and all
+ * scores stay exact. Since rules can't be empty, a rule that ends on a trie node is not merged into it, and the parser
+ * predicts nodes only after their prefix, so the left corner relation of the grammar does not change.
+ * </p>
+ */
+final class PrefixSharing {
+    private PrefixSharing() {
+        throw new IllegalStateException();
+    }
+
+    /**
+     * @param rules    Rules to share prefixes of. Not modified.
+     * @param semiring Semiring for the new rules
+     * @return New rules, indexed by their left hand side
+     */
+    static MyMultimap<NonTerminal, Rule> share(final MyMultimap<NonTerminal, Rule> rules, final DblSemiring semiring) {
+        final Set<String> names = new HashSet<>();
+        for (final Rule rule : rules.values()) {
+            names.add(rule.left.name);
+            for (final Category category : rule.right)
+                if (category instanceof NonTerminal) names.add(((NonTerminal) category).name);
+        }
+
+        final Trie trie = new Trie(semiring, names);
+        for (final Map.Entry<NonTerminal, Set<Rule>> entry : rules.entries()) {
+            final List<Branch> branches = new ArrayList<>(entry.getValue().size());
+            for (final Rule rule : entry.getValue())
+                if (rule.isErrorRule) trie.shared.put(rule.left, rule);
+                else branches.add(new Branch(rule, 0, rule.probability));
+            trie.addNode(entry.getKey(), branches);
+        }
+        return trie.shared;
+    }
+
+    /**
+     * Remainder of a rule from some trie node on
+     */
+    private static final class Branch {
+        final Rule rule;
+        final int from;
+        final double probability;
+
+        Branch(final Rule rule, final int from, final double probability) {
+            this.rule = rule;
+            this.from = from;
+            this.probability = probability;
+        }
+
+        int length() {
+            return rule.right.length - from;
+        }
+
+        Category get(final int i) {
+            return rule.right[from + i];
+        }
+    }
+
+    private static final class Trie {
+        final MyMultimap<NonTerminal, Rule> shared = new MyMultimap<>();
+        private final DblSemiring semiring;
+        private final Set<String> names;
+
+        Trie(final DblSemiring semiring, final Set<String> names) {
+            this.semiring = semiring;
+            this.names = names;
+        }
+
+        /**
+         * Adds rules for given node, grouping branches by their first category
+         */
+        void addNode(final NonTerminal node, final List<Branch> branches) {
+            final Map<Category, List<Branch>> byFirst = new LinkedHashMap<>();
+            for (final Branch branch : branches) byFirst.computeIfAbsent(branch.get(0), k -> new ArrayList<>()).add(branch);
+
+            for (final List<Branch> group : byFirst.values()) {
+                final List<Branch> continuing = new ArrayList<>(group.size());
+                double sum = 0.0;
+                for (final Branch branch : group)
+                    if (branch.length() > 1) {
+                        continuing.add(branch);
+                        sum += branch.probability;
+                    } else addLeaf(node, branch);
+
+                if (continuing.size() < 2 || sum <= 0.0) continuing.forEach(branch -> addLeaf(node, branch));
+                else addInnerNode(node, continuing, sum);
+            }
+        }
+
+        private void addLeaf(final NonTerminal node, final Branch branch) {
+            if (branch.from == 0) shared.put(node, branch.rule);
+            else shared.put(node, Rule.create(
+                    semiring,
+                    branch.probability,
+                    node,
+                    Arrays.copyOfRange(branch.rule.right, branch.from, branch.rule.right.length)
+            ));
+        }
+
+        /**
+         * @param branches At least two branches that start with the same category, and that are all longer than 1
+         */
+        private void addInnerNode(final NonTerminal parent, final List<Branch> branches, final double sum) {
+            int minLength = Integer.MAX_VALUE;
+            for (final Branch branch : branches) minLength = Math.min(minLength, branch.length());
+
+            // Longest common prefix that leaves every branch non-empty
+            int prefixLength = 1;
+            while (prefixLength < minLength - 1 && allEqualAt(branches, prefixLength)) prefixLength++;
+
+            final Category[] prefix = new Category[prefixLength];
+            for (int i = 0; i < prefixLength; i++) prefix[i] = branches.get(0).get(i);
+            final SharedPrefix child = new SharedPrefix(uniqueName(parent, prefix));
+
+            final Category[] right = Arrays.copyOf(prefix, prefixLength + 1);
+            right[prefixLength] = child;
+            shared.put(parent, Rule.create(semiring, sum, parent, right));
+
+            final List<Branch> remainders = new ArrayList<>(branches.size());
+            for (final Branch branch : branches)
+                remainders.add(new Branch(branch.rule, branch.from + prefixLength, branch.probability / sum));
+            addNode(child, remainders);
+        }
+
+        private static boolean allEqualAt(final List<Branch> branches, final int i) {
+            final Category category = branches.get(0).get(i);
+            for (final Branch branch : branches) if (!category.equals(branch.get(i))) return false;
+            return true;
+        }
+
+        private String uniqueName(final NonTerminal parent, final Category[] prefix) {
+            final StringJoiner joiner = new StringJoiner(" ", parent.name + "[", "]");
+            for (final Category category : prefix) joiner.add(category.toString());
+            final String name = joiner.toString();
+            String unique = name;
+            for (int i = 2; names.contains(unique); i++) unique = name + "#" + i;
+            names.add(unique);
+            return unique;
+        }
+    }
+}
@@ -3,54 +3,39 @@ package org.leibnizcenter.cfg.grammar;
 import org.leibnizcenter.cfg.algebra.semiring.dbl.DblSemiring;
 import org.leibnizcenter.cfg.category.Category;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
-import org.leibnizcenter.cfg.util.MyMultimap;
 
 import java.util.Collection;
 import java.util.Map;
 
 /**
- * Contains probabilities as semiring elements
+ * Contains probabilities as semiring elements, in the same {@link CompressedRows compressed layout} as the given
+ * {@link LeftCorners}. Entries that are not stored are semiring zero.
  */
 public class ScoresAsSemiringElements {
-    private final double[][] mapToSemiringElements;
-    private final MyMultimap<NonTerminal, NonTerminal> nonZeroNonTerminalScores;
+    private final CompressedRows semiringElements;
+    private final LeftCorners leftCorners;
     private final Map<Category, Integer> mapToIndex;
 
     ScoresAsSemiringElements(final LeftCorners leftCorners, final DblSemiring semiring) {
-        this.nonZeroNonTerminalScores = leftCorners.nonZeroScores;
+        this.leftCorners = leftCorners;
         this.mapToIndex = leftCorners.mapToIndex;
-        mapToSemiringElements = new double[leftCorners.mapToProb.length][leftCorners.mapToProb.length];
-        final double[][] mapToProb = leftCorners.mapToProb;
-        for (int catFrom = 0; catFrom < mapToProb.length; catFrom++) {
-            final double[] yToProb = mapToProb[catFrom];
-            final double[] toScore = getCategoryToScoreMap(semiring.zero(), catFrom);
-            for (int catTo = 0, yToProbLength = yToProb.length; catTo < yToProbLength; catTo++) {
-                final double v = yToProb[catTo];
-                toScore[catTo] = semiring.fromProbability(v);
-            }
-        }
-    }
-
-    private double[] getCategoryToScoreMap(final double zero, final int catFrom) {
-        final double[] mapToSemiringElement = mapToSemiringElements[catFrom];
-        if (mapToSemiringElement != null) return mapToSemiringElement;
-        else return initializeValueRow(zero, catFrom);
-    }
-
-    private double[] initializeValueRow(final double zero, final int catFrom) {
-        final double[] toScore = new double[mapToSemiringElements.length];
-        for (int i = 0; i < toScore.length; i++) toScore[i] = zero;
-        mapToSemiringElements[catFrom] = toScore;
-        return toScore;
+        this.semiringElements = leftCorners.rows.map(semiring::fromProbability, semiring.zero());
     }
 
     // todo param int not category?
     public Collection<NonTerminal> getNonZeroNonTerminals(final NonTerminal Y) {
-        return nonZeroNonTerminalScores.get(Y);
+        return leftCorners.getNonZeroScores(Y);
     }
 
-    // todo param int not category?
     double get(final Category lhs, final Category rhs) {
-        return mapToSemiringElements[mapToIndex.get(lhs)][mapToIndex.get(rhs)];
+        return get(mapToIndex.get(lhs), mapToIndex.get(rhs));
+    }
+
+    /**
+     * @param from Index of the left hand side in the {@link LeftCorners} that these scores were made from
+     * @param to   Index of the right hand side
+     */
+    double get(final int from, final int to) {
+        return semiringElements.get(from, to);
     }
 }
@@ -0,0 +1,86 @@
+package org.leibnizcenter.cfg.grammar;
+
+import java.util.Arrays;
+
+/**
+ * Sparse row of a square matrix: the non-zero columns in ascending order, with their values.
+ * Lookups are a binary search.
+ */
+final class SparseRow {
+    private int[] columns;
+    private double[] values;
+    private int size;
+
+    SparseRow() {
+        this(4);
+    }
+
+    SparseRow(final int capacity) {
+        this.columns = new int[capacity];
+        this.values = new double[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * @param columns Ascending column indices. Not copied.
+     * @param values  Values for the columns. Not copied.
+     */
+    SparseRow(final int[] columns, final double[] values) {
+        if (columns.length != values.length) throw new IllegalArgumentException("Columns and values differ in length");
+        this.columns = columns;
+        this.values = values;
+        this.size = columns.length;
+    }
+
+    private int indexOf(final int column) {
+        return Arrays.binarySearch(columns, 0, size, column);
+    }
+
+    /**
+     * @return Value at given column, or <code>defaultValue</code> if it is not stored
+     */
+    double get(final int column, final double defaultValue) {
+        final int i = indexOf(column);
+        return i >= 0 ? values[i] : defaultValue;
+    }
+
+    void set(final int column, final double value) {
+        final int i = indexOf(column);
+        if (i >= 0) values[i] = value;
+        else insert(-(i + 1), column, value);
+    }
+
+    /**
+     * Adds given value to the value at given column, which is 0.0 if not stored
+     */
+    void plus(final int column, final double value) {
+        final int i = indexOf(column);
+        if (i >= 0) values[i] += value;
+        else insert(-(i + 1), column, value);
+    }
+
+    private void insert(final int at, final int column, final double value) {
+        if (size == columns.length) {
+            final int capacity = Math.max(4, size * 2);
+            columns = Arrays.copyOf(columns, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        System.arraycopy(columns, at, columns, at + 1, size - at);
+        System.arraycopy(values, at, values, at + 1, size - at);
+        columns[at] = column;
+        values[at] = value;
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int columnAt(final int i) {
+        return columns[i];
+    }
+
+    double valueAt(final int i) {
+        return values[i];
+    }
+}
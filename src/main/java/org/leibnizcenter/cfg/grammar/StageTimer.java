@@ -0,0 +1,42 @@
+package org.leibnizcenter.cfg.grammar;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long consecutive stages of building a grammar take
+ */
+final class StageTimer {
+    private final Map<String, Long> nanos;
+    private long last = System.nanoTime();
+
+    StageTimer() {
+        this.nanos = new LinkedHashMap<>();
+    }
+
+    /**
+     * @param previous Timings of earlier stages, to continue from
+     */
+    StageTimer(final Map<String, Long> previous) {
+        this.nanos = new LinkedHashMap<>(previous);
+    }
+
+    /**
+     * Ends the current stage
+     *
+     * @param stage Name of the stage that just ended. Stages with the same name are summed.
+     */
+    void lap(final String stage) {
+        final long now = System.nanoTime();
+        nanos.merge(stage, now - last, Long::sum);
+        last = now;
+    }
+
+    /**
+     * @return Nanoseconds per stage, in the order in which stages ended
+     */
+    Map<String, Long> getNanos() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(nanos));
+    }
+}
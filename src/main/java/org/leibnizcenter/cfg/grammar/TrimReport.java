@@ -0,0 +1,95 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.rule.Rule;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * What {@link Grammar.Builder#withTrimming(double, NonTerminal...) trimming} removed from a grammar, and why. Rules are
+ * attributed to the first reason that removed them: low probability, then unproductive, then unreachable.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class TrimReport {
+    private final Set<NonTerminal> goals;
+    private final Set<Rule> lowProbabilityRules;
+    private final Set<NonTerminal> unproductiveNonTerminals;
+    private final Set<Rule> unproductiveRules;
+    private final Set<NonTerminal> unreachableNonTerminals;
+    private final Set<Rule> unreachableRules;
+    private final int keptRuleCount;
+
+    TrimReport(final Set<NonTerminal> goals,
+               final Set<Rule> lowProbabilityRules,
+               final Set<NonTerminal> unproductiveNonTerminals,
+               final Set<Rule> unproductiveRules,
+               final Set<NonTerminal> unreachableNonTerminals,
+               final Set<Rule> unreachableRules,
+               final int keptRuleCount) {
+        this.goals = Collections.unmodifiableSet(goals);
+        this.lowProbabilityRules = Collections.unmodifiableSet(lowProbabilityRules);
+        this.unproductiveNonTerminals = Collections.unmodifiableSet(unproductiveNonTerminals);
+        this.unproductiveRules = Collections.unmodifiableSet(unproductiveRules);
+        this.unreachableNonTerminals = Collections.unmodifiableSet(unreachableNonTerminals);
+        this.unreachableRules = Collections.unmodifiableSet(unreachableRules);
+        this.keptRuleCount = keptRuleCount;
+    }
+
+    public Set<NonTerminal> getGoals() {
+        return goals;
+    }
+
+    /**
+     * @return Rules that were dropped because their probability was below epsilon
+     */
+    public Set<Rule> getLowProbabilityRules() {
+        return lowProbabilityRules;
+    }
+
+    /**
+     * @return Non-terminals that can not derive any string of terminals
+     */
+    public Set<NonTerminal> getUnproductiveNonTerminals() {
+        return unproductiveNonTerminals;
+    }
+
+    /**
+     * @return Rules that were dropped because their right hand side contains an unproductive non-terminal
+     */
+    public Set<Rule> getUnproductiveRules() {
+        return unproductiveRules;
+    }
+
+    /**
+     * @return Productive non-terminals that can not be reached from any goal
+     */
+    public Set<NonTerminal> getUnreachableNonTerminals() {
+        return unreachableNonTerminals;
+    }
+
+    /**
+     * @return Rules that were dropped because their left hand side can not be reached from any goal
+     */
+    public Set<Rule> getUnreachableRules() {
+        return unreachableRules;
+    }
+
+    public int getRemovedRuleCount() {
+        return lowProbabilityRules.size() + unproductiveRules.size() + unreachableRules.size();
+    }
+
+    public int getKeptRuleCount() {
+        return keptRuleCount;
+    }
+
+    @Override
+    public String toString() {
+        return "Trimmed for " + goals + ": kept " + keptRuleCount + " rules, removed " + getRemovedRuleCount()
+                + " (" + lowProbabilityRules.size() + " below epsilon, "
+                + unproductiveRules.size() + " unproductive, "
+                + unreachableRules.size() + " unreachable); "
+                + unproductiveNonTerminals.size() + " unproductive and "
+                + unreachableNonTerminals.size() + " unreachable non-terminals";
+    }
+}
@@ -0,0 +1,279 @@
+package org.leibnizcenter.cfg.token;
+
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A corpus of sentences of which all tokens have already been resolved to the {@link Terminal terminals} of a
+ * {@link Grammar}, so that parsing it does not need to call {@link Grammar#getCategories(Token)} or allocate category
+ * sets. Useful when parsing the same corpus over and over, for example during grammar development or
+ * Expectation-Maximization.
+ * </p>
+ * <p>
+ * Every distinct token (type) is stored once, together with the sorted ids of the terminals that match it. Sentences
+ * are stored as a flat array of type indices. The corpus can be {@link #write(OutputStream) written} to a compact binary
+ * file and {@link #read(InputStream, Grammar, Function) read} back, as long as the grammar has the same terminals.
+ * </p>
+ *
+ * @see org.leibnizcenter.cfg.earleyparser.Parser#parseAndCountTokens(org.leibnizcenter.cfg.category.nonterminal.NonTerminal, PreLexedCorpus, int, org.leibnizcenter.cfg.earleyparser.callbacks.ParseOptions)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PreLexedCorpus<T> {
+    private static final int MAGIC = 0x504C5843; // "PLXC"
+    private static final int VERSION = 1;
+
+    public final Grammar<T> grammar;
+
+    private final Token<T>[] types;
+    /**
+     * Categories of type i are <code>categoryIds[typeCategoryOffsets[i]..typeCategoryOffsets[i+1]]</code>
+     */
+    private final int[] typeCategoryOffsets;
+    private final int[] categoryIds;
+    private final int[] tokenTypes;
+    /**
+     * Tokens of sentence i are <code>tokenTypes[sentenceOffsets[i]..sentenceOffsets[i+1]]</code>
+     */
+    private final int[] sentenceOffsets;
+
+    private final TerminalIdSet<T>[] typeCategories;
+
+    @SuppressWarnings("unchecked")
+    private PreLexedCorpus(final Grammar<T> grammar,
+                           final Token<T>[] types,
+                           final int[] typeCategoryOffsets,
+                           final int[] categoryIds,
+                           final int[] tokenTypes,
+                           final int[] sentenceOffsets) {
+        this.grammar = grammar;
+        this.types = types;
+        this.typeCategoryOffsets = typeCategoryOffsets;
+        this.categoryIds = categoryIds;
+        this.tokenTypes = tokenTypes;
+        this.sentenceOffsets = sentenceOffsets;
+
+        // Generic array; it only ever holds sets over this corpus's grammar
+        @SuppressWarnings("unchecked") final TerminalIdSet<T>[] typeCategories = (TerminalIdSet<T>[]) new TerminalIdSet<?>[types.length];
+        for (int i = 0; i < types.length; i++)
+            typeCategories[i] = new TerminalIdSet<>(grammar, categoryIds, typeCategoryOffsets[i], typeCategoryOffsets[i + 1]);
+        this.typeCategories = typeCategories;
+    }
+
+    /**
+     * Resolves all tokens in the given sentences to terminals of the given grammar
+     */
+    public static <T> PreLexedCorpus<T> lex(final Grammar<T> grammar, final Iterable<? extends Iterable<Token<T>>> sentences) {
+        final Builder<T> builder = new Builder<>(grammar);
+        sentences.forEach(builder::addSentence);
+        return builder.build();
+    }
+
+    public static PreLexedCorpus<String> read(final Path path, final Grammar<String> grammar) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return read(in, grammar, Token::new);
+        }
+    }
+
+    /**
+     * @param in           Stream containing a corpus that was {@link #write(OutputStream) written} earlier
+     * @param grammar      Grammar to resolve terminal ids against. Must have the same terminals as the grammar the
+     *                     corpus was lexed with.
+     * @param tokenFactory Creates tokens from the stored token strings
+     * @throws IOException              If the stream can't be read, or does not contain a pre-lexed corpus
+     * @throws IllegalArgumentException If the corpus was lexed with a grammar that has different terminals
+     */
+    public static <T> PreLexedCorpus<T> read(final InputStream in,
+                                             final Grammar<T> grammar,
+                                             final Function<String, Token<T>> tokenFactory) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) throw new IOException("Not a pre-lexed corpus");
+        final int version = data.readInt();
+        if (version != VERSION) throw new IOException("Unsupported pre-lexed corpus version: " + version);
+        final long fingerprint = data.readLong();
+        final int terminalCount = data.readInt();
+        if (fingerprint != grammar.getTerminalsFingerprint() || terminalCount != grammar.getTerminalCount())
+            throw new IllegalArgumentException("Corpus was pre-lexed with a grammar that has different terminals");
+
+        final int typeCount = data.readInt();
+        @SuppressWarnings("unchecked") final Token<T>[] types = (Token<T>[]) new Token<?>[typeCount];
+        for (int i = 0; i < typeCount; i++) {
+            final byte[] bytes = new byte[data.readInt()];
+            data.readFully(bytes);
+            types[i] = tokenFactory.apply(new String(bytes, StandardCharsets.UTF_8));
+        }
+        final int[] typeCategoryOffsets = readInts(data, typeCount + 1);
+        final int[] categoryIds = readInts(data, data.readInt());
+        checkOffsets(typeCategoryOffsets, categoryIds.length, "Terminal");
+        for (final int id : categoryIds)
+            if (id < 0 || id >= terminalCount) throw new IOException("Terminal id out of range: " + id);
+        final int[] tokenTypes = readInts(data, data.readInt());
+        for (final int type : tokenTypes)
+            if (type < 0 || type >= typeCount) throw new IOException("Token type out of range: " + type);
+        final int[] sentenceOffsets = readInts(data, data.readInt() + 1);
+        checkOffsets(sentenceOffsets, tokenTypes.length, "Sentence");
+
+        return new PreLexedCorpus<>(grammar, types, typeCategoryOffsets, categoryIds, tokenTypes, sentenceOffsets);
+    }
+
+    private static int[] readInts(final DataInputStream data, final int length) throws IOException {
+        if (length < 0) throw new IOException("Negative array length");
+        final int[] ints = new int[length];
+        for (int i = 0; i < length; i++) ints[i] = data.readInt();
+        return ints;
+    }
+
+    /**
+     * @throws IOException If given offsets don't start at 0, decrease, or don't end at <code>length</code>
+     */
+    private static void checkOffsets(final int[] offsets, final int length, final String what) throws IOException {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != length)
+            throw new IOException(what + " offsets must run from 0 to " + length);
+        for (int i = 1; i < offsets.length; i++)
+            if (offsets[i] < offsets[i - 1]) throw new IOException(what + " offsets decrease at " + i);
+    }
+
+    private static void writeInts(final DataOutputStream data, final int[] ints) throws IOException {
+        for (final int i : ints) data.writeInt(i);
+    }
+
+    public void write(final Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Writes this corpus in a compact binary format. Tokens are stored as their {@link Token#toString() string value}.
+     */
+    public void write(final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(grammar.getTerminalsFingerprint());
+        data.writeInt(grammar.getTerminalCount());
+
+        data.writeInt(types.length);
+        for (final Token<T> type : types) {
+            final byte[] bytes = type.toString().getBytes(StandardCharsets.UTF_8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        writeInts(data, typeCategoryOffsets);
+        data.writeInt(categoryIds.length);
+        writeInts(data, categoryIds);
+        data.writeInt(tokenTypes.length);
+        writeInts(data, tokenTypes);
+        data.writeInt(sentenceOffsets.length - 1);
+        writeInts(data, sentenceOffsets);
+        data.flush();
+    }
+
+    public int getSentenceCount() {
+        return sentenceOffsets.length - 1;
+    }
+
+    public int getTokenCount() {
+        return tokenTypes.length;
+    }
+
+    /**
+     * @return Number of distinct tokens
+     */
+    public int getTypeCount() {
+        return types.length;
+    }
+
+    public int getSentenceLength(final int sentence) {
+        return sentenceOffsets[sentence + 1] - sentenceOffsets[sentence];
+    }
+
+    public Token<T> getToken(final int sentence, final int position) {
+        return types[tokenTypes[indexOf(sentence, position)]];
+    }
+
+    /**
+     * @return Terminals that match the token at given position. The returned set is shared between all occurrences
+     * of the same token and can't be modified.
+     */
+    public TerminalIdSet<T> getCategories(final int sentence, final int position) {
+        return typeCategories[tokenTypes[indexOf(sentence, position)]];
+    }
+
+    private int indexOf(final int sentence, final int position) {
+        if (position < 0 || position >= getSentenceLength(sentence))
+            throw new IndexOutOfBoundsException("Position " + position + " in sentence " + sentence);
+        return sentenceOffsets[sentence] + position;
+    }
+
+    public static final class Builder<T> {
+        private final Grammar<T> grammar;
+        private final Map<Token<T>, Integer> typeIndex = new HashMap<>();
+        private final List<Token<T>> types = new ArrayList<>();
+        private int[] typeCategoryOffsets = new int[]{0};
+        private int[] categoryIds = new int[16];
+        private int[] tokenTypes = new int[64];
+        private int[] sentenceOffsets = new int[]{0};
+        private int tokenCount = 0;
+        private int sentenceCount = 0;
+
+        public Builder(final Grammar<T> grammar) {
+            this.grammar = grammar;
+        }
+
+        private static int[] ensureCapacity(final int[] array, final int capacity) {
+            return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+
+        public Builder<T> addSentence(final Iterable<Token<T>> sentence) {
+            for (final Token<T> token : sentence) {
+                tokenTypes = ensureCapacity(tokenTypes, tokenCount + 1);
+                tokenTypes[tokenCount++] = getOrAddType(token);
+            }
+            sentenceOffsets = ensureCapacity(sentenceOffsets, sentenceCount + 2);
+            sentenceOffsets[++sentenceCount] = tokenCount;
+            return this;
+        }
+
+        private int getOrAddType(final Token<T> token) {
+            final Integer existing = typeIndex.get(token);
+            if (existing != null) return existing;
+
+            final int type = types.size();
+            types.add(token);
+            typeIndex.put(token, type);
+
+            final Set<Terminal<T>> categories = grammar.getCategories(token);
+            final int[] ids = new int[categories.size()];
+            int i = 0;
+            for (final Terminal<T> category : categories) ids[i++] = grammar.getTerminalId(category);
+            Arrays.sort(ids);
+
+            final int from = typeCategoryOffsets[type];
+            categoryIds = ensureCapacity(categoryIds, from + ids.length);
+            System.arraycopy(ids, 0, categoryIds, from, ids.length);
+            typeCategoryOffsets = ensureCapacity(typeCategoryOffsets, type + 2);
+            typeCategoryOffsets[type + 1] = from + ids.length;
+            return type;
+        }
+
+        public PreLexedCorpus<T> build() {
+            @SuppressWarnings("unchecked") final Token<T>[] typesArr = (Token<T>[]) types.toArray(new Token<?>[types.size()]);
+            return new PreLexedCorpus<>(
+                    grammar,
+                    typesArr,
+                    Arrays.copyOf(typeCategoryOffsets, typesArr.length + 1),
+                    Arrays.copyOf(categoryIds, typeCategoryOffsets[typesArr.length]),
+                    Arrays.copyOf(tokenTypes, tokenCount),
+                    Arrays.copyOf(sentenceOffsets, sentenceCount + 1)
+            );
+        }
+    }
+}
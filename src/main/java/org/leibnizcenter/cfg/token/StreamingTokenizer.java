@@ -0,0 +1,364 @@
+package org.leibnizcenter.cfg.token;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * <p>
+ * Splits a (possibly very large) input on whitespace into sentences of tokens, without ever loading the whole input
+ * into memory. Input is read from a memory-mapped file or from a {@link ReadableByteChannel} and decoded in fixed-size
+ * chunks, and tokens are interned so that repeated words share one {@link Token} instance.
+ * </p>
+ * <p>
+ * Sentences are handed out lazily by {@link #nextSentence()}, so they can be passed straight into
+ * {@link org.leibnizcenter.cfg.earleyparser.Parser#parseAndCountTokens(org.leibnizcenter.cfg.category.nonterminal.NonTerminal, Iterable, org.leibnizcenter.cfg.earleyparser.callbacks.ParseOptions) Parser}:
+ * </p>
+ * <pre>
+ * try (StreamingTokenizer tokenizer = new StreamingTokenizer.Builder().open(path)) {
+ *     Iterable&lt;Token&lt;String&gt;&gt; sentence;
+ *     while ((sentence = tokenizer.nextSentence()) != null)
+ *         parser.recognize(S, sentence);
+ * }
+ * </pre>
+ * <p>
+ * By default, every line is a sentence. Alternatively, or additionally, a sentence can end after a token that satisfies
+ * a predicate (such as a full stop).
+ * </p>
+ * <p>
+ * Not thread-safe.
+ * </p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class StreamingTokenizer implements Closeable {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private final ByteSource source;
+    private final CharsetDecoder decoder;
+    private final CharBuffer chars;
+    private final TokenInterner interner;
+    private final boolean lineIsSentence;
+    private final Predicate<? super String> endsSentence;
+
+    private ByteBuffer bytes = null;
+    private boolean needBytes = true;
+    private boolean endOfInput = false;
+
+    private char[] tokenChars = new char[64];
+
+    /**
+     * Next token, already read but not yet handed out
+     */
+    private Token<String> lookahead = null;
+    private boolean lookaheadStartsSentence = false;
+    private boolean previousEndedSentence = false;
+    /**
+     * Whether the token that was read last was directly followed by a line break
+     */
+    private boolean endedOnLineBreak = false;
+    /**
+     * Whether a line break was seen before the token that was read last
+     */
+    private boolean lineBreakBeforeToken = false;
+
+    private Sentence currentSentence = null;
+
+    private StreamingTokenizer(final ByteSource source, final Builder builder) {
+        this.source = source;
+        this.decoder = builder.charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate(builder.bufferSize);
+        this.chars.flip();
+        this.interner = new TokenInterner(builder.maxInternedTokens);
+        this.lineIsSentence = builder.lineIsSentence;
+        this.endsSentence = builder.endsSentence;
+    }
+
+    private static boolean isLineBreak(final char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    /**
+     * @return The next sentence as a lazy, single-use {@link Iterable}, or null if there are no more tokens. Any tokens of
+     * the previous sentence that were not consumed yet are skipped.
+     */
+    public Iterable<Token<String>> nextSentence() throws IOException {
+        if (currentSentence != null) currentSentence.skipRest();
+        if (!loadLookahead()) return null;
+        currentSentence = new Sentence();
+        return currentSentence;
+    }
+
+    /**
+     * @return The next token, regardless of sentence boundaries, or null if the input is exhausted
+     */
+    public Token<String> nextToken() throws IOException {
+        if (!loadLookahead()) return null;
+        return takeLookahead();
+    }
+
+    /**
+     * @return Number of distinct tokens that are currently interned
+     */
+    public int getInternedTokenCount() {
+        return interner.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private Token<String> takeLookahead() {
+        final Token<String> token = lookahead;
+        lookahead = null;
+        previousEndedSentence = endsSentence != null && endsSentence.test(token.obj);
+        return token;
+    }
+
+    private boolean loadLookahead() throws IOException {
+        if (lookahead == null) {
+            lookahead = readToken();
+            lookaheadStartsSentence = previousEndedSentence || (lineIsSentence && lineBreakBeforeToken);
+        }
+        return lookahead != null;
+    }
+
+    private Token<String> readToken() throws IOException {
+        lineBreakBeforeToken = endedOnLineBreak;
+        endedOnLineBreak = false;
+        int length = 0;
+        while (chars.hasRemaining() || fillChars()) {
+            final char c = chars.get();
+            if (Character.isWhitespace(c)) {
+                if (length > 0) {
+                    endedOnLineBreak = isLineBreak(c);
+                    break;
+                }
+                if (isLineBreak(c)) lineBreakBeforeToken = true;
+            } else {
+                if (length == tokenChars.length) tokenChars = Arrays.copyOf(tokenChars, length * 2);
+                tokenChars[length++] = c;
+            }
+        }
+        return length == 0 ? null : interner.intern(tokenChars, length);
+    }
+
+    /**
+     * Decodes the next chunk of characters
+     *
+     * @return whether any characters were decoded
+     */
+    private boolean fillChars() throws IOException {
+        chars.clear();
+        while (chars.position() == 0 && !endOfInput) {
+            if (needBytes) {
+                final ByteBuffer next = source.next(bytes);
+                if (next == null) {
+                    decoder.decode(bytes == null ? EMPTY : bytes, chars, true);
+                    decoder.flush(chars);
+                    endOfInput = true;
+                    break;
+                }
+                bytes = next;
+            }
+            needBytes = decoder.decode(bytes, chars, false).isUnderflow();
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    /**
+     * Supplies the input in chunks of bytes
+     */
+    private interface ByteSource extends Closeable {
+        /**
+         * @param previous The previously returned chunk, or null. Any bytes remaining in it were not decoded yet
+         *                 (for example half a multi-byte character) and must be at the start of the next chunk.
+         * @return The next chunk, or null at the end of the input
+         */
+        ByteBuffer next(ByteBuffer previous) throws IOException;
+    }
+
+    /**
+     * Maps successive windows of a file into memory
+     */
+    private static final class MappedFileSource implements ByteSource {
+        private final FileChannel channel;
+        private final long size;
+        private final int windowSize;
+        private long position = 0;
+
+        MappedFileSource(final FileChannel channel, final int windowSize) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.windowSize = windowSize;
+        }
+
+        @Override
+        public ByteBuffer next(final ByteBuffer previous) throws IOException {
+            if (position >= size) return null;
+            // Re-map any undecoded bytes at the end of the previous window
+            final long start = previous == null ? position : position - previous.remaining();
+            final long length = Math.min(windowSize, size - start);
+            final ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            position = start + length;
+            return window;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a channel into a reusable buffer
+     */
+    private static final class ChannelSource implements ByteSource {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+
+        ChannelSource(final ReadableByteChannel channel, final int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+            this.buffer.flip();
+        }
+
+        @Override
+        public ByteBuffer next(final ByteBuffer previous) throws IOException {
+            buffer.compact();
+            final int read = channel.read(buffer);
+            buffer.flip();
+            return read < 0 ? null : buffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Lazy view on the tokens of the current sentence
+     */
+    private final class Sentence implements Iterable<Token<String>>, Iterator<Token<String>> {
+        private boolean started = false;
+        private boolean iterated = false;
+
+        @Override
+        public Iterator<Token<String>> iterator() {
+            if (iterated) throw new IllegalStateException("A streamed sentence can only be iterated once");
+            iterated = true;
+            return this;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (currentSentence != this) return false;
+            try {
+                return loadLookahead() && !(started && lookaheadStartsSentence);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Token<String> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            started = true;
+            return takeLookahead();
+        }
+
+        void skipRest() {
+            while (hasNext()) next();
+        }
+    }
+
+    public static final class Builder {
+        private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+        private static final int DEFAULT_MAP_WINDOW_SIZE = 1 << 26;
+        private static final int DEFAULT_MAX_INTERNED_TOKENS = 1 << 20;
+
+        private Charset charset = StandardCharsets.UTF_8;
+        private boolean lineIsSentence = true;
+        private Predicate<? super String> endsSentence = null;
+        private int bufferSize = DEFAULT_BUFFER_SIZE;
+        private int mapWindowSize = DEFAULT_MAP_WINDOW_SIZE;
+        private int maxInternedTokens = DEFAULT_MAX_INTERNED_TOKENS;
+
+        public Builder withCharset(final Charset charset) {
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * @param lineIsSentence Whether a line break ends a sentence. Defaults to true.
+         */
+        public Builder withLineIsSentence(final boolean lineIsSentence) {
+            this.lineIsSentence = lineIsSentence;
+            return this;
+        }
+
+        /**
+         * @param endsSentence A sentence ends after any token that matches this predicate
+         */
+        public Builder withSentenceEndingTokens(final Predicate<? super String> endsSentence) {
+            this.endsSentence = endsSentence;
+            return this;
+        }
+
+        /**
+         * @param bufferSize Number of bytes to read, and characters to decode, at a time
+         */
+        public Builder withBufferSize(final int bufferSize) {
+            if (bufferSize < 16) throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * @param mapWindowSize Number of bytes of a file to map into memory at a time
+         */
+        public Builder withMapWindowSize(final int mapWindowSize) {
+            if (mapWindowSize < 16) throw new IllegalArgumentException("Window size too small: " + mapWindowSize);
+            this.mapWindowSize = mapWindowSize;
+            return this;
+        }
+
+        /**
+         * @param maxInternedTokens Maximum number of distinct tokens to intern. Tokens beyond that are still returned,
+         *                          but not shared.
+         */
+        public Builder withMaxInternedTokens(final int maxInternedTokens) {
+            this.maxInternedTokens = maxInternedTokens;
+            return this;
+        }
+
+        /**
+         * Tokenizes a file through memory-mapping
+         */
+        public StreamingTokenizer open(final Path path) throws IOException {
+            return new StreamingTokenizer(new MappedFileSource(FileChannel.open(path, StandardOpenOption.READ), mapWindowSize), this);
+        }
+
+        public StreamingTokenizer from(final ReadableByteChannel channel) {
+            return new StreamingTokenizer(new ChannelSource(channel, bufferSize), this);
+        }
+    }
+}
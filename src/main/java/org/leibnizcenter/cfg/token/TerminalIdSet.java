@@ -0,0 +1,77 @@
+package org.leibnizcenter.cfg.token;
+
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ * Read-only {@link java.util.Set} of terminals, backed by a sorted range of
+ * {@link Grammar#getTerminalId(Terminal) terminal ids} in a shared int array. Lookups are a binary search, and creating
+ * one does not copy anything.
+ * </p>
+ *
+ * @see PreLexedCorpus
+ */
+public final class TerminalIdSet<T> extends AbstractSet<Terminal<T>> {
+    private final Grammar<T> grammar;
+    private final int[] ids;
+    private final int from;
+    private final int to;
+
+    /**
+     * @param grammar Grammar that defines the terminal ids
+     * @param ids     Array containing terminal ids; the range [from, to) must be sorted in ascending order
+     * @param from    Start of range, inclusive
+     * @param to      End of range, exclusive
+     */
+    TerminalIdSet(final Grammar<T> grammar, final int[] ids, final int from, final int to) {
+        this.grammar = grammar;
+        this.ids = ids;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof Terminal)) return false;
+        final int id = grammar.getTerminalId((Terminal<?>) o);
+        return id >= 0 && containsId(id);
+    }
+
+    public boolean containsId(final int id) {
+        return Arrays.binarySearch(ids, from, to, id) >= 0;
+    }
+
+    @Override
+    public Iterator<Terminal<T>> iterator() {
+        return new Iterator<Terminal<T>>() {
+            private int i = from;
+
+            @Override
+            public boolean hasNext() {
+                return i < to;
+            }
+
+            @Override
+            public Terminal<T> next() {
+                if (i >= to) throw new NoSuchElementException();
+                return grammar.getTerminal(ids[i++]);
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return to <= from;
+    }
+}
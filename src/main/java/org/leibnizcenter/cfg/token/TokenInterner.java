@@ -0,0 +1,81 @@
+package org.leibnizcenter.cfg.token;
+
+/**
+ * Open-addressing table that maps character sequences to a single shared {@link Token}, so that looking up a token that
+ * was seen before does not allocate anything. Stops remembering new tokens once it holds <code>maxSize</code> of them.
+ */
+final class TokenInterner {
+    private final int maxSize;
+    private Token<String>[] table;
+    private int[] hashes;
+    private int size = 0;
+
+    TokenInterner(final int maxSize) {
+        this.maxSize = maxSize;
+        this.table = newTable(64);
+        this.hashes = new int[64];
+    }
+
+    /**
+     * Arrays of a generic type can only be made with an unchecked cast; the table only ever holds string tokens
+     */
+    @SuppressWarnings("unchecked")
+    private static Token<String>[] newTable(final int length) {
+        return (Token<String>[]) new Token<?>[length];
+    }
+
+    private static int hash(final char[] chars, final int length) {
+        // Same as String#hashCode
+        int h = 0;
+        for (int i = 0; i < length; i++) h = 31 * h + chars[i];
+        return h;
+    }
+
+    private static boolean equals(final String string, final char[] chars, final int length) {
+        if (string.length() != length) return false;
+        for (int i = 0; i < length; i++) if (string.charAt(i) != chars[i]) return false;
+        return true;
+    }
+
+    Token<String> intern(final char[] chars, final int length) {
+        final int hash = hash(chars, length);
+        final int mask = table.length - 1;
+        int i = mix(hash) & mask;
+        while (table[i] != null) {
+            if (hashes[i] == hash && equals(table[i].obj, chars, length)) return table[i];
+            i = (i + 1) & mask;
+        }
+
+        final Token<String> token = new Token<>(new String(chars, 0, length));
+        if (size < maxSize) {
+            table[i] = token;
+            hashes[i] = hash;
+            if (++size * 2 > table.length) rehash();
+        }
+        return token;
+    }
+
+    private static int mix(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void rehash() {
+        final Token<String>[] oldTable = table;
+        final int[] oldHashes = hashes;
+        table = newTable(oldTable.length * 2);
+        hashes = new int[oldTable.length * 2];
+        final int mask = table.length - 1;
+        for (int j = 0; j < oldTable.length; j++) {
+            if (oldTable[j] == null) continue;
+            int i = mix(oldHashes[j]) & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = oldTable[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -8,7 +8,8 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
- * Utility functions for {@link Token}
+ * Utility functions for {@link Token}. These materialize all tokens in memory; for large inputs, use
+ * {@link StreamingTokenizer}.
  *
  * Created by maarten on 10-6-16.
  */
@@ -6,12 +6,13 @@ import org.leibnizcenter.cfg.rule.Rule;
 import java.util.*;
 
 /**
- * Dumb implementation of a multimap
+ * Dumb implementation of a multimap. Keys and values are iterated in the order in which they were first put, so that
+ * anything derived from the iteration order (such as terminal ids) does not depend on hash codes.
  * Created by maarten on 21-1-17.
  */
 public class MyMultimap<T, T1> {
-    private Map<T, Set<T1>> map = new HashMap<>();
-    private Set<T1> values = new HashSet<>();
+    private Map<T, Set<T1>> map = new LinkedHashMap<>();
+    private Set<T1> values = new LinkedHashSet<>();
     private boolean isLocked = false;
 
     public Collection<T1> get(final T el) {
@@ -23,7 +24,7 @@ public class MyMultimap<T, T1> {
         if (map.containsKey(k)) {
             s = map.get(k);
         } else {
-            s = new HashSet<>();
+            s = new LinkedHashSet<>();
             map.put(k, s);
         }
         s.add(v);
@@ -35,7 +36,7 @@ public class MyMultimap<T, T1> {
         if (map.containsKey(k)) {
             s = map.get(k);
         } else {
-            s = new HashSet<>();
+            s = new LinkedHashSet<>();
             map.put(k, s);
         }
 
@@ -0,0 +1,59 @@
+package org.leibnizcenter.cfg.util.cache;
+
+import java.util.function.Function;
+
+/**
+ * <p>
+ * A (possibly bounded) cache from keys to values. Implementations must be safe to use from multiple threads.
+ * </p>
+ * <p>
+ * Used by {@link org.leibnizcenter.cfg.grammar.Grammar} to remember which terminals match a given token, but
+ * general enough to be plugged in elsewhere.
+ * </p>
+ *
+ * @see SegmentedLruCache
+ */
+public interface Cache<K, V> {
+    /**
+     * Returns the cached value for given key, computing and storing it if absent. The function may be called
+     * more than once for the same key when multiple threads miss concurrently, so it should be idempotent.
+     *
+     * @param key      Key to look up
+     * @param function Computes the value for a key that is not cached. If it returns <code>null</code>, nothing is stored.
+     * @return Cached or newly computed value
+     */
+    V computeIfAbsent(K key, Function<? super K, ? extends V> function);
+
+    /**
+     * @return Cached value for given key, or <code>null</code> if it is not cached. Does not count as a hit or miss.
+     */
+    V getIfPresent(K key);
+
+    /**
+     * @return Number of entries currently cached
+     */
+    int size();
+
+    /**
+     * Removes all entries. Does not reset the statistics.
+     */
+    void clear();
+
+    /**
+     * @return Snapshot of the hit, miss and eviction counters
+     */
+    CacheStats stats();
+
+    /**
+     * @return A new, empty cache with the same configuration (kind and capacity) as this one, which shares no entries
+     * or statistics with it
+     */
+    Cache<K, V> newEmpty();
+
+    /**
+     * @return A cache that never stores anything; every lookup is a miss.
+     */
+    static <K, V> Cache<K, V> disabled() {
+        return new DisabledCache<>();
+    }
+}
@@ -0,0 +1,41 @@
+package org.leibnizcenter.cfg.util.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Cache that stores nothing, but still counts its misses
+ */
+final class DisabledCache<K, V> implements Cache<K, V> {
+    private final LongAdder misses = new LongAdder();
+
+    @Override
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> function) {
+        misses.increment();
+        return function.apply(key);
+    }
+
+    @Override
+    public V getIfPresent(final K key) {
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    @Override
+    public void clear() {
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(0, misses.sum(), 0);
+    }
+
+    @Override
+    public Cache<K, V> newEmpty() {
+        return new DisabledCache<>();
+    }
+}
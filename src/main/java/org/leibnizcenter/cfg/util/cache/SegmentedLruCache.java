@@ -0,0 +1,219 @@
+package org.leibnizcenter.cfg.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Size-bounded, thread-safe cache with a segmented LRU (SLRU) eviction policy.
+ * </p>
+ * <p>
+ * New entries enter a <em>probation</em> segment. An entry that is hit while on probation gets promoted to the
+ * <em>protected</em> segment; the least recently used protected entry is demoted back to probation when the protected
+ * segment overflows. Entries are only ever evicted from probation, so a burst of one-off tokens cannot flush the
+ * frequent ones from the cache.
+ * </p>
+ * <p>
+ * To keep contention low, the key space is striped over a number of independently locked shards, each of which
+ * runs its own SLRU over its share of the capacity. Values are computed outside of the lock.
+ * </p>
+ */
+public class SegmentedLruCache<K, V> implements Cache<K, V> {
+    private static final int DEFAULT_CONCURRENCY = 16;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final Shard<K, V>[] shards;
+    private final int shardMask;
+    private final int capacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity Maximum number of entries
+     */
+    public SegmentedLruCache(final int capacity) {
+        this(capacity, DEFAULT_CONCURRENCY);
+    }
+
+    /**
+     * @param capacity         Maximum number of entries
+     * @param concurrencyLevel Estimated number of threads using the cache at the same time. Rounded up to a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(final int capacity, final int concurrencyLevel) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        if (concurrencyLevel <= 0)
+            throw new IllegalArgumentException("Concurrency level must be positive: " + concurrencyLevel);
+        this.capacity = capacity;
+
+        // Never make shards so small that they can hold nothing
+        int shardCount = 1;
+        while (shardCount < concurrencyLevel && shardCount * 2 <= capacity) shardCount <<= 1;
+        this.shardMask = shardCount - 1;
+        this.shards = (Shard<K, V>[]) new Shard<?, ?>[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final int shardCapacity = capacity / shardCount + (i < capacity % shardCount ? 1 : 0);
+            shards[i] = new Shard<>(shardCapacity);
+        }
+    }
+
+    private static int spread(final int hashCode) {
+        final int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Shard<K, V> shardFor(final K key) {
+        return shards[spread(key.hashCode()) & shardMask];
+    }
+
+    @Override
+    public V computeIfAbsent(final K key, final Function<? super K, ? extends V> function) {
+        final Shard<K, V> shard = shardFor(key);
+        final V cached;
+        synchronized (shard) {
+            cached = shard.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        final V computed = function.apply(key);
+        if (computed == null) return null;
+        synchronized (shard) {
+            final V raced = shard.peek(key);
+            if (raced != null) return raced;
+            evictions.add(shard.put(key, computed));
+        }
+        return computed;
+    }
+
+    @Override
+    public V getIfPresent(final K key) {
+        final Shard<K, V> shard = shardFor(key);
+        synchronized (shard) {
+            return shard.peek(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (final Shard<K, V> shard : shards)
+            synchronized (shard) {
+                size += shard.size();
+            }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (final Shard<K, V> shard : shards)
+            synchronized (shard) {
+                shard.clear();
+            }
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    @Override
+    public Cache<K, V> newEmpty() {
+        return new SegmentedLruCache<>(capacity, shards.length);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentedLruCache{capacity=" + capacity + ", size=" + size() + ", " + stats() + '}';
+    }
+
+    /**
+     * One independently locked SLRU. Not thread-safe by itself. Both segments are kept in insertion order, and an
+     * entry is moved to the most recently used end by re-inserting it, so that plain lookups leave the order alone.
+     */
+    private static final class Shard<K, V> {
+        private final int protectedCapacity;
+        private final int probationCapacity;
+        private final LinkedHashMap<K, V> probation = new LinkedHashMap<>();
+        private final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>();
+
+        private Shard(final int capacity) {
+            this.protectedCapacity = capacity > 1 ? (int) (capacity * PROTECTED_RATIO) : 0;
+            this.probationCapacity = capacity - protectedCapacity;
+        }
+
+        private static <K, V> Map.Entry<K, V> removeEldest(final LinkedHashMap<K, V> map) {
+            final Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
+            final Map.Entry<K, V> eldest = iterator.next();
+            iterator.remove();
+            return eldest;
+        }
+
+        /**
+         * Looks up the value and updates recency, promoting it from probation to protected if applicable
+         */
+        V get(final K key) {
+            final V protectedValue = protectedSegment.remove(key);
+            if (protectedValue != null) {
+                protectedSegment.put(key, protectedValue);
+                return protectedValue;
+            }
+
+            final V probationValue = probation.remove(key);
+            if (probationValue == null) return null;
+            if (protectedCapacity <= 0) {
+                probation.put(key, probationValue);
+                return probationValue;
+            }
+            protectedSegment.put(key, probationValue);
+            if (protectedSegment.size() > protectedCapacity) {
+                // Demote to most recently used position of probation; probation can't overflow because we just took one out
+                final Map.Entry<K, V> demoted = removeEldest(protectedSegment);
+                probation.put(demoted.getKey(), demoted.getValue());
+            }
+            return probationValue;
+        }
+
+        /**
+         * Looks up the value without touching recency
+         */
+        V peek(final K key) {
+            final V protectedValue = protectedSegment.get(key);
+            return protectedValue != null ? protectedValue : probation.get(key);
+        }
+
+        /**
+         * @return number of evicted entries
+         */
+        int put(final K key, final V value) {
+            probation.put(key, value);
+            int evicted = 0;
+            while (probation.size() > probationCapacity) {
+                removeEldest(probation);
+                evicted++;
+            }
+            return evicted;
+        }
+
+        int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        void clear() {
+            probation.clear();
+            protectedSegment.clear();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.leibnizcenter.cfg.algebra.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class BlockedLUDecompositionTest {
+    private static Matrix random(final int m, final int n, final long seed) {
+        final Random random = new Random(seed);
+        final Matrix matrix = new Matrix(m, n);
+        for (int i = 0; i < m; i++)
+            for (int j = 0; j < n; j++)
+                matrix.set(i, j, random.nextDouble() - 0.5);
+        return matrix;
+    }
+
+    private static void assertMatrixEquals(final Matrix expected, final Matrix actual, final double delta) {
+        assertEquals(expected.getRowDimension(), actual.getRowDimension());
+        assertEquals(expected.getColumnDimension(), actual.getColumnDimension());
+        expected.forEach((row, column, value) -> assertEquals(value, actual.get(row, column), delta));
+    }
+
+    @Test
+    public void inverseEqualsUnblocked() throws Exception {
+        final Matrix A = random(203, 203, 1);
+        final Matrix expected = A.inverse(new LUDecomposition(A));
+        // Block size that does not divide the dimension, and enough threads to split work
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertMatrixEquals(expected, new BlockedLUDecomposition(A, 7, pool).inverse(), 1e-9);
+            assertMatrixEquals(expected, new BlockedLUDecomposition(A, 64, pool).inverse(), 1e-9);
+        } finally {
+            pool.shutdown();
+        }
+        assertMatrixEquals(expected, new BlockedLUDecomposition(A).inverse(), 1e-9);
+    }
+
+    @Test
+    public void solve() throws Exception {
+        final Matrix A = random(50, 50, 2);
+        final Matrix B = random(50, 3, 3);
+        final Matrix X = new BlockedLUDecomposition(A, 8, ForkJoinPool.commonPool()).solve(B);
+        assertMatrixEquals(B, A.times(X), 1e-10);
+        assertMatrixEquals(new LUDecomposition(A).solve(B), X, 1e-10);
+    }
+
+    @Test
+    public void singular() throws Exception {
+        final Matrix A = new Matrix(new double[][]{
+                new double[]{1.0, 2.0, 3.0},
+                new double[]{2.0, 4.0, 6.0},
+                new double[]{0.0, 1.0, 1.0}
+        });
+        assertFalse(new BlockedLUDecomposition(A, 2, ForkJoinPool.commonPool()).isNonsingular());
+        assertEquals(new LUDecomposition(A).isNonsingular(), new BlockedLUDecomposition(A).isNonsingular());
+    }
+}
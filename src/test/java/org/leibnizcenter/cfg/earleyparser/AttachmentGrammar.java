@@ -0,0 +1,48 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+
+/**
+ * Small grammar in which a prepositional phrase attaches either to the verb or to the object
+ */
+final class AttachmentGrammar {
+    static final NonTerminal S = Category.nonTerminal("S");
+    static final NonTerminal NP = Category.nonTerminal("NP");
+    static final NonTerminal VP = Category.nonTerminal("VP");
+    static final NonTerminal PP = Category.nonTerminal("PP");
+    static final NonTerminal Det = Category.nonTerminal("Det");
+    static final NonTerminal N = Category.nonTerminal("N");
+    static final NonTerminal V = Category.nonTerminal("V");
+    static final NonTerminal P = Category.nonTerminal("P");
+    static final Terminal<String> the = new ExactStringTerminal("the");
+    static final Terminal<String> man = new ExactStringTerminal("man");
+    static final Terminal<String> stick = new ExactStringTerminal("stick");
+    static final Terminal<String> john = new ExactStringTerminal("john");
+    static final Terminal<String> hit = new ExactStringTerminal("hit");
+    static final Terminal<String> with = new ExactStringTerminal("with");
+    static final String SENTENCE = "john hit the man with the stick";
+
+    private AttachmentGrammar() {
+        throw new IllegalStateException();
+    }
+
+    static Grammar.Builder<String> builder() {
+        return new Grammar.Builder<String>()
+                .addRule(1.0, S, NP, VP)
+                .addRule(0.5, NP, Det, N)
+                .addRule(0.2, NP, Det, N, PP)
+                .addRule(0.3, NP, john)
+                .addRule(0.6, VP, V, NP)
+                .addRule(0.4, VP, V, NP, PP)
+                .addRule(1.0, PP, P, NP)
+                .addRule(1.0, Det, the)
+                .addRule(0.5, N, man)
+                .addRule(0.5, N, stick)
+                .addRule(1.0, V, hit)
+                .addRule(1.0, P, with);
+    }
+}
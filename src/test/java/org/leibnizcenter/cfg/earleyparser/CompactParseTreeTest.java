@@ -0,0 +1,101 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Token;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.leibnizcenter.cfg.earleyparser.AttachmentGrammar.*;
+
+public class CompactParseTreeTest {
+    @Test
+    public void convertsToViterbiParse() {
+        final Parser<String> parser = new Parser<>(builder().build());
+        final ParseTree expected = parser.getViterbiParse(S, Tokens.tokenize(SENTENCE));
+        final CompactParseTree<String> compact = parser.getCompactViterbiParse(S, Tokens.tokenize(SENTENCE));
+
+        assertEquals(expected, compact.toParseTree());
+        assertEquals(expected, CompactParseTree.<String>of(expected).toParseTree());
+        assertEquals(compact.size(), CompactParseTree.of(expected).size());
+    }
+
+    @Test
+    public void nodesAreInPreOrderWithSpans() {
+        final Parser<String> parser = new Parser<>(builder().build());
+        final CompactParseTree<String> tree = parser.getCompactViterbiParse(S, Tokens.tokenize(SENTENCE));
+
+        assertEquals(Category.START, tree.getCategory(CompactParseTree.ROOT));
+        assertEquals(0, tree.getStart(CompactParseTree.ROOT));
+        assertEquals(7, tree.getEnd(CompactParseTree.ROOT));
+        assertEquals(CompactParseTree.NONE, tree.getNextSibling(CompactParseTree.ROOT));
+
+        final String[] words = SENTENCE.split(" ");
+        int leaves = 0;
+        for (int node = 0; node < tree.size(); node++) {
+            final int first = tree.getFirstChild(node);
+            if (tree.isLeaf(node)) {
+                assertEquals(CompactParseTree.NONE, first);
+                assertEquals(tree.getStart(node) + 1, tree.getEnd(node));
+                assertEquals(words[tree.getStart(node)], tree.getToken(node).obj);
+                leaves++;
+            } else {
+                assertNull(tree.getToken(node));
+                assertEquals(node + 1, first);
+                assertEquals(tree.getStart(node), tree.getStart(first));
+                int end = tree.getStart(node);
+                for (int child = first; child != CompactParseTree.NONE; child = tree.getNextSibling(child)) {
+                    assertTrue(child > node);
+                    assertEquals(end, tree.getStart(child));
+                    end = tree.getEnd(child);
+                }
+                assertEquals(tree.getEnd(node), end);
+            }
+        }
+        assertEquals(words.length, leaves);
+    }
+
+    @Test
+    public void sharedPrefixesAreInlined() {
+        final ParseTree expected = new Parser<>(builder().build()).getViterbiParse(S, Tokens.tokenize(SENTENCE));
+        final CompactParseTree<String> compact = new Parser<>(builder().withPrefixSharing().build())
+                .getCompactViterbiParse(S, Tokens.tokenize(SENTENCE));
+
+        assertEquals(expected, compact.toParseTree());
+    }
+
+    @Test
+    public void deepTree() {
+        final Terminal<String> a = new ExactStringTerminal("a");
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.5, S, S, a)
+                .addRule(0.5, S, a)
+                .build();
+        final int length = 10000;
+        final List<Token<String>> tokens = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) tokens.add(new Token<>("a"));
+
+        final CompactParseTree<String> tree = new Parser<>(grammar).getCompactViterbiParse(S, tokens);
+        assertEquals(1 + 2 * length, tree.size());
+        // <start>, S and a
+        assertEquals(3, tree.getCategories().size());
+        // <start> → S
+        int node = tree.getFirstChild(CompactParseTree.ROOT);
+        for (int depth = 0; depth < length; depth++) {
+            assertEquals(S, tree.getCategory(node));
+            assertEquals(length - depth, tree.getEnd(node));
+            node = tree.getFirstChild(node);
+        }
+        assertTrue(tree.isLeaf(node));
+        assertEquals(0, tree.getStart(node));
+
+        final ParseTree parseTree = tree.toParseTree();
+        assertEquals(S, parseTree.children.get(0).category);
+    }
+}
@@ -6,16 +6,20 @@ import org.junit.Test;
 import org.leibnizcenter.cfg.algebra.semiring.dbl.ProbabilitySemiring;
 import org.leibnizcenter.cfg.category.Category;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
 import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.grammar.PredictionTable;
 import org.leibnizcenter.cfg.rule.LexicalErrorRule;
 import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Token;
+import org.leibnizcenter.cfg.util.cache.Cache;
+import org.leibnizcenter.cfg.util.cache.CacheStats;
 
 import java.io.IOException;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
 
+import static java.util.Collections.*;
 import static org.junit.Assert.*;
 
 /**
@@ -116,6 +120,26 @@ public class GrammarTest {
         assertEquals(sr.toProbability(g.getLeftStarScore(A, X)), 0.0, 0.01);
     }
 
+    @Test
+    public final void predictionTablesFoldInLeftStarScore() {
+        final Grammar<String> g = makeDefaultGrammar();
+        for (final NonTerminal Z : g.getNonTerminals()) {
+            final PredictionTable predictions = g.getPredictions(Z);
+            assertEquals(g.nonZeroLeftStartRules.get(Z), new HashSet<>(Arrays.asList(predictions.rules)));
+            for (int i = 0; i < predictions.size(); i++) {
+                final Rule rule = predictions.rules[i];
+                assertEquals(
+                        sr.times(g.getLeftStarScore(Z, rule.left), rule.probabilityAsSemiringElement),
+                        predictions.scores[i],
+                        1e-12
+                );
+                assertEquals(g.getLeftStarScore(Z, rule.left), g.getLeftStarScore(g.getNonTerminalId(Z), g.getNonTerminalId(rule.left)), 0.0);
+            }
+            for (final Rule rule : g.getStructuralPredictions(Z).rules)
+                assertFalse(rule.right[0] instanceof Terminal);
+        }
+    }
+
 //    @Test public final void testGetPreterminal() {
 //		Assert.assertEquals(rule2,
 //				g.getPreterminals(rule2, rule2.right[0].name, true));
@@ -167,4 +191,154 @@ public class GrammarTest {
         assertNull(errorRules);
     }
 
+    private static void assertSameAnalysis(final Grammar<String> expected, final Grammar<String> actual) {
+        assertEquals(new HashSet<>(expected.getAllRules()), new HashSet<>(actual.getAllRules()));
+        assertEquals(expected.nonZeroLeftStartRules, actual.nonZeroLeftStartRules);
+        assertEquals(expected.getTerminalCount(), actual.getTerminalCount());
+        for (final NonTerminal X : expected.getNonTerminals())
+            for (final NonTerminal Y : expected.getNonTerminals()) {
+                assertEquals(expected.getLeftStarScore(X, Y), actual.getLeftStarScore(X, Y), 1e-10);
+                assertEquals(expected.getUnitStarScore(X, Y), actual.getUnitStarScore(X, Y), 1e-10);
+            }
+        for (final NonTerminal X : expected.getNonTerminals()) {
+            assertEquals(predictionScores(expected.getPredictions(X)), predictionScores(actual.getPredictions(X)));
+            assertEquals(predictionScores(expected.getStructuralPredictions(X)), predictionScores(actual.getStructuralPredictions(X)));
+            assertEquals(expected.firstSets.getFirstSet(X), actual.firstSets.getFirstSet(X));
+        }
+        for (int id = 0; id < expected.getTerminalCount(); id++) {
+            final Terminal<String> terminal = expected.getTerminal(id);
+            final int actualId = actual.getTerminalId(terminal);
+            assertEquals(Arrays.asList(expected.getLexicalRules(id)), Arrays.asList(actual.getLexicalRules(actualId)));
+            final Rule[] lexicalRules = actual.getLexicalRules(actualId);
+            for (int i = 0; i < lexicalRules.length; i++)
+                assertEquals(actual.getNonTerminalId(lexicalRules[i].left), actual.getLexicalRuleLeftIds(actualId)[i]);
+        }
+    }
+
+    /**
+     * @return Score of every predicted rule; the order of the rules depends on hash sets
+     */
+    private static Map<Rule, Double> predictionScores(final PredictionTable predictions) {
+        final Map<Rule, Double> scores = new HashMap<>();
+        for (int i = 0; i < predictions.size(); i++) scores.put(predictions.rules[i], predictions.scores[i]);
+        return scores;
+    }
+
+    private static Grammar<String> build(final Collection<Rule> rules) {
+        return new Grammar.Builder<String>().withSemiring(sr).addRules(rules).build(false);
+    }
+
+    @Test
+    public final void withChanges() {
+        final Grammar<String> g = build(Arrays.asList(rule1, rule2, ruleB, ruleC, ruleD, ruleDe, ruleDa, ruleEE, ruleE));
+
+        // Lexical rule only
+        final Rule ruleCa = Rule.create(sr, 0.1, C, a);
+        final Grammar<String> lexical = g.withChanges(singletonList(ruleCa), emptyList(), emptyMap());
+        assertSameAnalysis(build(Arrays.asList(rule1, rule2, ruleB, ruleC, ruleD, ruleDe, ruleDa, ruleEE, ruleE, ruleCa)), lexical);
+
+        // Remove, reweight, and add a rule that closes a unit cycle
+        final Rule ruleEC = Rule.create(sr, 0.3, E, C);
+        final Grammar<String> changed = g.withChanges(
+                singletonList(ruleEC),
+                singletonList(ruleDe),
+                singletonMap(ruleC, 0.4)
+        );
+        assertSameAnalysis(build(Arrays.asList(rule1, rule2, ruleB, Rule.create(sr, 0.4, C, D), ruleD, ruleDa, ruleEE, ruleE, ruleEC)), changed);
+        assertEquals(0.5 * 0.4 * 0.5 / (1 - 0.4 * 0.5 * 0.3), changed.getUnitStarScore(B, E), 1e-10);
+
+        // Removing the last rule of a non-terminal rebuilds from scratch
+        final Grammar<String> withoutX = build(Arrays.asList(rule1, rule2, rule3)).withChanges(emptyList(), singletonList(rule3), emptyMap());
+        assertFalse(withoutX.getNonTerminals().contains(X));
+    }
+
+    @Test
+    public final void withChangesOnLargeGrammar() {
+        final Random random = new Random(35);
+        final int size = 400;
+        final NonTerminal[] nonTerminals = new NonTerminal[size];
+        for (int i = 0; i < size; i++) nonTerminals[i] = Category.nonTerminal("N" + i);
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            rules.add(Rule.create(sr, 0.5, nonTerminals[i], new ExactStringTerminal("w" + i)));
+            // Mostly chains towards higher indices, with a few back edges
+            final int target = random.nextInt(10) == 0 ? random.nextInt(size) : Math.min(size - 1, i + 1 + random.nextInt(5));
+            rules.add(Rule.create(sr, 0.3, nonTerminals[i], nonTerminals[target]));
+            rules.add(Rule.create(sr, 0.2, nonTerminals[i], nonTerminals[random.nextInt(size)], new ExactStringTerminal("w" + i)));
+        }
+        final Grammar<String> g = build(rules);
+
+        final Rule added = Rule.create(sr, 0.1, nonTerminals[350], nonTerminals[20]);
+        final Rule removed = rules.get(3 * 200 + 1);
+        final Rule reweighted = rules.get(3 * 100 + 2);
+        final Grammar<String> changed = g.withChanges(singletonList(added), singletonList(removed), singletonMap(reweighted, 0.05));
+
+        final List<Rule> expectedRules = new ArrayList<>(rules);
+        expectedRules.add(added);
+        expectedRules.remove(removed);
+        expectedRules.set(expectedRules.indexOf(reweighted), Rule.create(sr, 0.05, reweighted.left, reweighted.right));
+        assertSameAnalysis(build(expectedRules), changed);
+    }
+
+    @Test
+    public final void withChangesKeepsTokenCacheConfiguration() {
+        final Token<String> token = new Token<>("a");
+        final Grammar<String> cached = build(Arrays.asList(rule2, ruleDa));
+        cached.getCategories(token);
+        final Grammar<String> cachedChanged = cached.withChanges(singletonList(Rule.create(sr, 0.5, D, e)), emptyList(), emptyMap());
+        cachedChanged.getCategories(token);
+        cachedChanged.getCategories(token);
+        // Entries and statistics are not shared
+        assertEquals(new CacheStats(1, 1, 0), cachedChanged.getTokenCacheStats());
+        assertEquals(new CacheStats(0, 1, 0), cached.getTokenCacheStats());
+
+        final Grammar<String> uncached = new Grammar.Builder<String>()
+                .withSemiring(sr)
+                .addRules(Arrays.asList(rule2, ruleDa))
+                .withTokenCache(Cache.disabled())
+                .build(false);
+        final Grammar<String> uncachedChanged = uncached.withChanges(singletonList(Rule.create(sr, 0.5, D, e)), emptyList(), emptyMap());
+        uncachedChanged.getCategories(token);
+        uncachedChanged.getCategories(token);
+        assertEquals(new CacheStats(0, 2, 0), uncachedChanged.getTokenCacheStats());
+    }
+
+    @Test
+    public final void withChangesSharesUnaffectedTables() {
+        final Grammar<String> g = build(Arrays.asList(rule1, rule2, ruleB, ruleC, ruleD, ruleDe, ruleDa, ruleEE, ruleE, rule3));
+
+        // Only X can reach Y
+        final Rule ruleYa = Rule.create(sr, 0.5, Y, a);
+        final Grammar<String> lexical = g.withChanges(singletonList(ruleYa), emptyList(), emptyMap());
+        assertSameAnalysis(build(Arrays.asList(rule1, rule2, ruleB, ruleC, ruleD, ruleDe, ruleDa, ruleEE, ruleE, rule3, ruleYa)), lexical);
+
+        assertEquals(g.getTerminalsFingerprint(), lexical.getTerminalsFingerprint());
+        for (final NonTerminal unaffected : Arrays.asList(A, B, C, D, E)) {
+            assertSame(g.nonZeroLeftStartRules.get(unaffected), lexical.nonZeroLeftStartRules.get(unaffected));
+            assertSame(g.getPredictions(unaffected), lexical.getPredictions(unaffected));
+            assertSame(g.getStructuralPredictions(unaffected), lexical.getStructuralPredictions(unaffected));
+        }
+        assertNotSame(g.getPredictions(X), lexical.getPredictions(X));
+        assertEquals(singleton(a), lexical.firstSets.getFirstSet(X));
+        assertSame(g.unitStarScores, lexical.unitStarScores);
+
+        final int eId = g.getTerminalId((Terminal<?>) e);
+        final int aId = g.getTerminalId((Terminal<?>) a);
+        assertEquals(eId, lexical.getTerminalId((Terminal<?>) e));
+        assertSame(g.getLexicalRules(eId), lexical.getLexicalRules(eId));
+        assertSame(g.getLexicalRuleLeftIds(eId), lexical.getLexicalRuleLeftIds(eId));
+        assertEquals(Arrays.asList(ruleDa, ruleYa), Arrays.asList(lexical.getLexicalRules(aId)));
+
+        // Reweighting keeps the place of the rule in the lexicon
+        final Grammar<String> reweighted = lexical.withChanges(emptyList(), emptyList(), singletonMap(ruleDa, 0.25));
+        assertEquals(
+                Arrays.asList(Rule.create(sr, 0.25, D, a), ruleYa),
+                Arrays.asList(reweighted.getLexicalRules(aId))
+        );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public final void withChangesRejectsUnknownRules() {
+        build(Arrays.asList(rule1, rule2)).withChanges(emptyList(), singletonList(ruleB), emptyMap());
+    }
 }
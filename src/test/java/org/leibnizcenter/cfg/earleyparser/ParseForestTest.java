@@ -0,0 +1,107 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.leibnizcenter.cfg.earleyparser.AttachmentGrammar.*;
+
+public class ParseForestTest {
+    private static final Terminal<String> a = new ExactStringTerminal("a");
+
+    private static final Grammar<String> grammar = builder().build();
+
+    @Test
+    public void attachmentAmbiguity() {
+        final ParseForest<String> forest = new Parser<>(grammar)
+                .getParseForest(S, Tokens.tokenize("john hit the man with the stick"));
+
+        assertEquals(S, forest.root.category);
+        assertEquals(0, forest.root.start);
+        assertEquals(7, forest.root.end);
+        assertEquals(2.0, forest.countDerivations(), 0.0);
+        assertTrue(forest.isAmbiguous());
+
+        // Both readings end in a VP over "hit the man with the stick"
+        final ParseForest.PackedNode onlyReading = forest.root.getAlternatives().get(0);
+        assertEquals(1, forest.root.getAlternatives().size());
+        final ParseForest.SymbolNode vp = (ParseForest.SymbolNode) onlyReading.right;
+        assertEquals(VP, vp.category);
+        assertEquals(2, vp.getAlternatives().size());
+
+        // ... and share the PP
+        final Set<ParseForest.Node> pps = new HashSet<>();
+        for (final ParseForest.PackedNode reading : vp.getAlternatives()) {
+            if (reading.right instanceof ParseForest.SymbolNode && ((ParseForest.SymbolNode) reading.right).category == PP)
+                pps.add(reading.right);
+            else {
+                final ParseForest.SymbolNode np = (ParseForest.SymbolNode) reading.right;
+                assertEquals(NP, np.category);
+                assertEquals(1, np.getAlternatives().size());
+                pps.add(np.getAlternatives().get(0).right);
+            }
+        }
+        assertEquals(1, pps.size());
+        assertEquals(4, pps.iterator().next().start);
+    }
+
+    @Test
+    public void prefixSharingKeepsDerivations() {
+        final ParseForest<String> forest = new Parser<>(builder().withPrefixSharing().build())
+                .getParseForest(S, Tokens.tokenize("john hit the man with the stick"));
+        assertEquals(2.0, forest.countDerivations(), 0.0);
+
+        // Both VP rules are read as V followed by a shared prefix node
+        final ParseForest.SymbolNode vp = (ParseForest.SymbolNode) forest.root.getAlternatives().get(0).right;
+        assertEquals(1, vp.getAlternatives().size());
+        final ParseForest.SymbolNode rest = (ParseForest.SymbolNode) vp.getAlternatives().get(0).right;
+        assertTrue(rest.category instanceof SharedPrefix);
+        assertEquals(2, rest.getAlternatives().size());
+    }
+
+    @Test
+    public void unambiguous() {
+        final ParseForest<String> forest = new Parser<>(grammar).getParseForest(S, Tokens.tokenize("john hit the man"));
+        assertEquals(1.0, forest.countDerivations(), 0.0);
+        assertFalse(forest.isAmbiguous());
+    }
+
+    @Test
+    public void exponentiallyManyTreesInPolynomialSpace() {
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.5, S, S, S)
+                .addRule(0.5, S, a)
+                .build();
+        final int length = 12;
+        final StringBuilder sentence = new StringBuilder("a");
+        for (int i = 1; i < length; i++) sentence.append(" a");
+
+        final ParseForest<String> forest = new Parser<>(grammar).getParseForest(S, Tokens.tokenize(sentence.toString()));
+        // Catalan number C(11)
+        assertEquals(58786.0, forest.countDerivations(), 0.0);
+        // S over every span, S → S · S over every span that does not reach the end, and a token per position
+        final int spans = length * (length + 1) / 2;
+        assertEquals(spans + (spans - length) + length, forest.getNodeCount());
+    }
+
+    @Test
+    public void unitCycle() {
+        final NonTerminal A = Category.nonTerminal("A");
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.5, S, A)
+                .addRule(0.5, S, a)
+                .addRule(1.0, A, S)
+                .build();
+        final ParseForest<String> forest = new Parser<>(grammar).getParseForest(S, Tokens.tokenize("a"));
+        assertEquals(Double.POSITIVE_INFINITY, forest.countDerivations(), 0.0);
+    }
+}
@@ -0,0 +1,98 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.callbacks.ParseOptions;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+import static org.leibnizcenter.cfg.earleyparser.AttachmentGrammar.*;
+
+public class ParseTreeSamplerTest {
+    @Test
+    public void samplesInProportionToProbability() {
+        final Parser<String> parser = new Parser<>(builder().build());
+        final ParseTreeSampler<String> sampler = new ParseTreeSampler<>(parser.getParseForest(S, Tokens.tokenize(SENTENCE)));
+        assertEquals(parser.recognize(S, Tokens.tokenize(SENTENCE)), sampler.getProbability(), 1e-12);
+
+        final int count = 20000;
+        final List<ParseTree> samples = sampler.sample(count, 42L);
+        assertEquals(count, samples.size());
+        int attachedToVerb = 0;
+        for (final ParseTree tree : samples) {
+            assertEquals(S, tree.category);
+            final ParseTree vp = tree.children.get(1);
+            assertEquals(VP, vp.category);
+            if (vp.children.size() == 3) attachedToVerb++;
+        }
+        // VP → V NP PP: 0.4 * 0.5, against VP → V NP with NP → Det N PP: 0.6 * 0.2
+        assertEquals(0.625, attachedToVerb / (double) count, 0.015);
+
+        // The Viterbi parse is the reading that is attached to the verb
+        final ParseTree viterbi = parser.getViterbiParse(S, Tokens.tokenize(SENTENCE)).children.get(0);
+        assertTrue(samples.contains(viterbi));
+    }
+
+    @Test
+    public void includesScanProbabilities() {
+        final Grammar<String> grammar = builder().build();
+        final Parser<String> parser = new Parser<>(grammar);
+        final ParseOptions<String> options = new ParseOptions.Builder<String>()
+                .withScanProbability((index, token) -> grammar.semiring.fromProbability(index % 2 == 0 ? 0.5 : 0.8))
+                .build();
+        final ParseTreeSampler<String> sampler = new ParseTreeSampler<>(parser.getParseForest(S, Tokens.tokenize(SENTENCE), options));
+
+        final double probability = parser.recognize(S, Tokens.tokenize(SENTENCE), options);
+        // Four tokens at even positions and three at odd positions
+        assertEquals(parser.recognize(S, Tokens.tokenize(SENTENCE)) * Math.pow(0.5, 4) * Math.pow(0.8, 3), probability, 1e-12);
+        assertEquals(probability, sampler.getProbability(), 1e-12);
+    }
+
+    @Test
+    public void samplesOnlyDependOnSeed() {
+        final Parser<String> parser = new Parser<>(builder().build());
+        final ParseTreeSampler<String> sampler = new ParseTreeSampler<>(parser.getParseForest(S, Tokens.tokenize(SENTENCE)));
+        assertEquals(sampler.sample(500, 7L), sampler.sample(500, 7L));
+        assertEquals(sampler.sample(new SplittableRandom(3L)), sampler.sample(new SplittableRandom(3L)));
+    }
+
+    @Test
+    public void sharedPrefixesAreInlined() {
+        final Parser<String> plain = new Parser<>(builder().build());
+        final Parser<String> shared = new Parser<>(builder().withPrefixSharing().build());
+        final ParseTreeSampler<String> sampler = new ParseTreeSampler<>(shared.getParseForest(S, Tokens.tokenize(SENTENCE)));
+        assertEquals(plain.recognize(S, Tokens.tokenize(SENTENCE)), sampler.getProbability(), 1e-12);
+
+        final ParseTree viterbi = plain.getViterbiParse(S, Tokens.tokenize(SENTENCE)).children.get(0);
+        assertTrue(sampler.sample(200, 1L).contains(viterbi));
+    }
+
+    @Test
+    public void unitCycle() {
+        final NonTerminal A = Category.nonTerminal("A");
+        final Terminal<String> a = new ExactStringTerminal("a");
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.5, S, A)
+                .addRule(0.5, S, a)
+                .addRule(1.0, A, S)
+                .build();
+        final Parser<String> parser = new Parser<>(grammar);
+        final ParseTreeSampler<String> sampler = new ParseTreeSampler<>(parser.getParseForest(S, Tokens.tokenize("a")));
+        // 0.5 + 0.5 * 0.5 + ... = 1.0
+        assertEquals(1.0, sampler.getProbability(), 1e-9);
+
+        int depth = 0;
+        final int count = 10000;
+        for (final ParseTree tree : sampler.sample(count, 5L))
+            for (ParseTree t = tree; t instanceof ParseTree.NonLeaf; t = t.children.get(0)) depth++;
+        // S is a leaf with probability 1/2, so on average there are 2 S nodes and 1 A node
+        assertEquals(3.0, depth / (double) count, 0.1);
+    }
+}
@@ -8,8 +8,12 @@ import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
 import org.leibnizcenter.cfg.category.terminal.Terminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
 import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Token;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 
 /**
  */
@@ -130,4 +134,76 @@ public class ParseTreeTest {
         Assert.assertEquals(tree1.getCategory(), S);
         Assert.assertEquals(tree1.getChildren(), children2);
     }
+
+    private static ParseTree leaf(final Terminal terminal, final String token) {
+        //noinspection unchecked
+        return new ParseTree.Leaf<>(new Token<>(token), terminal);
+    }
+
+    private static ParseTree node(final NonTerminal category, final ParseTree... children) {
+        return new ParseTree.NonLeaf(category, new ArrayList<>(Arrays.asList(children)));
+    }
+
+    /**
+     * (S (NP he) (VP (VT saw) (NP her)))
+     */
+    private static ParseTree sentence() {
+        return node(S,
+                node(NP, leaf(he, "he")),
+                node(VP, node(VT, leaf(saw, "saw")), node(NP, leaf(her, "her")))
+        );
+    }
+
+    private static ParseTree.FlattenOption removeVerbsAndFlattenVP(final List<ParseTree> parents, final ParseTree tree) {
+        if (tree.category.equals(VT)) return ParseTree.FlattenOption.REMOVE;
+        if (tree.category.equals(VP)) return ParseTree.FlattenOption.KEEP_ONLY_CHILDREN;
+        return ParseTree.FlattenOption.KEEP;
+    }
+
+    @Test
+    public final void flatten() {
+        final ParseTree flattened = sentence().flatten(ParseTreeTest::removeVerbsAndFlattenVP);
+        Assert.assertEquals(node(S, node(NP, leaf(he, "he")), node(NP, leaf(her, "her"))), flattened);
+    }
+
+    @Test
+    public final void flattenedViewOnlyVisitsWhatIsWalked() {
+        final List<ParseTree> applied = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        sentence()
+                .flattenedView((parents, tree) -> {
+                    applied.add(tree);
+                    return removeVerbsAndFlattenVP(parents, tree);
+                })
+                .walk(new ParseTree.Visitor() {
+                    @Override
+                    public boolean enter(final ParseTree tree, final List<ParseTree> keptAncestors) {
+                        depths.add(keptAncestors.size());
+                        // Don't look inside noun phrases
+                        return !tree.category.equals(NP);
+                    }
+
+                    @Override
+                    public void leave(final ParseTree tree) {
+                    }
+                });
+        // S, NP and the NP under the flattened VP
+        Assert.assertEquals(Arrays.asList(0, 1, 1), depths);
+        // The function saw both NPs, the VP and the VT, but no leaves
+        Assert.assertEquals(4, applied.size());
+        for (final ParseTree tree : applied) Assert.assertFalse(tree instanceof ParseTree.Leaf);
+    }
+
+    @Test
+    public final void flattenDeepTree() {
+        ParseTree tree = node(NP, leaf(he, "he"));
+        for (int i = 0; i < 100000; i++) tree = node(i % 2 == 0 ? VP : S, tree);
+        final ParseTree flattened = tree.flatten((parents, t) -> t.category.equals(VP)
+                ? ParseTree.FlattenOption.KEEP_ONLY_CHILDREN
+                : ParseTree.FlattenOption.KEEP);
+        int depth = 0;
+        for (ParseTree t = flattened; t instanceof ParseTree.NonLeaf; t = t.children.get(0)) depth++;
+        // The 50000 S nodes, of which the root is one, and the NP
+        Assert.assertEquals(50001, depth);
+    }
 }
@@ -14,10 +14,12 @@ import org.leibnizcenter.cfg.grammar.Grammar;
 import org.leibnizcenter.cfg.token.Token;
 import org.leibnizcenter.cfg.token.Tokens;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  */
@@ -150,6 +152,29 @@ public class ParserTest {
     }
 
 
+    @Test
+    public void viterbiOnLongInput() throws Exception {
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.5, S, S, a)
+                .addRule(0.5, S, a)
+                .build();
+        final int length = 10000;
+        final List<Token<String>> tokens = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) tokens.add(new Token<>("a"));
+
+        ParseTree tree = new Parser<>(grammar).getViterbiParse(S, tokens);
+        // <start> → S
+        tree = tree.children.get(0);
+        int depth = 1;
+        while (tree.children.size() == 2) {
+            assertEquals(S, tree.category);
+            assertTrue(tree.children.get(1) instanceof ParseTree.Leaf);
+            tree = tree.children.get(0);
+            depth++;
+        }
+        assertEquals(length, depth);
+    }
+
     @Test
     public final void ambiguous() {
         final NonTerminal BV = new NonTerminal("BV");
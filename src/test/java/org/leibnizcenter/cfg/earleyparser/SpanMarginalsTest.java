@@ -0,0 +1,113 @@
+package org.leibnizcenter.cfg.earleyparser;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.callbacks.ParseOptions;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import static org.junit.Assert.*;
+import static org.leibnizcenter.cfg.earleyparser.AttachmentGrammar.*;
+
+public class SpanMarginalsTest {
+    @Test
+    public void posteriors() {
+        final Parser<String> parser = new Parser<>(builder().build());
+        final SpanMarginals marginals = parser.getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.0);
+        assertEquals(parser.recognize(S, Tokens.tokenize(SENTENCE)), marginals.getSentenceProbability(), 1e-12);
+
+        assertEquals(1.0, marginals.get(S, 0, 7), 1e-12);
+        assertEquals(1.0, marginals.get(VP, 1, 7), 1e-12);
+        assertEquals(1.0, marginals.get(PP, 4, 7), 1e-12);
+        // VP → V NP PP: 0.4 * 0.5, against VP → V NP with NP → Det N PP: 0.6 * 0.2
+        assertEquals(0.625, marginals.get(NP, 2, 4), 1e-12);
+        assertEquals(0.375, marginals.get(NP, 2, 7), 1e-12);
+        assertEquals(0.0, marginals.get(VP, 1, 4), 0.0);
+
+        for (int entry = 1; entry < marginals.size(); entry++) {
+            final int previousStart = marginals.getStart(entry - 1);
+            assertTrue(previousStart < marginals.getStart(entry)
+                    || previousStart == marginals.getStart(entry) && marginals.getEnd(entry - 1) <= marginals.getEnd(entry));
+        }
+    }
+
+    @Test
+    public void includesScanProbabilities() {
+        final Grammar<String> grammar = builder().build();
+        final Parser<String> parser = new Parser<>(grammar);
+        final ParseOptions<String> options = new ParseOptions.Builder<String>()
+                .withScanProbability((index, token) -> grammar.semiring.fromProbability(index == 3 ? 0.1 : 0.9))
+                .build();
+        final SpanMarginals plain = parser.getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.0);
+        final SpanMarginals scanned = parser.getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.0, options);
+        assertEquals(parser.recognize(S, Tokens.tokenize(SENTENCE), options), scanned.getSentenceProbability(), 1e-12);
+        assertEquals(plain.getSentenceProbability() * 0.1 * Math.pow(0.9, 6), scanned.getSentenceProbability(), 1e-12);
+
+        // Every parse scans the same tokens, so the scan probabilities cancel out of the posteriors
+        assertEquals(plain.size(), scanned.size());
+        for (int entry = 0; entry < plain.size(); entry++)
+            assertEquals(
+                    plain.getPosterior(entry),
+                    scanned.get(plain.getCategory(entry), plain.getStart(entry), plain.getEnd(entry)),
+                    1e-12
+            );
+    }
+
+    @Test
+    public void threshold() {
+        final Parser<String> parser = new Parser<>(builder().build());
+        final SpanMarginals all = parser.getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.0);
+        final SpanMarginals likely = parser.getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.5);
+        assertEquals(all.size() - 1, likely.size());
+        assertEquals(0.0, likely.get(NP, 2, 7), 0.0);
+        assertEquals(0.625, likely.get(NP, 2, 4), 1e-12);
+    }
+
+    @Test
+    public void sharedPrefixesAreLeftOut() {
+        final SpanMarginals plain = new Parser<>(builder().build()).getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.0);
+        final SpanMarginals shared = new Parser<>(builder().withPrefixSharing().build())
+                .getSpanMarginals(S, Tokens.tokenize(SENTENCE), 0.0);
+        assertEquals(plain.size(), shared.size());
+        for (int entry = 0; entry < plain.size(); entry++)
+            assertEquals(
+                    plain.getPosterior(entry),
+                    shared.get(plain.getCategory(entry), plain.getStart(entry), plain.getEnd(entry)),
+                    1e-12
+            );
+    }
+
+    @Test
+    public void unitCycleGivesExpectedCounts() {
+        final NonTerminal A = Category.nonTerminal("A");
+        final Terminal<String> a = new ExactStringTerminal("a");
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.5, S, A)
+                .addRule(0.5, S, a)
+                .addRule(1.0, A, S)
+                .build();
+        final SpanMarginals marginals = new Parser<>(grammar).getSpanMarginals(S, Tokens.tokenize("a"), 0.0);
+        // 1 + 1/2 + 1/4 + ...
+        assertEquals(2.0, marginals.get(S, 0, 1), 1e-9);
+        assertEquals(1.0, marginals.get(A, 0, 1), 1e-9);
+    }
+
+    @Test
+    public void slowUnitCycleIsSolvedExactly() {
+        final NonTerminal A = Category.nonTerminal("A");
+        final Terminal<String> a = new ExactStringTerminal("a");
+        final Grammar<String> grammar = new Grammar.Builder<String>()
+                .addRule(0.999, S, A)
+                .addRule(0.001, S, a)
+                .addRule(1.0, A, S)
+                .build();
+        final SpanMarginals marginals = new Parser<>(grammar).getSpanMarginals(S, Tokens.tokenize("a"), 0.0);
+        // Iterating would take many thousands of rounds to sum 1 + 0.999 + 0.999^2 + ...
+        assertEquals(1.0, marginals.getSentenceProbability(), 1e-9);
+        assertEquals(1000.0, marginals.get(S, 0, 1), 1e-6);
+        assertEquals(999.0, marginals.get(A, 0, 1), 1e-6);
+    }
+}
@@ -0,0 +1,104 @@
+package org.leibnizcenter.cfg.earleyparser.callbacks;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.earleyparser.chart.Chart;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ParseMetricsTest {
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final Terminal<String> a = new ExactStringTerminal("a");
+    private static final Grammar<String> grammar = new Grammar.Builder<String>()
+            .addRule(0.1, S, S, S)
+            .addRule(0.9, S, a)
+            .build();
+
+    private static ParseOptions<String> optionsWith(final ParseMetrics metrics) {
+        return new ParseOptions.Builder<String>().withMetrics(metrics).build();
+    }
+
+    @Test
+    public void countsEveryStateOnce() {
+        final ParseMetrics metrics = new ParseMetrics();
+        final Chart<String> chart = new Parser<>(grammar).parse(S, Tokens.tokenize("a a a a"), optionsWith(metrics));
+
+        assertEquals(4, metrics.getColumnCount());
+        final long counted = metrics.getCount(ParseMetrics.Counter.PREDICTED)
+                + metrics.getCount(ParseMetrics.Counter.SCANNED)
+                + metrics.getCount(ParseMetrics.Counter.COMPLETED);
+        // All but the initial state
+        assertEquals(chart.countStates() - 1, counted);
+
+        for (int column = 0; column < metrics.getColumnCount(); column++) {
+            // Only S → ·a
+            assertEquals(1L, metrics.getCount(ParseMetrics.Counter.SCANNED, column));
+            assertTrue(metrics.getCount(ParseMetrics.Counter.EXPRESSION_TERMS, column) > 0);
+            assertTrue(metrics.getCount(ParseMetrics.Counter.VITERBI_UPDATES, column) > 0);
+            for (final ParseMetrics.Phase phase : ParseMetrics.Phase.values())
+                assertTrue(metrics.getNanos(phase, column) >= 0L);
+        }
+        assertEquals(0L, metrics.getCount(ParseMetrics.Counter.SCANNED, 4));
+    }
+
+    @Test
+    public void accumulatesUntilReset() {
+        final ParseMetrics metrics = new ParseMetrics();
+        final Parser<String> parser = new Parser<>(grammar);
+        parser.recognize(S, Tokens.tokenize("a a"), optionsWith(metrics));
+        final long completed = metrics.getCount(ParseMetrics.Counter.COMPLETED);
+        parser.recognize(S, Tokens.tokenize("a a"), optionsWith(metrics));
+        assertEquals(2 * completed, metrics.getCount(ParseMetrics.Counter.COMPLETED));
+
+        metrics.reset();
+        assertEquals(0, metrics.getColumnCount());
+        assertEquals(0L, metrics.getCount(ParseMetrics.Counter.COMPLETED));
+    }
+
+    @Test
+    public void exportsColumnsAndTotals() {
+        final ParseMetrics metrics = new ParseMetrics();
+        new Parser<>(grammar).recognize(S, Tokens.tokenize("a a a"), optionsWith(metrics));
+
+        final Map<ParseMetrics.Counter, Long> summed = new EnumMap<>(ParseMetrics.Counter.class);
+        final Map<ParseMetrics.Counter, Long> totals = new EnumMap<>(ParseMetrics.Counter.class);
+        final Map<ParseMetrics.Phase, Long> totalNanos = new EnumMap<>(ParseMetrics.Phase.class);
+        metrics.export(new ParseMetrics.Exporter() {
+            @Override
+            public void count(final int column, final ParseMetrics.Counter counter, final long count) {
+                if (column == ParseMetrics.TOTAL) totals.put(counter, count);
+                else summed.merge(counter, count, Long::sum);
+            }
+
+            @Override
+            public void nanos(final int column, final ParseMetrics.Phase phase, final long nanos) {
+                if (column == ParseMetrics.TOTAL) totalNanos.put(phase, nanos);
+            }
+        });
+        assertEquals(totals, summed);
+        for (final ParseMetrics.Counter counter : ParseMetrics.Counter.values())
+            assertEquals(metrics.getCount(counter), (long) totals.get(counter));
+        for (final ParseMetrics.Phase phase : ParseMetrics.Phase.values())
+            assertEquals(metrics.getNanos(phase), (long) totalNanos.get(phase));
+        assertEquals(metrics.getColumnCount() + 2, metrics.toString().split("\n").length);
+    }
+
+    @Test
+    public void disabledByDefault() {
+        final ParseOptions<String> options = new ParseOptions.Builder<String>().build();
+        assertSame(ParseMetrics.NONE, options.metrics);
+        new Parser<>(grammar).recognize(S, Tokens.tokenize("a a a"), options);
+        assertFalse(ParseMetrics.NONE.isEnabled());
+        assertEquals(0, ParseMetrics.NONE.getColumnCount());
+        assertEquals(0L, ParseMetrics.NONE.start());
+    }
+}
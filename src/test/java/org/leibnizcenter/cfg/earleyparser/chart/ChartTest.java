@@ -11,9 +11,14 @@ import org.leibnizcenter.cfg.category.terminal.Terminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.CaseInsensitiveStringTerminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.StringTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
 import org.leibnizcenter.cfg.earleyparser.chart.state.State;
 import org.leibnizcenter.cfg.grammar.Grammar;
 import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Token;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.List;
 
 import static org.leibnizcenter.cfg.earleyparser.Fixture.*;
 
@@ -158,4 +163,32 @@ public class ChartTest {
 ////    }
 ////
 
+
+    @Test
+    public final void chartSizeDoesNotScaleWithLexicon() {
+        final Grammar.Builder<String> small = new Grammar.Builder<String>()
+                .addRule(1.0, S, NP, VP)
+                .addRule(1.0, NP, Det, N)
+                .addRule(1.0, VP, TV, NP)
+                .addRule(1.0, Det, the)
+                .addRule(1.0, TV, transitiveVerb)
+                .addRule(1.0, N, man);
+        final Grammar.Builder<String> large = new Grammar.Builder<String>()
+                .addRule(1.0, S, NP, VP)
+                .addRule(1.0, NP, Det, N)
+                .addRule(1.0, VP, TV, NP)
+                .addRule(1.0, Det, the)
+                .addRule(1.0, TV, transitiveVerb)
+                .addRule(1.0, N, man);
+        for (int i = 0; i < 1000; i++) large.addRule(1.0, N, new ExactStringTerminal("noun" + i));
+
+        final Parser<String> smallParser = new Parser<>(small.build());
+        final Parser<String> largeParser = new Parser<>(large.build());
+        final List<Token<String>> tokens = Tokens.tokenize("the man hit the man");
+        Assert.assertEquals(
+                smallParser.parse(S, tokens).countStates(),
+                largeParser.parse(S, tokens).countStates()
+        );
+        Assert.assertEquals(1.0 / 1001 / 1001, largeParser.recognize(S, tokens), 1e-12);
+    }
 }
@@ -80,4 +80,4 @@ public class StateTest {
         );
     }
 
-}
\ No newline at end of file
+}
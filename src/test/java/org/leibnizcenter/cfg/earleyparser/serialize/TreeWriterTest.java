@@ -0,0 +1,202 @@
+package org.leibnizcenter.cfg.earleyparser.serialize;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.CompactParseTree;
+import org.leibnizcenter.cfg.earleyparser.ParseTree;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TreeWriterTest {
+    private static final NonTerminal NP = Category.nonTerminal("NP");
+    private static final NonTerminal Det = Category.nonTerminal("Det");
+    private static final NonTerminal N = Category.nonTerminal("N");
+    private static final Terminal<String> the = new ExactStringTerminal("the");
+    private static final Terminal<String> word = new ExactStringTerminal("word");
+
+    private static ParseTree preTerminal(final NonTerminal category, final Terminal<String> terminal, final String token) {
+        final List<ParseTree> children = new ArrayList<>();
+        children.add(new ParseTree.Leaf<>(new Token<>(token), terminal));
+        return new ParseTree.NonLeaf(category, children);
+    }
+
+    private static ParseTree tree(final String noun) {
+        return new ParseTree.NonLeaf(NP, new ArrayList<>(Arrays.asList(
+                preTerminal(Det, the, "the"),
+                preTerminal(N, word, noun)
+        )));
+    }
+
+    private static String bracketed(final ParseTree tree) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        new BracketedTreeWriter(sb).write(tree);
+        return sb.toString();
+    }
+
+    @Test
+    public void bracketed() throws IOException {
+        assertEquals("(NP (Det the) (N man))\n", bracketed(tree("man")));
+        assertEquals("(NP (Det the) (N -LRB-big_man-RRB-))\n", bracketed(tree("(big man)")));
+    }
+
+    @Test
+    public void json() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final JsonTreeWriter writer = new JsonTreeWriter(sb);
+        writer.writeAll(Arrays.asList(tree("man"), tree("\"a\"\n")));
+        assertEquals(
+                "{\"category\":\"NP\",\"children\":[" +
+                        "{\"category\":\"Det\",\"children\":[{\"category\":\"the\",\"token\":\"the\"}]}," +
+                        "{\"category\":\"N\",\"children\":[{\"category\":\"word\",\"token\":\"man\"}]}]}\n" +
+                        "{\"category\":\"NP\",\"children\":[" +
+                        "{\"category\":\"Det\",\"children\":[{\"category\":\"the\",\"token\":\"the\"}]}," +
+                        "{\"category\":\"N\",\"children\":[{\"category\":\"word\",\"token\":\"\\\"a\\\"\\n\"}]}]}\n",
+                sb.toString()
+        );
+    }
+
+    @Test
+    public void compactTreesAreWrittenTheSame() throws IOException {
+        final ParseTree tree = tree("man");
+        final CompactParseTree<String> compact = CompactParseTree.of(tree);
+
+        final StringBuilder expected = new StringBuilder();
+        final StringBuilder actual = new StringBuilder();
+        new JsonTreeWriter(expected).write(tree);
+        new JsonTreeWriter(actual).write(compact);
+        assertEquals(expected.toString(), actual.toString());
+
+        final StringBuilder bracketed = new StringBuilder();
+        new BracketedTreeWriter(bracketed).write(compact);
+        assertEquals(bracketed(tree), bracketed.toString());
+    }
+
+    @Test
+    public void binary() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final BinaryTreeWriter streamWriter = new BinaryTreeWriter(stream);
+        streamWriter.writeAll(Arrays.asList(tree("man"), tree("café")));
+        streamWriter.flush();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1024);
+        final BinaryTreeWriter bufferWriter = new BinaryTreeWriter(buffer);
+        bufferWriter.write(CompactParseTree.of(tree("man")));
+        bufferWriter.write(tree("café"));
+        assertArrayEquals(stream.toByteArray(), Arrays.copyOf(buffer.array(), buffer.position()));
+
+        assertEquals("(NP (Det the) (N man))\n(NP (Det the) (N café))\n", decode(stream.toByteArray()));
+    }
+
+    @Test
+    public void binaryOverflowDropsTree() throws IOException {
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final BinaryTreeWriter streamWriter = new BinaryTreeWriter(stream);
+        streamWriter.write(tree("man"));
+        streamWriter.flush();
+        final byte[] expected = stream.toByteArray();
+
+        // Big enough for the first tree, but not for the second, which defines no categories of its own
+        final ByteBuffer buffer = ByteBuffer.allocate(expected.length + 4);
+        final BinaryTreeWriter bufferWriter = new BinaryTreeWriter(buffer);
+        try {
+            bufferWriter.write(tree("man"));
+            bufferWriter.write(tree("woman"));
+            fail();
+        } catch (final BufferOverflowException e) {
+            assertEquals(expected.length, buffer.position());
+        }
+
+        // Categories of a dropped tree are defined again when the tree is written after draining the buffer
+        final ByteBuffer full = ByteBuffer.allocate(expected.length);
+        full.putInt(0);
+        final BinaryTreeWriter fullWriter = new BinaryTreeWriter(full);
+        try {
+            fullWriter.write(tree("man"));
+            fail();
+        } catch (final BufferOverflowException e) {
+            assertEquals(4, full.position());
+        }
+        full.clear();
+        fullWriter.write(tree("man"));
+        assertArrayEquals(expected, full.array());
+    }
+
+    @Test
+    public void deepTree() throws IOException {
+        final int depth = 100000;
+        ParseTree tree = preTerminal(N, word, "x");
+        for (int i = 0; i < depth; i++) {
+            final List<ParseTree> children = new ArrayList<>();
+            children.add(tree);
+            tree = new ParseTree.NonLeaf(NP, children);
+        }
+        final String bracketed = bracketed(tree);
+        // (NP (NP ... (N x)) ... ))
+        assertEquals(("(NP ".length() + ")".length()) * depth + "(N x)\n".length(), bracketed.length());
+    }
+
+    /**
+     * Reads the output of {@link BinaryTreeWriter} back into the bracketed format
+     */
+    private static String decode(final byte[] bytes) {
+        final ByteBuffer in = ByteBuffer.wrap(bytes);
+        final List<String> categories = new ArrayList<>();
+        final StringBuilder sb = new StringBuilder();
+        boolean inNode = false;
+        while (in.hasRemaining()) {
+            switch (in.get()) {
+                case BinaryTreeWriter.CATEGORY:
+                    in.get();
+                    categories.add(readString(in));
+                    break;
+                case BinaryTreeWriter.START_NODE:
+                    if (inNode) sb.append(' ');
+                    sb.append('(').append(categories.get(readVarInt(in)));
+                    inNode = true;
+                    break;
+                case BinaryTreeWriter.LEAF:
+                    readVarInt(in);
+                    sb.append(' ').append(readString(in));
+                    break;
+                case BinaryTreeWriter.END_NODE:
+                    sb.append(')');
+                    break;
+                case BinaryTreeWriter.END_TREE:
+                    sb.append('\n');
+                    inNode = false;
+                    break;
+                default:
+                    fail();
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int readVarInt(final ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            final byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static String readString(final ByteBuffer in) {
+        final byte[] bytes = new byte[readVarInt(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,130 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.LogSemiring;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonLexicalToken;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.CaseInsensitiveStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.rule.LexicalErrorRule;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class CompiledGrammarTest {
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final NonTerminal NP = Category.nonTerminal("NP");
+    private static final NonTerminal VP = Category.nonTerminal("VP");
+    private static final NonTerminal N = Category.nonTerminal("N");
+    private static final Terminal<String> the = new CaseInsensitiveStringTerminal("the", Locale.ENGLISH);
+    private static final Terminal<String> man = new ExactStringTerminal("man");
+    private static final Terminal<String> number = new RegexTerminal("[0-9]+", Pattern.CASE_INSENSITIVE);
+    private static final Terminal<String> walks = new ExactStringTerminal("walks");
+
+    private static final Grammar<String> grammar = new Grammar.Builder<String>("compiled")
+            .addRule(0.9, S, NP, VP)
+            .addRule(0.1, S, S, NonLexicalToken.INSTANCE)
+            .addRule(0.6, NP, the, N)
+            .addRule(0.2, NP, number)
+            .addRule(0.2, NP, N)
+            .addRule(0.7, N, man)
+            .addRule(0.3, N, NP)
+            .addRule(1.0, VP, walks)
+            .build();
+
+    /**
+     * Regex terminals are compared by identity of their pattern, so compare rules by their string representation
+     */
+    private static Set<String> rules(final Grammar<String> grammar) {
+        return grammar.getAllRules().stream().map(Rule::toString).collect(Collectors.toSet());
+    }
+
+    private static Grammar<String> roundTrip(final Grammar<String> grammar) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompiledGrammar.write(grammar, out);
+        return CompiledGrammar.read(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        final Grammar<String> loaded = roundTrip(grammar);
+
+        assertEquals(grammar.name, loaded.name);
+        assertEquals(grammar.semiring, loaded.semiring);
+        assertEquals(rules(grammar), rules(loaded));
+        assertEquals(grammar.getTerminalsFingerprint(), loaded.getTerminalsFingerprint());
+        for (int id = 0; id < grammar.getTerminalCount(); id++)
+            assertEquals(grammar.getTerminal(id).toString(), loaded.getTerminal(id).toString());
+        assertEquals(grammar.nonZeroLeftStartRules.keySet(), loaded.nonZeroLeftStartRules.keySet());
+        grammar.nonZeroLeftStartRules.forEach((category, rules) -> assertEquals(rules.size(), loaded.nonZeroLeftStartRules.get(category).size()));
+
+        for (final NonTerminal X : grammar.getNonTerminals())
+            for (final NonTerminal Y : grammar.getNonTerminals()) {
+                assertEquals(grammar.getLeftScore(X, Y), loaded.getLeftScore(X, Y), 0.0);
+                assertEquals(grammar.getLeftStarScore(X, Y), loaded.getLeftStarScore(X, Y), 0.0);
+                assertEquals(grammar.getUnitStarScore(X, Y), loaded.getUnitStarScore(X, Y), 0.0);
+            }
+
+        assertEquals(
+                new Parser<>(grammar).recognize(S, Tokens.tokenize("THE man walks")),
+                new Parser<>(loaded).recognize(S, Tokens.tokenize("THE man walks")),
+                1e-12
+        );
+        assertEquals(
+                new Parser<>(grammar).getViterbiParseWithScore(S, Tokens.tokenize("42 walks")).parseTree.toString(),
+                new Parser<>(loaded).getViterbiParseWithScore(S, Tokens.tokenize("42 walks")).parseTree.toString()
+        );
+    }
+
+    @Test
+    public void keepsLexicalErrorRules() throws Exception {
+        final Rule errorRule = LexicalErrorRule.create(LogSemiring.get(), 0.1, S, S, NonLexicalToken.INSTANCE);
+        final Grammar<String> withErrorRule = new Grammar.Builder<String>()
+                .addRule(0.9, S, man)
+                .addRule(errorRule)
+                .build();
+        final Grammar<String> loaded = roundTrip(withErrorRule);
+        assertEquals(withErrorRule.getAllRules(), loaded.getAllRules());
+        assertTrue(loaded.getRules(S).stream().anyMatch(rule -> rule instanceof LexicalErrorRule && rule.equals(errorRule)));
+    }
+
+    @Test
+    public void memoryMapped() throws Exception {
+        final Path file = Files.createTempFile("grammar", ".cfgc");
+        try {
+            CompiledGrammar.write(grammar, file);
+            final Grammar<String> loaded = CompiledGrammar.read(file);
+            assertEquals(rules(grammar), rules(loaded));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception {
+        CompiledGrammar.read(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsTruncatedFiles() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompiledGrammar.write(grammar, out);
+        final byte[] bytes = out.toByteArray();
+        CompiledGrammar.read(ByteBuffer.wrap(bytes, 0, bytes.length / 2).slice());
+    }
+}
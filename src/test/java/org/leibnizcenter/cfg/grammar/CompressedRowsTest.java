@@ -0,0 +1,68 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.LogSemiring;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CompressedRowsTest {
+    private static double[][] matrix() {
+        return new double[][]{
+                {0.0, 0.5, 0.0, 0.0},
+                {0.1, 0.2, 0.3, 0.4},
+                {0.0, 0.0, 0.0, 0.0},
+                {0.0, 0.0, 0.7, 0.8},
+        };
+    }
+
+    @Test
+    public void get() {
+        final double[][] matrix = matrix();
+        final CompressedRows rows = CompressedRows.of(matrix);
+        for (int i = 0; i < matrix.length; i++)
+            for (int j = 0; j < matrix.length; j++)
+                assertEquals(matrix[i][j], rows.get(i, j), 0.0);
+
+        // Row 1 is full, row 3 is exactly at the threshold
+        assertEquals(1, rows.denseRowCount());
+        assertEquals(3, rows.sparseEntryCount());
+    }
+
+    @Test
+    public void sparseRowsEqualFullRows() {
+        final SparseRow[] sparse = new SparseRow[4];
+        sparse[0] = new SparseRow();
+        sparse[0].set(1, 0.5);
+        sparse[1] = new SparseRow(new int[]{0, 1, 2, 3}, new double[]{0.1, 0.2, 0.3, 0.4});
+        sparse[3] = new SparseRow(new int[]{0, 2, 3}, new double[]{0.0, 0.7, 0.8});
+        final CompressedRows fromSparse = CompressedRows.of(sparse);
+        final CompressedRows fromFull = CompressedRows.of(matrix());
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                assertEquals(fromFull.get(i, j), fromSparse.get(i, j), 0.0);
+        assertEquals(fromFull.sparseEntryCount(), fromSparse.sparseEntryCount());
+    }
+
+    @Test
+    public void map() {
+        final LogSemiring semiring = LogSemiring.get();
+        final CompressedRows rows = CompressedRows.of(matrix()).map(semiring::fromProbability, semiring.zero());
+        final double[][] matrix = matrix();
+        for (int i = 0; i < matrix.length; i++)
+            for (int j = 0; j < matrix.length; j++)
+                assertEquals(semiring.fromProbability(matrix[i][j]), rows.get(i, j), 1e-12);
+    }
+
+    @Test
+    public void forEachNonDefault() {
+        final CompressedRows rows = CompressedRows.of(matrix());
+        final List<Integer> columns = new ArrayList<>();
+        rows.forEachNonDefault(1, (column, value) -> columns.add(column));
+        rows.forEachNonDefault(2, (column, value) -> fail());
+        rows.forEachNonDefault(3, (column, value) -> columns.add(column));
+        assertEquals(java.util.Arrays.asList(0, 1, 2, 3, 2, 3), columns);
+    }
+}
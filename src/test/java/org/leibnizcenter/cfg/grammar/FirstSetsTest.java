@@ -0,0 +1,69 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.earleyparser.chart.Chart;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class FirstSetsTest {
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final NonTerminal NP = Category.nonTerminal("NP");
+    private static final NonTerminal VP = Category.nonTerminal("VP");
+    private static final NonTerminal Det = Category.nonTerminal("Det");
+    private static final NonTerminal N = Category.nonTerminal("N");
+    private static final NonTerminal V = Category.nonTerminal("V");
+    private static final Terminal<String> the = new ExactStringTerminal("the");
+    private static final Terminal<String> man = new ExactStringTerminal("man");
+    private static final Terminal<String> stick = new ExactStringTerminal("stick");
+    private static final Terminal<String> john = new ExactStringTerminal("john");
+    private static final Terminal<String> hit = new ExactStringTerminal("hit");
+
+    private static final Grammar<String> grammar = new Grammar.Builder<String>()
+            .addRule(1.0, S, NP, VP)
+            .addRule(0.5, NP, Det, N)
+            .addRule(0.5, NP, john)
+            .addRule(1.0, VP, V, NP)
+            .addRule(1.0, Det, the)
+            .addRule(0.5, N, man)
+            .addRule(0.5, N, stick)
+            .addRule(1.0, V, hit)
+            .build();
+
+    @Test
+    public void getFirstSet() throws Exception {
+        assertEquals(new HashSet<>(Arrays.asList(the, john)), grammar.firstSets.getFirstSet(S));
+        assertEquals(new HashSet<>(Arrays.asList(the, john)), grammar.firstSets.getFirstSet(NP));
+        assertEquals(Collections.singleton(hit), grammar.firstSets.getFirstSet(VP));
+        assertEquals(new HashSet<>(Arrays.asList(man, stick)), grammar.firstSets.getFirstSet(N));
+    }
+
+    @Test
+    public void mayStartWith() throws Exception {
+        final int[] lookahead = grammar.firstSets.toLookahead(Collections.singleton(john));
+        final Rule npToDetN = grammar.getRules(NP).stream().filter(r -> r.right[0] == Det).findAny().orElseThrow(IllegalStateException::new);
+        final Rule npToJohn = grammar.getRules(NP).stream().filter(r -> r.right[0] == john).findAny().orElseThrow(IllegalStateException::new);
+        assertFalse(grammar.firstSets.mayStartWith(npToDetN, lookahead));
+        assertTrue(grammar.firstSets.mayStartWith(npToJohn, lookahead));
+        assertTrue(grammar.firstSets.mayStartWith(grammar.getRules(S).iterator().next(), lookahead));
+    }
+
+    @Test
+    public void predictionsAreFiltered() throws Exception {
+        final Parser<String> parser = new Parser<>(grammar);
+        final Chart<String> chart = parser.parse(S, Tokens.tokenize("john hit the man"));
+        // Nothing that starts with 'the' should be predicted at position 0
+        assertTrue(chart.getStates(0).stream().noneMatch(state -> state.rule.left == Det));
+        assertEquals(0.5 * 0.5 * 0.5, parser.recognize(S, Tokens.tokenize("john hit the man")), 1e-10);
+    }
+}
@@ -1,6 +1,7 @@
 package org.leibnizcenter.cfg.grammar;
 
 import org.junit.Test;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.DblSemiring;
 import org.leibnizcenter.cfg.algebra.semiring.dbl.ProbabilitySemiring;
 import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
 import org.leibnizcenter.cfg.category.terminal.Terminal;
@@ -9,6 +10,7 @@ import org.leibnizcenter.cfg.rule.Rule;
 import org.leibnizcenter.cfg.util.MyMultimap;
 
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.Assert.*;
@@ -40,4 +42,56 @@ public class GrammarAnalysisTest {
         System.out.println(leftStar);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void sparseClosureEqualsDenseClosure() throws Exception {
+        final Random random = new Random(31);
+        final int size = 60;
+        final NonTerminal[] nonTerminals = new NonTerminal[size];
+        for (int i = 0; i < size; i++) nonTerminals[i] = new NonTerminal("N" + i);
+        final Terminal<String> a = new ExactStringTerminal("a");
+
+        final MyMultimap<NonTerminal, Rule> rules = new MyMultimap<>();
+        for (final NonTerminal lhs : nonTerminals) {
+            // Mostly acyclic, with some small cycles
+            final int ruleCount = 1 + random.nextInt(3);
+            for (int r = 0; r < ruleCount; r++) {
+                final NonTerminal rhs = nonTerminals[random.nextInt(size)];
+                rules.put(lhs, Rule.create(ProbabilitySemiring.get(), 0.25 * random.nextDouble(), lhs, rhs, a));
+            }
+        }
+
+        final LeftCorners leftCorners = new LeftCorners(rules, nonTerminals);
+        final LeftCorners dense = GrammarAnalysis.computeDenseReflexiveTransitiveClosure(leftCorners, nonTerminals);
+        final LeftCorners sparse = GrammarAnalysis.computeSparseReflexiveTransitiveClosure(leftCorners, nonTerminals);
+
+        for (final NonTerminal X : nonTerminals)
+            for (final NonTerminal Y : nonTerminals) {
+                assertEquals(dense.getProbability(X, Y), sparse.getProbability(X, Y), 1e-10);
+                assertEquals(dense.getProbability(X, Y) != 0.0, sparse.getNonZeroScores(X).contains(Y));
+            }
+    }
+
+    @Test
+    public void largeGrammarIsStoredSparsely() throws Exception {
+        final int size = 5000;
+        final Grammar.Builder<String> builder = new Grammar.Builder<>();
+        final NonTerminal[] nonTerminals = new NonTerminal[size];
+        for (int i = 0; i < size; i++) nonTerminals[i] = new NonTerminal("N" + i);
+        for (int i = 0; i < size; i++) {
+            builder.addRule(0.5, nonTerminals[i], new ExactStringTerminal("w" + i));
+            // Chains of ten, with a unit cycle at their end
+            if (i % 10 != 9) builder.addRule(0.5, nonTerminals[i], nonTerminals[i + 1]);
+            else builder.addRule(0.5, nonTerminals[i], nonTerminals[i - 1]);
+        }
+        final Grammar<String> grammar = builder.build();
+        final CompressedRows leftStar = grammar.getAnalysis().leftStarCorners.rows;
+        assertEquals(0, leftStar.denseRowCount());
+        assertTrue(leftStar.sparseEntryCount() <= 10 * size);
+
+        final DblSemiring semiring = grammar.semiring;
+        assertEquals(0.5 / (1 - 0.25), semiring.toProbability(grammar.getLeftStarScore(nonTerminals[8], nonTerminals[9])), 1e-10);
+        assertEquals(Math.pow(0.5, 9) / (1 - 0.25), semiring.toProbability(grammar.getLeftStarScore(nonTerminals[0], nonTerminals[9])), 1e-10);
+        assertEquals(0.0, semiring.toProbability(grammar.getLeftStarScore(nonTerminals[0], nonTerminals[10])), 0.0);
+        assertEquals(0.5 / (1 - 0.25), semiring.toProbability(grammar.getUnitStarScore(nonTerminals[8], nonTerminals[9])), 1e-10);
+    }
+}
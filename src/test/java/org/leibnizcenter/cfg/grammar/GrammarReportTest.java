@@ -0,0 +1,75 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
+
+import static org.junit.Assert.*;
+
+public class GrammarReportTest {
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final NonTerminal NP = Category.nonTerminal("NP");
+    private static final NonTerminal VP = Category.nonTerminal("VP");
+    private static final NonTerminal A = Category.nonTerminal("A");
+    private static final NonTerminal B = Category.nonTerminal("B");
+    private static final Terminal<String> a = new ExactStringTerminal("a");
+    private static final Terminal<String> b = new ExactStringTerminal("b");
+    private static final Terminal<String> number = new RegexTerminal("[0-9]+");
+
+    private static final Grammar<String> grammar = new Grammar.Builder<String>("test")
+            .addRule(1.0, S, NP, VP)
+            .addRule(0.5, NP, NP, VP)
+            .addRule(0.5, NP, a)
+            .addRule(0.5, VP, b)
+            .addRule(0.5, VP, number)
+            // Unit cycle A -> B -> A
+            .addRule(0.5, A, B)
+            .addRule(0.5, A, a)
+            .addRule(0.5, B, A)
+            .addRule(0.5, B, b)
+            .build();
+
+    @Test
+    public void counts() {
+        final GrammarReport report = grammar.getReport();
+        assertEquals("test", report.getName());
+        assertEquals(9, report.getRuleCount());
+        assertEquals(5, report.getLexicalRuleCount());
+        assertEquals(4, report.getStructuralRuleCount());
+        assertEquals(5, report.getNonTerminalCount());
+        assertEquals(3, report.getTerminalCount());
+        assertEquals(1, report.getRegexTerminalCount());
+    }
+
+    @Test
+    public void cycles() {
+        final GrammarReport report = grammar.getReport();
+        // NP -> NP VP is a self loop
+        assertArrayEquals(new int[]{2, 1}, report.getLeftCornerCycleSizes());
+        assertArrayEquals(new int[]{2}, report.getUnitCycleSizes());
+    }
+
+    @Test
+    public void closuresAndFanOut() {
+        final GrammarReport report = grammar.getReport();
+        // Left star: S→{S, NP}, NP→{NP}, VP→{VP}, A→{A, B}, B→{A, B}
+        assertEquals(8 / 25.0, report.getLeftStarDensity(), 1e-10);
+        // Unit star: reflexive, plus A→B and B→A
+        assertEquals(7 / 25.0, report.getUnitStarDensity(), 1e-10);
+        // A and B both predict all rules for A and B
+        assertEquals(4, report.getMaxLeftStartRules());
+        assertEquals((3 + 2 + 2 + 4 + 4) / 5.0, report.getAverageLeftStartRules(), 1e-10);
+    }
+
+    @Test
+    public void stageTimings() {
+        final GrammarReport report = grammar.getReport();
+        assertTrue(report.getStageNanos().containsKey("left-star closure"));
+        assertTrue(report.getStageNanos().containsKey("prediction tables"));
+        for (final long nanos : report.getStageNanos().values()) assertTrue(nanos >= 0);
+        assertTrue(report.toString().contains("build stages"));
+    }
+}
@@ -0,0 +1,85 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.algebra.semiring.dbl.ProbabilitySemiring;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class GrammarTrimmerTest {
+    private static final ProbabilitySemiring sr = ProbabilitySemiring.get();
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final NonTerminal A = Category.nonTerminal("A");
+    private static final NonTerminal B = Category.nonTerminal("B");
+    private static final NonTerminal Loop = Category.nonTerminal("Loop");
+    private static final NonTerminal Orphan = Category.nonTerminal("Orphan");
+    private static final NonTerminal Rare = Category.nonTerminal("Rare");
+    private static final Terminal<String> a = new ExactStringTerminal("a");
+    private static final Terminal<String> b = new ExactStringTerminal("b");
+
+    private static final Rule sToAB = Rule.create(sr, 0.7, S, A, B);
+    private static final Rule sToLoop = Rule.create(sr, 0.2, S, Loop, a);
+    private static final Rule sToRare = Rule.create(sr, 0.1, S, Rare);
+    private static final Rule aToA = Rule.create(sr, 1.0, A, a);
+    private static final Rule bToB = Rule.create(sr, 1.0, B, b);
+    private static final Rule loop = Rule.create(sr, 1.0, Loop, Loop, b);
+    private static final Rule orphan = Rule.create(sr, 1.0, Orphan, A, b);
+    private static final Rule rare = Rule.create(sr, 0.001, Rare, b, b);
+    private static final Rule rareA = Rule.create(sr, 0.999, Rare, A);
+
+    /**
+     * Loop -> Loop b makes the left-corner matrix singular, so the untrimmed grammar can not be built
+     */
+    private static Grammar.Builder<String> builder() {
+        return new Grammar.Builder<String>()
+                .withSemiring(sr)
+                .addRules(Arrays.asList(sToAB, sToLoop, sToRare, aToA, bToB, loop, orphan, rare, rareA));
+    }
+
+    @Test
+    public void findProductive() throws Exception {
+        assertEquals(
+                new HashSet<>(Arrays.asList(S, A, B, Orphan, Rare)),
+                GrammarTrimmer.findProductive(Arrays.asList(sToAB, sToLoop, sToRare, aToA, bToB, loop, orphan, rare, rareA))
+        );
+    }
+
+    @Test
+    public void trim() throws Exception {
+        final Grammar.Builder<String> builder = builder().withTrimming(0.01, S);
+        final Grammar<String> grammar = builder.build(false);
+        final TrimReport report = builder.getTrimReport();
+
+        assertEquals(Collections.singleton(rare), report.getLowProbabilityRules());
+        assertEquals(Collections.singleton(Loop), report.getUnproductiveNonTerminals());
+        assertEquals(new HashSet<>(Arrays.asList(sToLoop, loop)), report.getUnproductiveRules());
+        assertEquals(Collections.singleton(Orphan), report.getUnreachableNonTerminals());
+        assertEquals(Collections.singleton(orphan), report.getUnreachableRules());
+        assertEquals(4, report.getRemovedRuleCount());
+        assertEquals(5, report.getKeptRuleCount());
+
+        assertEquals(new HashSet<>(Arrays.asList(sToAB, sToRare, aToA, bToB, rareA)), new HashSet<>(grammar.getAllRules()));
+        assertFalse(grammar.getNonTerminals().contains(Loop));
+        assertFalse(grammar.getNonTerminals().contains(Orphan));
+        assertEquals(0.7, new Parser<>(grammar).recognize(S, Tokens.tokenize("a b")), 1e-10);
+    }
+
+    @Test
+    public void trimAndNormalize() throws Exception {
+        final Grammar.Builder<String> builder = builder().withTrimming(0.0, S);
+        final Grammar<String> grammar = builder.build();
+        assertNotNull(builder.getTrimReport());
+        // Probability mass of S -> Loop a is redistributed over the remaining rules for S
+        assertEquals(0.7 / 0.8, new Parser<>(grammar).recognize(S, Tokens.tokenize("a b")), 1e-10);
+    }
+}
@@ -0,0 +1,112 @@
+package org.leibnizcenter.cfg.grammar;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.nonterminal.SharedPrefix;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.ParseTreeWithScore;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.rule.Rule;
+import org.leibnizcenter.cfg.token.Tokens;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.*;
+
+public class PrefixSharingTest {
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final NonTerminal NP = Category.nonTerminal("NP");
+    private static final NonTerminal VP = Category.nonTerminal("VP");
+    private static final NonTerminal PP = Category.nonTerminal("PP");
+    private static final NonTerminal Det = Category.nonTerminal("Det");
+    private static final NonTerminal Adj = Category.nonTerminal("Adj");
+    private static final NonTerminal N = Category.nonTerminal("N");
+    private static final NonTerminal V = Category.nonTerminal("V");
+    private static final NonTerminal P = Category.nonTerminal("P");
+    private static final Terminal<String> the = new ExactStringTerminal("the");
+    private static final Terminal<String> big = new ExactStringTerminal("big");
+    private static final Terminal<String> man = new ExactStringTerminal("man");
+    private static final Terminal<String> stick = new ExactStringTerminal("stick");
+    private static final Terminal<String> john = new ExactStringTerminal("john");
+    private static final Terminal<String> hit = new ExactStringTerminal("hit");
+    private static final Terminal<String> with = new ExactStringTerminal("with");
+
+    private static Grammar.Builder<String> builder() {
+        return new Grammar.Builder<String>()
+                .addRule(1.0, S, NP, VP)
+                .addRule(0.4, NP, Det, N)
+                .addRule(0.3, NP, Det, N, PP)
+                .addRule(0.2, NP, Det, Adj, N)
+                .addRule(0.1, NP, john)
+                .addRule(0.6, VP, V, NP)
+                .addRule(0.4, VP, V, NP, PP)
+                .addRule(1.0, PP, P, NP)
+                .addRule(1.0, Det, the)
+                .addRule(1.0, Adj, big)
+                .addRule(0.5, N, man)
+                .addRule(0.5, N, stick)
+                .addRule(1.0, V, hit)
+                .addRule(1.0, P, with);
+    }
+
+    @Test
+    public void rulesAreOrganizedInTrie() {
+        final Grammar<String> grammar = builder().withPrefixSharing().build();
+        assertTrue(grammar.hasSharedPrefixes());
+        assertFalse(builder().build().hasSharedPrefixes());
+
+        final Collection<Rule> npRules = grammar.getRules(NP);
+        assertEquals(2, npRules.size());
+        final Rule shared = npRules.stream().filter(r -> r.right[0] == Det).findAny().orElseThrow(IllegalStateException::new);
+        assertEquals(2, shared.right.length);
+        assertTrue(shared.right[1] instanceof SharedPrefix);
+        assertEquals(0.9, shared.probability, 1e-10);
+
+        final Collection<Rule> remainders = grammar.getRules((NonTerminal) shared.right[1]);
+        assertEquals(3, remainders.size());
+        assertEquals(1.0, remainders.stream().mapToDouble(r -> r.probability).sum(), 1e-10);
+    }
+
+    @Test
+    public void scoresAndParsesAreUnchanged() {
+        final Parser<String> plain = new Parser<>(builder().build());
+        final Parser<String> shared = new Parser<>(builder().withPrefixSharing().build());
+        for (final String sentence : new String[]{
+                "john hit the man",
+                "john hit the man with the big stick",
+                "the man with the big stick hit john with the stick"
+        }) {
+            assertEquals(
+                    plain.recognize(S, Tokens.tokenize(sentence)),
+                    shared.recognize(S, Tokens.tokenize(sentence)),
+                    1e-12
+            );
+            final ParseTreeWithScore expected = plain.getViterbiParseWithScore(S, Tokens.tokenize(sentence));
+            final ParseTreeWithScore actual = shared.getViterbiParseWithScore(S, Tokens.tokenize(sentence));
+            assertEquals(expected.parseTree, actual.parseTree);
+            assertEquals(expected.score.getProbability(), actual.score.getProbability(), 1e-12);
+        }
+    }
+
+    @Test
+    public void longCommonPrefixesShareStates() {
+        final NonTerminal X = Category.nonTerminal("X");
+        final Terminal<String> a = new ExactStringTerminal("a");
+        final Terminal<String> b = new ExactStringTerminal("b");
+        final Terminal<String> c = new ExactStringTerminal("c");
+        final Terminal<String> d = new ExactStringTerminal("d");
+        final Terminal<String> e = new ExactStringTerminal("e");
+        final Grammar.Builder<String> builder = new Grammar.Builder<String>();
+        for (final Terminal<String> last : Arrays.asList(a, b, c, d, e)) builder.addRule(0.2, X, a, b, c, d, last);
+
+        final Parser<String> plain = new Parser<>(builder.build());
+        final Parser<String> shared = new Parser<>(builder.withPrefixSharing().build());
+        final int plainStates = plain.parse(X, Tokens.tokenize("a b c d e")).countStates();
+        final int sharedStates = shared.parse(X, Tokens.tokenize("a b c d e")).countStates();
+        assertTrue(sharedStates + " < " + plainStates, sharedStates < plainStates);
+        assertEquals(0.2, shared.recognize(X, Tokens.tokenize("a b c d e")), 1e-12);
+    }
+}
@@ -0,0 +1,105 @@
+package org.leibnizcenter.cfg.perf;
+
+import org.leibnizcenter.cfg.algebra.semiring.dbl.LogSemiring;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.rule.Rule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <p>
+ * Times adding a single lexical rule to a large grammar with {@link Grammar#withChanges}, versus building the changed
+ * grammar from scratch. The grammar looks like a treebank grammar: a few phrase categories in short left-corner
+ * chains, and many preterminals that each have a handful of words.
+ * </p>
+ * <p>
+ * Arguments: number of non-terminals (default 5000), number of lexical rules (default 50000) and number of timed runs
+ * (default 5).
+ * </p>
+ */
+class IncrementalEdit {
+    private static final LogSemiring semiring = LogSemiring.get();
+
+    public static void main(final String[] args) {
+        final int nonTerminals = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        final int words = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        final int runs = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        final Timing timing = time(nonTerminals, words, runs);
+        System.out.println("build " + timing.buildNanos / 1000000 + " ms, edit " + timing.editNanos / 1000000 + " ms");
+        System.out.println(timing.edited.getStageNanos());
+    }
+
+    /**
+     * @return Fastest of given number of runs, for both building and editing
+     */
+    static Timing time(final int nonTerminals, final int words, final int runs) {
+        final List<Rule> rules = rules(nonTerminals, words, new Random(nonTerminals));
+        // A new word for an existing preterminal, with a terminal that is already used
+        final Rule added = Rule.create(semiring, 0.01, rules.get(rules.size() - 1).left, new ExactStringTerminal("w0"));
+        final List<Rule> changedRules = new ArrayList<>(rules);
+        changedRules.add(added);
+
+        long buildNanos = Long.MAX_VALUE;
+        long editNanos = Long.MAX_VALUE;
+        Grammar<String> edited = null;
+        final Grammar<String> grammar = build(rules);
+        for (int run = 0; run < runs; run++) {
+            final long buildStart = System.nanoTime();
+            build(changedRules);
+            buildNanos = Math.min(buildNanos, System.nanoTime() - buildStart);
+
+            final long editStart = System.nanoTime();
+            edited = grammar.withChanges(Collections.singletonList(added), Collections.emptyList(), Collections.emptyMap());
+            editNanos = Math.min(editNanos, System.nanoTime() - editStart);
+        }
+        return new Timing(buildNanos, editNanos, edited);
+    }
+
+    private static Grammar<String> build(final List<Rule> rules) {
+        return new Grammar.Builder<String>().withSemiring(semiring).addRules(rules).build(false);
+    }
+
+    /**
+     * One in ten non-terminals is a phrase, the others are preterminals that only have lexical rules
+     */
+    private static List<Rule> rules(final int size, final int words, final Random random) {
+        final NonTerminal[] nonTerminals = new NonTerminal[size];
+        for (int i = 0; i < size; i++) nonTerminals[i] = Category.nonTerminal("N" + i);
+        final int phrases = size / 10;
+
+        final List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < phrases; i++) {
+            final NonTerminal preterminal = nonTerminals[phrases + random.nextInt(size - phrases)];
+            if (i % 10 != 9) rules.add(Rule.create(semiring, 0.3, nonTerminals[i], nonTerminals[i + 1], preterminal));
+            rules.add(Rule.create(semiring, 0.3, nonTerminals[i], preterminal, nonTerminals[random.nextInt(phrases)]));
+            rules.add(Rule.create(semiring, 0.4, nonTerminals[i], nonTerminals[phrases + random.nextInt(size - phrases)]));
+        }
+        for (int word = 0; word < words; word++)
+            rules.add(Rule.create(
+                    semiring,
+                    0.01,
+                    nonTerminals[phrases + random.nextInt(size - phrases)],
+                    new ExactStringTerminal("w" + word)
+            ));
+        return rules;
+    }
+
+    static final class Timing {
+        final long buildNanos;
+        final long editNanos;
+        final Grammar<String> edited;
+
+        Timing(final long buildNanos, final long editNanos, final Grammar<String> edited) {
+            this.buildNanos = buildNanos;
+            this.editNanos = editNanos;
+            this.edited = edited;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.leibnizcenter.cfg.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a single lexical edit of a large grammar is cheaper than building it again, see
+ * {@link IncrementalEdit}. The edit still rebuilds the rule index, so the margin is kept wide for noisy machines.
+ */
+public class IncrementalEditTest {
+    @Test
+    public void lexicalEditIsCheaperThanBuild() {
+        final IncrementalEdit.Timing timing = IncrementalEdit.time(2000, 20000, 5);
+        assertTrue(
+                "build " + timing.buildNanos + " ns, edit " + timing.editNanos + " ns",
+                timing.editNanos < timing.buildNanos
+        );
+    }
+}
@@ -0,0 +1,57 @@
+package org.leibnizcenter.cfg.perf;
+
+import org.leibnizcenter.cfg.algebra.matrix.BlockedLUDecomposition;
+import org.leibnizcenter.cfg.algebra.matrix.LUDecomposition;
+import org.leibnizcenter.cfg.algebra.matrix.Matrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times inversion of random dense square matrices, blocked and parallel versus {@link LUDecomposition}.
+ *
+ * Arguments: matrix sizes, defaults to 2000 up to 10000. The unblocked decomposition is only timed up to 4000,
+ * because it takes minutes beyond that.
+ */
+class LUDecompositionBenchmark {
+    private static final int MAX_UNBLOCKED_SIZE = 4000;
+
+    public static void main(final String[] args) {
+        final int[] sizes = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{2000, 4000, 6000, 8000, 10000};
+
+        System.out.println("size\tblocked (ms)\tunblocked (ms)\tmax difference");
+        for (final int size : sizes) {
+            final Matrix A = randomDiagonallyDominant(size, new Random(size));
+
+            final long blockedStart = System.currentTimeMillis();
+            final Matrix blocked = new BlockedLUDecomposition(A).inverse();
+            final long blockedTime = System.currentTimeMillis() - blockedStart;
+
+            if (size <= MAX_UNBLOCKED_SIZE) {
+                final long unblockedStart = System.currentTimeMillis();
+                final Matrix unblocked = A.inverse(new LUDecomposition(A));
+                final long unblockedTime = System.currentTimeMillis() - unblockedStart;
+
+                final double[] maxDifference = {0.0};
+                unblocked.forEach((row, column, value) ->
+                        maxDifference[0] = Math.max(maxDifference[0], Math.abs(value - blocked.get(row, column))));
+                System.out.println(size + "\t" + blockedTime + "\t" + unblockedTime + "\t" + maxDifference[0]);
+            } else {
+                System.out.println(size + "\t" + blockedTime + "\t-\t-");
+            }
+        }
+    }
+
+    /**
+     * Shaped like I - P for a dense left-corner relation
+     */
+    private static Matrix randomDiagonallyDominant(final int size, final Random random) {
+        final Matrix matrix = new Matrix(size, size);
+        for (int i = 0; i < size; i++)
+            for (int j = 0; j < size; j++)
+                matrix.set(i, j, (i == j ? 1.0 : 0.0) - random.nextDouble() / size);
+        return matrix;
+    }
+}
@@ -82,7 +82,7 @@ class LinearRegression {
      *
      * @return the slope &beta; of the best-fit line <em>y</em> = &alpha; + &beta; <em>x</em>
      */
-   private double slope() {
+    double slope() {
         return slope;
     }
 
@@ -92,7 +92,7 @@ class LinearRegression {
      * @return the coefficient of determination <em>R</em><sup>2</sup>,
      *         which is a real number between 0 and 1
      */
-   private double R2() {
+    double R2() {
         return r2;
     }
 
@@ -0,0 +1,80 @@
+package org.leibnizcenter.cfg.perf;
+
+import org.leibnizcenter.cfg.algebra.semiring.dbl.LogSemiring;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.CaseInsensitiveStringTerminal;
+import org.leibnizcenter.cfg.rule.EarleyRhsParser;
+import org.leibnizcenter.cfg.rule.RuleParser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Times parsing the rules of a large generated grammar file, and parsing its right hand sides with the Earley-based
+ * reference parser for comparison. Only parsing is timed, not building the grammar.
+ *
+ * Arguments: number of rules (default 500000) and number of rules to parse with the reference parser (default 10000).
+ */
+class RuleParserBenchmark {
+    public static void main(final String[] args) throws IOException {
+        final int ruleCount = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        final int referenceCount = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+        final Path file = Files.createTempFile("benchmark", ".cfg");
+        try {
+            final String[] rightHandSides = generate(file, ruleCount, new Random(ruleCount));
+
+            final Function<String, Category> parseCategory = s -> Character.isUpperCase(s.charAt(0))
+                    ? new NonTerminal(s)
+                    : new CaseInsensitiveStringTerminal(s);
+            final RuleParser ruleParser = new RuleParser(parseCategory, LogSemiring.get());
+
+            final long loadStart = System.currentTimeMillis();
+            final long parsed = Files.lines(file, StandardCharsets.UTF_8).map(ruleParser::fromString).count();
+            final long loadTime = System.currentTimeMillis() - loadStart;
+            System.out.println("Parsed " + parsed + " rules in " + loadTime + " ms");
+
+            final EarleyRhsParser reference = new EarleyRhsParser(parseCategory);
+            final long referenceStart = System.currentTimeMillis();
+            for (int i = 0; i < Math.min(referenceCount, ruleCount); i++) reference.parseRHS(rightHandSides[i]);
+            final long referenceTime = System.currentTimeMillis() - referenceStart;
+            System.out.println("Earley reference parsed " + Math.min(referenceCount, ruleCount)
+                    + " right hand sides in " + referenceTime + " ms");
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static String[] generate(final Path file, final int ruleCount, final Random random) throws IOException {
+        final String[] rightHandSides = new String[ruleCount];
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < ruleCount; i++) {
+                final StringBuilder rhs = new StringBuilder();
+                final int length = 1 + random.nextInt(4);
+                for (int j = 0; j < length; j++) {
+                    if (j > 0) rhs.append(' ');
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            rhs.append("NT").append(random.nextInt(ruleCount / 10 + 1));
+                            break;
+                        case 1:
+                            rhs.append("word").append(random.nextInt(ruleCount));
+                            break;
+                        default:
+                            rhs.append("/[a-z]{").append(random.nextInt(9) + 1).append("}\\/x/i");
+                            break;
+                    }
+                }
+                rightHandSides[i] = rhs.toString();
+                writer.write("NT" + random.nextInt(ruleCount / 10 + 1) + " -> " + rhs + " (0.5)\n");
+            }
+        }
+        return rightHandSides;
+    }
+}
@@ -0,0 +1,222 @@
+package org.leibnizcenter.cfg.perf;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.grammar.Grammar;
+import org.leibnizcenter.cfg.token.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ * Checks that parsing scales as the Earley algorithm promises. For every class of grammar, we parse sentences of
+ * increasing length and fit a line through the logarithms of length and cost. The slope of that line is the exponent
+ * <code>k</code> in <code>cost ~ n^k</code>, and should not be higher than the theoretical bound: O(n) for
+ * LR-like grammars, O(n²) for unambiguous grammars, O(n³) for any grammar.
+ * </p>
+ * <p>
+ * Cost is measured both as time and as the number of states in the chart. State counts are exact, so {@link ScalingTest}
+ * checks them on every build. Timings are noisy, so they are only checked when running this class by hand.
+ * </p>
+ * <p>
+ * Arguments: largest sentence length (default 256) and number of timed runs per length (default 5).
+ * </p>
+ */
+class Scaling {
+    /**
+     * Allowed excess over the bound, for lower order terms and noise
+     */
+    static final double STATES_TOLERANCE = 0.2;
+    static final double TIME_TOLERANCE = 0.5;
+
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final Terminal<String> a = new ExactStringTerminal("a");
+    private static final Terminal<String> b = new ExactStringTerminal("b");
+    private static final Terminal<String> c = new ExactStringTerminal("c");
+
+    public static void main(final String[] args) {
+        final int maxLength = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        final int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        final int[] lengths = ladder(8, maxLength);
+
+        boolean failed = false;
+        for (final GrammarClass grammarClass : GrammarClass.values()) {
+            final Fit fit = fit(grammarClass, lengths, runs);
+            final boolean ok = fit.statesWithinBound() && fit.timeWithinBound();
+            failed |= !ok;
+            System.out.println((ok ? "ok    " : "FAIL  ") + fit);
+        }
+        if (failed) System.exit(1);
+    }
+
+    /**
+     * @return Powers of two from min up to max
+     */
+    static int[] ladder(final int min, final int max) {
+        final List<Integer> lengths = new ArrayList<>();
+        for (int n = min; n <= max; n *= 2) lengths.add(n);
+        return lengths.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param runs Number of times to parse every sentence, of which the median time is taken. If 0, only states are
+     *             counted.
+     */
+    static Fit fit(final GrammarClass grammarClass, final int[] lengths, final int runs) {
+        final Parser<String> parser = new Parser<>(grammarClass.grammar());
+        final double[] logLengths = new double[lengths.length];
+        final double[] logStates = new double[lengths.length];
+        final double[] logTimes = new double[lengths.length];
+
+        // Warm up the JIT on the longest sentence before timing anything
+        if (runs > 0) parser.getViterbiParseWithScore(S, grammarClass.sentence(lengths[lengths.length - 1]));
+
+        for (int i = 0; i < lengths.length; i++) {
+            final List<Token<String>> sentence = grammarClass.sentence(lengths[i]);
+            logLengths[i] = Math.log(sentence.size());
+            logStates[i] = Math.log(parser.parseAndCountTokens(S, sentence, null).chart.countStates());
+            if (runs > 0) {
+                final long[] nanos = new long[runs];
+                for (int run = 0; run < runs; run++) {
+                    final long start = System.nanoTime();
+                    parser.getViterbiParseWithScore(S, sentence);
+                    nanos[run] = System.nanoTime() - start;
+                }
+                Arrays.sort(nanos);
+                logTimes[i] = Math.log(nanos[runs / 2]);
+            }
+        }
+        return new Fit(
+                grammarClass,
+                new LinearRegression(logLengths, logStates),
+                runs > 0 ? new LinearRegression(logLengths, logTimes) : null
+        );
+    }
+
+    /**
+     * Fitted exponents for one class of grammar
+     */
+    static final class Fit {
+        final GrammarClass grammarClass;
+        final LinearRegression states;
+        /**
+         * Null if the parses were not timed
+         */
+        final LinearRegression time;
+
+        Fit(final GrammarClass grammarClass, final LinearRegression states, final LinearRegression time) {
+            this.grammarClass = grammarClass;
+            this.states = states;
+            this.time = time;
+        }
+
+        boolean statesWithinBound() {
+            return states.slope() <= grammarClass.statesBound + STATES_TOLERANCE;
+        }
+
+        boolean timeWithinBound() {
+            return time == null || time.slope() <= grammarClass.timeBound + TIME_TOLERANCE;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s states ~ n^%.2f (bound %d)", grammarClass, states.slope(), grammarClass.statesBound)
+                    + (time == null ? "" : String.format(", time ~ n^%.2f (bound %d)", time.slope(), grammarClass.timeBound));
+        }
+    }
+
+    enum GrammarClass {
+        /**
+         * S → S a | a: left recursion, constant number of states per column
+         */
+        LR_LIKE(1, 1) {
+            @Override
+            Grammar<String> grammar() {
+                return new Grammar.Builder<String>()
+                        .addRule(0.5, S, S, a)
+                        .addRule(0.5, S, a)
+                        .build();
+            }
+        },
+        /**
+         * S → a S a | b S b | c: palindromes with a marked center, which have exactly one parse
+         */
+        UNAMBIGUOUS(2, 2) {
+            @Override
+            Grammar<String> grammar() {
+                return new Grammar.Builder<String>()
+                        .addRule(0.4, S, a, S, a)
+                        .addRule(0.4, S, b, S, b)
+                        .addRule(0.2, S, c)
+                        .build();
+            }
+
+            @Override
+            List<Token<String>> sentence(final int length) {
+                final String[] words = new String[2 * (length / 2) + 1];
+                for (int i = 0; i < length / 2; i++) {
+                    words[i] = i % 3 == 0 ? "b" : "a";
+                    words[words.length - 1 - i] = words[i];
+                }
+                words[length / 2] = "c";
+                final List<Token<String>> tokens = new ArrayList<>(words.length);
+                for (final String word : words) tokens.add(new Token<>(word));
+                return tokens;
+            }
+        },
+        /**
+         * S → a S | a: unambiguous, but every column completes the S of every column before it
+         */
+        RIGHT_RECURSIVE(2, 2) {
+            @Override
+            Grammar<String> grammar() {
+                return new Grammar.Builder<String>()
+                        .addRule(0.5, S, a, S)
+                        .addRule(0.5, S, a)
+                        .build();
+            }
+        },
+        /**
+         * S → S S | a: every binary tree over the sentence is a parse
+         */
+        AMBIGUOUS(2, 3) {
+            @Override
+            Grammar<String> grammar() {
+                return new Grammar.Builder<String>()
+                        .addRule(0.1, S, S, S)
+                        .addRule(0.9, S, a)
+                        .build();
+            }
+        };
+
+        /**
+         * Exponent of the highest allowed number of states
+         */
+        final int statesBound;
+        /**
+         * Exponent of the highest allowed running time
+         */
+        final int timeBound;
+
+        GrammarClass(final int statesBound, final int timeBound) {
+            this.statesBound = statesBound;
+            this.timeBound = timeBound;
+        }
+
+        abstract Grammar<String> grammar();
+
+        /**
+         * @return Sentence of about given length
+         */
+        List<Token<String>> sentence(final int length) {
+            final List<Token<String>> tokens = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) tokens.add(new Token<>("a"));
+            return tokens;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.leibnizcenter.cfg.perf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fits the number of chart states against sentence length, see {@link Scaling}. Timings are left out, because they
+ * are too noisy for a unit test.
+ */
+public class ScalingTest {
+    private static final int[] LENGTHS = Scaling.ladder(8, 64);
+
+    private static void assertWithinBound(final Scaling.GrammarClass grammarClass) {
+        final Scaling.Fit fit = Scaling.fit(grammarClass, LENGTHS, 0);
+        assertTrue(fit.toString(), fit.statesWithinBound());
+    }
+
+    @Test
+    public void lrLike() {
+        assertWithinBound(Scaling.GrammarClass.LR_LIKE);
+    }
+
+    @Test
+    public void unambiguous() {
+        assertWithinBound(Scaling.GrammarClass.UNAMBIGUOUS);
+    }
+
+    @Test
+    public void rightRecursive() {
+        assertWithinBound(Scaling.GrammarClass.RIGHT_RECURSIVE);
+    }
+
+    @Test
+    public void ambiguous() {
+        assertWithinBound(Scaling.GrammarClass.AMBIGUOUS);
+    }
+
+    @Test
+    public void fitDetectsGrowthAboveLinear() {
+        final Scaling.Fit fit = Scaling.fit(Scaling.GrammarClass.AMBIGUOUS, LENGTHS, 0);
+        assertTrue(fit.toString(), fit.states.slope() > 1 + Scaling.STATES_TOLERANCE);
+    }
+}
@@ -0,0 +1,129 @@
+package org.leibnizcenter.cfg.rule;
+
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
+import org.leibnizcenter.cfg.earleyparser.ParseTree;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.grammar.Grammar;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reference implementation of {@link RuleParser#parseRHS(String)} that parses the right hand side with a probabilistic
+ * Earley parse over a grammar for right hand sides. This is how rules used to be parsed; it is kept to check that the
+ * hand-written parser has the same semantics.
+ */
+public class EarleyRhsParser {
+    private static final NonTerminal RIGHT_HAND_SIDE = NonTerminal.of("S");
+    private static final NonTerminal CATEGORY = NonTerminal.of("Category");
+    private static final NonTerminal CATEGORY_CONTENT = NonTerminal.of("CategoryContent");
+    private static final NonTerminal REGEX = NonTerminal.of("Regex");
+    private static final NonTerminal REGEX_CONTENT = NonTerminal.of("RegexContent");
+    private static final NonTerminal NON_REGEX_DELIMITER = NonTerminal.of("NonRegexDelimiter");
+    private static final Pattern REGEX_MODIFIER = Pattern.compile("[xmsudi]+", Pattern.CASE_INSENSITIVE);
+
+    private static final Terminal<String> REGEX_MODIFIERS = (token) -> REGEX_MODIFIER.matcher(token.obj).matches();
+    private static final Terminal<String> REGEX_DELIMITER = (token) -> token instanceof RuleParser.RhsToken && ((RuleParser.RhsToken) token).isRegexDelimiter;
+    private static final Terminal<String> WHITE_SPACE = (token) -> token instanceof RuleParser.RhsToken && ((RuleParser.RhsToken) token).isWhitespace;
+    private static final Terminal<String> DANK_CONTENT = (token) -> token instanceof RuleParser.RhsToken
+            && !((RuleParser.RhsToken) token).isWhitespace
+            && !((RuleParser.RhsToken) token).isRegexDelimiter;
+
+    private static final Grammar<String> grammarRHS = new Grammar.Builder<String>()
+            .addRule(0.4, RIGHT_HAND_SIDE, REGEX)
+            .addRule(0.3, RIGHT_HAND_SIDE, CATEGORY)
+            .addRule(0.3, RIGHT_HAND_SIDE, RIGHT_HAND_SIDE, WHITE_SPACE, RIGHT_HAND_SIDE)
+
+            .addRule(1.0, CATEGORY, CATEGORY_CONTENT)
+            .addRule(0.4, CATEGORY_CONTENT, CATEGORY_CONTENT, REGEX_DELIMITER)
+            .addRule(0.3, CATEGORY_CONTENT, DANK_CONTENT)
+            .addRule(0.3, CATEGORY_CONTENT, CATEGORY_CONTENT, CATEGORY_CONTENT)
+
+            .addRule(0.5, REGEX, REGEX_DELIMITER, REGEX_CONTENT, REGEX_DELIMITER)
+            .addRule(0.5, REGEX, REGEX_DELIMITER, REGEX_CONTENT, REGEX_DELIMITER, REGEX_MODIFIERS)
+            .addRule(0.5, REGEX_CONTENT, NON_REGEX_DELIMITER)
+            .addRule(0.5, REGEX_CONTENT, REGEX_CONTENT, REGEX_CONTENT)
+            .addRule(0.5, NON_REGEX_DELIMITER, DANK_CONTENT)
+            .addRule(0.5, NON_REGEX_DELIMITER, WHITE_SPACE)
+
+            .build();
+
+    private final Function<String, Category> parseCategory;
+
+    public EarleyRhsParser(final Function<String, Category> parseCategory) {
+        this.parseCategory = parseCategory;
+    }
+
+    private static RegexTerminal parseRegexTerminal(final ParseTree parseTree) {
+        final List<ParseTree> children = parseTree.children;
+
+        final StringBuilder modifiers = new StringBuilder();
+        int i = children.size() - 1;
+        for (; i >= 0; i--) {
+            final ParseTree child = children.get(i);
+            if (child.category.equals(REGEX_DELIMITER)) break;
+
+            modifiers.append(rhsToken(child).obj.toLowerCase(Locale.ROOT));
+        }
+
+        return new RegexTerminal(
+                children.subList(1, i).stream()
+                        .map(t -> rhsToken(t).obj)
+                        .collect(Collectors.joining()),
+                RuleParser.getRegexFlags(modifiers.toString()));
+    }
+
+    /**
+     * @return Token of given leaf, which was lexed by {@link RuleParser#lexRhs(char[])}
+     */
+    private static RuleParser.RhsToken rhsToken(final ParseTree leaf) {
+        return (RuleParser.RhsToken) ((ParseTree.Leaf<?>) leaf).token;
+    }
+
+    private static ParseTree.FlattenOption getFlattenOption(final List<ParseTree> parents, final ParseTree parseTree) {
+        final ParseTree parent = (!parents.isEmpty()) ? parents.get(parents.size() - 1) : null;
+        if (parseTree instanceof ParseTree.Leaf && parent != null) {
+            if (parent.category.equals(REGEX)) return ParseTree.FlattenOption.KEEP;
+            else if (parent.category.equals(CATEGORY))
+                return ((ParseTree.Leaf) parseTree).token instanceof RuleParser.RhsToken && ((RuleParser.RhsToken) ((ParseTree.Leaf) parseTree).token).isWhitespace
+                        ? ParseTree.FlattenOption.REMOVE
+                        : ParseTree.FlattenOption.KEEP;
+            else
+                return ParseTree.FlattenOption.REMOVE;
+        } else if (Stream.of(REGEX, CATEGORY).anyMatch(parseTree.category::equals))
+            return ParseTree.FlattenOption.KEEP;
+        else if (parseTree instanceof ParseTree.NonLeaf)
+            return ParseTree.FlattenOption.KEEP_ONLY_CHILDREN;
+        else
+            return ParseTree.FlattenOption.REMOVE;
+    }
+
+    public Category[] parseRHS(final String rhsStr) {
+        ParseTree viterbi = new Parser<>(grammarRHS)
+                .getViterbiParse(RIGHT_HAND_SIDE, Collections.unmodifiableList(RuleParser.lexRhs(rhsStr.toCharArray())));
+        if (viterbi == null) throw new IllegalArgumentException("Could not parse grammar");
+        viterbi = viterbi.flatten(EarleyRhsParser::getFlattenOption);
+        final List<Category> rhsList = viterbi.getChildren().stream()
+                .map(this::getCategory)
+                .collect(Collectors.toList());
+
+        return rhsList.toArray(new Category[rhsList.size()]);
+    }
+
+    private Category getCategory(final ParseTree parseTree) {
+        final boolean isSimpleCategory = parseTree.category.equals(CATEGORY);
+        final boolean isRegex = parseTree.category.equals(REGEX);
+        if (!isSimpleCategory && !isRegex) throw new IllegalStateException("Error while parsing grammar");
+        return isRegex ? parseRegexTerminal(parseTree) : parseCategory.apply(parseTree.children.stream()
+                .map(t -> rhsToken(t).obj)
+                .collect(Collectors.joining()));
+    }
+}
@@ -9,6 +9,11 @@ import org.leibnizcenter.cfg.category.terminal.Terminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.CaseInsensitiveStringTerminal;
 import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -87,4 +92,47 @@ public class RuleParserTest {
         final Rule rule = new RuleParser(s -> (NonLexicalToken.ERROR_SYMBOL.equals(s) ? NonLexicalToken.INSTANCE : new CaseInsensitiveStringTerminal(s)), LogSemiring.get()).fromString("S -> A B");
         assertFalse(rule instanceof LexicalErrorRule);
     }
-}
\ No newline at end of file
+
+    /**
+     * Category or regex as a string, since regex terminals are compared by identity of their pattern
+     */
+    private static String describe(final Category category) {
+        if (category instanceof RegexTerminal) {
+            final Pattern pattern = ((RegexTerminal) category).pattern;
+            return "regex(" + pattern.pattern() + ", " + pattern.flags() + ")";
+        } else return category.getClass().getSimpleName() + "(" + category + ")";
+    }
+
+    private static String parse(final Function<String, Category[]> parser, final String rhs) {
+        try {
+            return Arrays.stream(parser.apply(rhs)).map(RuleParserTest::describe).collect(Collectors.joining(" "));
+        } catch (final RuntimeException e) {
+            // The Earley parser fails with a plain RuntimeException
+            return "invalid";
+        }
+    }
+
+    @Test
+    public void parseRhsEqualsEarleyReference() throws Exception {
+        final Function<String, Category> parseCategory = s -> Character.isUpperCase(s.charAt(0)) ? new NonTerminal(s) : new CaseInsensitiveStringTerminal(s);
+        final RuleParser ruleParser = new RuleParser(parseCategory, LogSemiring.get());
+        final EarleyRhsParser reference = new EarleyRhsParser(parseCategory);
+
+        final List<String> examples = new ArrayList<>(Arrays.asList(
+                "NP VP", "a", "/ [a]+A /ii \\/O/nn//n/e Thr/e\\e//", "/a/ i", "/a/x b", "/a/b", "/a", "/ /",
+                "//", "a/ /b/", "/a//b/", "\\/", "a \\/", "/a b/s c/d"
+        ));
+        // Random right hand sides over the characters that matter
+        final char[] alphabet = {'a', 'B', 'i', 'x', '/', '\\', ' ', '\t'};
+        final Random random = new Random(34);
+        for (int i = 0; i < 500; i++) {
+            final char[] chars = new char[1 + random.nextInt(10)];
+            for (int j = 0; j < chars.length; j++) chars[j] = alphabet[random.nextInt(alphabet.length)];
+            examples.add(new String(chars).trim());
+        }
+
+        for (final String rhs : examples)
+            if (!rhs.isEmpty())
+                assertEquals(rhs, parse(reference::parseRHS, rhs), parse(ruleParser::parseRHS, rhs));
+    }
+}
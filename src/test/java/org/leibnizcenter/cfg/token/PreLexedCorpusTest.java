@@ -0,0 +1,141 @@
+package org.leibnizcenter.cfg.token;
+
+import org.junit.Test;
+import org.leibnizcenter.cfg.category.Category;
+import org.leibnizcenter.cfg.category.nonterminal.NonTerminal;
+import org.leibnizcenter.cfg.category.terminal.Terminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.CaseInsensitiveStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.ExactStringTerminal;
+import org.leibnizcenter.cfg.category.terminal.stringterminal.RegexTerminal;
+import org.leibnizcenter.cfg.earleyparser.Parser;
+import org.leibnizcenter.cfg.grammar.Grammar;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class PreLexedCorpusTest {
+    private static final NonTerminal S = Category.nonTerminal("S");
+    private static final Terminal<String> a = new CaseInsensitiveStringTerminal("a");
+    private static final Terminal<String> b = new ExactStringTerminal("b");
+    private static final Grammar<String> grammar = new Grammar.Builder<String>()
+            .addRule(0.6, S, a)
+            .addRule(0.4, S, S, b, S)
+            .build();
+    private static final List<List<Token<String>>> sentences = Arrays.asList(
+            Tokens.tokenize("a b A"),
+            Tokens.tokenize("a"),
+            Tokens.tokenize("a b c")
+    );
+
+    @Test
+    public void lex() throws Exception {
+        final PreLexedCorpus<String> corpus = PreLexedCorpus.lex(grammar, sentences);
+        assertEquals(3, corpus.getSentenceCount());
+        assertEquals(7, corpus.getTokenCount());
+        assertEquals(4, corpus.getTypeCount());
+        assertEquals(3, corpus.getSentenceLength(0));
+        assertEquals(Token.of("A"), corpus.getToken(0, 2));
+        assertEquals(Collections.singleton(a), corpus.getCategories(0, 2));
+        assertEquals(new HashSet<>(grammar.getCategories(Token.of("b"))), corpus.getCategories(2, 1));
+        assertTrue(corpus.getCategories(2, 2).isEmpty());
+    }
+
+    @Test
+    public void writeAndRead() throws Exception {
+        final PreLexedCorpus<String> corpus = PreLexedCorpus.lex(grammar, sentences);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        corpus.write(out);
+        final PreLexedCorpus<String> read = PreLexedCorpus.read(new ByteArrayInputStream(out.toByteArray()), grammar, Token::new);
+
+        assertEquals(corpus.getSentenceCount(), read.getSentenceCount());
+        for (int s = 0; s < corpus.getSentenceCount(); s++) {
+            assertEquals(corpus.getSentenceLength(s), read.getSentenceLength(s));
+            for (int i = 0; i < corpus.getSentenceLength(s); i++) {
+                assertEquals(corpus.getToken(s, i), read.getToken(s, i));
+                assertEquals(corpus.getCategories(s, i), read.getCategories(s, i));
+            }
+        }
+    }
+
+    @Test
+    public void regexFlagsDecideTerminalIds() throws Exception {
+        final NonTerminal X = Category.nonTerminal("X");
+        final NonTerminal Y = Category.nonTerminal("Y");
+        final Grammar<String> written = new Grammar.Builder<String>()
+                .addRule(0.5, S, X)
+                .addRule(0.5, S, Y)
+                .addRule(X, new RegexTerminal("a", Pattern.CASE_INSENSITIVE))
+                .addRule(Y, new RegexTerminal("a"))
+                .build();
+        // Same grammar built elsewhere, from new pattern objects and with the rules in another order
+        final Grammar<String> reading = new Grammar.Builder<String>()
+                .addRule(Y, new RegexTerminal("a"))
+                .addRule(X, new RegexTerminal("a", Pattern.CASE_INSENSITIVE))
+                .addRule(0.5, S, Y)
+                .addRule(0.5, S, X)
+                .build();
+        assertEquals(written.getTerminalsFingerprint(), reading.getTerminalsFingerprint());
+        assertNotEquals(
+                new Grammar.Builder<String>().addRule(S, new RegexTerminal("a")).build().getTerminalsFingerprint(),
+                new Grammar.Builder<String>().addRule(S, new RegexTerminal("a", Pattern.CASE_INSENSITIVE)).build().getTerminalsFingerprint()
+        );
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PreLexedCorpus.lex(written, Collections.singletonList(Tokens.tokenize("A a"))).write(out);
+        final PreLexedCorpus<String> read = PreLexedCorpus.read(new ByteArrayInputStream(out.toByteArray()), reading, Token::new);
+        assertEquals(Collections.singleton(new RegexTerminal("a", Pattern.CASE_INSENSITIVE)), read.getCategories(0, 0));
+        assertEquals(2, read.getCategories(0, 1).size());
+    }
+
+    @Test
+    public void readChecksOffsets() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PreLexedCorpus.lex(grammar, sentences).write(out);
+        final byte[] bytes = out.toByteArray();
+        // The corpus ends with the sentence offsets 0, 3, 4, 7
+        assertOffsetsRejected(bytes, bytes.length - 1, 6);
+        assertOffsetsRejected(bytes, bytes.length - 5, 8);
+        assertOffsetsRejected(bytes, bytes.length - 13, 1);
+    }
+
+    private static void assertOffsetsRejected(final byte[] bytes, final int index, final int value) {
+        final byte[] corrupt = bytes.clone();
+        corrupt[index] = (byte) value;
+        try {
+            PreLexedCorpus.read(new ByteArrayInputStream(corrupt), grammar, Token::new);
+            fail("Expected offsets to be rejected");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().startsWith("Sentence offsets"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readWithOtherGrammar() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PreLexedCorpus.lex(grammar, sentences).write(out);
+        final Grammar<String> other = new Grammar.Builder<String>().addRule(S, new ExactStringTerminal("c")).build();
+        PreLexedCorpus.read(new ByteArrayInputStream(out.toByteArray()), other, Token::new);
+    }
+
+    @Test
+    public void parse() throws Exception {
+        final PreLexedCorpus<String> corpus = PreLexedCorpus.lex(grammar, sentences);
+        final Parser<String> parser = new Parser<>(grammar);
+        for (int s = 0; s < 2; s++) {
+            assertEquals(
+                    parser.getViterbiParse(S, sentences.get(s)),
+                    parser.getViterbiParseWithScore(S, corpus, s, null).getParseTree()
+            );
+            assertEquals(parser.recognize(S, sentences.get(s)), parser.recognize(S, corpus, s, null), 1e-10);
+        }
+        assertEquals(0.4 * 0.6 * 0.6, parser.recognize(S, corpus, 0, null), 1e-10);
+    }
+}
@@ -0,0 +1,103 @@
+package org.leibnizcenter.cfg.token;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamingTokenizerTest {
+    private static final String TEXT = "the man  hit\tthe stick .\r\n\n  the stick hit the man ! één\nlast";
+
+    private static List<List<String>> sentences(final StreamingTokenizer tokenizer) throws IOException {
+        final List<List<String>> sentences = new ArrayList<>();
+        Iterable<Token<String>> sentence;
+        while ((sentence = tokenizer.nextSentence()) != null) {
+            final List<String> tokens = new ArrayList<>();
+            for (final Token<String> token : sentence) tokens.add(token.obj);
+            sentences.add(tokens);
+        }
+        return sentences;
+    }
+
+    private static StreamingTokenizer fromString(final StreamingTokenizer.Builder builder, final String text) {
+        return builder.from(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void lineIsSentence() throws Exception {
+        try (StreamingTokenizer tokenizer = fromString(new StreamingTokenizer.Builder().withBufferSize(16), TEXT)) {
+            assertEquals(Arrays.asList(
+                    Arrays.asList("the", "man", "hit", "the", "stick", "."),
+                    Arrays.asList("the", "stick", "hit", "the", "man", "!", "één"),
+                    Arrays.asList("last")
+            ), sentences(tokenizer));
+        }
+    }
+
+    @Test
+    public void sentenceEndingTokens() throws Exception {
+        final StreamingTokenizer.Builder builder = new StreamingTokenizer.Builder()
+                .withLineIsSentence(false)
+                .withSentenceEndingTokens(s -> s.equals(".") || s.equals("!"));
+        try (StreamingTokenizer tokenizer = fromString(builder, TEXT)) {
+            assertEquals(Arrays.asList(
+                    Arrays.asList("the", "man", "hit", "the", "stick", "."),
+                    Arrays.asList("the", "stick", "hit", "the", "man", "!"),
+                    Arrays.asList("één", "last")
+            ), sentences(tokenizer));
+        }
+    }
+
+    @Test
+    public void memoryMapped() throws Exception {
+        final Path file = Files.createTempFile("streaming-tokenizer", ".txt");
+        try {
+            Files.write(file, TEXT.getBytes(StandardCharsets.UTF_8));
+            // Tiny windows, so multi-byte characters get split over windows
+            final StreamingTokenizer.Builder builder = new StreamingTokenizer.Builder()
+                    .withMapWindowSize(17)
+                    .withBufferSize(16);
+            try (StreamingTokenizer mapped = builder.open(file);
+                 StreamingTokenizer streamed = fromString(new StreamingTokenizer.Builder(), TEXT)) {
+                assertEquals(sentences(streamed), sentences(mapped));
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void internsTokens() throws Exception {
+        try (StreamingTokenizer tokenizer = fromString(new StreamingTokenizer.Builder(), TEXT)) {
+            final Token<String> first = tokenizer.nextToken();
+            Token<String> token;
+            Token<String> secondThe = null;
+            while ((token = tokenizer.nextToken()) != null)
+                if (secondThe == null && token.obj.equals("the")) secondThe = token;
+            assertSame(first, secondThe);
+            assertEquals(8, tokenizer.getInternedTokenCount());
+        }
+    }
+
+    @Test
+    public void skipsUnconsumedTokens() throws Exception {
+        try (StreamingTokenizer tokenizer = fromString(new StreamingTokenizer.Builder(), TEXT)) {
+            final Iterator<Token<String>> first = tokenizer.nextSentence().iterator();
+            assertEquals("the", first.next().obj);
+            final Iterator<Token<String>> second = tokenizer.nextSentence().iterator();
+            assertFalse(first.hasNext());
+            assertEquals("the", second.next().obj);
+            assertEquals("stick", second.next().obj);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.leibnizcenter.cfg.util.cache;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class SegmentedLruCacheTest {
+    private static final Function<Integer, String> TO_STRING = String::valueOf;
+
+    @Test
+    public void computeIfAbsent() throws Exception {
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(10, 1);
+        assertEquals("1", cache.computeIfAbsent(1, TO_STRING));
+        assertEquals("1", cache.computeIfAbsent(1, i -> "other"));
+        assertEquals(new CacheStats(1, 1, 0), cache.stats());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void nullValuesAreNotCached() throws Exception {
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(10, 1);
+        assertNull(cache.computeIfAbsent(1, i -> null));
+        assertNull(cache.getIfPresent(1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void isBounded() throws Exception {
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(100);
+        for (int i = 0; i < 10000; i++) cache.computeIfAbsent(i, TO_STRING);
+        assertTrue(cache.size() <= 100);
+        assertEquals(10000 - cache.size(), cache.stats().evictionCount);
+    }
+
+    @Test
+    public void frequentKeysSurviveScan() throws Exception {
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(10, 1);
+        // Hit twice, so they get promoted to the protected segment
+        for (int i = 0; i < 5; i++) {
+            cache.computeIfAbsent(i, TO_STRING);
+            cache.computeIfAbsent(i, TO_STRING);
+        }
+        // Burst of one-off keys
+        for (int i = 100; i < 200; i++) cache.computeIfAbsent(i, TO_STRING);
+        for (int i = 0; i < 5; i++) assertEquals(String.valueOf(i), cache.getIfPresent(i));
+    }
+
+    @Test
+    public void getIfPresentKeepsEvictionOrder() throws Exception {
+        // Probation holds 2 entries
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(10, 1);
+        cache.computeIfAbsent(1, TO_STRING);
+        cache.computeIfAbsent(2, TO_STRING);
+        assertEquals("1", cache.getIfPresent(1));
+        cache.computeIfAbsent(3, TO_STRING);
+        assertNull(cache.getIfPresent(1));
+        assertEquals("2", cache.getIfPresent(2));
+    }
+
+    @Test
+    public void clear() throws Exception {
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(10);
+        cache.computeIfAbsent(1, TO_STRING);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.getIfPresent(1));
+        assertEquals(1, cache.stats().missCount);
+    }
+
+    @Test
+    public void newEmpty() throws Exception {
+        final SegmentedLruCache<Integer, String> cache = new SegmentedLruCache<>(10, 1);
+        cache.computeIfAbsent(1, TO_STRING);
+        final Cache<Integer, String> empty = cache.newEmpty();
+        assertEquals(0, empty.size());
+        assertEquals(new CacheStats(0, 0, 0), empty.stats());
+        assertEquals(10, ((SegmentedLruCache<Integer, String>) empty).getCapacity());
+        empty.computeIfAbsent(2, TO_STRING);
+        assertNull(cache.getIfPresent(2));
+        assertEquals(0, Cache.disabled().newEmpty().size());
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        final Cache<Integer, String> cache = Cache.disabled();
+        cache.computeIfAbsent(1, TO_STRING);
+        cache.computeIfAbsent(1, TO_STRING);
+        assertEquals(0, cache.size());
+        assertEquals(new CacheStats(0, 2, 0), cache.stats());
+        assertEquals(0.0, cache.stats().hitRate(), 0.0);
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final Cache<Integer, String> cache = new SegmentedLruCache<>(64);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        final int key = i % 128;
+                        assertEquals(String.valueOf(key), cache.computeIfAbsent(key, TO_STRING));
+                    }
+                }));
+            for (final Future<?> future : futures) future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(40000, cache.stats().requestCount());
+    }
+}